@@ -0,0 +1,36 @@
+package com.turn.tpmml.itest;
+
+/**
+ * Code templates of translated models.
+ */
+class ModelTemplates {
+
+	private ModelTemplates() {
+	}
+
+	/**
+	 * @param returnValue The Java expression that the model returns.
+	 *
+	 * @return A code template of <code>/regression.xml</code>. The class has a nested class.
+	 */
+	static String getRegressionTemplate(String returnValue) {
+		return REGRESSION_TEMPLATE.replace("$returnValue", returnValue);
+	}
+
+	private static final String REGRESSION_TEMPLATE = "" +
+			"package com.turn.tpmml.itest;\n" + "import java.util.Map;\n" +
+			"import com.turn.tpmml.translator.TranslatedModel;\n" + "" +
+			"#foreach($import in $imports) \n" + "${import}\n" + "#end\n" + "\n" +
+			"#foreach($constant in $constants) \n" + "static private final ${constant}\n" +
+			"#end" + "\n" + "public class ${className} implements TranslatedModel {\n" + "\n" +
+			"	public Object execute(Map<String, Object> nameToValue) {\n" + "		try {\n" +
+			"		Double number_of_claims = 0.0;\n" +
+			"		Integer age = (Integer)nameToValue.get(\"age\");\n" +
+			"		Integer salary = (Integer)nameToValue.get(\"salary\");\n" +
+			"		String car_location = (String)nameToValue.get(\"car_location\");\n" +
+			"		\n" +
+			"${modelCode}\n" + "		return $returnValue;\n" +
+			"	} catch (Exception eee) { return null; }\n" + "	}\n" +
+			"	// auxiliary classes belong to the model\n" +
+			"	private static class Helper {\n" + "	}\n" + "}\n";
+}
@@ -0,0 +1,107 @@
+package com.turn.tpmml.itest;
+
+import com.turn.tpmml.IOUtil;
+import com.turn.tpmml.PMML;
+import com.turn.tpmml.translator.PmmlToJavaTranslator;
+import com.turn.tpmml.translator.TranslatedModel;
+import com.turn.tpmml.translator.TranslationContext;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+@Test
+public class PmmlToJavaTranslatorTest {
+
+	@Test
+	public void testCreateModelClasses() throws Exception {
+		PMML pmmlDoc = IOUtil.unmarshal(getClass().getResourceAsStream("/regression.xml"));
+
+		Map<String, String> javaSources = new LinkedHashMap<String, String>();
+
+		String template = ModelTemplates.getRegressionTemplate("number_of_claims");
+
+		for (int i = 0; i < 5; i++) {
+			String className = "BatchModel" + i + "_" + System.nanoTime();
+
+			String javaSource = PmmlToJavaTranslator.generateJavaCode(pmmlDoc, className,
+					new StringReader(template), new TranslationContext());
+
+			javaSources.put("com.turn.tpmml.itest." + className, javaSource);
+		}
+
+		String brokenClassName = "com.turn.tpmml.itest.BrokenModel" + System.nanoTime();
+		javaSources.put(brokenClassName, "package com.turn.tpmml.itest; class {");
+
+		// Compiles, but the class is declared in another package
+		String misplacedClassName = "com.turn.tpmml.itest.MisplacedModel" + System.nanoTime();
+		javaSources.put(misplacedClassName, "package com.turn.tpmml.other; class " +
+				misplacedClassName.substring(misplacedClassName.lastIndexOf('.') + 1) + " {}");
+
+		Map<String, Class<?>> modelClasses =
+				PmmlToJavaTranslator.createModelClasses(javaSources, 2);
+
+		assert modelClasses.keySet().equals(javaSources.keySet());
+		assert modelClasses.get(brokenClassName) == null;
+		assert modelClasses.get(misplacedClassName) == null;
+
+		Map<String, Object> nameToValue = new HashMap<String, Object>();
+		nameToValue.put("age", 30);
+		nameToValue.put("salary", 1000);
+		nameToValue.put("car_location", "street");
+
+		ClassLoader previousClassLoader = null;
+
+		for (Map.Entry<String, Class<?>> entry : modelClasses.entrySet()) {
+			Class<?> modelClass = entry.getValue();
+
+			if (entry.getKey().equals(brokenClassName) ||
+					entry.getKey().equals(misplacedClassName)) {
+				continue;
+			}
+
+			ClassLoader classLoader = modelClass.getClassLoader();
+
+			// Every model is loaded by a class loader of its own
+			assert classLoader != previousClassLoader;
+			previousClassLoader = classLoader;
+
+			assert classLoader.getParent() == (Thread.currentThread()).getContextClassLoader();
+
+			// The nested class is defined by the class loader of the model
+			Class<?> helperClass = Class.forName(entry.getKey() + "$Helper", false, classLoader);
+
+			assert helperClass.getClassLoader() == classLoader;
+
+			TranslatedModel model = (TranslatedModel) modelClass.newInstance();
+
+			// 132.37 + 7.1 * 30 + 0.01 * 1000 + 325.03
+			assert Math.abs((Double) model.execute(nameToValue) - 680.4) < 1E-6;
+		}
+	}
+
+	@Test
+	public void testCreateModelClassParent() throws Exception {
+		PMML pmmlDoc = IOUtil.unmarshal(getClass().getResourceAsStream("/regression.xml"));
+
+		String className = "ParentModel" + System.nanoTime();
+
+		String javaSource = PmmlToJavaTranslator.generateJavaCode(pmmlDoc, className,
+				new StringReader(ModelTemplates.getRegressionTemplate("number_of_claims")),
+				new TranslationContext());
+
+		ClassLoader parent = new ClassLoader(TranslatedModel.class.getClassLoader()) {
+		};
+
+		// The class path is derived from the parent
+		Class<?> modelClass = PmmlToJavaTranslator.createModelClass(className,
+				"com.turn.tpmml.itest", javaSource, Collections.<String>emptyList(), parent);
+
+		assert (modelClass.getClassLoader()).getParent() == parent;
+		assert modelClass.newInstance() instanceof TranslatedModel;
+	}
+}
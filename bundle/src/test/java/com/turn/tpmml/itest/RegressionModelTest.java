@@ -137,7 +137,7 @@ public class RegressionModelTest extends BaseModelTest {
 	}
 
 
-	private static final String SAMPLE_REGRESSION_MODEL_TEMPLATE = "" +
+	static final String SAMPLE_REGRESSION_MODEL_TEMPLATE = "" +
 			"package com.turn.tpmml.itest;\n" + "import java.util.Map;\n" +
 			"import com.turn.tpmml.itest.BaseModelTest.CompiledModel;\n" + "" +
 			"#foreach($import in $imports) \n" + "${import}\n" + "#end\n" + "\n" +
@@ -0,0 +1,201 @@
+package com.turn.tpmml.itest;
+
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.IOUtil;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.PMML;
+import com.turn.tpmml.evaluator.EvaluationException;
+import com.turn.tpmml.manager.IPMMLResult;
+import com.turn.tpmml.translator.TieredEvaluator;
+import com.turn.tpmml.translator.TranslationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.testng.annotations.Test;
+
+@Test
+public class TieredEvaluatorTest {
+
+	@Test
+	public void testPromotion() throws Exception {
+		TieredEvaluator evaluator = createEvaluator("number_of_claims");
+
+		for (int i = 0; i < 20; i++) {
+			evaluate(evaluator, i);
+
+			// Threshold 4, sample size 8
+			assert evaluator.isCompiled() == (i >= 4 + 8 - 1);
+		}
+
+		// The interpreter handles missing values
+		Map<FieldName, Object> parameters = new HashMap<FieldName, Object>();
+		parameters.put(new FieldName("age"), 30);
+		parameters.put(new FieldName("car_location"), "street");
+
+		EvaluationException expected = null;
+
+		try {
+			(evaluator.getEvaluator()).evaluate(parameters);
+		} catch (EvaluationException ee) {
+			expected = ee;
+		}
+
+		try {
+			evaluator.evaluate(parameters);
+
+			assert expected == null;
+		} catch (EvaluationException ee) {
+			assert expected != null;
+		}
+	}
+
+	@Test
+	public void testPromotionWithModelTemplate() throws Exception {
+		// The template implements BaseModelTest.CompiledModel, not TranslatedModel
+		TieredEvaluator evaluator = createEvaluator("/regression.xml",
+				RegressionModelTest.SAMPLE_REGRESSION_MODEL_TEMPLATE);
+
+		for (int i = 0; i < 20; i++) {
+			evaluate(evaluator, i);
+
+			assert evaluator.isCompiled() == (i >= 4 + 8 - 1);
+		}
+	}
+
+	@Test
+	public void testMismatch() throws Exception {
+		TieredEvaluator evaluator = createEvaluator("number_of_claims + 1.0");
+
+		for (int i = 0; i < 20; i++) {
+			evaluate(evaluator, i);
+
+			assert !evaluator.isCompiled();
+		}
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+		TieredEvaluator evaluator = createEvaluator("number_of_claims");
+
+		for (int i = 0; i < 20; i++) {
+			evaluate(evaluator, i);
+		}
+
+		assert evaluator.isCompiled();
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+		ObjectOutputStream oos = new ObjectOutputStream(os);
+		oos.writeObject(evaluator);
+		oos.close();
+
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(os.toByteArray()));
+
+		TieredEvaluator clone = (TieredEvaluator) ois.readObject();
+
+		ois.close();
+
+		// The deserialized evaluator starts over in interpreted mode
+		assert !clone.isCompiled();
+
+		evaluate(clone, 0);
+	}
+
+	@Test
+	public void testTreeResult() throws Exception {
+		TieredEvaluator evaluator = createEvaluator("/golf_tree.xml", GOLF_TEMPLATE);
+
+		FieldName target = evaluator.getTarget();
+
+		for (int i = 0; i < 20; i++) {
+			Map<FieldName, Object> parameters = new HashMap<FieldName, Object>();
+			parameters.put(new FieldName("temperature"), 60d + i);
+			parameters.put(new FieldName("humidity"), 60d + 2 * i);
+			parameters.put(new FieldName("windy"), (i % 2 == 0 ? "true" : "false"));
+			parameters.put(new FieldName("outlook"), "sunny");
+
+			IPMMLResult expected = (evaluator.getEvaluator()).evaluate(parameters);
+			IPMMLResult result = evaluator.evaluate(parameters);
+
+			// The tree result of the interpreter is never replaced with a plain result
+			assert result.getClass() == expected.getClass();
+			assert (result.getValue(target)).getClass() == (expected.getValue(target)).getClass();
+			assert !evaluator.isCompiled();
+		}
+	}
+
+	private static void evaluate(TieredEvaluator evaluator, int i) throws Exception {
+		Map<FieldName, Object> parameters = new HashMap<FieldName, Object>();
+		parameters.put(new FieldName("age"), 20 + i);
+		parameters.put(new FieldName("salary"), 500 * (i % 3 + 1));
+		parameters.put(new FieldName("car_location"), (i % 2 == 0 ? "street" : "carpark"));
+
+		FieldName target = new FieldName("number_of_claims");
+
+		IPMMLResult expected = (evaluator.getEvaluator()).evaluate(parameters);
+		IPMMLResult result = evaluator.evaluate(parameters);
+
+		Double expectedValue = (Double) expected.getValue(target);
+		Double value = (Double) result.getValue(target);
+
+		assert Math.abs(expectedValue - value) < 1E-6;
+	}
+
+	private static TieredEvaluator createEvaluator(String returnValue) throws Exception {
+		return createEvaluator("/regression.xml",
+				ModelTemplates.getRegressionTemplate(returnValue));
+	}
+
+	private static TieredEvaluator createEvaluator(String resource, String template)
+			throws Exception {
+		PMML pmmlDoc = IOUtil.unmarshal(TieredEvaluatorTest.class.getResourceAsStream(resource));
+
+		String className = "TieredModel" + System.nanoTime();
+
+		TieredEvaluator evaluator = new TieredEvaluator(pmmlDoc, className,
+				"com.turn.tpmml.itest", template, new TranslationContext() {
+					// numeric variables are represented with Double class
+					public String getMissingValue(OpType variableType) {
+						if (variableType == OpType.CONTINUOUS) {
+							return "null";
+						}
+
+						return super.getMissingValue(variableType);
+					}
+
+					public String getModelResultTrackingVariable() {
+						return "resultExplanation";
+					}
+				});
+		evaluator.setThreshold(4);
+		evaluator.setSampleSize(8);
+		// compile in the calling thread
+		evaluator.setExecutor(new Executor() {
+			public void execute(Runnable command) {
+				command.run();
+			}
+		});
+
+		return evaluator;
+	}
+
+	private static final String GOLF_TEMPLATE = "" + "package com.turn.tpmml.itest;\n" +
+			"import java.util.Map;\n" +
+			"import com.turn.tpmml.translator.TranslatedModel;\n" + "" +
+			"#foreach($import in $imports) \n" + "${import}\n" + "#end\n" + "\n" +
+			"#foreach($constant in $constants) \n" + "static private final ${constant}\n" +
+			"#end" + "\n" + "public class ${className} implements TranslatedModel {\n" + "\n" +
+			"	public Object execute(Map<String, Object> nameToValue) {\n" +
+			"		String whatIdo = null;\n" + "		String resultExplanation = null;\n" +
+			"		Double temperature = (Double)nameToValue.get(\"temperature\");\n" +
+			"		Double humidity = (Double)nameToValue.get(\"humidity\");\n" +
+			"		String windy = (String)nameToValue.get(\"windy\");\n" +
+			"		String outlook = (String)nameToValue.get(\"outlook\");\n" + "		\n" +
+			"		${modelCode}\n" + "		\n" + "		return whatIdo;\n" + "	}\n" + "}\n";
+}
@@ -0,0 +1,102 @@
+package com.turn.tpmml.evaluator.vector;
+
+import com.turn.tpmml.evaluator.KernelUtil.Kernel;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A kernel that is based on the JDK Vector API. The values are processed in blocks of the
+ * preferred vector width of the platform (eg. eight values on AVX-512), and the remainder is
+ * processed by scalar code.
+ *
+ * Dot products are accumulated lane by lane with fused multiply-add, so the results may differ
+ * from those of the scalar kernel in the last bits.
+ *
+ * The kernel is registered as a service provider, and is used by
+ * {@link com.turn.tpmml.evaluator.KernelUtil} if the JVM is started with
+ * <code>--add-modules jdk.incubator.vector</code>.
+ */
+public class VectorKernel implements Kernel {
+
+	public double dot(double initial, double[] x, int xOffset, double[] y, int yOffset,
+			int length) {
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+
+		int bound = SPECIES.loopBound(length);
+
+		int i = 0;
+
+		for (; i < bound; i += SPECIES.length()) {
+			DoubleVector xVector = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+			DoubleVector yVector = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+
+			sum = xVector.fma(yVector, sum);
+		}
+
+		double result = initial + sum.reduceLanes(VectorOperators.ADD);
+
+		for (; i < length; i++) {
+			result += x[xOffset + i] * y[yOffset + i];
+		}
+
+		return result;
+	}
+
+	public void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length) {
+		DoubleVector aVector = DoubleVector.broadcast(SPECIES, a);
+
+		int bound = SPECIES.loopBound(length);
+
+		int i = 0;
+
+		for (; i < bound; i += SPECIES.length()) {
+			DoubleVector xVector = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+			DoubleVector yVector = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+
+			(xVector.fma(aVector, yVector)).intoArray(y, yOffset + i);
+		}
+
+		for (; i < length; i++) {
+			y[yOffset + i] += x[xOffset + i] * a;
+		}
+	}
+
+	public void exp(double[] values, int from, int to) {
+		int bound = from + SPECIES.loopBound(to - from);
+
+		int i = from;
+
+		for (; i < bound; i += SPECIES.length()) {
+			DoubleVector vector = DoubleVector.fromArray(SPECIES, values, i);
+
+			(vector.lanewise(VectorOperators.EXP)).intoArray(values, i);
+		}
+
+		for (; i < to; i++) {
+			values[i] = Math.exp(values[i]);
+		}
+	}
+
+	public void logistic(double[] values, int from, int to) {
+		DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+
+		int bound = from + SPECIES.loopBound(to - from);
+
+		int i = from;
+
+		for (; i < bound; i += SPECIES.length()) {
+			DoubleVector vector = DoubleVector.fromArray(SPECIES, values, i);
+
+			(one.div(((vector.neg()).lanewise(VectorOperators.EXP)).add(one)))
+					.intoArray(values, i);
+		}
+
+		for (; i < to; i++) {
+			values[i] = 1.0 / (1.0 + Math.exp(-values[i]));
+		}
+	}
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+}
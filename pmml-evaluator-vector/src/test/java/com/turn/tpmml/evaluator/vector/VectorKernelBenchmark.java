@@ -0,0 +1,24 @@
+package com.turn.tpmml.evaluator.vector;
+
+import com.turn.tpmml.evaluator.KernelBenchmark;
+import com.turn.tpmml.evaluator.KernelUtil.ScalarKernel;
+
+/**
+ * Compares the scalar kernel with the vector kernel:
+ *
+ * <pre>
+ * java --add-modules jdk.incubator.vector -cp ...
+ *     com.turn.tpmml.evaluator.vector.VectorKernelBenchmark
+ * </pre>
+ *
+ * @see KernelBenchmark
+ */
+public class VectorKernelBenchmark {
+
+	private VectorKernelBenchmark() {
+	}
+
+	public static void main(String... args) {
+		KernelBenchmark.compare(new ScalarKernel(), new VectorKernel());
+	}
+}
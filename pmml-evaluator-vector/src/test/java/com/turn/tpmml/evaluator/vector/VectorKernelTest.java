@@ -0,0 +1,79 @@
+package com.turn.tpmml.evaluator.vector;
+
+import com.turn.tpmml.evaluator.KernelUtil;
+import com.turn.tpmml.evaluator.KernelUtil.Kernel;
+import com.turn.tpmml.evaluator.KernelUtil.ScalarKernel;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VectorKernelTest {
+
+	@Test
+	public void loadKernel() {
+		assertTrue(KernelUtil.getKernel() instanceof VectorKernel);
+	}
+
+	@Test
+	public void compareWithScalarKernel() {
+		Kernel scalarKernel = new ScalarKernel();
+		Kernel vectorKernel = new VectorKernel();
+
+		Random random = new Random(0);
+
+		// Lengths that are shorter than, equal to and longer than the vector width
+		for (int length = 0; length < 40; length++) {
+			double[] x = randomValues(random, length + 3);
+			double[] y = randomValues(random, length + 5);
+
+			assertEquals(scalarKernel.dot(1d, x, 3, y, 5, length),
+					vectorKernel.dot(1d, x, 3, y, 5, length), 1E-12);
+
+			double[] scalarY = y.clone();
+			double[] vectorY = y.clone();
+
+			scalarKernel.axpy(0.5d, x, 3, scalarY, 5, length);
+			vectorKernel.axpy(0.5d, x, 3, vectorY, 5, length);
+
+			assertValuesEquals(scalarY, vectorY);
+
+			double[] scalarValues = y.clone();
+			double[] vectorValues = y.clone();
+
+			scalarKernel.exp(scalarValues, 5, length + 5);
+			vectorKernel.exp(vectorValues, 5, length + 5);
+
+			assertValuesEquals(scalarValues, vectorValues);
+
+			scalarValues = y.clone();
+			vectorValues = y.clone();
+
+			scalarKernel.logistic(scalarValues, 2, length + 2);
+			vectorKernel.logistic(vectorValues, 2, length + 2);
+
+			assertValuesEquals(scalarValues, vectorValues);
+		}
+	}
+
+	private static double[] randomValues(Random random, int length) {
+		double[] result = new double[length];
+
+		for (int i = 0; i < length; i++) {
+			result[i] = random.nextGaussian() * 10d;
+		}
+
+		return result;
+	}
+
+	private static void assertValuesEquals(double[] expected, double[] actual) {
+		assertEquals(expected.length, actual.length);
+
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i], Math.abs(expected[i]) * 1E-12);
+		}
+	}
+}
@@ -4,11 +4,15 @@
 package com.turn.tpmml.evaluator;
 
 import com.turn.tpmml.Array;
-import com.turn.tpmml.DataType;
 import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ArrayUtil {
 
@@ -16,32 +20,68 @@ public class ArrayUtil {
 	}
 
 	public static Boolean isIn(Array array, Object value) throws EvaluationException {
-		List<String> values = getContent(array);
+		ValueSet values = getValueSet(array);
 
-		validateDataType(value);
-
-		boolean result = values.contains(ParameterUtil.toString(value));
+		boolean result = values.contains(value);
 
 		return Boolean.valueOf(result);
 	}
 
 	public static Boolean isNotIn(Array array, Object value) throws EvaluationException {
-		List<String> values = getContent(array);
-
-		validateDataType(value);
+		ValueSet values = getValueSet(array);
 
-		boolean result = !values.contains(ParameterUtil.toString(value));
+		boolean result = !values.contains(value);
 
 		return Boolean.valueOf(result);
 	}
 
+	/**
+	 * Gets the value set of an array that is evaluated without an {@link EvaluationPlan}. The
+	 * value set is created once, and is cached for as long as the array is reachable. The array
+	 * must not be modified afterwards.
+	 *
+	 * @see EvaluationPlan#getValueSet(Array)
+	 */
+	static ValueSet getValueSet(Array array) throws EvaluationException {
+		expungeStaleValueSets();
+
+		ValueSet result = ArrayUtil.valueSets.get(new ArrayReference(array, null));
+
+		if (result == null) {
+			result = createValueSet(array);
+
+			ArrayUtil.valueSets.put(new ArrayReference(array, ArrayUtil.queue), result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @see EvaluationPlan#getValueSet(Array)
+	 */
+	static ValueSet createValueSet(Array array) throws EvaluationException {
+		return ValueSet.create(array.getType(), getContent(array));
+	}
+
+	private static void expungeStaleValueSets() {
+		Reference<? extends Array> reference;
+
+		while ((reference = ArrayUtil.queue.poll()) != null) {
+			ArrayUtil.valueSets.remove(reference);
+		}
+	}
+
+	/**
+	 * The content of the array is not written back to the array, because the array may be
+	 * shared between threads.
+	 * 
+	 * @see EvaluationPlan#getValueSet(Array)
+	 */
 	public static List<String> getContent(Array array) throws EvaluationException {
 		List<String> values = array.getContent();
 
 		if (values == null) {
 			values = tokenize(array);
-
-			array.setContent(values);
 		}
 
 		return values;
@@ -150,17 +190,44 @@ public class ArrayUtil {
 		return result;
 	}
 
-	private static void validateDataType(Object value) throws EvaluationException {
-		DataType dataType = ParameterUtil.getDataType(value);
+	private static final Map<ArrayReference, ValueSet> valueSets =
+			new ConcurrentHashMap<ArrayReference, ValueSet>();
 
-		switch (dataType) {
-		case STRING:
-		case INTEGER:
-			break;
-		case FLOAT:
-		case DOUBLE:
-		default:
-			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION, dataType.name());
+	private static final ReferenceQueue<Array> queue = new ReferenceQueue<Array>();
+
+	/**
+	 * Compares arrays by identity. The deep {@link Array#equals(Object)} and
+	 * {@link Array#hashCode()} would cost as much as the tokenization.
+	 */
+	private static class ArrayReference extends WeakReference<Array> {
+
+		private int hashCode = 0;
+
+		private ArrayReference(Array array, ReferenceQueue<Array> queue) {
+			super(array, queue);
+
+			this.hashCode = System.identityHashCode(array);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+
+			if (object == this) {
+				return true;
+			}
+
+			if (object instanceof ArrayReference) {
+				Array array = get();
+
+				return (array != null && array == ((ArrayReference) object).get());
+			}
+
+			return false;
 		}
 	}
 }
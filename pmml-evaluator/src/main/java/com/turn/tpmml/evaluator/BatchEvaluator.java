@@ -0,0 +1,28 @@
+package com.turn.tpmml.evaluator;
+
+/**
+ * A {@link RowEvaluator} that evaluates batches of records in columnar layout.
+ *
+ * All the evaluators that are created by {@link ModelEvaluatorFactory} implement this
+ * interface.
+ *
+ * @see ColumnBatch
+ */
+public interface BatchEvaluator extends RowEvaluator {
+
+	/**
+	 * Evaluates a batch of records. The values of predicted fields and output fields are written
+	 * into the preallocated columns of the output batch. Fields that do not have an output column
+	 * are not collected.
+	 * 
+	 * @param in Columns of {@link #getActiveFields() active field} values.
+	 * @param out Columns of {@link #getPredictedFields() predicted field} and
+	 *            {@link #getOutputFields() output field} values.
+	 * 
+	 * @throws EvaluationException If the batches do not match the {@link #getRowSchema() row
+	 *             schema}, or if the evaluation of some record fails
+	 * 
+	 * @see ColumnBatch
+	 */
+	void evaluateBatch(ColumnBatch in, ColumnBatch out) throws EvaluationException;
+}
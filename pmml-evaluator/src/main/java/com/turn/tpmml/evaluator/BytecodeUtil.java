@@ -0,0 +1,616 @@
+package com.turn.tpmml.evaluator;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Translates the primitive parts of compiled functions to JVM bytecode.
+ *
+ * A subtree of double constants, double derived fields and built-in arithmetic, math and
+ * aggregate functions becomes the body of a single method, which works on the operand stack
+ * instead of calling one node per operation. Other subtrees are called back from the generated
+ * code. The operations are performed in the same order as by the nodes, so the results are
+ * identical to the last bit. Double derived fields are read from the primitive double slots of
+ * the evaluation context, so their values are unboxed at most once per evaluation.
+ *
+ * The class files are written directly, so neither <code>javac</code> nor a bytecode library is
+ * needed at runtime. Every evaluation plan defines its classes with a class loader of its own,
+ * so that they are unloaded together with the plan.
+ *
+ * The translation is disabled by default. It can be enabled with {@link #setEnabled(boolean)},
+ * or by setting the system property {@link #ENABLED_PROPERTY} to <code>true</code>.
+ *
+ * @see CompiledApply
+ */
+public class BytecodeUtil {
+
+	private BytecodeUtil() {
+	}
+
+	public static boolean isEnabled() {
+		return BytecodeUtil.enabled;
+	}
+
+	/**
+	 * Changes the evaluation of models whose evaluation plan is built afterwards.
+	 */
+	public static void setEnabled(boolean enabled) {
+		BytecodeUtil.enabled = enabled;
+	}
+
+	/**
+	 * @return A node that evaluates the generated class, or the node itself if the class cannot
+	 *         be generated or loaded.
+	 */
+	static CompiledApply.DoubleNode generate(CompiledApply.DoubleNode node,
+			ExpressionClassLoader classLoader) {
+		Generator generator = new Generator(classLoader);
+
+		try {
+			node.emit(generator);
+
+			return new CompiledApply.GeneratedNode(generator.define());
+		} catch (IllegalStateException ise) {
+			logger.debug("Failed to generate " + generator.getName() + ", using the node", ise);
+		} catch (IllegalArgumentException iae) {
+			logger.debug("Failed to generate " + generator.getName() + ", using the node", iae);
+		} catch (LinkageError le) {
+			// The generated class was rejected by the verifier
+			logger.debug("Failed to define " + generator.getName() + ", using the node", le);
+		}
+
+		return node;
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(BytecodeUtil.class);
+
+	private static volatile boolean enabled = Boolean.getBoolean(BytecodeUtil.ENABLED_PROPERTY);
+
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	public static final String ENABLED_PROPERTY = "com.turn.tpmml.evaluator.bytecode";
+
+	/**
+	 * Defines the generated classes of one evaluation plan.
+	 */
+	static class ExpressionClassLoader extends ClassLoader {
+
+		ExpressionClassLoader() {
+			super(ExpressionClassLoader.class.getClassLoader());
+		}
+
+		Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	/**
+	 * Writes a subclass of {@link GeneratedExpression}, whose only method evaluates an expression
+	 * on the operand stack.
+	 */
+	static class Generator {
+
+		private ExpressionClassLoader classLoader = null;
+
+		private String name = null;
+
+		private ByteArrayOutputStream constantPool = new ByteArrayOutputStream();
+
+		private Map<String, Integer> constants = new HashMap<String, Integer>();
+
+		private int constantCount = 1;
+
+		private ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+		private int stack = 0;
+
+		private int maxStack = 0;
+
+		private List<GeneratedExpression> delegates = new ArrayList<GeneratedExpression>();
+
+		Generator(ExpressionClassLoader classLoader) {
+			this.classLoader = classLoader;
+			this.name = "com/turn/tpmml/evaluator/generated/Expression" +
+					BytecodeUtil.counter.incrementAndGet();
+		}
+
+		String getName() {
+			return this.name.replace('/', '.');
+		}
+
+		ExpressionClassLoader getClassLoader() {
+			return this.classLoader;
+		}
+
+		void emitConstant(double value) {
+
+			if (Double.doubleToRawLongBits(value) == 0L) {
+				writeByte(this.code, DCONST_0);
+			} else
+
+			if (value == 1d) {
+				writeByte(this.code, DCONST_1);
+			} else {
+				writeByte(this.code, LDC2_W);
+				writeShort(this.code, doubleConstant(value));
+			}
+
+			adjust(2);
+		}
+
+		/**
+		 * Loads the value of a double derived field.
+		 *
+		 * @see CompiledApply.DoubleFieldNode
+		 * @see ExpressionUtil#evaluateDouble(int, EvaluationContext)
+		 */
+		void emitField(int slot) {
+			emitInt(slot);
+
+			writeByte(this.code, ALOAD_1);
+			adjust(1);
+
+			emitInvoke(INVOKESTATIC, EXPRESSION_UTIL, "evaluateDouble",
+					"(I" + EVALUATION_CONTEXT + ")D", 0);
+		}
+
+		/**
+		 * Calls back an expression that is not translated.
+		 */
+		void emitDelegate(GeneratedExpression expression) {
+			int index = this.delegates.size();
+
+			this.delegates.add(expression);
+
+			writeByte(this.code, ALOAD_0);
+			adjust(1);
+
+			writeByte(this.code, GETFIELD);
+			writeShort(this.code, memberConstant(FIELDREF, this.name, "delegates", DELEGATES));
+
+			emitInt(index);
+
+			writeByte(this.code, AALOAD);
+			adjust(-1);
+
+			writeByte(this.code, ALOAD_1);
+			adjust(1);
+
+			emitInvoke(INVOKEVIRTUAL, GENERATED_EXPRESSION, "evaluateDouble",
+					"(" + EVALUATION_CONTEXT + ")D", 0);
+		}
+
+		/**
+		 * Combines the two values on top of the stack.
+		 */
+		void emitArithmetic(String function) {
+			writeByte(this.code, (ARITHMETIC_OPCODES.get(function)).intValue());
+			adjust(-2);
+		}
+
+		/**
+		 * Replaces the value on top of the stack.
+		 */
+		void emitMath(String function) {
+
+			if ("round".equals(function)) {
+				emitInvoke(INVOKESTATIC, "java/lang/Math", "round", "(D)J", 0);
+
+				writeByte(this.code, L2D);
+			} else {
+				emitInvoke(INVOKESTATIC, "java/lang/Math", MATH_METHODS.get(function), "(D)D", 0);
+			}
+		}
+
+		/**
+		 * Pushes the initial value of the aggregate.
+		 */
+		void emitAggregateStart(String function) {
+
+			if ("product".equals(function)) {
+				emitConstant(1d);
+			} else
+
+			if ("min".equals(function) || "max".equals(function)) {
+				emitConstant(Double.NaN);
+			} else {
+				emitConstant(0d);
+			}
+		}
+
+		/**
+		 * Combines the aggregate and the value on top of the stack.
+		 *
+		 * @param count The number of values so far, including this one.
+		 */
+		void emitAggregateStep(String function, int count) {
+
+			if ("sum".equals(function)) {
+				writeByte(this.code, DADD);
+				adjust(-2);
+			} else
+
+			if ("product".equals(function)) {
+				writeByte(this.code, DMUL);
+				adjust(-2);
+			} else
+
+			if ("avg".equals(function)) {
+				emitInt(count);
+				emitInvoke(INVOKESTATIC, GENERATED_EXPRESSION, "mean", "(DDI)D", -3);
+			} else {
+				emitInvoke(INVOKESTATIC, GENERATED_EXPRESSION, function, "(DD)D", -2);
+			}
+		}
+
+		/**
+		 * Writes and loads the class, and creates an instance of it.
+		 */
+		/**
+		 * @throws IllegalStateException If the class file exceeds the limits of the format, or
+		 *         the class cannot be instantiated.
+		 * @throws LinkageError If the class is rejected by the verifier.
+		 */
+		GeneratedExpression define() {
+			writeByte(this.code, DRETURN);
+
+			int thisClass = classConstant(this.name);
+			int superClass = classConstant(GENERATED_EXPRESSION);
+
+			int codeName = utf8Constant("Code");
+			int delegatesName = utf8Constant("delegates");
+			int delegatesDescriptor = utf8Constant(DELEGATES);
+			int delegatesField = memberConstant(FIELDREF, this.name, "delegates", DELEGATES);
+
+			int initName = utf8Constant("<init>");
+			int initDescriptor = utf8Constant("(" + DELEGATES + ")V");
+			int superInit = memberConstant(METHODREF, GENERATED_EXPRESSION, "<init>", "()V");
+
+			int evaluateName = utf8Constant("evaluateDouble");
+			int evaluateDescriptor = utf8Constant("(" + EVALUATION_CONTEXT + ")D");
+
+			byte[] code = this.code.toByteArray();
+
+			if (this.constantCount > 0xffff || code.length > 0xffff) {
+				throw new IllegalStateException("Expression is too large");
+			}
+
+			ByteArrayOutputStream initCode = new ByteArrayOutputStream();
+			writeByte(initCode, ALOAD_0);
+			writeByte(initCode, INVOKESPECIAL);
+			writeShort(initCode, superInit);
+			writeByte(initCode, ALOAD_0);
+			writeByte(initCode, ALOAD_1);
+			writeByte(initCode, PUTFIELD);
+			writeShort(initCode, delegatesField);
+			writeByte(initCode, RETURN);
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			writeInt(out, 0xcafebabe);
+			writeShort(out, 0);
+			writeShort(out, CLASS_VERSION);
+
+			writeShort(out, this.constantCount);
+			byte[] constantPool = this.constantPool.toByteArray();
+			out.write(constantPool, 0, constantPool.length);
+
+			writeShort(out, ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			writeShort(out, thisClass);
+			writeShort(out, superClass);
+
+			// Interfaces
+			writeShort(out, 0);
+
+			// Fields
+			writeShort(out, 1);
+			writeShort(out, ACC_PRIVATE | ACC_FINAL);
+			writeShort(out, delegatesName);
+			writeShort(out, delegatesDescriptor);
+			writeShort(out, 0);
+
+			// Methods
+			writeShort(out, 2);
+			writeMethod(out, initName, initDescriptor, codeName, 2, initCode.toByteArray());
+			writeMethod(out, evaluateName, evaluateDescriptor, codeName, this.maxStack, code);
+
+			// Attributes
+			writeShort(out, 0);
+
+			byte[] bytes = out.toByteArray();
+
+			Class<?> clazz = this.classLoader.define(getName(), bytes);
+
+			GeneratedExpression[] delegates =
+					this.delegates.toArray(new GeneratedExpression[this.delegates.size()]);
+
+			try {
+				return (GeneratedExpression) (clazz.getConstructor(GeneratedExpression[].class))
+						.newInstance((Object) delegates);
+			} catch (NoSuchMethodException nsme) {
+				throw new IllegalStateException(nsme);
+			} catch (InstantiationException ie) {
+				throw new IllegalStateException(ie);
+			} catch (IllegalAccessException iae) {
+				throw new IllegalStateException(iae);
+			} catch (InvocationTargetException ite) {
+				throw new IllegalStateException(ite);
+			}
+		}
+
+		private void emitInt(int value) {
+
+			if (value >= -1 && value <= 5) {
+				writeByte(this.code, ICONST_0 + value);
+			} else
+
+			if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				writeByte(this.code, BIPUSH);
+				writeByte(this.code, value);
+			} else
+
+			if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+				writeByte(this.code, SIPUSH);
+				writeShort(this.code, value);
+			} else {
+				writeByte(this.code, LDC_W);
+				writeShort(this.code, integerConstant(value));
+			}
+
+			adjust(1);
+		}
+
+		/**
+		 * @param delta The change of the stack size, in words.
+		 */
+		private void emitInvoke(int opcode, String owner, String name, String descriptor,
+				int delta) {
+			writeByte(this.code, opcode);
+			writeShort(this.code, memberConstant(METHODREF, owner, name, descriptor));
+
+			adjust(delta);
+		}
+
+		private void adjust(int delta) {
+			this.stack += delta;
+
+			this.maxStack = Math.max(this.maxStack, this.stack);
+		}
+
+		private int utf8Constant(String value) {
+			String key = "Utf8 " + value;
+
+			Integer index = this.constants.get(key);
+			if (index == null) {
+				writeByte(this.constantPool, CONSTANT_UTF8);
+				writeShort(this.constantPool, value.length());
+
+				for (int i = 0; i < value.length(); i++) {
+					char c = value.charAt(i);
+
+					// Names and descriptors are plain ASCII
+					if (c == 0 || c > 0x7f) {
+						throw new IllegalArgumentException(value);
+					}
+
+					writeByte(this.constantPool, c);
+				}
+
+				index = addConstant(key, 1);
+			}
+
+			return index.intValue();
+		}
+
+		private int classConstant(String name) {
+			String key = "Class " + name;
+
+			Integer index = this.constants.get(key);
+			if (index == null) {
+				int nameIndex = utf8Constant(name);
+
+				writeByte(this.constantPool, CONSTANT_CLASS);
+				writeShort(this.constantPool, nameIndex);
+
+				index = addConstant(key, 1);
+			}
+
+			return index.intValue();
+		}
+
+		private int memberConstant(int tag, String owner, String name, String descriptor) {
+			String key = tag + " " + owner + " " + name + " " + descriptor;
+
+			Integer index = this.constants.get(key);
+			if (index == null) {
+				int ownerIndex = classConstant(owner);
+				int nameIndex = utf8Constant(name);
+				int descriptorIndex = utf8Constant(descriptor);
+
+				String nameAndTypeKey = "NameAndType " + name + " " + descriptor;
+
+				Integer nameAndTypeIndex = this.constants.get(nameAndTypeKey);
+				if (nameAndTypeIndex == null) {
+					writeByte(this.constantPool, CONSTANT_NAME_AND_TYPE);
+					writeShort(this.constantPool, nameIndex);
+					writeShort(this.constantPool, descriptorIndex);
+
+					nameAndTypeIndex = addConstant(nameAndTypeKey, 1);
+				}
+
+				writeByte(this.constantPool, tag);
+				writeShort(this.constantPool, ownerIndex);
+				writeShort(this.constantPool, nameAndTypeIndex.intValue());
+
+				index = addConstant(key, 1);
+			}
+
+			return index.intValue();
+		}
+
+		private int integerConstant(int value) {
+			String key = "Integer " + value;
+
+			Integer index = this.constants.get(key);
+			if (index == null) {
+				writeByte(this.constantPool, CONSTANT_INTEGER);
+				writeInt(this.constantPool, value);
+
+				index = addConstant(key, 1);
+			}
+
+			return index.intValue();
+		}
+
+		private int doubleConstant(double value) {
+			long bits = Double.doubleToRawLongBits(value);
+
+			String key = "Double " + bits;
+
+			Integer index = this.constants.get(key);
+			if (index == null) {
+				writeByte(this.constantPool, CONSTANT_DOUBLE);
+				writeInt(this.constantPool, (int) (bits >>> 32));
+				writeInt(this.constantPool, (int) bits);
+
+				// Double constants take up two entries
+				index = addConstant(key, 2);
+			}
+
+			return index.intValue();
+		}
+
+		private Integer addConstant(String key, int size) {
+			Integer index = Integer.valueOf(this.constantCount);
+
+			this.constants.put(key, index);
+			this.constantCount += size;
+
+			return index;
+		}
+
+		private static void writeMethod(ByteArrayOutputStream out, int name, int descriptor,
+				int codeName, int maxStack, byte[] code) {
+			writeShort(out, ACC_PUBLIC);
+			writeShort(out, name);
+			writeShort(out, descriptor);
+
+			// The Code attribute
+			writeShort(out, 1);
+			writeShort(out, codeName);
+			writeInt(out, 12 + code.length);
+			writeShort(out, maxStack);
+			writeShort(out, 2);
+			writeInt(out, code.length);
+			out.write(code, 0, code.length);
+
+			// Exception table and attributes
+			writeShort(out, 0);
+			writeShort(out, 0);
+		}
+
+		private static void writeByte(ByteArrayOutputStream out, int value) {
+			out.write(value);
+		}
+
+		private static void writeShort(ByteArrayOutputStream out, int value) {
+			out.write(value >>> 8);
+			out.write(value);
+		}
+
+		private static void writeInt(ByteArrayOutputStream out, int value) {
+			writeShort(out, value >>> 16);
+			writeShort(out, value);
+		}
+
+		static boolean isArithmetic(String function) {
+			return ARITHMETIC_OPCODES.containsKey(function);
+		}
+
+		static boolean isMath(String function) {
+			return MATH_METHODS.containsKey(function) || "round".equals(function);
+		}
+
+		static boolean isAggregate(String function) {
+			return "min".equals(function) || "max".equals(function) || "sum".equals(function) ||
+					"avg".equals(function) || "product".equals(function);
+		}
+
+		private static final Map<String, Integer> ARITHMETIC_OPCODES =
+				new HashMap<String, Integer>();
+
+		private static final Map<String, String> MATH_METHODS = new HashMap<String, String>();
+
+		static {
+			ARITHMETIC_OPCODES.put("+", Integer.valueOf(0x63));
+			ARITHMETIC_OPCODES.put("-", Integer.valueOf(0x67));
+			ARITHMETIC_OPCODES.put("*", Integer.valueOf(0x6b));
+			ARITHMETIC_OPCODES.put("/", Integer.valueOf(0x6f));
+
+			MATH_METHODS.put("log10", "log10");
+			MATH_METHODS.put("ln", "log");
+			MATH_METHODS.put("exp", "exp");
+			MATH_METHODS.put("sqrt", "sqrt");
+			MATH_METHODS.put("abs", "abs");
+			MATH_METHODS.put("floor", "floor");
+			MATH_METHODS.put("ceil", "ceil");
+		}
+
+		private static final String EVALUATION_CONTEXT =
+				"Lcom/turn/tpmml/evaluator/EvaluationContext;";
+
+		private static final String EXPRESSION_UTIL = "com/turn/tpmml/evaluator/ExpressionUtil";
+
+		private static final String GENERATED_EXPRESSION =
+				"com/turn/tpmml/evaluator/GeneratedExpression";
+
+		private static final String DELEGATES = "[L" + GENERATED_EXPRESSION + ";";
+
+		/**
+		 * Java 5. Methods without branches do not need stack map frames in any version, but
+		 * older versions keep the verifier simple.
+		 */
+		private static final int CLASS_VERSION = 49;
+
+		private static final int ACC_PUBLIC = 0x0001;
+		private static final int ACC_PRIVATE = 0x0002;
+		private static final int ACC_FINAL = 0x0010;
+		private static final int ACC_SUPER = 0x0020;
+
+		private static final int CONSTANT_UTF8 = 1;
+		private static final int CONSTANT_INTEGER = 3;
+		private static final int CONSTANT_DOUBLE = 6;
+		private static final int CONSTANT_CLASS = 7;
+		private static final int FIELDREF = 9;
+		private static final int METHODREF = 10;
+		private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+		private static final int ICONST_0 = 0x03;
+		private static final int DCONST_0 = 0x0e;
+		private static final int DCONST_1 = 0x0f;
+		private static final int BIPUSH = 0x10;
+		private static final int SIPUSH = 0x11;
+		private static final int LDC_W = 0x13;
+		private static final int LDC2_W = 0x14;
+		private static final int ALOAD_0 = 0x2a;
+		private static final int ALOAD_1 = 0x2b;
+		private static final int AALOAD = 0x32;
+		private static final int DADD = 0x63;
+		private static final int DMUL = 0x6b;
+		private static final int L2D = 0x8a;
+		private static final int DRETURN = 0xaf;
+		private static final int RETURN = 0xb1;
+		private static final int GETFIELD = 0xb4;
+		private static final int PUTFIELD = 0xb5;
+		private static final int INVOKEVIRTUAL = 0xb6;
+		private static final int INVOKESPECIAL = 0xb7;
+		private static final int INVOKESTATIC = 0xb8;
+	}
+}
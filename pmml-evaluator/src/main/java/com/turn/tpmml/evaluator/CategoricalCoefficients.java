@@ -0,0 +1,127 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.CategoricalPredictor;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link CategoricalPredictor categorical predictors} of a single field, in one or more
+ * regression tables.
+ *
+ * Category values are mapped to the sum of their coefficients in every table, so that the field
+ * costs a single hash lookup rather than one comparison per category. A category matches if it
+ * equals the field value in the runtime data type of the latter (see
+ * {@link ParameterUtil#equals(Object, String)}), so a separate map is built for every runtime data
+ * type that is encountered. If some category value cannot be converted to the required data type,
+ * the categories are compared one by one instead, so that the error is reported the same way.
+ *
+ * @see CompiledRegressionTables
+ */
+class CategoricalCoefficients {
+
+	private FieldName name = null;
+
+	private int slot = -1;
+
+	private int size = 0;
+
+	private List<String> values = new ArrayList<String>();
+
+	private List<Integer> tables = new ArrayList<Integer>();
+
+	private List<Double> coefficients = new ArrayList<Double>();
+
+	private Map<DataType, Map<Object, double[]>> indexes =
+			new ConcurrentHashMap<DataType, Map<Object, double[]>>();
+
+	/**
+	 * @param size The number of regression tables.
+	 */
+	CategoricalCoefficients(FieldName name, int slot, int size) {
+		this.name = name;
+		this.slot = slot;
+		this.size = size;
+	}
+
+	FieldName getName() {
+		return this.name;
+	}
+
+	int getSlot() {
+		return this.slot;
+	}
+
+	void add(int table, CategoricalPredictor categoricalPredictor) {
+		this.values.add(categoricalPredictor.getValue());
+		this.tables.add(Integer.valueOf(table));
+		this.coefficients.add(categoricalPredictor.getCoefficient());
+	}
+
+	/**
+	 * @return The sums of the coefficients of the matching categories by table, or
+	 *         <code>null</code> if no category matches. The array must not be modified.
+	 */
+	double[] getCoefficients(Object value) throws EvaluationException {
+		DataType dataType = ParameterUtil.getDataType(value);
+
+		Map<Object, double[]> index = this.indexes.get(dataType);
+		if (index == null) {
+			index = createIndex(dataType);
+
+			this.indexes.put(dataType, index);
+		}
+
+		if (index != UNINDEXABLE) {
+			return index.get(ParameterUtil.cast(dataType, value));
+		}
+
+		double[] result = null;
+
+		for (int i = 0; i < this.values.size(); i++) {
+
+			if (ParameterUtil.equals(value, this.values.get(i))) {
+
+				if (result == null) {
+					result = new double[this.size];
+				}
+
+				result[(this.tables.get(i)).intValue()] += (this.coefficients.get(i)).doubleValue();
+			}
+		}
+
+		return result;
+	}
+
+	private Map<Object, double[]> createIndex(DataType dataType) throws EvaluationException {
+		Map<Object, double[]> result = new HashMap<Object, double[]>(2 * this.values.size());
+
+		for (int i = 0; i < this.values.size(); i++) {
+			Object key;
+
+			try {
+				key = ParameterUtil.cast(dataType, this.values.get(i));
+			} catch (NumberFormatException nfe) {
+				return UNINDEXABLE;
+			}
+
+			double[] sums = result.get(key);
+			if (sums == null) {
+				sums = new double[this.size];
+
+				result.put(key, sums);
+			}
+
+			sums[(this.tables.get(i)).intValue()] += (this.coefficients.get(i)).doubleValue();
+		}
+
+		return result;
+	}
+
+	private static final Map<Object, double[]> UNINDEXABLE = new HashMap<Object, double[]>();
+}
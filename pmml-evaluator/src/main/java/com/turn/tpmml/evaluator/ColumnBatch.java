@@ -0,0 +1,95 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A column-major block of records.
+ *
+ * Every column is either a <code>double[]</code> array or an <code>Object[]</code> array of at
+ * least {@link #getSize()} elements. Similarly to {@link RowSchema}, missing values are
+ * represented by {@link Double#NaN} and <code>null</code>, respectively.
+ *
+ * An input batch holds one column per {@link Evaluator#getActiveFields() active field}.
+ * Continuous fields must be passed as <code>double[]</code> columns, and all other fields as
+ * <code>Object[]</code> columns. An output batch holds preallocated columns for the
+ * {@link Evaluator#getPredictedFields() predicted fields} and {@link Evaluator#getOutputFields()
+ * output fields} that the caller is interested in. Numeric results may be collected into either
+ * kind of column.
+ *
+ * @see BatchEvaluator#evaluateBatch(ColumnBatch, ColumnBatch)
+ */
+public class ColumnBatch {
+
+	private int size = 0;
+
+	private Map<FieldName, Object> columns = new LinkedHashMap<FieldName, Object>();
+
+	public ColumnBatch(int size) {
+
+		if (size < 0) {
+			throw new IllegalArgumentException();
+		}
+
+		this.size = size;
+	}
+
+	/**
+	 * @return The number of records.
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
+	public List<FieldName> getFields() {
+		return new ArrayList<FieldName>(this.columns.keySet());
+	}
+
+	public boolean hasColumn(FieldName name) {
+		return this.columns.containsKey(name);
+	}
+
+	public ColumnBatch addColumn(FieldName name, double[] values) {
+		return putColumn(name, values, values.length);
+	}
+
+	public ColumnBatch addColumn(FieldName name, Object[] values) {
+		return putColumn(name, values, values.length);
+	}
+
+	/**
+	 * @return The column, or <code>null</code> if the column does not exist or is not a
+	 *         <code>double[]</code> column.
+	 */
+	public double[] getDoubleColumn(FieldName name) {
+		Object column = this.columns.get(name);
+
+		return (column instanceof double[] ? (double[]) column : null);
+	}
+
+	/**
+	 * @return The column, or <code>null</code> if the column does not exist or is not an
+	 *         <code>Object[]</code> column.
+	 */
+	public Object[] getObjectColumn(FieldName name) {
+		Object column = this.columns.get(name);
+
+		return (column instanceof Object[] ? (Object[]) column : null);
+	}
+
+	private ColumnBatch putColumn(FieldName name, Object column, int length) {
+
+		if (length < this.size) {
+			throw new IllegalArgumentException("Column " + name.getValue() + " has " + length +
+					" elements, expected at least " + this.size);
+		}
+
+		this.columns.put(name, column);
+
+		return this;
+	}
+}
@@ -0,0 +1,276 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.manager.IPMMLResult;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.PMMLResult;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves a single {@link EvaluationContext} over the records of a {@link ColumnBatch}.
+ *
+ * The columns are bound to the {@link RowSchema row schema} of the evaluator once per batch. For
+ * every record, the cursor copies the input values into a reusable row, and copies the results
+ * into the output columns.
+ */
+class ColumnBatchCursor {
+
+	private int size = 0;
+
+	private double[][] continuousColumns = null;
+
+	private Object[][] categoricalColumns = null;
+
+	private double[] continuousValues = null;
+
+	private Object[] categoricalValues = null;
+
+	private RowParameters parameters = null;
+
+	private FieldName[] resultFields = null;
+
+	private double[][] resultDoubleColumns = null;
+
+	private Object[][] resultObjectColumns = null;
+
+	private boolean outputRequested = false;
+
+	ColumnBatchCursor(RowEvaluator evaluator, ColumnBatch in, ColumnBatch out)
+			throws EvaluationException {
+
+		if (in.getSize() != out.getSize()) {
+			throw new EvaluationException("Input batch has " + in.getSize() +
+					" records, output batch has " + out.getSize() + " records");
+		}
+
+		this.size = in.getSize();
+
+		RowSchema rowSchema = evaluator.getRowSchema();
+
+		this.continuousColumns = new double[rowSchema.getContinuousCount()][];
+		this.categoricalColumns = new Object[rowSchema.getCategoricalCount()][];
+
+		List<FieldName> activeFields = rowSchema.getFields();
+		for (int i = 0; i < activeFields.size(); i++) {
+			FieldName activeField = activeFields.get(i);
+
+			if (rowSchema.isContinuous(i)) {
+				double[] column = in.getDoubleColumn(activeField);
+				if (column == null) {
+					throw new EvaluationException("Missing double[] column for field " +
+							activeField.getValue());
+				}
+
+				for (int row = 0; row < this.size; row++) {
+					rowSchema.checkValue(i, column[row]);
+				}
+
+				this.continuousColumns[rowSchema.getColumn(i)] = column;
+			} else {
+				Object[] column = in.getObjectColumn(activeField);
+				if (column == null) {
+					throw new EvaluationException("Missing Object[] column for field " +
+							activeField.getValue());
+				}
+
+				this.categoricalColumns[rowSchema.getColumn(i)] = column;
+			}
+		}
+
+		this.continuousValues = new double[rowSchema.getContinuousCount()];
+		this.categoricalValues = new Object[rowSchema.getCategoricalCount()];
+
+		this.parameters = (RowParameters) rowSchema.createParameters(this.continuousValues,
+				this.categoricalValues);
+
+		List<FieldName> predictedFields;
+		List<FieldName> outputFields;
+
+		try {
+			predictedFields = evaluator.getPredictedFields();
+			outputFields = evaluator.getOutputFields();
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		List<FieldName> resultFields = out.getFields();
+
+		this.resultFields = resultFields.toArray(new FieldName[resultFields.size()]);
+		this.resultDoubleColumns = new double[this.resultFields.length][];
+		this.resultObjectColumns = new Object[this.resultFields.length][];
+
+		for (int i = 0; i < this.resultFields.length; i++) {
+			FieldName resultField = this.resultFields[i];
+
+			if (outputFields.contains(resultField)) {
+				this.outputRequested = true;
+			} else
+
+			if (!predictedFields.contains(resultField)) {
+				throw new EvaluationException("Field " + resultField.getValue() +
+						" is neither a predicted field nor an output field");
+			}
+
+			this.resultDoubleColumns[i] = out.getDoubleColumn(resultField);
+			this.resultObjectColumns[i] = out.getObjectColumn(resultField);
+		}
+	}
+
+	/**
+	 * @return The number of records.
+	 */
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return <code>true</code> if the output batch asks for output fields, <code>false</code>
+	 *         otherwise.
+	 */
+	boolean isOutputRequested() {
+		return this.outputRequested;
+	}
+
+	/**
+	 * @return A map view of the current record. The view is reused between records.
+	 */
+	Map<FieldName, ?> getParameters() {
+		return this.parameters;
+	}
+
+	/**
+	 * Moves to the specified record.
+	 */
+	void load(int row) {
+		double[] continuousValues = this.continuousValues;
+		for (int i = 0; i < continuousValues.length; i++) {
+			continuousValues[i] = this.continuousColumns[i][row];
+		}
+
+		Object[] categoricalValues = this.categoricalValues;
+		for (int i = 0; i < categoricalValues.length; i++) {
+			categoricalValues[i] = this.categoricalColumns[i][row];
+		}
+
+		this.parameters.reset();
+	}
+
+	/**
+	 * Moves to the specified record, and loads it into the context.
+	 *
+	 * @param context A context that was created with {@link #getParameters()}.
+	 */
+	void load(int row, EvaluationContext context) {
+		load(row);
+
+		context.reset();
+
+		this.parameters.load(context);
+	}
+
+	/**
+	 * Evaluates the records one by one.
+	 *
+	 * @param context A context that was created with {@link #getParameters()}.
+	 */
+	void evaluate(Predictor predictor, ModelManagerEvaluationContext context)
+			throws EvaluationException {
+
+		for (int row = 0; row < this.size; row++) {
+			load(row, context);
+
+			store(row, predictor.predict(context), context);
+		}
+	}
+
+	/**
+	 * Stores the predictions of the current record. The <code>Output</code> element is evaluated
+	 * only if the output batch asks for output fields.
+	 *
+	 * @param predictions Map of predicted field values, or <code>null</code>.
+	 */
+	void store(int row, Map<FieldName, ?> predictions, ModelManagerEvaluationContext context)
+			throws EvaluationException {
+
+		if (predictions != null && this.outputRequested) {
+			store(row, OutputUtil.evaluate(predictions, context));
+
+			return;
+		}
+
+		for (int i = 0; i < this.resultFields.length; i++) {
+			Object value = (predictions != null ? predictions.get(this.resultFields[i]) : null);
+
+			storeValue(row, i, value);
+		}
+	}
+
+	/**
+	 * @see #store(int, Map, ModelManagerEvaluationContext)
+	 */
+	void store(int row, PMMLResult predictions, ModelManagerEvaluationContext context)
+			throws EvaluationException {
+
+		if (predictions != null && this.outputRequested) {
+			store(row, OutputUtil.evaluate(predictions, context));
+
+			return;
+		}
+
+		store(row, predictions);
+	}
+
+	/**
+	 * Stores the result of the current record.
+	 *
+	 * @param result The result, or <code>null</code>.
+	 */
+	void store(int row, IPMMLResult result) throws EvaluationException {
+
+		for (int i = 0; i < this.resultFields.length; i++) {
+			FieldName resultField = this.resultFields[i];
+
+			Object value = null;
+
+			if (result instanceof PMMLResult && !((PMMLResult) result).containsKey(resultField)) {
+				value = null;
+			} else
+
+			if (result != null) {
+				try {
+					value = result.getValue(resultField);
+				} catch (ModelManagerException e) {
+					throw new EvaluationException(e);
+				}
+			}
+
+			storeValue(row, i, value);
+		}
+	}
+
+	private void storeValue(int row, int index, Object value) throws EvaluationException {
+		value = EvaluatorUtil.decode(value);
+
+		double[] doubleColumn = this.resultDoubleColumns[index];
+		if (doubleColumn != null) {
+			doubleColumn[row] = (value != null ?
+					(ParameterUtil.toDouble(value)).doubleValue() : Double.NaN);
+		} else {
+			this.resultObjectColumns[index][row] = value;
+		}
+	}
+
+	/**
+	 * Computes the predictions of the current record.
+	 */
+	interface Predictor {
+
+		/**
+		 * @return Map of predicted field values, or <code>null</code>.
+		 */
+		Map<FieldName, ?> predict(ModelManagerEvaluationContext context)
+				throws EvaluationException;
+	}
+}
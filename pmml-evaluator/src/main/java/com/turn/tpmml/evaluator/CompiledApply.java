@@ -0,0 +1,1206 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Apply;
+import com.turn.tpmml.Constant;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.DerivedField;
+import com.turn.tpmml.Expression;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldRef;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An {@link Apply} whose functions have been resolved, and whose arguments have been converted
+ * to a tree of nodes in advance.
+ *
+ * {@link ExpressionUtil#evaluateApply(Apply, EvaluationContext)} looks up the function by name
+ * and collects the values of the arguments into a new list for every call. Here, every node is
+ * bound to its function, and the built-in arithmetic, math, aggregate and comparison functions
+ * are called with primitive arguments. A subtree whose value is known to be a {@link Double}
+ * (a double constant, a field reference to a double derived field, or an arithmetic, math or
+ * aggregate function of such subtrees) is evaluated without boxing the intermediate results.
+ *
+ * All the arguments are evaluated before the function is called, and missing results are
+ * replaced like before, so that the results and the errors are the same as those of the
+ * interpreted form.
+ *
+ * The tree is also simplified while it is built. Built-in functions of constants are computed
+ * once, references to derived fields that merely rename another field are resolved to that
+ * field, and functions that appear more than once in the transformation dictionaries share the
+ * slot that caches their value.
+ *
+ * If {@link BytecodeUtil#isEnabled() enabled}, the primitive subtrees of top-level functions are
+ * translated to bytecode afterwards.
+ *
+ * @see EvaluationPlan#getApply(Apply)
+ */
+class CompiledApply {
+
+	private Node root = null;
+
+	/**
+	 * @param evaluationPlan The plan that binds the field references, or <code>null</code>.
+	 *
+	 * @see #isCompilable(Apply)
+	 */
+	CompiledApply(Apply apply, EvaluationPlan evaluationPlan) {
+		Node root = compileApply(apply, evaluationPlan);
+
+		int slot = (evaluationPlan != null && !isConstant(root) ?
+				evaluationPlan.shareApply(apply) : -1);
+		if (slot > -1) {
+			root = (root instanceof DoubleNode ?
+					new SharedDoubleNode(slot, (DoubleNode) root) : new SharedNode(slot, root));
+		}
+
+		this.root = root;
+	}
+
+	/**
+	 * @return <code>true</code> if the function is known, <code>false</code> otherwise.
+	 */
+	static boolean isCompilable(Apply apply) {
+		return FunctionUtil.getFunction(apply.getFunction()) != null;
+	}
+
+	/**
+	 * @see ExpressionUtil#evaluateApply(Apply, EvaluationContext)
+	 */
+	Object evaluate(EvaluationContext context) throws EvaluationException {
+		return this.root.evaluate(context);
+	}
+
+	/**
+	 * @return <code>true</code> if the value of the function is computed without boxing,
+	 *         <code>false</code> otherwise.
+	 */
+	boolean isPrimitive() {
+		return (this.root instanceof DoubleNode);
+	}
+
+	/**
+	 * @return <code>true</code> if the value of the function is computed by generated bytecode,
+	 *         <code>false</code> otherwise.
+	 */
+	boolean isGenerated() {
+		Node root = this.root;
+
+		if (root instanceof SharedDoubleNode) {
+			root = ((SharedDoubleNode) root).node;
+		}
+
+		return (root instanceof GeneratedNode);
+	}
+
+	/**
+	 * Translates the primitive subtrees to bytecode. Nested functions are translated as part of
+	 * the function that contains them.
+	 */
+	void generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+		this.root = this.root.generate(classLoader);
+	}
+
+	/**
+	 * @return <code>true</code> if the value of the function has been computed in advance,
+	 *         <code>false</code> otherwise.
+	 */
+	boolean isConstant() {
+		return isConstant(this.root);
+	}
+
+	private static Node compile(Expression expression, EvaluationPlan evaluationPlan) {
+
+		if (expression instanceof Constant) {
+			return compileConstant((Constant) expression);
+		} else
+
+		if (expression instanceof FieldRef) {
+			return compileFieldRef((FieldRef) expression, evaluationPlan);
+		} else
+
+		if (expression instanceof Apply && isCompilable((Apply) expression)) {
+			Apply apply = (Apply) expression;
+
+			// Nested functions are bound before the function that contains them
+			CompiledApply compiledApply =
+					(evaluationPlan != null ? evaluationPlan.getApply(apply) : null);
+			if (compiledApply != null) {
+				return compiledApply.root;
+			}
+
+			return compileApply(apply, evaluationPlan);
+		}
+
+		return new ExpressionNode(expression);
+	}
+
+	private static Node compileConstant(Constant constant) {
+		String value = constant.getValue();
+
+		DataType dataType = constant.getDataType();
+		if (dataType == null) {
+			dataType = ParameterUtil.getConstantDataType(value);
+		}
+
+		Object result;
+
+		try {
+			result = ParameterUtil.parse(dataType, value);
+		} catch (EvaluationException ee) {
+			return new ExpressionNode(constant);
+		} catch (NumberFormatException nfe) {
+			return new ExpressionNode(constant);
+		}
+
+		if (result instanceof Double) {
+			return new DoubleConstantNode(((Double) result).doubleValue());
+		}
+
+		return new ConstantNode(result);
+	}
+
+	private static Node compileFieldRef(FieldRef fieldRef, EvaluationPlan evaluationPlan) {
+		FieldName field = fieldRef.getField();
+
+		int slot = (evaluationPlan != null ? evaluationPlan.getSlot(field) : -1);
+
+		// Resolve aliases, but give up on cycles
+		for (int i = 0; slot > -1 && i < evaluationPlan.size(); i++) {
+			FieldRef alias = getAlias(evaluationPlan, slot);
+			if (alias == null) {
+				break;
+			}
+
+			field = alias.getField();
+			slot = evaluationPlan.getSlot(field);
+		}
+
+		if (slot > -1) {
+			DerivedField derivedField = evaluationPlan.resolveDerivedField(slot);
+
+			// The value of a double derived field is cast to double, and is never missing
+			if (derivedField != null && derivedField.getDataType() == DataType.DOUBLE) {
+				return new DoubleFieldNode(slot);
+			}
+		}
+
+		return new FieldRefNode(field, slot, fieldRef.getMapMissingTo());
+	}
+
+	/**
+	 * A derived field is an alias if its expression is a field reference without a missing value
+	 * replacement, and its value is not cast to another data type.
+	 *
+	 * @return The field reference of the derived field, or <code>null</code> if the field is not
+	 *         an alias.
+	 */
+	private static FieldRef getAlias(EvaluationPlan evaluationPlan, int slot) {
+		DerivedField derivedField = evaluationPlan.resolveDerivedField(slot);
+		if (derivedField == null || !(derivedField.getExpression() instanceof FieldRef)) {
+			return null;
+		}
+
+		FieldRef fieldRef = (FieldRef) derivedField.getExpression();
+		if (fieldRef.getMapMissingTo() != null) {
+			return null;
+		}
+
+		int target = evaluationPlan.getSlot(fieldRef.getField());
+		if (target < 0) {
+			return null;
+		}
+
+		DataType dataType = derivedField.getDataType();
+		if (dataType != null) {
+			DerivedField targetField = evaluationPlan.resolveDerivedField(target);
+
+			// The value of the target field has been cast to the same data type already
+			if (targetField == null || targetField.getDataType() != dataType) {
+				return null;
+			}
+		}
+
+		return fieldRef;
+	}
+
+	private static Node compileApply(Apply apply, EvaluationPlan evaluationPlan) {
+		FunctionUtil.Function function = FunctionUtil.getFunction(apply.getFunction());
+
+		List<Expression> arguments = apply.getExpressions();
+
+		Node[] nodes = new Node[arguments.size()];
+
+		for (int i = 0; i < arguments.size(); i++) {
+			nodes[i] = compile(arguments.get(i), evaluationPlan);
+		}
+
+		Node node = createNode(function, nodes, apply, evaluationPlan);
+
+		if (FunctionUtil.isBuiltIn(function) && isConstant(nodes)) {
+			return fold(node);
+		}
+
+		return node;
+	}
+
+	/**
+	 * Computes the value of a function of constants.
+	 *
+	 * @return A constant node, or the node itself if the function fails. The error is then
+	 *         reported by the evaluation, like before.
+	 */
+	private static Node fold(Node node) {
+		Object value;
+
+		try {
+			value = node.evaluate(null);
+		} catch (EvaluationException ee) {
+			return node;
+		} catch (RuntimeException re) {
+			return node;
+		}
+
+		if (value instanceof Double) {
+			return new DoubleConstantNode(((Double) value).doubleValue());
+		}
+
+		return new ConstantNode(value);
+	}
+
+	private static Node createNode(FunctionUtil.Function function, Node[] nodes, Apply apply,
+			EvaluationPlan evaluationPlan) {
+		String mapMissingTo = apply.getMapMissingTo();
+
+		ValueSet valueSet = (evaluationPlan != null ? evaluationPlan.getValueSet(apply) : null);
+		if (valueSet != null) {
+			return new ValueListNode((FunctionUtil.ValueListFunction) function, nodes[0],
+					valueSet, mapMissingTo);
+		}
+
+		if (!FunctionUtil.isBuiltIn(function)) {
+			return createFunctionNode(function, nodes, mapMissingTo);
+		}
+
+		if (function instanceof FunctionUtil.ArithmeticFunction && nodes.length == 2) {
+			FunctionUtil.ArithmeticFunction arithmeticFunction =
+					(FunctionUtil.ArithmeticFunction) function;
+
+			promote(nodes);
+
+			if (isPrimitive(nodes)) {
+				return new DoubleArithmeticNode(arithmeticFunction, (DoubleNode) nodes[0],
+						(DoubleNode) nodes[1]);
+			}
+
+			return new ArithmeticNode(arithmeticFunction, nodes[0], nodes[1], mapMissingTo);
+		} else
+
+		if (function instanceof FunctionUtil.MathFunction && nodes.length == 1) {
+			FunctionUtil.MathFunction mathFunction = (FunctionUtil.MathFunction) function;
+
+			if (isPrimitive(nodes)) {
+				return new DoubleMathNode(mathFunction, (DoubleNode) nodes[0]);
+			}
+
+			return new MathNode(mathFunction, nodes[0], mapMissingTo);
+		} else
+
+		if (function instanceof FunctionUtil.AggregateFunction && nodes.length > 0) {
+			FunctionUtil.AggregateFunction aggregateFunction =
+					(FunctionUtil.AggregateFunction) function;
+
+			promote(nodes);
+
+			if (isPrimitive(nodes)) {
+				DoubleNode[] doubleNodes = new DoubleNode[nodes.length];
+				System.arraycopy(nodes, 0, doubleNodes, 0, nodes.length);
+
+				return new DoubleAggregateNode(aggregateFunction, doubleNodes);
+			}
+
+			return new AggregateNode(aggregateFunction, nodes, mapMissingTo);
+		} else
+
+		if (function instanceof FunctionUtil.ComparisonFunction && nodes.length == 2) {
+			FunctionUtil.ComparisonFunction comparisonFunction =
+					(FunctionUtil.ComparisonFunction) function;
+
+			promote(nodes);
+
+			if (isPrimitive(nodes)) {
+				return new DoubleComparisonNode(comparisonFunction, (DoubleNode) nodes[0],
+						(DoubleNode) nodes[1]);
+			}
+
+			return new ComparisonNode(comparisonFunction, nodes[0], nodes[1], mapMissingTo);
+		} else
+
+		if (function instanceof FunctionUtil.ValueFunction && nodes.length == 1) {
+			return new ValueNode((FunctionUtil.ValueFunction) function, nodes[0], mapMissingTo);
+		}
+
+		return createFunctionNode(function, nodes, mapMissingTo);
+	}
+
+	private static Node createFunctionNode(FunctionUtil.Function function, Node[] nodes,
+			String mapMissingTo) {
+
+		switch (nodes.length) {
+		case 1:
+			return new UnaryNode(function, nodes[0], mapMissingTo);
+		case 2:
+			return new BinaryNode(function, nodes[0], nodes[1], mapMissingTo);
+		default:
+			return new NaryNode(function, nodes, mapMissingTo);
+		}
+	}
+
+	/**
+	 * Replaces numeric constants with double constants, if some other argument is a double.
+	 * The functions cast all their arguments to the most general data type, so the results do
+	 * not change.
+	 */
+	private static void promote(Node[] nodes) {
+		boolean primitive = false;
+
+		for (Node node : nodes) {
+			primitive |= (node instanceof DoubleNode);
+		}
+
+		if (!primitive) {
+			return;
+		}
+
+		for (int i = 0; i < nodes.length; i++) {
+
+			if (nodes[i] instanceof ConstantNode) {
+				Object value = ((ConstantNode) nodes[i]).value;
+
+				if (value instanceof Integer || value instanceof Float) {
+					nodes[i] = new DoubleConstantNode(((Number) value).doubleValue());
+				}
+			}
+		}
+	}
+
+	private static boolean isConstant(Node node) {
+		return (node instanceof ConstantNode || node instanceof DoubleConstantNode);
+	}
+
+	private static boolean isConstant(Node[] nodes) {
+
+		for (Node node : nodes) {
+
+			if (!isConstant(node)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean isPrimitive(Node[] nodes) {
+
+		for (Node node : nodes) {
+
+			if (!(node instanceof DoubleNode)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static Object[] evaluateAll(Node[] nodes, EvaluationContext context)
+			throws EvaluationException {
+		Object[] values = new Object[nodes.length];
+
+		for (int i = 0; i < nodes.length; i++) {
+			values[i] = nodes[i].evaluate(context);
+		}
+
+		return values;
+	}
+
+	abstract static class Node {
+
+		abstract Object evaluate(EvaluationContext context) throws EvaluationException;
+
+		/**
+		 * @return The node that replaces this node.
+		 *
+		 * @see BytecodeUtil#generate(DoubleNode, BytecodeUtil.ExpressionClassLoader)
+		 */
+		Node generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+			return this;
+		}
+	}
+
+	/**
+	 * A node whose value is never missing, and is always a {@link Double}.
+	 */
+	abstract static class DoubleNode extends Node {
+
+		abstract double evaluateDouble(EvaluationContext context) throws EvaluationException;
+
+		@Override
+		Object evaluate(EvaluationContext context) throws EvaluationException {
+			return Double.valueOf(evaluateDouble(context));
+		}
+
+		@Override
+		DoubleNode generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+			return this;
+		}
+
+		/**
+		 * Writes the bytecode that pushes the value of this node. By default, the node is called
+		 * back from the generated code.
+		 */
+		void emit(BytecodeUtil.Generator generator) {
+			generator.emitDelegate(new NodeExpression(this));
+		}
+	}
+
+	/**
+	 * @see BytecodeUtil
+	 */
+	static class GeneratedNode extends DoubleNode {
+
+		private GeneratedExpression expression = null;
+
+		GeneratedNode(GeneratedExpression expression) {
+			this.expression = expression;
+		}
+
+		@Override
+		double evaluateDouble(EvaluationContext context) throws EvaluationException {
+			return this.expression.evaluateDouble(context);
+		}
+	}
+
+	/**
+	 * A node that is called back from generated code.
+	 */
+	static class NodeExpression extends GeneratedExpression {
+
+		private DoubleNode node = null;
+
+		NodeExpression(DoubleNode node) {
+			this.node = node;
+		}
+
+		@Override
+		public double evaluateDouble(EvaluationContext context) throws EvaluationException {
+			return this.node.evaluateDouble(context);
+		}
+	}
+
+	/**
+	 * A node that replaces a missing result of its function with a constant.
+	 */
+	abstract static class FunctionNode extends Node {
+
+		private String mapMissingTo = null;
+
+		FunctionNode(String mapMissingTo) {
+			this.mapMissingTo = mapMissingTo;
+		}
+
+		abstract Object evaluateFunction(EvaluationContext context) throws EvaluationException;
+
+		@Override
+		Object evaluate(EvaluationContext context) throws EvaluationException {
+			Object result = evaluateFunction(context);
+			if (result == null) {
+				return this.mapMissingTo;
+			}
+
+			return result;
+		}
+	}
+
+	/**
+	 * A node whose value is computed at most once per evaluation context.
+	 *
+	 * @see EvaluationPlan#shareApply(Apply)
+	 */
+	static class SharedNode extends Node {
+
+		private int slot = -1;
+
+		private Node node = null;
+
+		SharedNode(int slot, Node node) {
+			this.slot = slot;
+			this.node = node;
+		}
+
+		@Override
+		Object evaluate(EvaluationContext context) throws EvaluationException {
+			int slot = this.slot;
+
+			if (context.isLoaded(slot)) {
+				return context.getValue(slot);
+			}
+
+			Object value = this.node.evaluate(context);
+
+			context.setValue(slot, value);
+
+			return value;
+		}
+
+		@Override
+		Node generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+			this.node = this.node.generate(classLoader);
+
+			return this;
+		}
+	}
+
+	static class SharedDoubleNode extends DoubleNode {
+
+		private int slot = -1;
+
+		private DoubleNode node = null;
+
+		SharedDoubleNode(int slot, DoubleNode node) {
+			this.slot = slot;
+			this.node = node;
+		}
+
+		@Override
+		double evaluateDouble(EvaluationContext context) throws EvaluationException {
+			return ((Double) evaluate(context)).doubleValue();
+		}
+
+		@Override
+		Object evaluate(EvaluationContext context) throws EvaluationException {
+			int slot = this.slot;
+
+			if (context.isLoaded(slot)) {
+				return context.getValue(slot);
+			}
+
+			Object value = Double.valueOf(this.node.evaluateDouble(context));
+
+			context.setValue(slot, value);
+
+			return value;
+		}
+
+		@Override
+		DoubleNode generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+			this.node = this.node.generate(classLoader);
+
+			return this;
+		}
+
+		/**
+		 * The value is cached outside of the generated code.
+		 */
+		@Override
+		void emit(BytecodeUtil.Generator generator) {
+			generate(generator.getClassLoader());
+
+			super.emit(generator);
+		}
+	}
+
+	/**
+	 * @see ExpressionUtil#evaluate(Expression, EvaluationContext)
+	 */
+	static class ExpressionNode extends Node {
+
+		private Expression expression = null;
+
+		ExpressionNode(Expression expression) {
+			this.expression = expression;
+		}
+
+		@Override
+		Object evaluate(EvaluationContext context) throws EvaluationException {
+			return ExpressionUtil.evaluate(this.expression, context);
+		}
+	}
+
+	static class ConstantNode extends Node {
+
+		private Object value = null;
+
+		ConstantNode(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		Object evaluate(EvaluationContext context) {
+			return this.value;
+		}
+	}
+
+	static class DoubleConstantNode extends DoubleNode {
+
+		private double value = 0d;
+
+		DoubleConstantNode(double value) {
+			this.value = value;
+		}
+
+		@Override
+		double evaluateDouble(EvaluationContext context) {
+			return this.value;
+		}
+
+		@Override
+		void emit(BytecodeUtil.Generator generator) {
+			generator.emitConstant(this.value);
+		}
+	}
+
+	/**
+	 * @see ExpressionUtil#evaluateFieldRef(FieldRef, EvaluationContext)
+	 */
+	static class FieldRefNode extends Node {
+
+		private FieldName field = null;
+
+		private int slot = -1;
+
+		private String mapMissingTo = null;
+
+		FieldRefNode(FieldName field, int slot, String mapMissingTo) {
+			this.field = field;
+			this.slot = slot;
+			this.mapMissingTo = mapMissingTo;
+		}
+
+		@Override
+		Object evaluate(EvaluationContext context) throws EvaluationException {
+			int slot = this.slot;
+
+			Object value = (slot > -1 ?
+					ExpressionUtil.evaluate(slot, context) :
+					ExpressionUtil.evaluate(this.field, context));
+			if (value == null) {
+				return this.mapMissingTo;
+			}
+
+			return value;
+		}
+	}
+
+	static class DoubleFieldNode extends DoubleNode {
+
+		private int slot = -1;
+
+		DoubleFieldNode(int slot) {
+			this.slot = slot;
+		}
+
+		@Override
+		double evaluateDouble(EvaluationContext context) throws EvaluationException {
+			return ExpressionUtil.evaluateDouble(this.slot, context);
+		}
+
+		@Override
+		void emit(BytecodeUtil.Generator generator) {
+			generator.emitField(this.slot);
+		}
+	}
+
+	static class UnaryNode extends FunctionNode {
+
+		private FunctionUtil.Function function = null;
+
+		private Node argument = null;
+
+		UnaryNode(FunctionUtil.Function function, Node argument, String mapMissingTo) {
+			super(mapMissingTo);
+
+			this.function = function;
+			this.argument = argument;
+		}
+
+		@Override
+		Object evaluateFunction(EvaluationContext context) throws EvaluationException {
+			Object value = this.argument.evaluate(context);
+
+			return this.function.evaluate(Collections.singletonList(value));
+		}
+
+		@Override
+		Node generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+			this.argument = this.argument.generate(classLoader);
+
+			return this;
+		}
+	}
+
+	static class BinaryNode extends FunctionNode {
+
+		private FunctionUtil.Function function = null;
+
+		private Node left = null;
+
+		private Node right = null;
+
+		BinaryNode(FunctionUtil.Function function, Node left, Node right, String mapMissingTo) {
+			super(mapMissingTo);
+
+			this.function = function;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object evaluateFunction(EvaluationContext context) throws EvaluationException {
+			Object left = this.left.evaluate(context);
+			Object right = this.right.evaluate(context);
+
+			return this.function.evaluate(Arrays.asList(left, right));
+		}
+
+		@Override
+		Node generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+			this.left = this.left.generate(classLoader);
+			this.right = this.right.generate(classLoader);
+
+			return this;
+		}
+	}
+
+	static class NaryNode extends FunctionNode {
+
+		private FunctionUtil.Function function = null;
+
+		private Node[] arguments = null;
+
+		NaryNode(FunctionUtil.Function function, Node[] arguments, String mapMissingTo) {
+			super(mapMissingTo);
+
+			this.function = function;
+			this.arguments = arguments;
+		}
+
+		@Override
+		Object evaluateFunction(EvaluationContext context) throws EvaluationException {
+			Object[] values = evaluateAll(this.arguments, context);
+
+			return this.function.evaluate(Arrays.asList(values));
+		}
+
+		@Override
+		Node generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+			generateAll(this.arguments, classLoader);
+
+			return this;
+		}
+	}
+
+	/**
+	 * @see EvaluationPlan#getValueSet(Apply)
+	 */
+	static class ValueListNode extends FunctionNode {
+
+		private FunctionUtil.ValueListFunction function = null;
+
+		private Node argument = null;
+
+		private ValueSet values = null;
+
+		ValueListNode(FunctionUtil.ValueListFunction function, Node argument, ValueSet values,
+				String mapMissingTo) {
+			super(mapMissingTo);
+
+			this.function = function;
+			this.argument = argument;
+			this.values = values;
+		}
+
+		@Override
+		Object evaluateFunction(EvaluationContext context) throws EvaluationException {
+			Object value = this.argument.evaluate(context);
+
+			return this.function.evaluate(value, this.values);
+		}
+
+		@Override
+		Node generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+			this.argument = this.argument.generate(classLoader);
+
+			return this;
+		}
+	}
+
+	static class ValueNode extends FunctionNode {
+
+		private FunctionUtil.ValueFunction function = null;
+
+		private Node argument = null;
+
+		ValueNode(FunctionUtil.ValueFunction function, Node argument, String mapMissingTo) {
+			super(mapMissingTo);
+
+			this.function = function;
+			this.argument = argument;
+		}
+
+		@Override
+		Object evaluateFunction(EvaluationContext context) throws EvaluationException {
+			Object value = this.argument.evaluate(context);
+
+			return this.function.evaluate(value);
+		}
+
+		@Override
+		Node generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+			this.argument = this.argument.generate(classLoader);
+
+			return this;
+		}
+	}
+
+	/**
+	 * Double operands are combined without boxing. Other operands are cast by the function.
+	 */
+	static class ArithmeticNode extends FunctionNode {
+
+		private FunctionUtil.ArithmeticFunction function = null;
+
+		private Node left = null;
+
+		private Node right = null;
+
+		ArithmeticNode(FunctionUtil.ArithmeticFunction function, Node left, Node right,
+				String mapMissingTo) {
+			super(mapMissingTo);
+
+			this.function = function;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object evaluateFunction(EvaluationContext context) throws EvaluationException {
+			Object left = this.left.evaluate(context);
+			Object right = this.right.evaluate(context);
+
+			if (left instanceof Double && right instanceof Double) {
+				return Double.valueOf(this.function.evaluate(((Double) left).doubleValue(),
+						((Double) right).doubleValue()));
+			}
+
+			return this.function.evaluate(Arrays.asList(left, right));
+		}
+
+		@Override
+		Node generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+			this.left = this.left.generate(classLoader);
+			this.right = this.right.generate(classLoader);
+
+			return this;
+		}
+	}
+
+	static class DoubleArithmeticNode extends DoubleNode {
+
+		private FunctionUtil.ArithmeticFunction function = null;
+
+		private DoubleNode left = null;
+
+		private DoubleNode right = null;
+
+		DoubleArithmeticNode(FunctionUtil.ArithmeticFunction function, DoubleNode left,
+				DoubleNode right) {
+			this.function = function;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		double evaluateDouble(EvaluationContext context) throws EvaluationException {
+			double left = this.left.evaluateDouble(context);
+			double right = this.right.evaluateDouble(context);
+
+			return this.function.evaluate(left, right);
+		}
+
+		@Override
+		DoubleNode generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+			return BytecodeUtil.generate(this, classLoader);
+		}
+
+		@Override
+		void emit(BytecodeUtil.Generator generator) {
+			String name = FunctionUtil.getBuiltInName(this.function);
+
+			if (!BytecodeUtil.Generator.isArithmetic(name)) {
+				super.emit(generator);
+
+				return;
+			}
+
+			this.left.emit(generator);
+			this.right.emit(generator);
+
+			generator.emitArithmetic(name);
+		}
+	}
+
+	static class MathNode extends FunctionNode {
+
+		private FunctionUtil.MathFunction function = null;
+
+		private Node argument = null;
+
+		MathNode(FunctionUtil.MathFunction function, Node argument, String mapMissingTo) {
+			super(mapMissingTo);
+
+			this.function = function;
+			this.argument = argument;
+		}
+
+		@Override
+		Object evaluateFunction(EvaluationContext context) throws EvaluationException {
+			Object value = this.argument.evaluate(context);
+
+			if (value instanceof Double) {
+				return Double.valueOf(this.function.evaluate(((Double) value).doubleValue()));
+			}
+
+			return this.function.evaluate(Collections.singletonList(value));
+		}
+
+		@Override
+		Node generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+			this.argument = this.argument.generate(classLoader);
+
+			return this;
+		}
+	}
+
+	static class DoubleMathNode extends DoubleNode {
+
+		private FunctionUtil.MathFunction function = null;
+
+		private DoubleNode argument = null;
+
+		DoubleMathNode(FunctionUtil.MathFunction function, DoubleNode argument) {
+			this.function = function;
+			this.argument = argument;
+		}
+
+		@Override
+		double evaluateDouble(EvaluationContext context) throws EvaluationException {
+			return this.function.evaluate(this.argument.evaluateDouble(context));
+		}
+
+		@Override
+		DoubleNode generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+			return BytecodeUtil.generate(this, classLoader);
+		}
+
+		@Override
+		void emit(BytecodeUtil.Generator generator) {
+			String name = FunctionUtil.getBuiltInName(this.function);
+
+			if (!BytecodeUtil.Generator.isMath(name)) {
+				super.emit(generator);
+
+				return;
+			}
+
+			this.argument.emit(generator);
+
+			generator.emitMath(name);
+		}
+	}
+
+	/**
+	 * If all the present values are doubles, then they are aggregated without a statistic.
+	 * Missing values are skipped like before.
+	 */
+	static class AggregateNode extends FunctionNode {
+
+		private FunctionUtil.AggregateFunction function = null;
+
+		private Node[] arguments = null;
+
+		AggregateNode(FunctionUtil.AggregateFunction function, Node[] arguments,
+				String mapMissingTo) {
+			super(mapMissingTo);
+
+			this.function = function;
+			this.arguments = arguments;
+		}
+
+		@Override
+		Object evaluateFunction(EvaluationContext context) throws EvaluationException {
+			Object[] values = evaluateAll(this.arguments, context);
+
+			double[] buffer = context.getDoubleBuffer(this, values.length);
+
+			int length = 0;
+
+			for (Object value : values) {
+
+				if (value == null) {
+					continue;
+				}
+
+				if (!(value instanceof Double)) {
+					return this.function.evaluate(Arrays.asList(values));
+				}
+
+				buffer[length++] = ((Double) value).doubleValue();
+			}
+
+			if (length == 0) {
+				return this.function.evaluate(Arrays.asList(values));
+			}
+
+			return Double.valueOf(this.function.evaluate(buffer, length));
+		}
+
+		@Override
+		Node generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+			generateAll(this.arguments, classLoader);
+
+			return this;
+		}
+	}
+
+	static class DoubleAggregateNode extends DoubleNode {
+
+		private FunctionUtil.AggregateFunction function = null;
+
+		private DoubleNode[] arguments = null;
+
+		DoubleAggregateNode(FunctionUtil.AggregateFunction function, DoubleNode[] arguments) {
+			this.function = function;
+			this.arguments = arguments;
+		}
+
+		@Override
+		double evaluateDouble(EvaluationContext context) throws EvaluationException {
+			DoubleNode[] arguments = this.arguments;
+
+			double[] buffer = context.getDoubleBuffer(this, arguments.length);
+
+			for (int i = 0; i < arguments.length; i++) {
+				buffer[i] = arguments[i].evaluateDouble(context);
+			}
+
+			return this.function.evaluate(buffer, arguments.length);
+		}
+
+		@Override
+		DoubleNode generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+			return BytecodeUtil.generate(this, classLoader);
+		}
+
+		@Override
+		void emit(BytecodeUtil.Generator generator) {
+			String name = FunctionUtil.getBuiltInName(this.function);
+
+			if (!BytecodeUtil.Generator.isAggregate(name)) {
+				super.emit(generator);
+
+				return;
+			}
+
+			generator.emitAggregateStart(name);
+
+			for (int i = 0; i < this.arguments.length; i++) {
+				this.arguments[i].emit(generator);
+
+				generator.emitAggregateStep(name, i + 1);
+			}
+		}
+	}
+
+	/**
+	 * Operands of the same class are compared directly. Other operands are cast by the function.
+	 */
+	static class ComparisonNode extends FunctionNode {
+
+		private FunctionUtil.ComparisonFunction function = null;
+
+		private Node left = null;
+
+		private Node right = null;
+
+		ComparisonNode(FunctionUtil.ComparisonFunction function, Node left, Node right,
+				String mapMissingTo) {
+			super(mapMissingTo);
+
+			this.function = function;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		Object evaluateFunction(EvaluationContext context) throws EvaluationException {
+			Object left = this.left.evaluate(context);
+			Object right = this.right.evaluate(context);
+
+			if (left != null && right != null && (left.getClass()).equals(right.getClass())) {
+				return this.function.evaluate(((Comparable) left).compareTo(right));
+			}
+
+			return this.function.evaluate(Arrays.asList(left, right));
+		}
+
+		@Override
+		Node generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+			this.left = this.left.generate(classLoader);
+			this.right = this.right.generate(classLoader);
+
+			return this;
+		}
+	}
+
+	static class DoubleComparisonNode extends Node {
+
+		private FunctionUtil.ComparisonFunction function = null;
+
+		private DoubleNode left = null;
+
+		private DoubleNode right = null;
+
+		DoubleComparisonNode(FunctionUtil.ComparisonFunction function, DoubleNode left,
+				DoubleNode right) {
+			this.function = function;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object evaluate(EvaluationContext context) throws EvaluationException {
+			double left = this.left.evaluateDouble(context);
+			double right = this.right.evaluateDouble(context);
+
+			return this.function.evaluate(Double.compare(left, right));
+		}
+
+		@Override
+		Node generate(BytecodeUtil.ExpressionClassLoader classLoader) {
+			this.left = this.left.generate(classLoader);
+			this.right = this.right.generate(classLoader);
+
+			return this;
+		}
+	}
+
+	private static void generateAll(Node[] nodes, BytecodeUtil.ExpressionClassLoader classLoader) {
+
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = nodes[i].generate(classLoader);
+		}
+	}
+}
@@ -0,0 +1,625 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Attribute;
+import com.turn.tpmml.Characteristic;
+import com.turn.tpmml.CompoundPredicate;
+import com.turn.tpmml.False;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.Predicate;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.SimpleSetPredicate;
+import com.turn.tpmml.True;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link Characteristic} whose attributes have been indexed by the value of their field.
+ *
+ * The score of a characteristic is that of the first attribute whose predicate is true. If all
+ * the predicates test the same field, then the reference values of the predicates split the
+ * value space into regions, and all the values of a region select the same attribute.
+ * <ul>
+ * <li>If all the reference values are numbers, the split points are kept in a sorted array, and
+ * the region of a {@link Double} value is found by binary search. Values are ordered the same way
+ * as by {@link Double#compareTo(Double)}. {@link Integer} values are looked up the same way if
+ * all the reference values are integers.</li>
+ * <li>If the predicates only test for (in)equality and set membership, the attributes of
+ * {@link String} values are kept in a hash map.</li>
+ * </ul>
+ * Missing values, and values of other runtime data types, are matched against the predicates
+ * one by one, so that the results and errors are the same as before.
+ *
+ * @see CompiledScorecard
+ */
+class CompiledCharacteristic {
+
+	private EvaluationPlan evaluationPlan = null;
+
+	private List<Predicate> predicates = null;
+
+	/**
+	 * The field of all the predicates, or <code>null</code>.
+	 */
+	private FieldName field = null;
+
+	private int slot = -1;
+
+	/**
+	 * The sorted split points, or <code>null</code> if the characteristic has no interval index.
+	 */
+	private double[] points = null;
+
+	/**
+	 * <code>true</code> if all the split points are integers, <code>false</code> otherwise.
+	 */
+	private boolean intPoints = false;
+
+	/**
+	 * The attribute of every region, or <code>-1</code>. Region <code>2 * i + 1</code> is point
+	 * <code>i</code>, and region <code>2 * i</code> lies between points <code>i - 1</code> and
+	 * <code>i</code>.
+	 */
+	private int[] regionAttributes = null;
+
+	/**
+	 * The attributes by value, or <code>null</code> if the characteristic has no hash index.
+	 */
+	private Map<String, Integer> valueAttributes = null;
+
+	/**
+	 * The attribute of values that are not keys of {@link #valueAttributes}, or <code>-1</code>.
+	 */
+	private int otherAttribute = -1;
+
+	CompiledCharacteristic(Characteristic characteristic, EvaluationPlan evaluationPlan) {
+		this.evaluationPlan = evaluationPlan;
+
+		List<Attribute> attributes = characteristic.getAttributes();
+
+		this.predicates = new ArrayList<Predicate>(attributes.size());
+
+		for (Attribute attribute : attributes) {
+			this.predicates.add(attribute.getPredicate());
+		}
+
+		Set<FieldName> fields = new LinkedHashSet<FieldName>();
+
+		for (Predicate predicate : this.predicates) {
+
+			if (!collectFields(predicate, fields)) {
+				return;
+			}
+		}
+
+		if (fields.size() != 1 || fields.contains(null)) {
+			return;
+		}
+
+		this.field = (fields.iterator()).next();
+		this.slot = (evaluationPlan != null ? evaluationPlan.getSlot(this.field) : -1);
+
+		createIntervalIndex();
+		createHashIndex();
+	}
+
+	/**
+	 * @return <code>true</code> if the characteristic has an interval index, <code>false</code>
+	 *         otherwise.
+	 */
+	boolean hasIntervalIndex() {
+		return this.points != null;
+	}
+
+	/**
+	 * @return <code>true</code> if the characteristic has a hash index, <code>false</code>
+	 *         otherwise.
+	 */
+	boolean hasHashIndex() {
+		return this.valueAttributes != null;
+	}
+
+	/**
+	 * @return The index of the first matching attribute, or <code>-1</code>.
+	 */
+	int find(EvaluationContext context) throws EvaluationException {
+
+		if (this.field == null) {
+			return scan(context);
+		}
+
+		int slot = this.slot;
+
+		Object value = (slot > -1 && context.getEvaluationPlan() == this.evaluationPlan ?
+				ExpressionUtil.evaluate(slot, context) :
+				ExpressionUtil.evaluate(this.field, context));
+
+		if (value instanceof Double) {
+
+			if (this.points != null) {
+				return findRegion(((Double) value).doubleValue());
+			}
+		} else
+
+		if (value instanceof Integer) {
+
+			if (this.points != null && this.intPoints) {
+				return findRegion(((Integer) value).doubleValue());
+			}
+		} else
+
+		if (value instanceof String) {
+
+			if (this.valueAttributes != null) {
+				Integer attribute = this.valueAttributes.get(value);
+
+				return (attribute != null ? attribute.intValue() : this.otherAttribute);
+			}
+		}
+
+		return scan(context);
+	}
+
+	private int findRegion(double value) {
+		int index = Arrays.binarySearch(this.points, value);
+
+		return this.regionAttributes[index > -1 ? (2 * index + 1) : (2 * (-index - 1))];
+	}
+
+	/**
+	 * @see PredicateUtil#evaluate(Predicate, EvaluationContext)
+	 */
+	private int scan(EvaluationContext context) throws EvaluationException {
+		List<Predicate> predicates = this.predicates;
+
+		for (int i = 0; i < predicates.size(); i++) {
+			Boolean value = PredicateUtil.evaluate(predicates.get(i), context);
+
+			if (value != null && value.booleanValue()) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private void createIntervalIndex() {
+		List<Double> values = new ArrayList<Double>();
+
+		boolean intPoints = true;
+
+		for (Predicate predicate : this.predicates) {
+			List<String> strings = new ArrayList<String>();
+
+			if (!collectValues(predicate, strings, false)) {
+				return;
+			}
+
+			for (String string : strings) {
+
+				try {
+					values.add(Double.valueOf(string));
+				} catch (NumberFormatException nfe) {
+					return;
+				}
+
+				try {
+					Integer.parseInt(string);
+				} catch (NumberFormatException nfe) {
+					intPoints = false;
+				}
+			}
+		}
+
+		double[] points = new double[values.size()];
+
+		for (int i = 0; i < points.length; i++) {
+			points[i] = (values.get(i)).doubleValue();
+		}
+
+		Arrays.sort(points);
+
+		int size = 0;
+
+		for (int i = 0; i < points.length; i++) {
+
+			if (size == 0 || Double.compare(points[size - 1], points[i]) != 0) {
+				points[size] = points[i];
+
+				size++;
+			}
+		}
+
+		points = Arrays.copyOf(points, size);
+
+		int[] regionAttributes = new int[2 * size + 1];
+
+		for (int i = 0; i < regionAttributes.length; i++) {
+			Double representative;
+
+			if (i % 2 == 1) {
+				representative = Double.valueOf(points[i / 2]);
+			} else {
+				representative = getRepresentative(points, i / 2);
+			}
+
+			regionAttributes[i] = -1;
+
+			// The region is empty
+			if (representative == null) {
+				continue;
+			}
+
+			for (int j = 0; j < this.predicates.size(); j++) {
+
+				if (matches(this.predicates.get(j), representative.doubleValue())) {
+					regionAttributes[i] = j;
+
+					break;
+				}
+			}
+		}
+
+		this.points = points;
+		this.intPoints = intPoints;
+		this.regionAttributes = regionAttributes;
+	}
+
+	private void createHashIndex() {
+		Set<String> keys = new LinkedHashSet<String>();
+
+		for (Predicate predicate : this.predicates) {
+			List<String> strings = new ArrayList<String>();
+
+			if (!collectValues(predicate, strings, true)) {
+				return;
+			}
+
+			keys.addAll(strings);
+		}
+
+		Map<String, Integer> valueAttributes = new HashMap<String, Integer>(2 * keys.size());
+
+		int otherAttribute = -1;
+
+		try {
+			for (String key : keys) {
+
+				for (int j = 0; j < this.predicates.size(); j++) {
+
+					if (matches(this.predicates.get(j), key)) {
+						valueAttributes.put(key, Integer.valueOf(j));
+
+						break;
+					}
+				}
+			}
+
+			for (int j = 0; j < this.predicates.size(); j++) {
+
+				if (matches(this.predicates.get(j), null)) {
+					otherAttribute = j;
+
+					break;
+				}
+			}
+		} catch (EvaluationException ee) {
+			return;
+		}
+
+		this.valueAttributes = valueAttributes;
+		this.otherAttribute = otherAttribute;
+	}
+
+	/**
+	 * @return A value that lies above point <code>index - 1</code> and below point
+	 *         <code>index</code>, or <code>null</code> if there is no such value.
+	 */
+	private static Double getRepresentative(double[] points, int index) {
+		double value;
+
+		if (index == 0) {
+			value = Double.NEGATIVE_INFINITY;
+		} else {
+			double previous = points[index - 1];
+
+			if (Double.isNaN(previous)) {
+				return null;
+			} else
+
+			if (previous == Double.POSITIVE_INFINITY) {
+				value = Double.NaN;
+			} else
+
+			if (Double.compare(previous, -0d) == 0) {
+				value = 0d;
+			} else {
+				value = Math.nextUp(previous);
+			}
+
+			if (Double.compare(value, previous) <= 0) {
+				return null;
+			}
+		}
+
+		if (index < points.length && Double.compare(value, points[index]) >= 0) {
+			return null;
+		}
+
+		return Double.valueOf(value);
+	}
+
+	/**
+	 * @return <code>true</code> if the predicate only consists of the supported elements,
+	 *         <code>false</code> otherwise.
+	 */
+	private static boolean collectFields(Predicate predicate, Set<FieldName> fields) {
+
+		if (predicate instanceof SimplePredicate) {
+			fields.add(((SimplePredicate) predicate).getField());
+		} else
+
+		if (predicate instanceof SimpleSetPredicate) {
+			fields.add(((SimpleSetPredicate) predicate).getField());
+		} else
+
+		if (predicate instanceof CompoundPredicate) {
+			List<Predicate> contents = ((CompoundPredicate) predicate).getContent();
+
+			if (contents.isEmpty()) {
+				return false;
+			}
+
+			for (Predicate content : contents) {
+
+				if (!collectFields(content, fields)) {
+					return false;
+				}
+			}
+		} else
+
+		if (!(predicate instanceof True) && !(predicate instanceof False)) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Collects the reference values of the predicate.
+	 *
+	 * @param hash <code>true</code> to collect the values of a hash index, <code>false</code> to
+	 *        collect the values of an interval index.
+	 *
+	 * @return <code>true</code> if the predicate can be indexed, <code>false</code> otherwise.
+	 */
+	private boolean collectValues(Predicate predicate, List<String> values, boolean hash) {
+
+		if (predicate instanceof SimplePredicate) {
+			SimplePredicate simplePredicate = (SimplePredicate) predicate;
+
+			switch (simplePredicate.getOperator()) {
+			case IS_MISSING:
+			case IS_NOT_MISSING:
+				return true;
+			case EQUAL:
+			case NOT_EQUAL:
+				break;
+			case LESS_THAN:
+			case LESS_OR_EQUAL:
+			case GREATER_THAN:
+			case GREATER_OR_EQUAL:
+				if (hash) {
+					return false;
+				}
+				break;
+			default:
+				return false;
+			}
+
+			if (simplePredicate.getValue() == null) {
+				return false;
+			}
+
+			values.add(simplePredicate.getValue());
+		} else
+
+		if (predicate instanceof SimpleSetPredicate) {
+
+			if (!hash) {
+				return false;
+			}
+
+			ValueSet valueSet = getValueSet((SimpleSetPredicate) predicate);
+			if (valueSet == null) {
+				return false;
+			}
+
+			for (Object value : valueSet.getValues()) {
+				values.add(String.valueOf(value));
+			}
+		} else
+
+		if (predicate instanceof CompoundPredicate) {
+
+			for (Predicate content : ((CompoundPredicate) predicate).getContent()) {
+
+				if (!collectValues(content, values, hash)) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return The result of the predicate for a non-missing numeric value.
+	 */
+	private static boolean matches(Predicate predicate, double value) {
+
+		if (predicate instanceof SimplePredicate) {
+			SimplePredicate simplePredicate = (SimplePredicate) predicate;
+
+			SimplePredicate.Operator operator = simplePredicate.getOperator();
+			switch (operator) {
+			case IS_MISSING:
+				return false;
+			case IS_NOT_MISSING:
+				return true;
+			default:
+				break;
+			}
+
+			int order = Double.compare(value, Double.parseDouble(simplePredicate.getValue()));
+
+			switch (operator) {
+			case EQUAL:
+				return (order == 0);
+			case NOT_EQUAL:
+				return (order != 0);
+			case LESS_THAN:
+				return (order < 0);
+			case LESS_OR_EQUAL:
+				return (order <= 0);
+			case GREATER_THAN:
+				return (order > 0);
+			case GREATER_OR_EQUAL:
+				return (order >= 0);
+			default:
+				throw new IllegalStateException();
+			}
+		} else
+
+		if (predicate instanceof CompoundPredicate) {
+			CompoundPredicate compoundPredicate = (CompoundPredicate) predicate;
+
+			List<Predicate> contents = compoundPredicate.getContent();
+
+			boolean[] results = new boolean[contents.size()];
+
+			for (int i = 0; i < results.length; i++) {
+				results[i] = matches(contents.get(i), value);
+			}
+
+			return combine(compoundPredicate.getBooleanOperator(), results);
+		}
+
+		return (predicate instanceof True);
+	}
+
+	/**
+	 * @param value A non-missing string value, or <code>null</code> for a string value that
+	 *        equals none of the reference values.
+	 *
+	 * @return The result of the predicate.
+	 */
+	private boolean matches(Predicate predicate, String value) throws EvaluationException {
+
+		if (predicate instanceof SimplePredicate) {
+			SimplePredicate simplePredicate = (SimplePredicate) predicate;
+
+			boolean equals = (value != null && value.equals(simplePredicate.getValue()));
+
+			switch (simplePredicate.getOperator()) {
+			case IS_MISSING:
+				return false;
+			case IS_NOT_MISSING:
+				return true;
+			case EQUAL:
+				return equals;
+			case NOT_EQUAL:
+				return !equals;
+			default:
+				throw new IllegalStateException();
+			}
+		} else
+
+		if (predicate instanceof SimpleSetPredicate) {
+			SimpleSetPredicate simpleSetPredicate = (SimpleSetPredicate) predicate;
+
+			ValueSet valueSet = getValueSet(simpleSetPredicate);
+
+			boolean contains = (value != null && valueSet.contains(value));
+
+			switch (simpleSetPredicate.getBooleanOperator()) {
+			case IS_IN:
+				return contains;
+			case IS_NOT_IN:
+				return !contains;
+			default:
+				throw new IllegalStateException();
+			}
+		} else
+
+		if (predicate instanceof CompoundPredicate) {
+			CompoundPredicate compoundPredicate = (CompoundPredicate) predicate;
+
+			List<Predicate> contents = compoundPredicate.getContent();
+
+			boolean[] results = new boolean[contents.size()];
+
+			for (int i = 0; i < results.length; i++) {
+				results[i] = matches(contents.get(i), value);
+			}
+
+			return combine(compoundPredicate.getBooleanOperator(), results);
+		}
+
+		return (predicate instanceof True);
+	}
+
+	private ValueSet getValueSet(SimpleSetPredicate simpleSetPredicate) {
+		ValueSet result = null;
+
+		if (this.evaluationPlan != null) {
+			result = this.evaluationPlan.getValueSet(simpleSetPredicate.getArray());
+		}
+
+		if (result == null) {
+
+			try {
+				result = ArrayUtil.createValueSet(simpleSetPredicate.getArray());
+			} catch (EvaluationException ee) {
+				// Reported during the evaluation
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * None of the results is missing, so a surrogate takes the first result.
+	 *
+	 * @see PredicateUtil#evaluateCompoundPredicate(CompoundPredicate, EvaluationContext)
+	 */
+	private static boolean combine(CompoundPredicate.BooleanOperator operator, boolean[] results) {
+		boolean result = results[0];
+
+		for (int i = 1; i < results.length; i++) {
+
+			switch (operator) {
+			case AND:
+				result &= results[i];
+				break;
+			case OR:
+				result |= results[i];
+				break;
+			case XOR:
+				result ^= results[i];
+				break;
+			case SURROGATE:
+				return result;
+			default:
+				throw new IllegalStateException();
+			}
+		}
+
+		return result;
+	}
+}
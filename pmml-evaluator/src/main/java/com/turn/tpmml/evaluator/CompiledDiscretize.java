@@ -0,0 +1,357 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.Discretize;
+import com.turn.tpmml.DiscretizeBin;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.Interval;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A {@link Discretize} whose bins have been converted to primitive boundary arrays in advance.
+ *
+ * {@link DiscretizationUtil#discretize(Discretize, Object)} tests the bins one by one, and returns
+ * the value of the first bin that contains the field value. If the bins are disjoint, then at
+ * most one bin contains the field value, so the bins are sorted by their left margins and the
+ * candidate bin is found by binary search. Otherwise, the bins are tested one by one in document
+ * order. Margins are compared the same way as by {@link Double#compareTo(Double)}.
+ *
+ * Bin values are parsed into the data type of the transformation in advance.
+ *
+ * @see EvaluationPlan#getDiscretize(Discretize)
+ */
+class CompiledDiscretize {
+
+	private EvaluationPlan evaluationPlan = null;
+
+	private FieldName field = null;
+
+	private int slot = -1;
+
+	private DataType dataType = null;
+
+	private int size = 0;
+
+	/**
+	 * <code>true</code> if the bins are disjoint and sorted by their left margins,
+	 * <code>false</code> if the bins are in document order.
+	 */
+	private boolean sorted = false;
+
+	private boolean[] hasLeft = null;
+
+	private double[] left = null;
+
+	private boolean[] leftClosed = null;
+
+	private boolean[] hasRight = null;
+
+	private double[] right = null;
+
+	private boolean[] rightClosed = null;
+
+	private String[] binValues = null;
+
+	private Object[] parsedBinValues = null;
+
+	private String mapMissingTo = null;
+
+	private Object parsedMapMissingTo = null;
+
+	private String defaultValue = null;
+
+	private Object parsedDefaultValue = null;
+
+	/**
+	 * @see #isCompilable(Discretize)
+	 */
+	CompiledDiscretize(Discretize discretize, EvaluationPlan evaluationPlan) {
+		this.evaluationPlan = evaluationPlan;
+		this.field = discretize.getField();
+		this.slot = (evaluationPlan != null ? evaluationPlan.getSlot(this.field) : -1);
+		this.dataType = discretize.getDataType();
+
+		List<DiscretizeBin> bins = new ArrayList<DiscretizeBin>(discretize.getDiscretizeBins());
+
+		List<DiscretizeBin> sortedBins = new ArrayList<DiscretizeBin>(bins);
+		Collections.sort(sortedBins, CompiledDiscretize.BIN_ORDER);
+
+		this.sorted = isDisjoint(sortedBins);
+		if (this.sorted) {
+			bins = sortedBins;
+		}
+
+		this.size = bins.size();
+
+		this.hasLeft = new boolean[this.size];
+		this.left = new double[this.size];
+		this.leftClosed = new boolean[this.size];
+		this.hasRight = new boolean[this.size];
+		this.right = new double[this.size];
+		this.rightClosed = new boolean[this.size];
+		this.binValues = new String[this.size];
+		this.parsedBinValues = new Object[this.size];
+
+		for (int i = 0; i < this.size; i++) {
+			DiscretizeBin bin = bins.get(i);
+
+			Interval interval = bin.getInterval();
+
+			Double leftMargin = interval.getLeftMargin();
+			Double rightMargin = interval.getRightMargin();
+
+			this.hasLeft[i] = (leftMargin != null);
+			this.left[i] = (leftMargin != null ? leftMargin.doubleValue() : Double.NaN);
+			this.leftClosed[i] = isLeftClosed(interval.getClosure());
+			this.hasRight[i] = (rightMargin != null);
+			this.right[i] = (rightMargin != null ? rightMargin.doubleValue() : Double.NaN);
+			this.rightClosed[i] = isRightClosed(interval.getClosure());
+
+			this.binValues[i] = bin.getBinValue();
+			this.parsedBinValues[i] = parseSafely(this.binValues[i]);
+		}
+
+		this.mapMissingTo = discretize.getMapMissingTo();
+		this.parsedMapMissingTo = parseSafely(this.mapMissingTo);
+
+		this.defaultValue = discretize.getDefaultValue();
+		this.parsedDefaultValue = parseSafely(this.defaultValue);
+	}
+
+	/**
+	 * @return <code>true</code> if all the bins have an interval with a closure,
+	 *         <code>false</code> otherwise.
+	 */
+	static boolean isCompilable(Discretize discretize) {
+		List<DiscretizeBin> bins = discretize.getDiscretizeBins();
+
+		for (DiscretizeBin bin : bins) {
+			Interval interval = bin.getInterval();
+
+			if (interval == null || interval.getClosure() == null) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return <code>true</code> if the bins are searched by binary search, <code>false</code>
+	 *         otherwise.
+	 */
+	boolean isSorted() {
+		return this.sorted;
+	}
+
+	/**
+	 * @see ExpressionUtil#evaluateDiscretize(Discretize, EvaluationContext)
+	 */
+	Object evaluate(EvaluationContext context) throws EvaluationException {
+		int slot = this.slot;
+
+		Object value = (slot > -1 && context.getEvaluationPlan() == this.evaluationPlan ?
+				ExpressionUtil.evaluate(slot, context) :
+				ExpressionUtil.evaluate(this.field, context));
+		if (value == null) {
+			return parse(this.mapMissingTo, this.parsedMapMissingTo);
+		}
+
+		double doubleValue;
+
+		if (value instanceof Double) {
+			doubleValue = ((Double) value).doubleValue();
+		} else {
+			doubleValue = (ParameterUtil.toDouble(value)).doubleValue();
+		}
+
+		int bin = find(doubleValue);
+		if (bin < 0) {
+			return parse(this.defaultValue, this.parsedDefaultValue);
+		}
+
+		return parse(this.binValues[bin], this.parsedBinValues[bin]);
+	}
+
+	/**
+	 * @return The index of the bin that contains the value, or <code>-1</code>.
+	 */
+	int find(double value) {
+
+		if (this.sorted) {
+			// The last bin whose left margin admits the value
+			int low = 0;
+			int high = this.size - 1;
+
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+
+				if (admitsLeft(middle, value)) {
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+
+			if (high > -1 && admitsRight(high, value)) {
+				return high;
+			}
+
+			return -1;
+		}
+
+		for (int i = 0; i < this.size; i++) {
+
+			if (admitsLeft(i, value) && admitsRight(i, value)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private boolean admitsLeft(int bin, double value) {
+
+		if (!this.hasLeft[bin]) {
+			return true;
+		}
+
+		int order = Double.compare(value, this.left[bin]);
+
+		return (this.leftClosed[bin] ? order >= 0 : order > 0);
+	}
+
+	private boolean admitsRight(int bin, double value) {
+
+		if (!this.hasRight[bin]) {
+			return true;
+		}
+
+		int order = Double.compare(value, this.right[bin]);
+
+		return (this.rightClosed[bin] ? order <= 0 : order < 0);
+	}
+
+	/**
+	 * @param parsedValue The result of {@link #parseSafely(String)}.
+	 */
+	private Object parse(String value, Object parsedValue) throws EvaluationException {
+
+		if (parsedValue != null) {
+			return parsedValue;
+		}
+
+		// Let ParameterUtil report the error
+		return parse(value);
+	}
+
+	private Object parse(String value) throws EvaluationException {
+
+		if (value != null && this.dataType != null) {
+			return ParameterUtil.parse(this.dataType, value);
+		}
+
+		return value;
+	}
+
+	private Object parseSafely(String value) {
+
+		try {
+			return parse(value);
+		} catch (EvaluationException ee) {
+			// Reported during the evaluation
+		} catch (NumberFormatException nfe) {
+			// Reported during the evaluation
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param bins Bins that are sorted by {@link #BIN_ORDER}.
+	 */
+	private static boolean isDisjoint(List<DiscretizeBin> bins) {
+
+		for (int i = 1; i < bins.size(); i++) {
+			Interval previous = (bins.get(i - 1)).getInterval();
+			Interval interval = (bins.get(i)).getInterval();
+
+			Double rightMargin = previous.getRightMargin();
+			Double leftMargin = interval.getLeftMargin();
+
+			if (rightMargin == null || leftMargin == null) {
+				return false;
+			}
+
+			int order = rightMargin.compareTo(leftMargin);
+
+			if (order > 0) {
+				return false;
+			} else
+
+			if (order == 0) {
+
+				if (isRightClosed(previous.getClosure()) && isLeftClosed(interval.getClosure())) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean isLeftClosed(Interval.Closure closure) {
+
+		switch (closure) {
+		case CLOSED_OPEN:
+		case CLOSED_CLOSED:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static boolean isRightClosed(Interval.Closure closure) {
+
+		switch (closure) {
+		case OPEN_CLOSED:
+		case CLOSED_CLOSED:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Orders bins by their left margins. A missing left margin comes first, and a closed left
+	 * margin comes before an open one.
+	 */
+	private static final Comparator<DiscretizeBin> BIN_ORDER = new Comparator<DiscretizeBin>() {
+
+		public int compare(DiscretizeBin left, DiscretizeBin right) {
+			Interval leftInterval = left.getInterval();
+			Interval rightInterval = right.getInterval();
+
+			Double leftMargin = leftInterval.getLeftMargin();
+			Double rightMargin = rightInterval.getLeftMargin();
+
+			if (leftMargin == null || rightMargin == null) {
+				return (leftMargin == null ? (rightMargin == null ? 0 : -1) : 1);
+			}
+
+			int order = leftMargin.compareTo(rightMargin);
+			if (order != 0) {
+				return order;
+			}
+
+			boolean leftClosed = isLeftClosed(leftInterval.getClosure());
+			boolean rightClosed = isLeftClosed(rightInterval.getClosure());
+
+			return (leftClosed == rightClosed ? 0 : (leftClosed ? -1 : 1));
+		}
+	};
+}
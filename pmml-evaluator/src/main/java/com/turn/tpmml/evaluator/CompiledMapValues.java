@@ -0,0 +1,331 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldColumnPair;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.InlineTable;
+import com.turn.tpmml.MapValues;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link MapValues} whose {@link InlineTable} has been parsed in advance.
+ *
+ * {@link DiscretizationUtil#mapValue(MapValues, Map)} parses the table on every call, and then
+ * scans the rows linearly. Here, the table is parsed once, and the rows are indexed by the tuple
+ * of their input column values. A row matches if its input column values equal the field values
+ * in the runtime data type of the latter (see {@link ParameterUtil#equals(Object, String)}), so a
+ * separate index is built for every combination of runtime data types that is encountered. The
+ * first matching row wins, exactly as with the linear scan. If some input column value cannot be
+ * converted to the required data type, the linear scan is used instead, so that the error is
+ * reported the same way.
+ *
+ * Output values are parsed into the data type of the transformation in advance.
+ *
+ * @see EvaluationPlan#getMapValues(MapValues)
+ */
+class CompiledMapValues {
+
+	private EvaluationPlan evaluationPlan = null;
+
+	private DataType dataType = null;
+
+	private FieldName[] fields = null;
+
+	private int[] slots = null;
+
+	private String[] columns = null;
+
+	private List<Map<String, String>> rows = null;
+
+	private String[] outputs = null;
+
+	/**
+	 * Parsed output values. An element is <code>null</code> if the output value is
+	 * <code>null</code> or malformed.
+	 */
+	private Object[] parsedOutputs = null;
+
+	private String mapMissingTo = null;
+
+	private Object parsedMapMissingTo = null;
+
+	private String defaultValue = null;
+
+	private Object parsedDefaultValue = null;
+
+	private Map<Integer, Map<Object, Integer>> indexes =
+			new ConcurrentHashMap<Integer, Map<Object, Integer>>();
+
+	/**
+	 * @see #isCompilable(MapValues)
+	 */
+	CompiledMapValues(MapValues mapValues, EvaluationPlan evaluationPlan) {
+		List<FieldColumnPair> fieldColumnPairs = mapValues.getFieldColumnPairs();
+
+		this.evaluationPlan = evaluationPlan;
+		this.dataType = mapValues.getDataType();
+
+		int size = fieldColumnPairs.size();
+
+		this.fields = new FieldName[size];
+		this.slots = new int[size];
+		this.columns = new String[size];
+
+		for (int i = 0; i < size; i++) {
+			FieldColumnPair fieldColumnPair = fieldColumnPairs.get(i);
+
+			this.fields[i] = fieldColumnPair.getField();
+			this.slots[i] = (evaluationPlan != null ?
+					evaluationPlan.getSlot(this.fields[i]) : -1);
+			this.columns[i] = fieldColumnPair.getColumn();
+		}
+
+		this.rows = TableUtil.parse(mapValues.getInlineTable());
+
+		this.outputs = new String[this.rows.size()];
+		this.parsedOutputs = new Object[this.rows.size()];
+
+		for (int i = 0; i < this.rows.size(); i++) {
+			Map<String, String> row = this.rows.get(i);
+
+			this.outputs[i] = row.get(mapValues.getOutputColumn());
+			this.parsedOutputs[i] = parseSafely(this.outputs[i]);
+		}
+
+		this.mapMissingTo = mapValues.getMapMissingTo();
+		this.parsedMapMissingTo = parseSafely(this.mapMissingTo);
+
+		this.defaultValue = mapValues.getDefaultValue();
+		this.parsedDefaultValue = parseSafely(this.defaultValue);
+	}
+
+	/**
+	 * @return <code>true</code> if the transformation has an inline table, and its field-column
+	 *         pairs refer to distinct columns, <code>false</code> otherwise.
+	 */
+	static boolean isCompilable(MapValues mapValues) {
+
+		if (mapValues.getInlineTable() == null) {
+			return false;
+		}
+
+		List<FieldColumnPair> fieldColumnPairs = mapValues.getFieldColumnPairs();
+		if (fieldColumnPairs.isEmpty() || fieldColumnPairs.size() > MAX_COLUMNS) {
+			return false;
+		}
+
+		Set<String> columns = new HashSet<String>();
+
+		for (FieldColumnPair fieldColumnPair : fieldColumnPairs) {
+
+			if (!columns.add(fieldColumnPair.getColumn())) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @see ExpressionUtil#evaluateMapValues(MapValues, EvaluationContext)
+	 */
+	Object evaluate(EvaluationContext context) throws EvaluationException {
+		boolean bound = (context.getEvaluationPlan() == this.evaluationPlan);
+
+		Object[] values = new Object[this.fields.length];
+
+		int signature = 0;
+
+		for (int i = 0; i < values.length; i++) {
+			int slot = this.slots[i];
+
+			Object value = (bound && slot > -1 ? ExpressionUtil.evaluate(slot, context) :
+					ExpressionUtil.evaluate(this.fields[i], context));
+			if (value == null) {
+				return parse(this.mapMissingTo, this.parsedMapMissingTo);
+			}
+
+			values[i] = value;
+
+			signature |= encode(ParameterUtil.getDataType(value)) << (i * 2);
+		}
+
+		if (this.rows.isEmpty()) {
+			return parse(this.defaultValue, this.parsedDefaultValue);
+		}
+
+		Map<Object, Integer> index = getIndex(signature, values);
+
+		int row;
+
+		if (index != null) {
+			Integer position = index.get(values.length == 1 ? values[0] : Arrays.asList(values));
+			if (position == null) {
+				return parse(this.defaultValue, this.parsedDefaultValue);
+			}
+
+			row = position.intValue();
+		} else {
+			row = match(values);
+			if (row < 0) {
+				return parse(this.defaultValue, this.parsedDefaultValue);
+			}
+		}
+
+		String output = this.outputs[row];
+		if (output == null) {
+			throw new EvaluationException("There is no result here");
+		}
+
+		return parse(output, this.parsedOutputs[row]);
+	}
+
+	/**
+	 * @return The index for the runtime data types of the values, or <code>null</code> if the
+	 *         table cannot be indexed for them.
+	 */
+	private Map<Object, Integer> getIndex(int signature, Object[] values)
+			throws EvaluationException {
+		Integer key = Integer.valueOf(signature);
+
+		Map<Object, Integer> index = this.indexes.get(key);
+		if (index == null) {
+			index = createIndex(values);
+
+			this.indexes.put(key, index);
+		}
+
+		return (index != UNINDEXABLE ? index : null);
+	}
+
+	private Map<Object, Integer> createIndex(Object[] values) throws EvaluationException {
+		DataType[] dataTypes = new DataType[values.length];
+
+		for (int i = 0; i < values.length; i++) {
+			dataTypes[i] = ParameterUtil.getDataType(values[i]);
+		}
+
+		Map<Object, Integer> result = new HashMap<Object, Integer>(2 * this.rows.size());
+
+		rows: for (int i = 0; i < this.rows.size(); i++) {
+			Map<String, String> row = this.rows.get(i);
+
+			// A table row contains a certain number of input columns, plus an output column
+			if (values.length < (row.size() - 1)) {
+				continue rows;
+			}
+
+			Object[] cells = new Object[values.length];
+
+			for (int j = 0; j < values.length; j++) {
+				String cell = row.get(this.columns[j]);
+				if (cell == null) {
+					continue rows;
+				}
+
+				try {
+					cells[j] = ParameterUtil.cast(dataTypes[j], cell);
+				} catch (NumberFormatException nfe) {
+					return UNINDEXABLE;
+				}
+			}
+
+			Object cellKey = (cells.length == 1 ? cells[0] : Arrays.asList(cells));
+
+			if (!result.containsKey(cellKey)) {
+				result.put(cellKey, Integer.valueOf(i));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @see TableUtil#match(List, Map)
+	 */
+	private int match(Object[] values) throws EvaluationException {
+		Map<String, Object> columnValues = new LinkedHashMap<String, Object>();
+
+		for (int i = 0; i < values.length; i++) {
+			columnValues.put(this.columns[i], values[i]);
+		}
+
+		Map<String, String> row = TableUtil.match(this.rows, columnValues);
+
+		// Rows are compared by identity, because different rows may be equal
+		for (int i = 0; row != null && i < this.rows.size(); i++) {
+
+			if (this.rows.get(i) == row) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @param parsedValue The result of {@link #parseSafely(String)}.
+	 */
+	private Object parse(String value, Object parsedValue) throws EvaluationException {
+
+		if (parsedValue != null) {
+			return parsedValue;
+		}
+
+		// Let ParameterUtil report the error
+		return parse(value);
+	}
+
+	private Object parse(String value) throws EvaluationException {
+
+		if (value != null && this.dataType != null) {
+			return ParameterUtil.parse(this.dataType, value);
+		}
+
+		return value;
+	}
+
+	private Object parseSafely(String value) {
+
+		try {
+			return parse(value);
+		} catch (EvaluationException ee) {
+			// Reported during the evaluation
+		} catch (NumberFormatException nfe) {
+			// Reported during the evaluation
+		}
+
+		return null;
+	}
+
+	private static int encode(DataType dataType) {
+
+		switch (dataType) {
+		case STRING:
+			return 0;
+		case INTEGER:
+			return 1;
+		case FLOAT:
+			return 2;
+		case DOUBLE:
+			return 3;
+		default:
+			throw new IllegalArgumentException(dataType.name());
+		}
+	}
+
+	/**
+	 * The runtime data type of every column takes two bits of the signature.
+	 */
+	private static final int MAX_COLUMNS = 15;
+
+	private static final Map<Object, Integer> UNINDEXABLE = new HashMap<Object, Integer>();
+}
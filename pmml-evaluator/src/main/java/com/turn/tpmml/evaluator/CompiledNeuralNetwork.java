@@ -0,0 +1,653 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.ActivationFunctionType;
+import com.turn.tpmml.Connection;
+import com.turn.tpmml.DerivedField;
+import com.turn.tpmml.Expression;
+import com.turn.tpmml.NeuralInput;
+import com.turn.tpmml.NeuralLayer;
+import com.turn.tpmml.NeuralNetwork;
+import com.turn.tpmml.NeuralOutput;
+import com.turn.tpmml.Neuron;
+import com.turn.tpmml.NnNormalizationMethodType;
+import com.turn.tpmml.evaluator.KernelUtil.Kernel;
+import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Array-encoded form of a {@link NeuralNetwork}.
+ *
+ * Neural inputs and neurons are numbered in document order, and their outputs are kept in a
+ * single <code>double[]</code> buffer. A layer whose every neuron is connected to all the neurons
+ * of the previous layer (or to all the neural inputs) in document order is encoded as a dense
+ * row-major weight matrix, other layers as a compressed sparse row (CSR) matrix. Connections are
+ * summed up in document order, so the results are identical to those of
+ * {@link NeuralNetworkEvaluator#evaluateNeurons(EvaluationContext)}.
+ *
+ * The activation function, the threshold and the normalization method of a layer are resolved
+ * once, and so are the output neurons and the expressions of the neural outputs. The buffer is
+ * allocated once per evaluation context, so a context that is reused for a batch of records
+ * allocates it only once.
+ *
+ * In batch mode, the outputs of a block of records are kept in a neuron-major buffer, where the
+ * output of neuron <code>i</code> for record <code>r</code> is at <code>i * capacity + r</code>.
+ * Every layer is then computed as a matrix-matrix product, so that each weight is loaded once per
+ * block rather than once per record. The product is tiled over the neurons of the previous layer,
+ * so that the rows of the buffer that are being read stay in cache. The tiles are visited in
+ * ascending order, so every record still sums up its connections in document order.
+ *
+ * Dot products, weight rows and the exponent-based activation and normalization functions are
+ * delegated to the {@link KernelUtil#getKernel() kernel} that was in effect when the network was
+ * compiled.
+ */
+class CompiledNeuralNetwork {
+
+	private boolean supported = true;
+
+	private DerivedField[] inputFields = null;
+
+	private String[] ids = null;
+
+	private Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+	private Layer[] layers = null;
+
+	private String[] outputIds = null;
+
+	private int[] outputIndexes = null;
+
+	private Expression[] outputExpressions = null;
+
+	private Kernel kernel = KernelUtil.getKernel();
+
+	/**
+	 * @param outputExpressions The expressions of the neural outputs, with field references to
+	 *        derived fields resolved.
+	 */
+	CompiledNeuralNetwork(NeuralNetwork neuralNetwork, List<NeuralOutput> neuralOutputs,
+			Expression[] outputExpressions) {
+		List<NeuralInput> neuralInputs = (neuralNetwork.getNeuralInputs()).getNeuralInputs();
+		List<NeuralLayer> neuralLayers = neuralNetwork.getNeuralLayers();
+
+		int size = neuralInputs.size();
+		for (NeuralLayer neuralLayer : neuralLayers) {
+			size += (neuralLayer.getNeurons()).size();
+		}
+
+		this.inputFields = new DerivedField[neuralInputs.size()];
+		this.ids = new String[size];
+
+		int index = 0;
+
+		for (NeuralInput neuralInput : neuralInputs) {
+			this.inputFields[index] = neuralInput.getDerivedField();
+
+			declare(index, neuralInput.getId());
+
+			index++;
+		}
+
+		this.layers = new Layer[neuralLayers.size()];
+
+		int inputOffset = 0;
+		int inputSize = neuralInputs.size();
+
+		for (int i = 0; i < neuralLayers.size(); i++) {
+			NeuralLayer neuralLayer = neuralLayers.get(i);
+
+			Layer layer = new Layer(neuralNetwork, neuralLayer, index, inputOffset, inputSize);
+
+			this.supported &= layer.supported;
+
+			this.layers[i] = layer;
+
+			for (Neuron neuron : neuralLayer.getNeurons()) {
+				declare(index, neuron.getId());
+
+				index++;
+			}
+
+			// Connections are resolved after the neurons of the layer have been declared
+			this.supported &= layer.link(neuralLayer, this.indexes, this.ids);
+
+			inputOffset = layer.offset;
+			inputSize = layer.size;
+		}
+
+		this.outputIds = new String[neuralOutputs.size()];
+		this.outputIndexes = new int[neuralOutputs.size()];
+
+		for (int i = 0; i < neuralOutputs.size(); i++) {
+			String id = (neuralOutputs.get(i)).getOutputNeuron();
+
+			this.outputIds[i] = id;
+			this.outputIndexes[i] = getIndex(id);
+		}
+
+		this.outputExpressions = outputExpressions;
+	}
+
+	/**
+	 * @return <code>true</code> if the network can be evaluated in compiled form,
+	 *         <code>false</code> otherwise (duplicate neuron identifiers, connections from unknown
+	 *         neurons or within a layer, missing biases or missing activation functions).
+	 */
+	boolean isSupported() {
+		return this.supported;
+	}
+
+	/**
+	 * @return The number of neural inputs and neurons.
+	 */
+	int size() {
+		return this.ids.length;
+	}
+
+	int getInputSize() {
+		return this.inputFields.length;
+	}
+
+	int getOutputCount() {
+		return this.outputIds.length;
+	}
+
+	/**
+	 * @return The identifier of the output neuron of a neural output.
+	 */
+	String getOutputId(int output) {
+		return this.outputIds[output];
+	}
+
+	/**
+	 * @return The index of the output neuron of a neural output, or <code>-1</code>.
+	 */
+	int getOutputIndex(int output) {
+		return this.outputIndexes[output];
+	}
+
+	Expression getOutputExpression(int output) {
+		return this.outputExpressions[output];
+	}
+
+	/**
+	 * @return The outputs of all neural inputs and neurons. The buffer belongs to the context,
+	 *         and is overwritten by the next evaluation in the same context.
+	 *
+	 * @see #getOutputIndex(int)
+	 */
+	double[] evaluate(EvaluationContext context) throws EvaluationException {
+		double[] values = context.getDoubleBuffer(this, size());
+
+		for (int i = 0; i < this.inputFields.length; i++) {
+			DerivedField derivedField = this.inputFields[i];
+
+			Double value = (Double) ExpressionUtil.evaluate(derivedField, context);
+			if (value == null) {
+				throw new EvaluationException(TPMMLCause.MISSING_PARAMETER,
+						derivedField.getName());
+			}
+
+			values[i] = value.doubleValue();
+		}
+
+		for (Layer layer : this.layers) {
+			layer.evaluate(values, this.kernel);
+		}
+
+		return values;
+	}
+
+	/**
+	 * Evaluates the neural inputs of a single record into a batch buffer.
+	 *
+	 * @param values A buffer of <code>size() * capacity</code> elements.
+	 * @param record The position of the record in the block.
+	 *
+	 * @see #evaluateBatch(double[], int, int)
+	 */
+	void load(EvaluationContext context, double[] values, int capacity, int record)
+			throws EvaluationException {
+
+		for (int i = 0; i < this.inputFields.length; i++) {
+			DerivedField derivedField = this.inputFields[i];
+
+			Double value = (Double) ExpressionUtil.evaluate(derivedField, context);
+			if (value == null) {
+				throw new EvaluationException(TPMMLCause.MISSING_PARAMETER,
+						derivedField.getName());
+			}
+
+			values[i * capacity + record] = value.doubleValue();
+		}
+	}
+
+	/**
+	 * Evaluates the neurons of a block of records, whose neural inputs have been loaded.
+	 *
+	 * @param values A buffer of <code>size() * capacity</code> elements.
+	 * @param count The number of records in the block.
+	 *
+	 * @see #load(EvaluationContext, double[], int, int)
+	 */
+	void evaluateBatch(double[] values, int capacity, int count) throws EvaluationException {
+
+		for (Layer layer : this.layers) {
+			layer.evaluateBatch(values, capacity, count, this.kernel);
+		}
+	}
+
+	/**
+	 * @see NeuralNetworkEvaluator#evaluateRaw(EvaluationContext)
+	 */
+	Map<String, Double> toMap(double[] values) {
+		Map<String, Double> result = new LinkedHashMap<String, Double>();
+
+		for (int i = 0; i < this.ids.length; i++) {
+			result.put(this.ids[i], Double.valueOf(values[i]));
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The index of the neural input or neuron, or <code>-1</code>.
+	 */
+	private int getIndex(String id) {
+		Integer index = this.indexes.get(id);
+
+		return (index != null ? index.intValue() : -1);
+	}
+
+	private void declare(int index, String id) {
+		this.ids[index] = id;
+
+		if (this.indexes.put(id, Integer.valueOf(index)) != null) {
+			this.supported = false;
+		}
+	}
+
+	private static class Layer {
+
+		private boolean supported = true;
+
+		/**
+		 * The index of the first neuron of this layer.
+		 */
+		private int offset = 0;
+
+		/**
+		 * The number of neurons.
+		 */
+		private int size = 0;
+
+		/**
+		 * The index of the first neuron of the previous layer.
+		 */
+		private int inputOffset = 0;
+
+		/**
+		 * The number of neurons in the previous layer.
+		 */
+		private int inputSize = 0;
+
+		private double[] bias = null;
+
+		/**
+		 * <code>true</code> if the weights are a dense <code>size x inputSize</code> matrix,
+		 * <code>false</code> if they are a CSR matrix.
+		 */
+		private boolean dense = false;
+
+		private double[] weights = null;
+
+		private int[] rowOffsets = null;
+
+		private int[] columns = null;
+
+		private ActivationFunctionType activationFunction = null;
+
+		private double threshold = 0d;
+
+		private NnNormalizationMethodType normalizationMethod = null;
+
+		private Layer(NeuralNetwork neuralNetwork, NeuralLayer neuralLayer, int offset,
+				int inputOffset, int inputSize) {
+			List<Neuron> neurons = neuralLayer.getNeurons();
+
+			this.offset = offset;
+			this.size = neurons.size();
+			this.inputOffset = inputOffset;
+			this.inputSize = inputSize;
+
+			this.bias = new double[this.size];
+
+			for (int i = 0; i < this.size; i++) {
+				Double bias = (neurons.get(i)).getBias();
+
+				if (bias != null) {
+					this.bias[i] = bias.doubleValue();
+				} else {
+					this.supported = false;
+				}
+			}
+
+			this.activationFunction = neuralLayer.getActivationFunction();
+			if (this.activationFunction == null) {
+				this.activationFunction = neuralNetwork.getActivationFunction();
+			}
+
+			this.supported &= (this.activationFunction != null);
+
+			Double threshold = neuralLayer.getThreshold();
+			this.threshold = (threshold != null ? threshold.doubleValue() :
+					neuralNetwork.getThreshold());
+
+			this.normalizationMethod = neuralLayer.getNormalizationMethod();
+			if (this.normalizationMethod == null) {
+				this.normalizationMethod = neuralNetwork.getNormalizationMethod();
+			}
+		}
+
+		/**
+		 * @return <code>true</code> if all the connections could be resolved, <code>false</code>
+		 *         otherwise.
+		 */
+		private boolean link(NeuralLayer neuralLayer, Map<String, Integer> indexes,
+				String[] ids) {
+			List<Neuron> neurons = neuralLayer.getNeurons();
+
+			this.dense = true;
+
+			int count = 0;
+
+			for (Neuron neuron : neurons) {
+				List<Connection> connections = neuron.getConnections();
+
+				if (connections.size() != this.inputSize) {
+					this.dense = false;
+				}
+
+				for (int i = 0; i < connections.size(); i++) {
+					String from = (connections.get(i)).getFrom();
+
+					if (this.dense && !from.equals(ids[this.inputOffset + i])) {
+						this.dense = false;
+					}
+				}
+
+				count += connections.size();
+			}
+
+			if (this.dense) {
+				this.weights = new double[this.size * this.inputSize];
+
+				for (int i = 0; i < this.size; i++) {
+					List<Connection> connections = (neurons.get(i)).getConnections();
+
+					for (int j = 0; j < this.inputSize; j++) {
+						this.weights[i * this.inputSize + j] = (connections.get(j)).getWeight();
+					}
+				}
+
+				return true;
+			}
+
+			this.weights = new double[count];
+			this.rowOffsets = new int[this.size + 1];
+			this.columns = new int[count];
+
+			int position = 0;
+
+			for (int i = 0; i < this.size; i++) {
+				this.rowOffsets[i] = position;
+
+				for (Connection connection : (neurons.get(i)).getConnections()) {
+					Integer index = indexes.get(connection.getFrom());
+
+					// Connections within the layer are not supported
+					if (index == null || index.intValue() >= this.offset) {
+						return false;
+					}
+
+					this.weights[position] = connection.getWeight();
+					this.columns[position] = index.intValue();
+
+					position++;
+				}
+			}
+
+			this.rowOffsets[this.size] = position;
+
+			return true;
+		}
+
+		private void evaluate(double[] values, Kernel kernel) throws EvaluationException {
+			double[] bias = this.bias;
+			double[] weights = this.weights;
+
+			int offset = this.offset;
+
+			if (this.dense) {
+				int inputOffset = this.inputOffset;
+				int inputSize = this.inputSize;
+
+				for (int i = 0; i < this.size; i++) {
+					values[offset + i] = kernel.dot(bias[i], values, inputOffset, weights,
+							i * inputSize, inputSize);
+				}
+			} else {
+				int[] rowOffsets = this.rowOffsets;
+				int[] columns = this.columns;
+
+				for (int i = 0; i < this.size; i++) {
+					double z = bias[i];
+
+					for (int k = rowOffsets[i]; k < rowOffsets[i + 1]; k++) {
+						z += values[columns[k]] * weights[k];
+					}
+
+					values[offset + i] = z;
+				}
+			}
+
+			activate(values, offset, offset + this.size, kernel);
+
+			normalize(values, offset, offset + this.size, kernel);
+		}
+
+		private void evaluateBatch(double[] values, int capacity, int count, Kernel kernel)
+				throws EvaluationException {
+			double[] bias = this.bias;
+			double[] weights = this.weights;
+
+			int offset = this.offset;
+
+			for (int i = 0; i < this.size; i++) {
+				int out = (offset + i) * capacity;
+
+				for (int r = 0; r < count; r++) {
+					values[out + r] = bias[i];
+				}
+			}
+
+			if (this.dense) {
+				int inputOffset = this.inputOffset;
+				int inputSize = this.inputSize;
+
+				for (int tile = 0; tile < inputSize; tile += TILE_SIZE) {
+					int tileEnd = Math.min(tile + TILE_SIZE, inputSize);
+
+					for (int i = 0; i < this.size; i++) {
+						int out = (offset + i) * capacity;
+
+						int row = i * inputSize;
+
+						for (int j = tile; j < tileEnd; j++) {
+							kernel.axpy(weights[row + j], values, (inputOffset + j) * capacity,
+									values, out, count);
+						}
+					}
+				}
+			} else {
+				int[] rowOffsets = this.rowOffsets;
+				int[] columns = this.columns;
+
+				for (int i = 0; i < this.size; i++) {
+					int out = (offset + i) * capacity;
+
+					for (int k = rowOffsets[i]; k < rowOffsets[i + 1]; k++) {
+						kernel.axpy(weights[k], values, columns[k] * capacity, values, out,
+								count);
+					}
+				}
+			}
+
+			for (int i = 0; i < this.size; i++) {
+				int out = (offset + i) * capacity;
+
+				activate(values, out, out + count, kernel);
+			}
+
+			normalizeBatch(values, capacity, count, kernel);
+		}
+
+		/**
+		 * Replaces the net inputs of neurons <code>[from, to)</code> with their outputs.
+		 */
+		private void activate(double[] values, int from, int to, Kernel kernel)
+				throws EvaluationException {
+
+			switch (this.activationFunction) {
+			case THRESHOLD:
+				double threshold = this.threshold;
+				for (int i = from; i < to; i++) {
+					values[i] = values[i] > threshold ? 1.0 : 0.0;
+				}
+				break;
+			case LOGISTIC:
+				kernel.logistic(values, from, to);
+				break;
+			case TANH:
+				for (int i = from; i < to; i++) {
+					double z = values[i];
+
+					values[i] = (1.0 - Math.exp(-2.0 * z)) / (1.0 + Math.exp(-2.0 * z));
+				}
+				break;
+			case IDENTITY:
+				break;
+			case EXPONENTIAL:
+				kernel.exp(values, from, to);
+				break;
+			case RECIPROCAL:
+				for (int i = from; i < to; i++) {
+					values[i] = 1.0 / values[i];
+				}
+				break;
+			case SQUARE:
+				for (int i = from; i < to; i++) {
+					values[i] = values[i] * values[i];
+				}
+				break;
+			case GAUSS:
+				for (int i = from; i < to; i++) {
+					values[i] = Math.exp(-(values[i] * values[i]));
+				}
+				break;
+			case SINE:
+				for (int i = from; i < to; i++) {
+					values[i] = Math.sin(values[i]);
+				}
+				break;
+			case COSINE:
+				for (int i = from; i < to; i++) {
+					values[i] = Math.cos(values[i]);
+				}
+				break;
+			case ELLIOTT:
+				for (int i = from; i < to; i++) {
+					values[i] = values[i] / (1.0 + Math.abs(values[i]));
+				}
+				break;
+			case ARCTAN:
+				for (int i = from; i < to; i++) {
+					values[i] = Math.atan(values[i]);
+				}
+				break;
+			default:
+				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+						this.activationFunction.name());
+			}
+		}
+
+		private void normalize(double[] values, int from, int to, Kernel kernel)
+				throws EvaluationException {
+
+			switch (this.normalizationMethod) {
+			case NONE:
+				return;
+			case SOFTMAX:
+				kernel.exp(values, from, to);
+
+				double sum = 0.0;
+
+				for (int i = from; i < to; i++) {
+					sum += values[i];
+				}
+
+				for (int i = from; i < to; i++) {
+					values[i] = values[i] / sum;
+				}
+				return;
+			default:
+				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+						this.normalizationMethod.name());
+			}
+		}
+
+		/**
+		 * @see #normalize(double[], int, int, Kernel)
+		 */
+		private void normalizeBatch(double[] values, int capacity, int count, Kernel kernel)
+				throws EvaluationException {
+			int offset = this.offset;
+
+			switch (this.normalizationMethod) {
+			case NONE:
+				return;
+			case SOFTMAX:
+				double[] sums = new double[count];
+
+				for (int i = 0; i < this.size; i++) {
+					int out = (offset + i) * capacity;
+
+					kernel.exp(values, out, out + count);
+
+					kernel.axpy(1.0, values, out, sums, 0, count);
+				}
+
+				for (int i = 0; i < this.size; i++) {
+					int out = (offset + i) * capacity;
+
+					for (int r = 0; r < count; r++) {
+						values[out + r] = values[out + r] / sums[r];
+					}
+				}
+				return;
+			default:
+				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+						this.normalizationMethod.name());
+			}
+		}
+	}
+
+	/**
+	 * The number of neurons of the previous layer whose outputs are multiplied by the weights of
+	 * all the neurons of a layer before moving on.
+	 */
+	private static final int TILE_SIZE = 32;
+}
@@ -0,0 +1,227 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.LinearNorm;
+import com.turn.tpmml.NormContinuous;
+import com.turn.tpmml.OutlierTreatmentMethodType;
+
+import java.util.List;
+
+/**
+ * A {@link NormContinuous} whose {@link LinearNorm linear norms} have been converted to primitive
+ * arrays in advance.
+ *
+ * {@link NormalizationUtil#normalize(NormContinuous, double)} and
+ * {@link NormalizationUtil#denormalize(NormContinuous, double)} scan the linear norms for the
+ * segment that contains the value. Here, the segment is found by binary search. The result is
+ * computed with the same formula as before, so that it is identical to the last bit.
+ *
+ * @see EvaluationPlan#getNormContinuous(NormContinuous)
+ */
+class CompiledNormContinuous {
+
+	private EvaluationPlan evaluationPlan = null;
+
+	private FieldName field = null;
+
+	private int slot = -1;
+
+	private OutlierTreatmentMethodType outliers = null;
+
+	private Double mapMissingTo = null;
+
+	private double[] orig = null;
+
+	private double[] norm = null;
+
+	/**
+	 * <code>true</code> if the norm values are strictly ascending, <code>false</code> otherwise.
+	 */
+	private boolean normAscending = false;
+
+	/**
+	 * @see #isCompilable(NormContinuous)
+	 */
+	CompiledNormContinuous(NormContinuous normContinuous, EvaluationPlan evaluationPlan) {
+		this.evaluationPlan = evaluationPlan;
+		this.field = normContinuous.getField();
+		this.slot = (evaluationPlan != null ? evaluationPlan.getSlot(this.field) : -1);
+		this.outliers = normContinuous.getOutliers();
+		this.mapMissingTo = normContinuous.getMapMissingTo();
+
+		List<LinearNorm> linearNorms = normContinuous.getLinearNorms();
+
+		this.orig = new double[linearNorms.size()];
+		this.norm = new double[linearNorms.size()];
+
+		for (int i = 0; i < linearNorms.size(); i++) {
+			LinearNorm linearNorm = linearNorms.get(i);
+
+			this.orig[i] = linearNorm.getOrig();
+			this.norm[i] = linearNorm.getNorm();
+		}
+
+		this.normAscending = isAscending(this.norm);
+	}
+
+	/**
+	 * @return <code>true</code> if there are at least two linear norms, and their original values
+	 *         are strictly ascending, <code>false</code> otherwise.
+	 */
+	static boolean isCompilable(NormContinuous normContinuous) {
+		List<LinearNorm> linearNorms = normContinuous.getLinearNorms();
+
+		if (linearNorms.size() < 2) {
+			return false;
+		}
+
+		double[] orig = new double[linearNorms.size()];
+
+		for (int i = 0; i < linearNorms.size(); i++) {
+			orig[i] = (linearNorms.get(i)).getOrig();
+		}
+
+		return isAscending(orig);
+	}
+
+	/**
+	 * @see ExpressionUtil#evaluateNormContinuous(NormContinuous, EvaluationContext)
+	 */
+	Object evaluate(EvaluationContext context) throws EvaluationException {
+		int slot = this.slot;
+
+		Number value = (Number) (slot > -1 && context.getEvaluationPlan() == this.evaluationPlan ?
+				ExpressionUtil.evaluate(slot, context) :
+				ExpressionUtil.evaluate(this.field, context));
+		if (value == null) {
+			return this.mapMissingTo;
+		}
+
+		return normalize(value.doubleValue());
+	}
+
+	/**
+	 * @see NormalizationUtil#normalize(NormContinuous, double)
+	 */
+	double normalize(double value) throws EvaluationException {
+		double[] orig = this.orig;
+		double[] norm = this.norm;
+
+		int last = orig.length - 1;
+
+		int start;
+		int end;
+
+		if (value >= orig[0] && value <= orig[last]) {
+			start = search(orig, value);
+			end = start + 1;
+		} else {
+
+			switch (this.outliers) {
+			case AS_MISSING_VALUES:
+				if (this.mapMissingTo == null) {
+					throw new EvaluationException(
+							"There is no map available for the missing values.");
+				}
+				return this.mapMissingTo;
+			case AS_IS:
+				if (value < orig[0]) {
+					start = 0;
+					end = 1;
+				} else {
+					start = last - 1;
+					end = last;
+				}
+				break;
+			case AS_EXTREME_VALUES:
+				return value < orig[0] ? norm[0] : norm[last];
+			default:
+				start = 0;
+				end = last;
+				break;
+			}
+		}
+
+		return interpolate(norm, orig, start, end, value);
+	}
+
+	/**
+	 * @see NormalizationUtil#denormalize(NormContinuous, double)
+	 */
+	double denormalize(double value) {
+		double[] orig = this.orig;
+		double[] norm = this.norm;
+
+		int last = norm.length - 1;
+
+		int start;
+		int end;
+
+		if (this.normAscending && !Double.isNaN(value)) {
+			start = search(norm, value);
+			end = start + 1;
+		} else {
+			start = 0;
+			end = last;
+
+			for (int i = 1; i < last; i++) {
+
+				if (value >= norm[i]) {
+					start = i;
+				} else
+
+				if (value <= norm[i]) {
+					end = i;
+
+					break;
+				}
+			}
+		}
+
+		return interpolate(orig, norm, start, end, value);
+	}
+
+	/**
+	 * @return The index of the last inner point that is less than or equal to the value, or
+	 *         <code>0</code>. The value must not be NaN.
+	 */
+	private static int search(double[] points, double value) {
+		int low = 1;
+		int high = points.length - 2;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+
+			if (value >= points[middle]) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		return (high > 0 ? high : 0);
+	}
+
+	/**
+	 * Maps a value from the <code>from</code> scale to the <code>to</code> scale.
+	 */
+	private static double interpolate(double[] to, double[] from, int start, int end,
+			double value) {
+		double fromRange = from[end] - from[start];
+		double toRange = to[end] - to[start];
+
+		return to[start] + (value - from[start]) / fromRange * toRange;
+	}
+
+	private static boolean isAscending(double[] values) {
+
+		for (int i = 1; i < values.length; i++) {
+
+			if (!(values[i - 1] < values[i])) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,463 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.CategoricalPredictor;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldRef;
+import com.turn.tpmml.NumericPredictor;
+import com.turn.tpmml.PredictorTerm;
+import com.turn.tpmml.RegressionModel;
+import com.turn.tpmml.RegressionTable;
+import com.turn.tpmml.evaluator.KernelUtil.Kernel;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link RegressionTable regression tables} of a {@link RegressionModel}, converted to
+ * primitive arrays in advance.
+ *
+ * The input fields of all the tables are evaluated once per record. Numeric predictors and
+ * predictor terms form a shared feature vector of distinct <code>(field, exponent)</code> powers
+ * and factor products, and every table is a row of a coefficient matrix over that vector. A row
+ * lists the features in the document order of the table, so the sum is accumulated in the same
+ * order as before. If a table uses every feature in vector order, as is typical for multinomial
+ * models, its row is dense, and it is multiplied with the feature vector by the
+ * {@link KernelUtil#getKernel() kernel}. <code>Math.pow(x, 1)</code> and
+ * <code>Math.pow(x, 0)</code> are replaced with their values.
+ *
+ * The factors of predictor terms are distinct <code>(field, mapMissingTo)</code> pairs. Every
+ * factor is computed once per record, and shared by all the products that refer to it.
+ *
+ * Categorical predictors are grouped by field (see {@link CategoricalCoefficients}), so that a
+ * field costs a single hash lookup for all the tables.
+ *
+ * @see EvaluationPlan#getRegressionTables(RegressionModel)
+ */
+class CompiledRegressionTables {
+
+	private EvaluationPlan evaluationPlan = null;
+
+	private int size = 0;
+
+	private double[] intercepts = null;
+
+	private FieldName[] fields = null;
+
+	private int[] slots = null;
+
+	/**
+	 * The field of every factor.
+	 */
+	private int[] factorFields = null;
+
+	/**
+	 * The value of every factor if its field is missing, or <code>null</code>.
+	 */
+	private Double[] factorMissingValues = null;
+
+	/**
+	 * The field of every power feature, or <code>-1</code> for product features.
+	 */
+	private int[] featureFields = null;
+
+	private int[] featureExponents = null;
+
+	/**
+	 * The factors of every product feature, or <code>null</code> for power features.
+	 */
+	private int[][] featureFactors = null;
+
+	/**
+	 * The features of every table, or <code>null</code> if the table uses all the features in
+	 * order.
+	 */
+	private int[][] columns = null;
+
+	private double[][] coefficients = null;
+
+	private CategoricalCoefficients[] categoricalFields = null;
+
+	private Kernel kernel = KernelUtil.getKernel();
+
+	/**
+	 * @see #isCompilable(RegressionTable)
+	 */
+	CompiledRegressionTables(List<RegressionTable> regressionTables,
+			EvaluationPlan evaluationPlan) {
+		this.evaluationPlan = evaluationPlan;
+		this.size = regressionTables.size();
+
+		this.intercepts = new double[this.size];
+		this.columns = new int[this.size][];
+		this.coefficients = new double[this.size][];
+
+		Map<String, Integer> features = new LinkedHashMap<String, Integer>();
+		List<Integer> featureFields = new ArrayList<Integer>();
+		List<Integer> featureExponents = new ArrayList<Integer>();
+		List<int[]> featureFactors = new ArrayList<int[]>();
+
+		Map<String, Integer> factors = new LinkedHashMap<String, Integer>();
+		List<Integer> factorFields = new ArrayList<Integer>();
+		List<Double> factorMissingValues = new ArrayList<Double>();
+
+		Map<FieldName, Integer> fields = new LinkedHashMap<FieldName, Integer>();
+
+		Map<FieldName, CategoricalCoefficients> categoricalFields =
+				new LinkedHashMap<FieldName, CategoricalCoefficients>();
+
+		for (int i = 0; i < this.size; i++) {
+			RegressionTable regressionTable = regressionTables.get(i);
+
+			this.intercepts[i] = regressionTable.getIntercept();
+
+			List<NumericPredictor> numericPredictors = regressionTable.getNumericPredictors();
+			List<PredictorTerm> predictorTerms = regressionTable.getPredictorTerms();
+
+			int[] columns = new int[numericPredictors.size() + predictorTerms.size()];
+			double[] coefficients = new double[columns.length];
+
+			int column = 0;
+
+			for (NumericPredictor numericPredictor : numericPredictors) {
+				int field = declare(fields, numericPredictor.getName());
+
+				String key = field + "^" + numericPredictor.getExponent();
+
+				Integer feature = features.get(key);
+				if (feature == null) {
+					feature = Integer.valueOf(features.size());
+
+					features.put(key, feature);
+					featureFields.add(Integer.valueOf(field));
+					featureExponents.add(Integer.valueOf(numericPredictor.getExponent()));
+					featureFactors.add(null);
+				}
+
+				columns[column] = feature.intValue();
+				coefficients[column] = numericPredictor.getCoefficient();
+
+				column++;
+			}
+
+			for (PredictorTerm predictorTerm : predictorTerms) {
+				List<FieldRef> fieldRefs = predictorTerm.getFieldReves();
+
+				int[] termFactors = new int[fieldRefs.size()];
+
+				StringBuilder sb = new StringBuilder("*");
+
+				for (int j = 0; j < termFactors.length; j++) {
+					FieldRef fieldRef = fieldRefs.get(j);
+
+					int field = declare(fields, fieldRef.getField());
+
+					String factorKey = field + "|" + fieldRef.getMapMissingTo();
+
+					Integer factor = factors.get(factorKey);
+					if (factor == null) {
+						factor = Integer.valueOf(factors.size());
+
+						factors.put(factorKey, factor);
+						factorFields.add(Integer.valueOf(field));
+						factorMissingValues.add(parseSafely(fieldRef.getMapMissingTo()));
+					}
+
+					termFactors[j] = factor.intValue();
+
+					sb.append(' ').append(factor);
+				}
+
+				String key = sb.toString();
+
+				Integer feature = features.get(key);
+				if (feature == null) {
+					feature = Integer.valueOf(features.size());
+
+					features.put(key, feature);
+					featureFields.add(Integer.valueOf(-1));
+					featureExponents.add(Integer.valueOf(0));
+					featureFactors.add(termFactors);
+				}
+
+				columns[column] = feature.intValue();
+				coefficients[column] = predictorTerm.getCoefficient();
+
+				column++;
+			}
+
+			this.columns[i] = columns;
+			this.coefficients[i] = coefficients;
+
+			List<CategoricalPredictor> categoricalPredictors =
+					regressionTable.getCategoricalPredictors();
+			for (CategoricalPredictor categoricalPredictor : categoricalPredictors) {
+				FieldName name = categoricalPredictor.getName();
+
+				CategoricalCoefficients categoricalField = categoricalFields.get(name);
+				if (categoricalField == null) {
+					categoricalField = new CategoricalCoefficients(name,
+							getSlot(evaluationPlan, name), this.size);
+
+					categoricalFields.put(name, categoricalField);
+				}
+
+				categoricalField.add(i, categoricalPredictor);
+			}
+		}
+
+		// A dense row must span the whole feature vector
+		for (int i = 0; i < this.size; i++) {
+
+			if (this.columns[i].length == features.size() && isOrdered(this.columns[i])) {
+				this.columns[i] = null;
+			}
+		}
+
+		this.fields = (fields.keySet()).toArray(new FieldName[fields.size()]);
+		this.slots = new int[this.fields.length];
+
+		for (int i = 0; i < this.fields.length; i++) {
+			this.slots[i] = getSlot(evaluationPlan, this.fields[i]);
+		}
+
+		this.factorFields = toArray(factorFields);
+		this.factorMissingValues =
+				factorMissingValues.toArray(new Double[factorMissingValues.size()]);
+
+		this.featureFields = toArray(featureFields);
+		this.featureExponents = toArray(featureExponents);
+		this.featureFactors = featureFactors.toArray(new int[featureFactors.size()][]);
+
+		this.categoricalFields = (categoricalFields.values())
+				.toArray(new CategoricalCoefficients[categoricalFields.size()]);
+	}
+
+	/**
+	 * @return <code>true</code> if the <code>mapMissingTo</code> values of all the factors of
+	 *         predictor terms are numbers, and all the categorical predictors have a value and a
+	 *         finite coefficient, <code>false</code> otherwise.
+	 */
+	static boolean isCompilable(RegressionTable regressionTable) {
+
+		List<PredictorTerm> predictorTerms = regressionTable.getPredictorTerms();
+		for (PredictorTerm predictorTerm : predictorTerms) {
+
+			for (FieldRef fieldRef : predictorTerm.getFieldReves()) {
+				String mapMissingTo = fieldRef.getMapMissingTo();
+
+				if (mapMissingTo != null && parseSafely(mapMissingTo) == null) {
+					return false;
+				}
+			}
+		}
+
+		List<CategoricalPredictor> categoricalPredictors =
+				regressionTable.getCategoricalPredictors();
+		for (CategoricalPredictor categoricalPredictor : categoricalPredictors) {
+			double coefficient = categoricalPredictor.getCoefficient();
+
+			// A non-matching category contributes coefficient * 0, which is NaN for infinities
+			if (categoricalPredictor.getValue() == null || Double.isNaN(coefficient) ||
+					Double.isInfinite(coefficient)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return The number of tables.
+	 */
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return The value of every table, or <code>null</code> if some numeric predictor is
+	 *         missing.
+	 *
+	 * @see RegressionModelEvaluator
+	 */
+	double[] evaluate(EvaluationContext context) throws EvaluationException {
+		boolean bound = (context.getEvaluationPlan() == this.evaluationPlan);
+
+		int fieldCount = this.fields.length;
+
+		double[] fieldValues = new double[fieldCount];
+		boolean[] fieldMissing = new boolean[fieldCount];
+
+		for (int i = 0; i < fieldCount; i++) {
+			Object value = evaluate(this.fields[i], this.slots[i], bound, context);
+
+			if (value == null) {
+				fieldMissing[i] = true;
+
+				continue;
+			}
+
+			fieldValues[i] = (ParameterUtil.toDouble(value)).doubleValue();
+		}
+
+		int[] factorFields = this.factorFields;
+
+		double[] factorValues = new double[factorFields.length];
+
+		for (int i = 0; i < factorValues.length; i++) {
+			int field = factorFields[i];
+
+			if (fieldMissing[field]) {
+				Double missingValue = this.factorMissingValues[i];
+
+				// "if the input value is missing then the result evaluates to a missing value"
+				if (missingValue == null) {
+					return null;
+				}
+
+				factorValues[i] = missingValue.doubleValue();
+			} else {
+				factorValues[i] = fieldValues[field];
+			}
+		}
+
+		int[] featureFields = this.featureFields;
+		int[] featureExponents = this.featureExponents;
+
+		double[] features = new double[featureFields.length];
+
+		for (int i = 0; i < features.length; i++) {
+			int field = featureFields[i];
+
+			if (field < 0) {
+				double product = 1d;
+
+				for (int factor : this.featureFactors[i]) {
+					product *= factorValues[factor];
+				}
+
+				features[i] = product;
+
+				continue;
+			}
+
+			// "if the input value is missing then the result evaluates to a missing value"
+			if (fieldMissing[field]) {
+				return null;
+			}
+
+			double x = fieldValues[field];
+
+			switch (featureExponents[i]) {
+			case 0:
+				features[i] = 1d;
+				break;
+			case 1:
+				features[i] = x;
+				break;
+			default:
+				features[i] = Math.pow(x, featureExponents[i]);
+				break;
+			}
+		}
+
+		double[] result = new double[this.size];
+
+		for (int i = 0; i < this.size; i++) {
+			int[] columns = this.columns[i];
+			double[] coefficients = this.coefficients[i];
+
+			if (columns == null) {
+				result[i] = this.kernel.dot(this.intercepts[i], features, 0, coefficients, 0,
+						coefficients.length);
+			} else {
+				double sum = this.intercepts[i];
+
+				for (int j = 0; j < columns.length; j++) {
+					sum += features[columns[j]] * coefficients[j];
+				}
+
+				result[i] = sum;
+			}
+		}
+
+		for (CategoricalCoefficients categoricalField : this.categoricalFields) {
+			Object value = evaluate(categoricalField.getName(), categoricalField.getSlot(), bound,
+					context);
+
+			// "if the input value is missing then the product is ignored"
+			if (value == null) {
+				continue;
+			}
+
+			double[] coefficients = categoricalField.getCoefficients(value);
+			if (coefficients == null) {
+				continue;
+			}
+
+			for (int i = 0; i < this.size; i++) {
+				result[i] += coefficients[i];
+			}
+		}
+
+		return result;
+	}
+
+	private static Object evaluate(FieldName name, int slot, boolean bound,
+			EvaluationContext context) throws EvaluationException {
+		return (bound && slot > -1 ? ExpressionUtil.evaluate(slot, context) :
+				ExpressionUtil.evaluate(name, context));
+	}
+
+	private static int getSlot(EvaluationPlan evaluationPlan, FieldName name) {
+		return (evaluationPlan != null ? evaluationPlan.getSlot(name) : -1);
+	}
+
+	private static int declare(Map<FieldName, Integer> fields, FieldName name) {
+		Integer index = fields.get(name);
+
+		if (index == null) {
+			index = Integer.valueOf(fields.size());
+
+			fields.put(name, index);
+		}
+
+		return index.intValue();
+	}
+
+	private static Double parseSafely(String value) {
+
+		if (value == null) {
+			return null;
+		}
+
+		try {
+			return Double.valueOf(value);
+		} catch (NumberFormatException nfe) {
+			return null;
+		}
+	}
+
+	private static int[] toArray(List<Integer> values) {
+		int[] result = new int[values.size()];
+
+		for (int i = 0; i < result.length; i++) {
+			result[i] = (values.get(i)).intValue();
+		}
+
+		return result;
+	}
+
+	private static boolean isOrdered(int[] columns) {
+
+		for (int i = 0; i < columns.length; i++) {
+
+			if (columns[i] != i) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,192 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Attribute;
+import com.turn.tpmml.Characteristic;
+import com.turn.tpmml.Scorecard;
+import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
+
+import java.util.List;
+
+/**
+ * The {@link Characteristic characteristics} of a {@link Scorecard}, converted to primitive
+ * arrays in advance.
+ *
+ * The matching attribute of every characteristic is found by a {@link CompiledCharacteristic}.
+ * The partial scores, the differences from the baseline score and the reason codes of all the
+ * attributes are kept in flat arrays, which are indexed by the offset of the characteristic plus
+ * the index of the attribute.
+ *
+ * @see EvaluationPlan#getScorecard(Scorecard)
+ */
+class CompiledScorecard {
+
+	private CompiledCharacteristic[] characteristics = null;
+
+	/**
+	 * The index of the first attribute of every characteristic.
+	 */
+	private int[] offsets = null;
+
+	private double[] partialScores = null;
+
+	/**
+	 * The baseline score minus the partial score of every attribute.
+	 */
+	private double[] pointsBelow = null;
+
+	/**
+	 * The partial score minus the baseline score of every attribute.
+	 */
+	private double[] pointsAbove = null;
+
+	private String[] reasonCodes = null;
+
+	/**
+	 * <code>true</code> if the characteristic of the attribute has a baseline score,
+	 * <code>false</code> otherwise.
+	 */
+	private boolean[] baselines = null;
+
+	/**
+	 * @see #isCompilable(Scorecard)
+	 */
+	CompiledScorecard(Scorecard scorecard, EvaluationPlan evaluationPlan) {
+		List<Characteristic> characteristics =
+				(scorecard.getCharacteristics()).getCharacteristics();
+
+		this.characteristics = new CompiledCharacteristic[characteristics.size()];
+		this.offsets = new int[characteristics.size() + 1];
+
+		for (int i = 0; i < characteristics.size(); i++) {
+			Characteristic characteristic = characteristics.get(i);
+
+			this.characteristics[i] = new CompiledCharacteristic(characteristic, evaluationPlan);
+			this.offsets[i + 1] = this.offsets[i] + (characteristic.getAttributes()).size();
+		}
+
+		int count = this.offsets[characteristics.size()];
+
+		this.partialScores = new double[count];
+		this.pointsBelow = new double[count];
+		this.pointsAbove = new double[count];
+		this.reasonCodes = new String[count];
+		this.baselines = new boolean[count];
+
+		for (int i = 0; i < characteristics.size(); i++) {
+			Characteristic characteristic = characteristics.get(i);
+
+			Double baselineScore = characteristic.getBaselineScore();
+
+			List<Attribute> attributes = characteristic.getAttributes();
+			for (int j = 0; j < attributes.size(); j++) {
+				Attribute attribute = attributes.get(j);
+
+				int index = this.offsets[i] + j;
+
+				double partialScore = (attribute.getPartialScore()).doubleValue();
+
+				this.partialScores[index] = partialScore;
+
+				if (baselineScore != null) {
+					this.pointsBelow[index] = baselineScore.doubleValue() - partialScore;
+					this.pointsAbove[index] = partialScore - baselineScore.doubleValue();
+					this.baselines[index] = true;
+				}
+
+				String reasonCode = attribute.getReasonCode();
+				if (reasonCode == null || reasonCode.isEmpty()) {
+					reasonCode = characteristic.getReasonCode();
+				}
+
+				this.reasonCodes[index] = reasonCode;
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if all the attributes have a partial score, <code>false</code>
+	 *         otherwise.
+	 */
+	static boolean isCompilable(Scorecard scorecard) {
+		List<Characteristic> characteristics =
+				(scorecard.getCharacteristics()).getCharacteristics();
+
+		for (Characteristic characteristic : characteristics) {
+
+			for (Attribute attribute : characteristic.getAttributes()) {
+
+				if (attribute.getPartialScore() == null) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return The number of characteristics.
+	 */
+	int size() {
+		return this.characteristics.length;
+	}
+
+	CompiledCharacteristic getCharacteristic(int index) {
+		return this.characteristics[index];
+	}
+
+	/**
+	 * @return A ranking of the context, with room for the reason codes of all the
+	 *         characteristics. Its content is replaced by the next evaluation in the same context.
+	 */
+	ReasonCodeRanking getRanking(EvaluationContext context) {
+		ReasonCodeRanking result = (ReasonCodeRanking) context.getBuffer(this);
+
+		if (result == null) {
+			result = new ReasonCodeRanking(size());
+
+			context.putBuffer(this, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param ranking The ranking of reason codes, or <code>null</code>.
+	 * @param pointsBelow <code>true</code> if reason codes are ranked by the baseline score minus
+	 *        the partial score, <code>false</code> if by the partial score minus the baseline
+	 *        score.
+	 *
+	 * @see ScorecardEvaluator
+	 */
+	double evaluate(EvaluationContext context, ReasonCodeRanking ranking, boolean pointsBelow)
+			throws EvaluationException {
+		double score = 0.0;
+
+		double[] differences = (pointsBelow ? this.pointsBelow : this.pointsAbove);
+
+		for (int i = 0; i < this.characteristics.length; i++) {
+			int attribute = this.characteristics[i].find(context);
+
+			if (attribute < 0) {
+				continue;
+			}
+
+			int index = this.offsets[i] + attribute;
+
+			score += this.partialScores[index];
+
+			if (ranking == null) {
+				continue;
+			}
+
+			if (!this.baselines[index]) {
+				throw new EvaluationException(TPMMLCause.MISSING_PARAMETER, "baselineScore");
+			}
+
+			ranking.add(differences[index], this.reasonCodes[index]);
+		}
+
+		return score;
+	}
+}
@@ -0,0 +1,169 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
+
+/**
+ * A {@link SimplePredicate} whose reference value has been parsed in advance.
+ *
+ * {@link ParameterUtil#compare(Object, String)} parses the reference value into the runtime data
+ * type of the field value on every call. Here, the reference value is parsed into all numeric
+ * representations once, so that the comparison is performed on primitive values. The field value
+ * is still compared in its own runtime data type, so the results are identical.
+ *
+ * @see EvaluationPlan#getSimplePredicate(SimplePredicate)
+ */
+class CompiledSimplePredicate {
+
+	private EvaluationPlan evaluationPlan = null;
+
+	private FieldName field = null;
+
+	private int slot = -1;
+
+	private SimplePredicate.Operator operator = null;
+
+	private String value = null;
+
+	private double doubleValue = Double.NaN;
+
+	private boolean doubleValid = false;
+
+	private float floatValue = Float.NaN;
+
+	private boolean floatValid = false;
+
+	private int intValue = 0;
+
+	private boolean intValid = false;
+
+	CompiledSimplePredicate(SimplePredicate simplePredicate, EvaluationPlan evaluationPlan) {
+		this.evaluationPlan = evaluationPlan;
+		this.field = simplePredicate.getField();
+		this.slot = (evaluationPlan != null ? evaluationPlan.getSlot(this.field) : -1);
+		this.operator = simplePredicate.getOperator();
+		this.value = simplePredicate.getValue();
+
+		String value = this.value;
+		if (value == null) {
+			return;
+		}
+
+		try {
+			this.doubleValue = Double.parseDouble(value);
+			this.doubleValid = true;
+		} catch (NumberFormatException nfe) {
+			// Ignored
+		}
+
+		try {
+			this.floatValue = Float.parseFloat(value);
+			this.floatValid = true;
+		} catch (NumberFormatException nfe) {
+			// Ignored
+		}
+
+		try {
+			this.intValue = Integer.parseInt(value);
+			this.intValid = true;
+		} catch (NumberFormatException nfe) {
+			// Ignored
+		}
+	}
+
+	/**
+	 * @return The result of the predicate, or <code>null</code> if the field value is missing.
+	 *
+	 * @see PredicateUtil#evaluateSimplePredicate(SimplePredicate, EvaluationContext)
+	 */
+	Boolean evaluate(EvaluationContext context) throws EvaluationException {
+		Object value = getValue(context);
+
+		SimplePredicate.Operator operator = this.operator;
+		switch (operator) {
+		case IS_MISSING:
+			return Boolean.valueOf(value == null);
+		case IS_NOT_MISSING:
+			return Boolean.valueOf(value != null);
+		default:
+			break;
+		}
+
+		if (value == null) {
+			return null;
+		}
+
+		int order = compare(value);
+
+		switch (operator) {
+		case EQUAL:
+			return Boolean.valueOf(order == 0);
+		case NOT_EQUAL:
+			return Boolean.valueOf(order != 0);
+		case LESS_THAN:
+			return Boolean.valueOf(order < 0);
+		case LESS_OR_EQUAL:
+			return Boolean.valueOf(order <= 0);
+		case GREATER_THAN:
+			return Boolean.valueOf(order > 0);
+		case GREATER_OR_EQUAL:
+			return Boolean.valueOf(order >= 0);
+		default:
+			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+					operator.name());
+		}
+	}
+
+	Object getValue(EvaluationContext context) throws EvaluationException {
+		int slot = this.slot;
+
+		if (slot > -1 && context.getEvaluationPlan() == this.evaluationPlan) {
+			return ExpressionUtil.evaluate(slot, context);
+		}
+
+		return ExpressionUtil.evaluate(this.field, context);
+	}
+
+	/**
+	 * @param value The field value. Must not be <code>null</code>.
+	 *
+	 * @see ParameterUtil#compare(Object, String)
+	 */
+	int compare(Object value) throws EvaluationException {
+
+		if (value instanceof Double) {
+
+			if (this.doubleValid) {
+				return Double.compare(((Double) value).doubleValue(), this.doubleValue);
+			}
+		} else
+
+		if (value instanceof Float) {
+
+			if (this.floatValid) {
+				return Float.compare(((Float) value).floatValue(), this.floatValue);
+			}
+		} else
+
+		if (value instanceof Integer) {
+
+			if (this.intValid) {
+				int left = ((Integer) value).intValue();
+				int right = this.intValue;
+
+				return (left < right ? -1 : (left == right ? 0 : 1));
+			}
+		} else
+
+		if (value instanceof String) {
+
+			if (this.value != null) {
+				return ((String) value).compareTo(this.value);
+			}
+		}
+
+		// Let ParameterUtil report the error
+		return ParameterUtil.compare(value, this.value);
+	}
+}
@@ -0,0 +1,332 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.False;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.NoTrueChildStrategyType;
+import com.turn.tpmml.Node;
+import com.turn.tpmml.Predicate;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.True;
+import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Array-encoded form of a tree of {@link Node nodes}.
+ *
+ * Nodes are numbered in depth-first order, the root node being <code>0</code>. The structure of
+ * the tree is held in the <code>firstChild</code> and <code>nextSibling</code> arrays, and the
+ * predicates in the <code>op</code>, <code>slot</code> and <code>threshold</code> arrays. Simple
+ * predicates and constant predicates are evaluated directly (non-double field values are compared
+ * by {@link CompiledSimplePredicate}), all other predicates are delegated to
+ * {@link PredicateUtil}. The original nodes are kept for decorating the results.
+ *
+ * The tree is traversed iteratively, without allocating any objects.
+ */
+class CompiledTree {
+
+	private EvaluationPlan evaluationPlan = null;
+
+	private NoTrueChildStrategyType noTrueChildStrategy = null;
+
+	private Node[] nodes = null;
+
+	private int[] firstChild = null;
+
+	private int[] nextSibling = null;
+
+	private byte[] op = null;
+
+	private int[] slot = null;
+
+	private FieldName[] field = null;
+
+	private double[] threshold = null;
+
+	/**
+	 * <code>true</code> if the threshold parses as a double, <code>false</code> otherwise.
+	 */
+	private boolean[] numeric = null;
+
+	private Predicate[] predicate = null;
+
+	private CompiledSimplePredicate[] simplePredicate = null;
+
+	CompiledTree(Node root, NoTrueChildStrategyType noTrueChildStrategy,
+			EvaluationPlan evaluationPlan) {
+		this.evaluationPlan = evaluationPlan;
+		this.noTrueChildStrategy = noTrueChildStrategy;
+
+		List<Node> nodes = new ArrayList<Node>();
+		collect(root, nodes);
+
+		int size = nodes.size();
+
+		this.nodes = nodes.toArray(new Node[size]);
+		this.firstChild = new int[size];
+		this.nextSibling = new int[size];
+		this.op = new byte[size];
+		this.slot = new int[size];
+		this.field = new FieldName[size];
+		this.threshold = new double[size];
+		this.numeric = new boolean[size];
+		this.predicate = new Predicate[size];
+		this.simplePredicate = new CompiledSimplePredicate[size];
+
+		link(0);
+
+		for (int i = 0; i < size; i++) {
+			compile(i, (this.nodes[i]).getPredicate());
+		}
+	}
+
+	/**
+	 * @return The number of nodes.
+	 */
+	int size() {
+		return this.nodes.length;
+	}
+
+	/**
+	 * Finds the node that determines the result, following the semantics of
+	 * {@link TreeModelEvaluator2#evaluateTree(EvaluationContext)}: the first true child is
+	 * selected at every level, until a node without true children is reached.
+	 *
+	 * @return The node, or <code>null</code>.
+	 */
+	Node evaluate(EvaluationContext context) throws EvaluationException {
+		boolean bound = (context.getEvaluationPlan() == this.evaluationPlan);
+
+		int node = 0;
+
+		if (test(node, context, bound)) {
+
+			descend: while (true) {
+
+				for (int child = this.firstChild[node]; child > -1;
+						child = this.nextSibling[child]) {
+
+					if (test(child, context, bound)) {
+						node = child;
+
+						continue descend;
+					}
+				}
+
+				break;
+			}
+		}
+
+		if (node != 0) {
+			return this.nodes[node];
+		}
+
+		switch (this.noTrueChildStrategy) {
+		case RETURN_NULL_PREDICTION:
+			return null;
+		case RETURN_LAST_PREDICTION:
+			return this.nodes[0];
+		default:
+			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+					this.noTrueChildStrategy.name());
+		}
+	}
+
+	private boolean test(int node, EvaluationContext context, boolean bound)
+			throws EvaluationException {
+		byte op = this.op[node];
+
+		switch (op) {
+		case OP_TRUE:
+			return true;
+		case OP_FALSE:
+			return false;
+		case OP_PREDICATE:
+			return toBoolean(PredicateUtil.evaluate(this.predicate[node], context));
+		case OP_MISSING:
+			throw new EvaluationException("No predicate found for a node.");
+		default:
+			break;
+		}
+
+		int slot = this.slot[node];
+
+		Object value = (bound && slot > -1 ? ExpressionUtil.evaluate(slot, context) :
+				ExpressionUtil.evaluate(this.field[node], context));
+
+		switch (op) {
+		case OP_IS_MISSING:
+			return (value == null);
+		case OP_IS_NOT_MISSING:
+			return (value != null);
+		default:
+			break;
+		}
+
+		if (value == null) {
+			return toBoolean(null);
+		}
+
+		int order;
+
+		if (value instanceof Double && this.numeric[node]) {
+			order = Double.compare(((Double) value).doubleValue(), this.threshold[node]);
+		} else {
+			order = this.simplePredicate[node].compare(value);
+		}
+
+		switch (op) {
+		case OP_EQUAL:
+			return (order == 0);
+		case OP_NOT_EQUAL:
+			return (order != 0);
+		case OP_LESS_THAN:
+			return (order < 0);
+		case OP_LESS_OR_EQUAL:
+			return (order <= 0);
+		case OP_GREATER_THAN:
+			return (order > 0);
+		case OP_GREATER_OR_EQUAL:
+			return (order >= 0);
+		default:
+			throw new AssertionError();
+		}
+	}
+
+	private void compile(int node, Predicate predicate) {
+		this.predicate[node] = predicate;
+		this.slot[node] = -1;
+
+		if (predicate == null) {
+			this.op[node] = OP_MISSING;
+		} else
+
+		if (predicate instanceof True) {
+			this.op[node] = OP_TRUE;
+		} else
+
+		if (predicate instanceof False) {
+			this.op[node] = OP_FALSE;
+		} else
+
+		if (predicate instanceof SimplePredicate) {
+			SimplePredicate simplePredicate = (SimplePredicate) predicate;
+
+			this.op[node] = encode(simplePredicate.getOperator());
+			this.field[node] = simplePredicate.getField();
+
+			if (this.evaluationPlan != null) {
+				this.slot[node] = this.evaluationPlan.getSlot(simplePredicate.getField());
+			}
+
+			CompiledSimplePredicate compiledSimplePredicate = null;
+
+			if (this.evaluationPlan != null) {
+				compiledSimplePredicate = this.evaluationPlan.getSimplePredicate(simplePredicate);
+			}
+
+			if (compiledSimplePredicate == null) {
+				compiledSimplePredicate =
+						new CompiledSimplePredicate(simplePredicate, this.evaluationPlan);
+			}
+
+			this.simplePredicate[node] = compiledSimplePredicate;
+
+			String value = simplePredicate.getValue();
+			if (value != null) {
+
+				try {
+					this.threshold[node] = Double.parseDouble(value);
+					this.numeric[node] = true;
+				} catch (NumberFormatException nfe) {
+					// Compared by CompiledSimplePredicate
+				}
+			}
+		} else {
+			this.op[node] = OP_PREDICATE;
+		}
+	}
+
+	/**
+	 * Sets up the links of a node and all its descendants.
+	 *
+	 * @return The number of the node that follows the subtree in depth-first order.
+	 */
+	private int link(int node) {
+		List<Node> children = (this.nodes[node]).getNodes();
+
+		this.firstChild[node] = (children.isEmpty() ? -1 : node + 1);
+		this.nextSibling[node] = -1;
+
+		int child = node + 1;
+		int previous = -1;
+
+		for (int i = 0; i < children.size(); i++) {
+
+			if (previous > -1) {
+				this.nextSibling[previous] = child;
+			}
+
+			previous = child;
+
+			child = link(child);
+		}
+
+		return child;
+	}
+
+	private static void collect(Node node, List<Node> nodes) {
+		nodes.add(node);
+
+		for (Node child : node.getNodes()) {
+			collect(child, nodes);
+		}
+	}
+
+	private static boolean toBoolean(Boolean value) throws EvaluationException {
+
+		if (value == null) {
+			throw new EvaluationException("A node has been evaluated to null.");
+		}
+
+		return value.booleanValue();
+	}
+
+	private static byte encode(SimplePredicate.Operator operator) {
+
+		switch (operator) {
+		case EQUAL:
+			return OP_EQUAL;
+		case NOT_EQUAL:
+			return OP_NOT_EQUAL;
+		case LESS_THAN:
+			return OP_LESS_THAN;
+		case LESS_OR_EQUAL:
+			return OP_LESS_OR_EQUAL;
+		case GREATER_THAN:
+			return OP_GREATER_THAN;
+		case GREATER_OR_EQUAL:
+			return OP_GREATER_OR_EQUAL;
+		case IS_MISSING:
+			return OP_IS_MISSING;
+		case IS_NOT_MISSING:
+			return OP_IS_NOT_MISSING;
+		default:
+			return OP_PREDICATE;
+		}
+	}
+
+	private static final byte OP_TRUE = 0;
+	private static final byte OP_FALSE = 1;
+	private static final byte OP_PREDICATE = 2;
+	private static final byte OP_MISSING = 3;
+	private static final byte OP_EQUAL = 4;
+	private static final byte OP_NOT_EQUAL = 5;
+	private static final byte OP_LESS_THAN = 6;
+	private static final byte OP_LESS_OR_EQUAL = 7;
+	private static final byte OP_GREATER_THAN = 8;
+	private static final byte OP_GREATER_OR_EQUAL = 9;
+	private static final byte OP_IS_MISSING = 10;
+	private static final byte OP_IS_NOT_MISSING = 11;
+}
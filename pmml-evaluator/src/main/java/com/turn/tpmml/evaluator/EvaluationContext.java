@@ -6,6 +6,8 @@ package com.turn.tpmml.evaluator;
 import com.turn.tpmml.DerivedField;
 import com.turn.tpmml.FieldName;
 
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -14,8 +16,64 @@ public abstract class EvaluationContext implements Cloneable {
 
 	private Map<FieldName, ?> parameters = null;
 
+	private EvaluationPlan evaluationPlan = null;
+
+	/**
+	 * Values of the slots <code>[0, {@link EvaluationPlan#getGlobalSize()})</code>. May be shared
+	 * with the parent context.
+	 */
+	private Object[] globalValues = null;
+
+	private boolean[] globalLoaded = null;
+
+	/**
+	 * Double values of the slots <code>[0, {@link EvaluationPlan#getGlobalSize()})</code>. Shared
+	 * together with the values.
+	 */
+	private double[] globalDoubles = null;
+
+	private boolean[] globalDoubleLoaded = null;
+
+	/**
+	 * Values of the remaining slots.
+	 */
+	private Object[] localValues = null;
+
+	private boolean[] localLoaded = null;
+
+	private double[] localDoubles = null;
+
+	private boolean[] localDoubleLoaded = null;
+
+	/**
+	 * Scratch buffers of compiled elements, by element. They are kept by {@link #reset()}, so a
+	 * context that is reused for a batch of records allocates them only once.
+	 */
+	private Map<Object, Object> buffers = null;
+
 	public EvaluationContext(Map<FieldName, ?> parameters) {
+		this(null, parameters);
+	}
+
+	public EvaluationContext(EvaluationPlan evaluationPlan, Map<FieldName, ?> parameters) {
+		this(evaluationPlan, parameters, null);
+	}
+
+	/**
+	 * @param parent The context of the enclosing model, or <code>null</code>. If the parent
+	 *            context evaluates the same parameters against a compatible plan, then the values
+	 *            of the data dictionary and transformation dictionary fields are shared between
+	 *            the two contexts.
+	 *
+	 * @see EvaluationPlan#isCompatible(EvaluationPlan)
+	 */
+	public EvaluationContext(EvaluationPlan evaluationPlan, Map<FieldName, ?> parameters,
+			EvaluationContext parent) {
 		setParameters(parameters);
+
+		if (evaluationPlan != null) {
+			setEvaluationPlan(evaluationPlan, parent);
+		}
 	}
 
 	public abstract DerivedField resolve(FieldName name) throws EvaluationException;
@@ -30,6 +88,22 @@ public abstract class EvaluationContext implements Cloneable {
 					getParameters());
 			result.setParameters(parameters);
 
+			if (this.evaluationPlan != null) {
+				result.globalValues = this.globalValues.clone();
+				result.globalLoaded = this.globalLoaded.clone();
+
+				result.globalDoubles = this.globalDoubles.clone();
+				result.globalDoubleLoaded = this.globalDoubleLoaded.clone();
+
+				result.localValues = this.localValues.clone();
+				result.localLoaded = this.localLoaded.clone();
+
+				result.localDoubles = this.localDoubles.clone();
+				result.localDoubleLoaded = this.localDoubleLoaded.clone();
+			}
+
+			result.buffers = null;
+
 			return result;
 		} catch (CloneNotSupportedException cnse) {
 			throw new AssertionError(cnse);
@@ -42,12 +116,177 @@ public abstract class EvaluationContext implements Cloneable {
 		return parameters.get(name);
 	}
 
+	/**
+	 * Gets the value of a parameter by its {@link EvaluationPlan#getSlot(FieldName) slot}. The
+	 * parameter is looked up at most once per evaluation.
+	 */
+	public Object getParameter(int slot) {
+
+		if (!isLoaded(slot)) {
+			Object value = getParameter(this.evaluationPlan.getName(slot));
+
+			setValue(slot, value);
+
+			return value;
+		}
+
+		return getValue(slot);
+	}
+
 	@SuppressWarnings({ "unchecked" })
 	void putParameter(FieldName name, Object value) {
 		// Use cast to remove the implicit "read-only" protection
 		Map<FieldName, Object> parameters = (Map<FieldName, Object>) getParameters();
 
 		parameters.put(name, value);
+
+		EvaluationPlan evaluationPlan = getEvaluationPlan();
+		if (evaluationPlan != null) {
+			// Derived field values that depend on the old value are not valid anymore
+			reset();
+
+			int slot = evaluationPlan.getSlot(name);
+
+			if (slot > -1) {
+				setValue(slot, value);
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the value of the slot has been loaded or computed during this
+	 *         evaluation, <code>false</code> otherwise.
+	 */
+	boolean isLoaded(int slot) {
+		boolean[] globalLoaded = this.globalLoaded;
+
+		if (slot < globalLoaded.length) {
+			return globalLoaded[slot];
+		}
+
+		return this.localLoaded[slot - globalLoaded.length];
+	}
+
+	Object getValue(int slot) {
+		Object[] globalValues = this.globalValues;
+
+		if (slot < globalValues.length) {
+			return globalValues[slot];
+		}
+
+		return this.localValues[slot - globalValues.length];
+	}
+
+	void setValue(int slot, Object value) {
+		Object[] globalValues = this.globalValues;
+
+		if (slot < globalValues.length) {
+			globalValues[slot] = value;
+			this.globalLoaded[slot] = true;
+
+			return;
+		}
+
+		this.localValues[slot - globalValues.length] = value;
+		this.localLoaded[slot - globalValues.length] = true;
+	}
+
+	/**
+	 * @return <code>true</code> if the double value of the slot has been stored during this
+	 *         evaluation, <code>false</code> otherwise.
+	 *
+	 * @see ExpressionUtil#evaluateDouble(int, EvaluationContext)
+	 */
+	boolean isDoubleLoaded(int slot) {
+		boolean[] globalDoubleLoaded = this.globalDoubleLoaded;
+
+		if (slot < globalDoubleLoaded.length) {
+			return globalDoubleLoaded[slot];
+		}
+
+		return this.localDoubleLoaded[slot - globalDoubleLoaded.length];
+	}
+
+	double getDoubleValue(int slot) {
+		double[] globalDoubles = this.globalDoubles;
+
+		if (slot < globalDoubles.length) {
+			return globalDoubles[slot];
+		}
+
+		return this.localDoubles[slot - globalDoubles.length];
+	}
+
+	/**
+	 * Stores the value of the slot as a primitive double. The value must be equal to the
+	 * {@link #getValue(int) value} of the slot converted to double.
+	 */
+	void setDoubleValue(int slot, double value) {
+		double[] globalDoubles = this.globalDoubles;
+
+		if (slot < globalDoubles.length) {
+			globalDoubles[slot] = value;
+			this.globalDoubleLoaded[slot] = true;
+
+			return;
+		}
+
+		this.localDoubles[slot - globalDoubles.length] = value;
+		this.localDoubleLoaded[slot - globalDoubles.length] = true;
+	}
+
+	/**
+	 * @param owner The compiled element that uses the buffer.
+	 *
+	 * @return The scratch buffer of the owner, or <code>null</code> if the owner has not stored
+	 *         one in this context yet.
+	 */
+	Object getBuffer(Object owner) {
+		Map<Object, Object> buffers = this.buffers;
+
+		return (buffers != null ? buffers.get(owner) : null);
+	}
+
+	void putBuffer(Object owner, Object buffer) {
+
+		if (this.buffers == null) {
+			this.buffers = new IdentityHashMap<Object, Object>();
+		}
+
+		this.buffers.put(owner, buffer);
+	}
+
+	/**
+	 * @return A scratch buffer of at least <code>size</code> elements. Its content is left over
+	 *         from the previous use by the same owner.
+	 */
+	double[] getDoubleBuffer(Object owner, int size) {
+		double[] result = (double[]) getBuffer(owner);
+
+		if (result == null || result.length < size) {
+			result = new double[size];
+
+			putBuffer(owner, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Discards all the values that have been loaded or computed so far. Must be called whenever
+	 * the parameters are modified behind the back of this context.
+	 */
+	void reset() {
+
+		if (this.evaluationPlan != null) {
+			Arrays.fill(this.globalValues, null);
+			Arrays.fill(this.globalLoaded, false);
+			Arrays.fill(this.globalDoubleLoaded, false);
+
+			Arrays.fill(this.localValues, null);
+			Arrays.fill(this.localLoaded, false);
+			Arrays.fill(this.localDoubleLoaded, false);
+		}
 	}
 
 	public Map<FieldName, ?> getParameters() {
@@ -57,4 +296,44 @@ public abstract class EvaluationContext implements Cloneable {
 	void setParameters(Map<FieldName, ?> parameters) {
 		this.parameters = parameters;
 	}
+
+	/**
+	 * @return The evaluation plan, or <code>null</code> if the fields of this context are
+	 *         resolved by name.
+	 */
+	public EvaluationPlan getEvaluationPlan() {
+		return this.evaluationPlan;
+	}
+
+	private void setEvaluationPlan(EvaluationPlan evaluationPlan, EvaluationContext parent) {
+		this.evaluationPlan = evaluationPlan;
+
+		int globalSize = evaluationPlan.getGlobalSize();
+
+		EvaluationPlan parentPlan = (parent != null ? parent.getEvaluationPlan() : null);
+		if (parentPlan != null && parentPlan.isCompatible(evaluationPlan) &&
+				parent.getParameters() == getParameters()) {
+			this.globalValues = parent.globalValues;
+			this.globalLoaded = parent.globalLoaded;
+			this.globalDoubles = parent.globalDoubles;
+			this.globalDoubleLoaded = parent.globalDoubleLoaded;
+		} else {
+			this.globalValues = new Object[globalSize];
+			this.globalLoaded = new boolean[globalSize];
+			this.globalDoubles = new double[globalSize];
+			this.globalDoubleLoaded = new boolean[globalSize];
+		}
+
+		int localSize = evaluationPlan.size() - globalSize;
+
+		this.localValues = new Object[localSize];
+		this.localLoaded = new boolean[localSize];
+		this.localDoubles = new double[localSize];
+		this.localDoubleLoaded = new boolean[localSize];
+
+		Map<FieldName, ?> parameters = getParameters();
+		if (parameters instanceof RowParameters) {
+			((RowParameters) parameters).load(this);
+		}
+	}
 }
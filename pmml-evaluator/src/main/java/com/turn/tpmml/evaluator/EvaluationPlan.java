@@ -0,0 +1,690 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Apply;
+import com.turn.tpmml.Array;
+import com.turn.tpmml.Attribute;
+import com.turn.tpmml.CategoricalPredictor;
+import com.turn.tpmml.Characteristic;
+import com.turn.tpmml.CompoundPredicate;
+import com.turn.tpmml.Constant;
+import com.turn.tpmml.DataField;
+import com.turn.tpmml.DerivedField;
+import com.turn.tpmml.Discretize;
+import com.turn.tpmml.Expression;
+import com.turn.tpmml.FieldColumnPair;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldRef;
+import com.turn.tpmml.LocalTransformations;
+import com.turn.tpmml.MapValues;
+import com.turn.tpmml.MiningField;
+import com.turn.tpmml.MiningModel;
+import com.turn.tpmml.Model;
+import com.turn.tpmml.NeuralInput;
+import com.turn.tpmml.NeuralNetwork;
+import com.turn.tpmml.NeuralOutput;
+import com.turn.tpmml.NeuralOutputs;
+import com.turn.tpmml.Node;
+import com.turn.tpmml.NormContinuous;
+import com.turn.tpmml.NormDiscrete;
+import com.turn.tpmml.NumericPredictor;
+import com.turn.tpmml.OutputField;
+import com.turn.tpmml.PMML;
+import com.turn.tpmml.Predicate;
+import com.turn.tpmml.PredictorTerm;
+import com.turn.tpmml.RegressionModel;
+import com.turn.tpmml.RegressionTable;
+import com.turn.tpmml.Scorecard;
+import com.turn.tpmml.Segment;
+import com.turn.tpmml.Segmentation;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.SimpleSetPredicate;
+import com.turn.tpmml.TreeModel;
+import com.turn.tpmml.manager.ModelManager;
+import com.turn.tpmml.manager.ModelManagerException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Field resolution of a {@link Model}, computed once per {@link Evaluator}.
+ *
+ * Every field that the model may refer to is assigned a fixed integer slot. Slots
+ * <code>[0, {@link #getGlobalSize()})</code> hold the fields of the {@link DataDictionary} and
+ * the {@link TransformationDictionary} in document order, so they are numbered identically by all
+ * the models of a PMML document. The remaining slots hold model-local fields (local
+ * transformations, output fields etc).
+ *
+ * Every {@link FieldName} instance that appears in the model (field references of expressions
+ * and predicates, regression predictors, neural inputs etc) is bound to its slot by identity, so
+ * that the evaluation does not need to compute the (deep) hash code of field names nor scan the
+ * transformation dictionaries.
+ *
+ * @see EvaluationContext#getParameter(int)
+ * @see ExpressionUtil#evaluate(int, EvaluationContext)
+ */
+public class EvaluationPlan {
+
+	private PMML pmml = null;
+
+	private List<FieldName> names = new ArrayList<FieldName>();
+
+	private List<DerivedField> derivedFields = new ArrayList<DerivedField>();
+
+	private Map<FieldName, Integer> slots = new HashMap<FieldName, Integer>();
+
+	private Map<FieldName, Integer> bindings = new IdentityHashMap<FieldName, Integer>();
+
+	private int globalSize = 0;
+
+	private boolean shadowing = false;
+
+	private DerivedField[] derivedFieldArray = null;
+
+	private Map<Array, ValueSet> arrays = new IdentityHashMap<Array, ValueSet>();
+
+	private Map<Apply, ValueSet> valueLists = new IdentityHashMap<Apply, ValueSet>();
+
+	private Map<Apply, CompiledApply> applies = new IdentityHashMap<Apply, CompiledApply>();
+
+	/**
+	 * Functions that appear more than once in the transformation dictionaries, mapped to the slot
+	 * that caches their value. The slot is allocated when the first of them is compiled.
+	 */
+	private Map<Apply, Integer> sharedApplies = new HashMap<Apply, Integer>();
+
+	/**
+	 * Functions that are arguments of other functions.
+	 */
+	private Map<Apply, Boolean> nestedApplies = new IdentityHashMap<Apply, Boolean>();
+
+	private Map<NormContinuous, CompiledNormContinuous> normContinuous =
+			new IdentityHashMap<NormContinuous, CompiledNormContinuous>();
+
+	private Map<Discretize, CompiledDiscretize> discretize =
+			new IdentityHashMap<Discretize, CompiledDiscretize>();
+
+	private Map<MapValues, CompiledMapValues> mapValues =
+			new IdentityHashMap<MapValues, CompiledMapValues>();
+
+	private Map<SimplePredicate, CompiledSimplePredicate> simplePredicates =
+			new IdentityHashMap<SimplePredicate, CompiledSimplePredicate>();
+
+	private Map<RegressionModel, CompiledRegressionTables> regressionTables =
+			new IdentityHashMap<RegressionModel, CompiledRegressionTables>();
+
+	private Map<Scorecard, CompiledScorecard> scorecards =
+			new IdentityHashMap<Scorecard, CompiledScorecard>();
+
+	public EvaluationPlan(ModelManager<?> modelManager) throws ModelManagerException {
+		Model model = modelManager.getModel();
+
+		this.pmml = modelManager.getPmml();
+
+		List<DataField> dataFields = modelManager.getDataDictionary().getDataFields();
+		for (DataField dataField : dataFields) {
+			declare(dataField.getName(), null, false);
+		}
+
+		List<DerivedField> globalDerivedFields =
+				(modelManager.getOrCreateTransformationDictionary()).getDerivedFields();
+		for (DerivedField derivedField : globalDerivedFields) {
+			declare(derivedField.getName(), derivedField, false);
+		}
+
+		this.globalSize = this.names.size();
+
+		LocalTransformations localTransformations = model.getLocalTransformations();
+
+		List<DerivedField> localDerivedFields = (localTransformations != null ?
+				localTransformations.getDerivedFields() : new ArrayList<DerivedField>());
+		for (DerivedField derivedField : localDerivedFields) {
+			declare(derivedField.getName(), derivedField, true);
+		}
+
+		Map<Apply, Integer> counts = new HashMap<Apply, Integer>();
+
+		for (DerivedField derivedField : globalDerivedFields) {
+			countApplies(derivedField.getExpression(), counts);
+		}
+
+		for (DerivedField derivedField : localDerivedFields) {
+			countApplies(derivedField.getExpression(), counts);
+		}
+
+		for (Map.Entry<Apply, Integer> entry : counts.entrySet()) {
+
+			if ((entry.getValue()).intValue() > 1) {
+				this.sharedApplies.put(entry.getKey(), null);
+			}
+		}
+
+		List<MiningField> miningFields = (model.getMiningSchema()).getMiningFields();
+		for (MiningField miningField : miningFields) {
+			bind(miningField.getName());
+		}
+
+		List<OutputField> outputFields = (model.getOutput() != null ?
+				(model.getOutput()).getOutputFields() : new ArrayList<OutputField>());
+		for (OutputField outputField : outputFields) {
+			bind(outputField.getName());
+			bindExpression(outputField.getExpression());
+		}
+
+		for (DerivedField derivedField : globalDerivedFields) {
+			bindExpression(derivedField.getExpression());
+		}
+
+		for (DerivedField derivedField : localDerivedFields) {
+			bindExpression(derivedField.getExpression());
+		}
+
+		bindModel(model);
+
+		this.derivedFieldArray = this.derivedFields.toArray(new DerivedField[this.names.size()]);
+
+		if (BytecodeUtil.isEnabled()) {
+			generateApplies();
+		}
+	}
+
+	/**
+	 * @return The number of slots.
+	 */
+	public int size() {
+		return this.names.size();
+	}
+
+	/**
+	 * @return The number of slots that are shared by all the models of the PMML document.
+	 */
+	public int getGlobalSize() {
+		return this.globalSize;
+	}
+
+	/**
+	 * @return <code>true</code> if a local transformation hides a field with the same name in
+	 *         the data dictionary or transformation dictionary, <code>false</code> otherwise.
+	 */
+	public boolean isShadowing() {
+		return this.shadowing;
+	}
+
+	/**
+	 * Two plans are compatible if their global slots are computed the same way. This is the case
+	 * when both plans belong to the same PMML document, and neither of them shadows global fields.
+	 *
+	 * @return <code>true</code> if the values of the global slots can be shared between the two
+	 *         plans, <code>false</code> otherwise.
+	 */
+	public boolean isCompatible(EvaluationPlan evaluationPlan) {
+
+		if (this == evaluationPlan) {
+			return true;
+		}
+
+		return (this.pmml == evaluationPlan.pmml) && !isShadowing() &&
+				!evaluationPlan.isShadowing();
+	}
+
+	/**
+	 * @return The slot of the field, or <code>-1</code> if the field is unknown.
+	 */
+	public int getSlot(FieldName name) {
+		Integer slot = this.bindings.get(name);
+
+		if (slot == null) {
+			slot = this.slots.get(name);
+
+			if (slot == null) {
+				return -1;
+			}
+		}
+
+		return slot.intValue();
+	}
+
+	/**
+	 * @return The name of the field, or <code>null</code> if the slot caches the value of a
+	 *         function.
+	 *
+	 * @see #shareApply(Apply)
+	 */
+	public FieldName getName(int slot) {
+		return this.names.get(slot);
+	}
+
+	/**
+	 * @return The definition of the field, or <code>null</code> if the field is not a derived
+	 *         field.
+	 */
+	public DerivedField getDerivedField(int slot) {
+		return this.derivedFieldArray[slot];
+	}
+
+	/**
+	 * Unlike {@link #getDerivedField(int)}, this method can be called while the plan is being
+	 * built.
+	 */
+	DerivedField resolveDerivedField(int slot) {
+		return this.derivedFields.get(slot);
+	}
+
+	/**
+	 * @return The compiled content of the array, or <code>null</code> if the array is unknown.
+	 */
+	ValueSet getValueSet(Array array) {
+		return this.arrays.get(array);
+	}
+
+	/**
+	 * @return The compiled value list arguments of the function, or <code>null</code> if the
+	 *         function is not a {@link FunctionUtil.ValueListFunction} with constant value list
+	 *         arguments.
+	 */
+	ValueSet getValueSet(Apply apply) {
+		return this.valueLists.get(apply);
+	}
+
+	/**
+	 * @return The compiled form of the function, or <code>null</code> if the function is unknown
+	 *         or cannot be compiled.
+	 */
+	CompiledApply getApply(Apply apply) {
+		return this.applies.get(apply);
+	}
+
+	/**
+	 * Structurally identical functions refer to the same fields and compute the same value, so
+	 * the value is computed once, and kept in a slot of its own.
+	 *
+	 * @return The slot that caches the value of the function, or <code>-1</code> if the function
+	 *         appears only once.
+	 */
+	int shareApply(Apply apply) {
+
+		if (!this.sharedApplies.containsKey(apply)) {
+			return -1;
+		}
+
+		Integer slot = this.sharedApplies.get(apply);
+
+		if (slot == null) {
+			slot = Integer.valueOf(this.names.size());
+
+			this.names.add(null);
+			this.derivedFields.add(null);
+
+			this.sharedApplies.put(apply, slot);
+		}
+
+		return slot.intValue();
+	}
+
+	/**
+	 * @return The compiled form of the transformation, or <code>null</code> if the transformation
+	 *         is unknown or cannot be compiled.
+	 */
+	CompiledNormContinuous getNormContinuous(NormContinuous normContinuous) {
+		return this.normContinuous.get(normContinuous);
+	}
+
+	/**
+	 * @return The compiled form of the transformation, or <code>null</code> if the transformation
+	 *         is unknown or cannot be compiled.
+	 */
+	CompiledDiscretize getDiscretize(Discretize discretize) {
+		return this.discretize.get(discretize);
+	}
+
+	/**
+	 * @return The compiled form of the transformation, or <code>null</code> if the transformation
+	 *         is unknown or cannot be compiled.
+	 */
+	CompiledMapValues getMapValues(MapValues mapValues) {
+		return this.mapValues.get(mapValues);
+	}
+
+	/**
+	 * @return The compiled form of the predicate, or <code>null</code> if the predicate is
+	 *         unknown.
+	 */
+	CompiledSimplePredicate getSimplePredicate(SimplePredicate simplePredicate) {
+		return this.simplePredicates.get(simplePredicate);
+	}
+
+	/**
+	 * @return The compiled form of the regression tables of the model, or <code>null</code> if
+	 *         the model is unknown or some table cannot be compiled.
+	 */
+	CompiledRegressionTables getRegressionTables(RegressionModel regressionModel) {
+		return this.regressionTables.get(regressionModel);
+	}
+
+	/**
+	 * @return The compiled form of the characteristics of the model, or <code>null</code> if the
+	 *         model is unknown or some attribute has no partial score.
+	 */
+	CompiledScorecard getScorecard(Scorecard scorecard) {
+		return this.scorecards.get(scorecard);
+	}
+
+	private int declare(FieldName name, DerivedField derivedField, boolean local) {
+		Integer slot = this.slots.get(name);
+
+		if (slot != null && local) {
+			this.shadowing |= (slot.intValue() < this.globalSize);
+		} else
+
+		if (slot != null) {
+			return slot.intValue();
+		}
+
+		slot = Integer.valueOf(this.names.size());
+
+		this.names.add(name);
+		this.derivedFields.add(derivedField);
+
+		this.slots.put(name, slot);
+
+		return slot.intValue();
+	}
+
+	private void bind(FieldName name) {
+
+		if (name == null) {
+			return;
+		}
+
+		int slot = declare(name, null, false);
+
+		this.bindings.put(name, Integer.valueOf(slot));
+	}
+
+	private void bindExpression(Expression expression) {
+
+		if (expression instanceof FieldRef) {
+			bind(((FieldRef) expression).getField());
+		} else
+
+		if (expression instanceof NormContinuous) {
+			NormContinuous normContinuous = (NormContinuous) expression;
+
+			bind(normContinuous.getField());
+
+			if (CompiledNormContinuous.isCompilable(normContinuous) &&
+					!this.normContinuous.containsKey(normContinuous)) {
+				this.normContinuous.put(normContinuous,
+						new CompiledNormContinuous(normContinuous, this));
+			}
+		} else
+
+		if (expression instanceof NormDiscrete) {
+			bind(((NormDiscrete) expression).getField());
+		} else
+
+		if (expression instanceof Discretize) {
+			Discretize discretize = (Discretize) expression;
+
+			bind(discretize.getField());
+
+			if (CompiledDiscretize.isCompilable(discretize) &&
+					!this.discretize.containsKey(discretize)) {
+				this.discretize.put(discretize, new CompiledDiscretize(discretize, this));
+			}
+		} else
+
+		if (expression instanceof MapValues) {
+			MapValues mapValues = (MapValues) expression;
+
+			List<FieldColumnPair> fieldColumnPairs = mapValues.getFieldColumnPairs();
+			for (FieldColumnPair fieldColumnPair : fieldColumnPairs) {
+				bind(fieldColumnPair.getField());
+			}
+
+			if (CompiledMapValues.isCompilable(mapValues) &&
+					!this.mapValues.containsKey(mapValues)) {
+				this.mapValues.put(mapValues, new CompiledMapValues(mapValues, this));
+			}
+		} else
+
+		if (expression instanceof Apply) {
+			Apply apply = (Apply) expression;
+
+			List<Expression> arguments = apply.getExpressions();
+			for (Expression argument : arguments) {
+				bindExpression(argument);
+
+				if (argument instanceof Apply) {
+					this.nestedApplies.put((Apply) argument, Boolean.TRUE);
+				}
+			}
+
+			bindValueList(apply);
+
+			if (CompiledApply.isCompilable(apply) && !this.applies.containsKey(apply)) {
+				this.applies.put(apply, new CompiledApply(apply, this));
+			}
+		}
+	}
+
+	/**
+	 * Translates the top-level functions to bytecode. All the generated classes of this plan
+	 * share one class loader.
+	 */
+	private void generateApplies() {
+		BytecodeUtil.ExpressionClassLoader classLoader = new BytecodeUtil.ExpressionClassLoader();
+
+		for (Map.Entry<Apply, CompiledApply> entry : this.applies.entrySet()) {
+
+			if (!this.nestedApplies.containsKey(entry.getKey())) {
+				(entry.getValue()).generate(classLoader);
+			}
+		}
+	}
+
+	/**
+	 * Counts the functions that have at least one function or transformation as an argument.
+	 * Functions of fields and constants only are cheaper to compute again than to cache.
+	 */
+	private static void countApplies(Expression expression, Map<Apply, Integer> counts) {
+
+		if (!(expression instanceof Apply)) {
+			return;
+		}
+
+		Apply apply = (Apply) expression;
+
+		boolean composite = false;
+
+		List<Expression> arguments = apply.getExpressions();
+		for (Expression argument : arguments) {
+			composite |= !(argument instanceof FieldRef || argument instanceof Constant);
+
+			countApplies(argument, counts);
+		}
+
+		if (composite) {
+			Integer count = counts.get(apply);
+
+			counts.put(apply, Integer.valueOf(count != null ? count.intValue() + 1 : 1));
+		}
+	}
+
+	private void bindPredicate(Predicate predicate) {
+
+		if (predicate instanceof SimplePredicate) {
+			SimplePredicate simplePredicate = (SimplePredicate) predicate;
+
+			bind(simplePredicate.getField());
+
+			if (!this.simplePredicates.containsKey(simplePredicate)) {
+				this.simplePredicates.put(simplePredicate,
+						new CompiledSimplePredicate(simplePredicate, this));
+			}
+		} else
+
+		if (predicate instanceof SimpleSetPredicate) {
+			bind(((SimpleSetPredicate) predicate).getField());
+			bindArray(((SimpleSetPredicate) predicate).getArray());
+		} else
+
+		if (predicate instanceof CompoundPredicate) {
+			List<Predicate> predicates = ((CompoundPredicate) predicate).getContent();
+			for (Predicate child : predicates) {
+				bindPredicate(child);
+			}
+		}
+	}
+
+	private void bindArray(Array array) {
+
+		if (array == null || this.arrays.containsKey(array)) {
+			return;
+		}
+
+		try {
+			this.arrays.put(array, ArrayUtil.createValueSet(array));
+		} catch (EvaluationException ee) {
+			// The array is malformed. Leave it to the evaluation to report the error
+		}
+	}
+
+	private void bindValueList(Apply apply) {
+		FunctionUtil.Function function = FunctionUtil.getFunction(apply.getFunction());
+
+		if (!(function instanceof FunctionUtil.ValueListFunction) ||
+				this.valueLists.containsKey(apply)) {
+			return;
+		}
+
+		List<Expression> arguments = apply.getExpressions();
+		if (arguments.size() < 2) {
+			return;
+		}
+
+		List<Object> values = new ArrayList<Object>();
+
+		for (Expression argument : arguments.subList(1, arguments.size())) {
+
+			if (!(argument instanceof Constant)) {
+				return;
+			}
+
+			try {
+				values.add(ExpressionUtil.evaluateConstant((Constant) argument, null));
+			} catch (EvaluationException ee) {
+				// The constant is malformed. Leave it to the evaluation to report the error
+				return;
+			}
+		}
+
+		this.valueLists.put(apply, ValueSet.create(values));
+	}
+
+	private void bindDerivedField(DerivedField derivedField) {
+
+		if (derivedField != null) {
+			bindExpression(derivedField.getExpression());
+		}
+	}
+
+	private void bindModel(Model model) {
+
+		if (model instanceof RegressionModel) {
+			List<RegressionTable> regressionTables =
+					((RegressionModel) model).getRegressionTables();
+
+			boolean compilable = true;
+
+			for (RegressionTable regressionTable : regressionTables) {
+
+				for (NumericPredictor numericPredictor : regressionTable.getNumericPredictors()) {
+					bind(numericPredictor.getName());
+				}
+
+				for (CategoricalPredictor categoricalPredictor :
+						regressionTable.getCategoricalPredictors()) {
+					bind(categoricalPredictor.getName());
+				}
+
+				for (PredictorTerm predictorTerm : regressionTable.getPredictorTerms()) {
+
+					for (FieldRef fieldRef : predictorTerm.getFieldReves()) {
+						bindExpression(fieldRef);
+					}
+				}
+
+				compilable &= CompiledRegressionTables.isCompilable(regressionTable);
+			}
+
+			if (compilable) {
+				this.regressionTables.put((RegressionModel) model,
+						new CompiledRegressionTables(regressionTables, this));
+			}
+		} else
+
+		if (model instanceof TreeModel) {
+			bindNode(((TreeModel) model).getNode());
+		} else
+
+		if (model instanceof NeuralNetwork) {
+			NeuralNetwork neuralNetwork = (NeuralNetwork) model;
+
+			for (NeuralInput neuralInput : (neuralNetwork.getNeuralInputs()).getNeuralInputs()) {
+				bindDerivedField(neuralInput.getDerivedField());
+			}
+
+			NeuralOutputs neuralOutputs = neuralNetwork.getNeuralOutputs();
+			if (neuralOutputs != null) {
+
+				for (NeuralOutput neuralOutput : neuralOutputs.getNeuralOutputs()) {
+					bindDerivedField(neuralOutput.getDerivedField());
+				}
+			}
+		} else
+
+		if (model instanceof Scorecard) {
+			Scorecard scorecard = (Scorecard) model;
+
+			List<Characteristic> characteristics =
+					(scorecard.getCharacteristics()).getCharacteristics();
+			for (Characteristic characteristic : characteristics) {
+
+				for (Attribute attribute : characteristic.getAttributes()) {
+					bindPredicate(attribute.getPredicate());
+				}
+			}
+
+			if (CompiledScorecard.isCompilable(scorecard)) {
+				this.scorecards.put(scorecard, new CompiledScorecard(scorecard, this));
+			}
+		} else
+
+		if (model instanceof MiningModel) {
+			Segmentation segmentation = ((MiningModel) model).getSegmentation();
+			if (segmentation != null) {
+
+				// The segment models are bound by their own evaluators
+				for (Segment segment : segmentation.getSegments()) {
+					bindPredicate(segment.getPredicate());
+				}
+			}
+		}
+	}
+
+	private void bindNode(Node node) {
+
+		if (node == null) {
+			return;
+		}
+
+		bindPredicate(node.getPredicate());
+
+		for (Node child : node.getNodes()) {
+			bindNode(child);
+		}
+	}
+}
@@ -64,6 +64,11 @@ import java.util.Map;
  * }
  * </pre>
  * 
+ * Thread safety: an evaluator that has been obtained from {@link ModelEvaluatorFactory} is
+ * fully {@link ModelEvaluatorFactory#initialize(ModelManager) initialized}, and may be shared
+ * between threads. All the state of an evaluation is kept in the {@link EvaluationContext} and
+ * in the result. The PMML class model must not be modified while it is being evaluated.
+ * 
  * @see EvaluatorUtil
  */
 public interface Evaluator extends Consumer {
@@ -0,0 +1,54 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.manager.ModelManager;
+import com.turn.tpmml.manager.ModelManagerException;
+
+import java.io.Serializable;
+
+/**
+ * The lazily initialized state that is shared by all the evaluations of an {@link Evaluator}.
+ *
+ * The state is not serialized. A deserialized evaluator computes it again on first use.
+ */
+class EvaluatorCache implements Serializable {
+
+	private transient volatile EvaluationPlan evaluationPlan = null;
+
+	private transient volatile RowSchema rowSchema = null;
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @see RowEvaluator#getEvaluationPlan()
+	 */
+	EvaluationPlan getEvaluationPlan(ModelManager<?> modelManager) throws EvaluationException {
+		EvaluationPlan result = this.evaluationPlan;
+
+		if (result == null) {
+			try {
+				result = new EvaluationPlan(modelManager);
+			} catch (ModelManagerException e) {
+				throw new EvaluationException(e);
+			}
+
+			this.evaluationPlan = result;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @see RowEvaluator#getRowSchema()
+	 */
+	RowSchema getRowSchema(RowEvaluator evaluator) throws EvaluationException {
+		RowSchema result = this.rowSchema;
+
+		if (result == null) {
+			result = new RowSchema(evaluator);
+
+			this.rowSchema = result;
+		}
+
+		return result;
+	}
+}
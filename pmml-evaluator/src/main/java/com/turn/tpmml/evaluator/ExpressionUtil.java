@@ -29,6 +29,15 @@ public class ExpressionUtil {
 
 	public static Object evaluate(FieldName name, EvaluationContext context)
 			throws EvaluationException {
+		EvaluationPlan evaluationPlan = context.getEvaluationPlan();
+		if (evaluationPlan != null) {
+			int slot = evaluationPlan.getSlot(name);
+
+			if (slot > -1) {
+				return evaluate(slot, context);
+			}
+		}
+
 		DerivedField derivedField = context.resolve(name);
 		if (derivedField != null) {
 			return evaluate(derivedField, context);
@@ -37,6 +46,51 @@ public class ExpressionUtil {
 		return context.getParameter(name);
 	}
 
+	/**
+	 * The value of a derived field is computed at most once per evaluation context.
+	 * 
+	 * @param slot The {@link EvaluationPlan#getSlot(FieldName) slot} of the field.
+	 */
+	public static Object evaluate(int slot, EvaluationContext context)
+			throws EvaluationException {
+		DerivedField derivedField = (context.getEvaluationPlan()).getDerivedField(slot);
+		if (derivedField != null) {
+
+			if (context.isLoaded(slot)) {
+				return context.getValue(slot);
+			}
+
+			Object value = evaluate(derivedField, context);
+
+			context.setValue(slot, value);
+
+			return value;
+		}
+
+		return context.getParameter(slot);
+	}
+
+	/**
+	 * The value of a field is converted to double at most once per evaluation context.
+	 *
+	 * @param slot The {@link EvaluationPlan#getSlot(FieldName) slot} of the field.
+	 *
+	 * @see #evaluate(int, EvaluationContext)
+	 */
+	public static double evaluateDouble(int slot, EvaluationContext context)
+			throws EvaluationException {
+
+		if (context.isDoubleLoaded(slot)) {
+			return context.getDoubleValue(slot);
+		}
+
+		double value = (ParameterUtil.toDouble(evaluate(slot, context))).doubleValue();
+
+		context.setDoubleValue(slot, value);
+
+		return value;
+	}
+
 	public static Object evaluate(DerivedField derivedField, EvaluationContext context)
 			throws EvaluationException {
 		Object value = evaluate(derivedField.getExpression(), context);
@@ -95,6 +149,16 @@ public class ExpressionUtil {
 
 	public static Object evaluateNormContinuous(NormContinuous normContinuous,
 			EvaluationContext context) throws EvaluationException {
+		EvaluationPlan evaluationPlan = context.getEvaluationPlan();
+		if (evaluationPlan != null) {
+			CompiledNormContinuous compiledNormContinuous =
+					evaluationPlan.getNormContinuous(normContinuous);
+
+			if (compiledNormContinuous != null) {
+				return compiledNormContinuous.evaluate(context);
+			}
+		}
+
 		Number value = (Number) evaluate(normContinuous.getField(), context);
 		if (value == null) {
 			return normContinuous.getMapMissingTo();
@@ -117,6 +181,15 @@ public class ExpressionUtil {
 
 	public static Object evaluateDiscretize(Discretize discretize, EvaluationContext context)
 			throws EvaluationException {
+		EvaluationPlan evaluationPlan = context.getEvaluationPlan();
+		if (evaluationPlan != null) {
+			CompiledDiscretize compiledDiscretize = evaluationPlan.getDiscretize(discretize);
+
+			if (compiledDiscretize != null) {
+				return compiledDiscretize.evaluate(context);
+			}
+		}
+
 		DataType dataType = discretize.getDataType();
 
 		Object value = evaluate(discretize.getField(), context);
@@ -131,6 +204,15 @@ public class ExpressionUtil {
 
 	public static Object evaluateMapValues(MapValues mapValues, EvaluationContext context)
 			throws EvaluationException {
+		EvaluationPlan evaluationPlan = context.getEvaluationPlan();
+		if (evaluationPlan != null) {
+			CompiledMapValues compiledMapValues = evaluationPlan.getMapValues(mapValues);
+
+			if (compiledMapValues != null) {
+				return compiledMapValues.evaluate(context);
+			}
+		}
+
 		DataType dataType = mapValues.getDataType();
 
 		Map<String, Object> values = new LinkedHashMap<String, Object>();
@@ -152,16 +234,39 @@ public class ExpressionUtil {
 
 	public static Object evaluateApply(Apply apply, EvaluationContext context)
 			throws EvaluationException {
-		List<Object> values = new ArrayList<Object>();
-
 		List<Expression> arguments = apply.getExpressions();
-		for (Expression argument : arguments) {
-			Object value = evaluate(argument, context);
 
-			values.add(value);
+		ValueSet valueSet = null;
+
+		EvaluationPlan evaluationPlan = context.getEvaluationPlan();
+		if (evaluationPlan != null) {
+			CompiledApply compiledApply = evaluationPlan.getApply(apply);
+
+			if (compiledApply != null) {
+				return compiledApply.evaluate(context);
+			}
+
+			valueSet = evaluationPlan.getValueSet(apply);
+		}
+
+		Object result;
+
+		if (valueSet != null) {
+			Object value = evaluate(arguments.get(0), context);
+
+			result = FunctionUtil.evaluate(apply.getFunction(), value, valueSet);
+		} else {
+			List<Object> values = new ArrayList<Object>();
+
+			for (Expression argument : arguments) {
+				Object value = evaluate(argument, context);
+
+				values.add(value);
+			}
+
+			result = FunctionUtil.evaluate(apply.getFunction(), values);
 		}
 
-		Object result = FunctionUtil.evaluate(apply.getFunction(), values);
 		if (result == null) {
 			return apply.getMapMissingTo();
 		}
@@ -6,6 +6,8 @@ package com.turn.tpmml.evaluator;
 import com.turn.tpmml.DataType;
 import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +33,29 @@ public class FunctionUtil {
 		return function.evaluate(values);
 	}
 
+	/**
+	 * Evaluates a function whose value list arguments have been compiled in advance.
+	 *
+	 * @see EvaluationPlan#getValueSet(com.turn.tpmml.Apply)
+	 */
+	static Object evaluate(String name, Object value, ValueSet values)
+			throws EvaluationException {
+		Function function = getFunction(name);
+		if (function == null) {
+			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION, name.toString());
+		}
+
+		if (function instanceof ValueListFunction) {
+			return ((ValueListFunction) function).evaluate(value, values);
+		}
+
+		List<Object> arguments = new ArrayList<Object>();
+		arguments.add(value);
+		arguments.addAll(values.getValues());
+
+		return function.evaluate(arguments);
+	}
+
 	public static Function getFunction(String name) {
 		return FunctionUtil.FUNCTIONS.get(name);
 	}
@@ -39,6 +64,26 @@ public class FunctionUtil {
 		FunctionUtil.FUNCTIONS.put(name, function);
 	}
 
+	/**
+	 * @return <code>true</code> if the function is one of the functions that are defined by this
+	 *         class, <code>false</code> otherwise.
+	 *
+	 * @see CompiledApply
+	 */
+	static boolean isBuiltIn(Function function) {
+		return FunctionUtil.BUILT_IN_FUNCTIONS.containsKey(function);
+	}
+
+	/**
+	 * @return The name under which the function is defined by this class, or <code>null</code>
+	 *         if the function is not built in.
+	 *
+	 * @see BytecodeUtil
+	 */
+	static String getBuiltInName(Function function) {
+		return FunctionUtil.BUILT_IN_FUNCTIONS.get(function);
+	}
+
 	private static Boolean asBoolean(Object value) throws EvaluationException {
 
 		if (value instanceof Boolean) {
@@ -86,6 +131,9 @@ public class FunctionUtil {
 
 	private static final Map<String, Function> FUNCTIONS = new LinkedHashMap<String, Function>();
 
+	private static final Map<Function, String> BUILT_IN_FUNCTIONS =
+			new IdentityHashMap<Function, String>();
+
 	public interface Function {
 
 		Object evaluate(List<?> values) throws EvaluationException;
@@ -95,6 +143,13 @@ public class FunctionUtil {
 
 		public abstract Double evaluate(Number left, Number right);
 
+		/**
+		 * Evaluates the function on two {@link Double} operands, without boxing.
+		 */
+		double evaluate(double left, double right) {
+			return (evaluate(Double.valueOf(left), Double.valueOf(right))).doubleValue();
+		}
+
 		public Number cast(DataType dataType, Double result) throws EvaluationException {
 			return asNumber(ParameterUtil.cast(dataType, result));
 		}
@@ -126,6 +181,11 @@ public class FunctionUtil {
 			public Double evaluate(Number left, Number right) {
 				return Double.valueOf(left.doubleValue() + right.doubleValue());
 			}
+
+			@Override
+			double evaluate(double left, double right) {
+				return left + right;
+			}
 		});
 
 		putFunction("-", new ArithmeticFunction() {
@@ -134,6 +194,11 @@ public class FunctionUtil {
 			public Double evaluate(Number left, Number right) {
 				return Double.valueOf(left.doubleValue() - right.doubleValue());
 			}
+
+			@Override
+			double evaluate(double left, double right) {
+				return left - right;
+			}
 		});
 
 		putFunction("*", new ArithmeticFunction() {
@@ -142,6 +207,11 @@ public class FunctionUtil {
 			public Double evaluate(Number left, Number right) {
 				return Double.valueOf(left.doubleValue() * right.doubleValue());
 			}
+
+			@Override
+			double evaluate(double left, double right) {
+				return left * right;
+			}
 		});
 
 		putFunction("/", new ArithmeticFunction() {
@@ -155,6 +225,11 @@ public class FunctionUtil {
 			public Double evaluate(Number left, Number right) {
 				return Double.valueOf(left.doubleValue() / right.doubleValue());
 			}
+
+			@Override
+			double evaluate(double left, double right) {
+				return left / right;
+			}
 		});
 	}
 
@@ -162,6 +237,20 @@ public class FunctionUtil {
 
 		public abstract StorelessUnivariateStatistic createStatistic();
 
+		/**
+		 * Evaluates the function on one or more {@link Double} values, without allocating a
+		 * statistic.
+		 */
+		double evaluate(double[] values, int length) {
+			StorelessUnivariateStatistic statistic = createStatistic();
+
+			for (int i = 0; i < length; i++) {
+				statistic.increment(values[i]);
+			}
+
+			return statistic.getResult();
+		}
+
 		public Number cast(DataType dataType, Double result) throws EvaluationException {
 			return asNumber(ParameterUtil.cast(dataType, result));
 		}
@@ -203,6 +292,23 @@ public class FunctionUtil {
 			public Min createStatistic() {
 				return new Min();
 			}
+
+			/**
+			 * @see Min#increment(double)
+			 */
+			@Override
+			double evaluate(double[] values, int length) {
+				double result = Double.NaN;
+
+				for (int i = 0; i < length; i++) {
+
+					if (values[i] < result || Double.isNaN(result)) {
+						result = values[i];
+					}
+				}
+
+				return result;
+			}
 		});
 
 		putFunction("max", new AggregateFunction() {
@@ -211,6 +317,23 @@ public class FunctionUtil {
 			public Max createStatistic() {
 				return new Max();
 			}
+
+			/**
+			 * @see Max#increment(double)
+			 */
+			@Override
+			double evaluate(double[] values, int length) {
+				double result = Double.NaN;
+
+				for (int i = 0; i < length; i++) {
+
+					if (values[i] > result || Double.isNaN(result)) {
+						result = values[i];
+					}
+				}
+
+				return result;
+			}
 		});
 
 		putFunction("avg", new AggregateFunction() {
@@ -220,6 +343,20 @@ public class FunctionUtil {
 				return new Mean();
 			}
 
+			/**
+			 * Updates the mean incrementally, like {@link Mean#increment(double)} does.
+			 */
+			@Override
+			double evaluate(double[] values, int length) {
+				double result = 0d;
+
+				for (int i = 0; i < length; i++) {
+					result += (values[i] - result) / (double) (i + 1);
+				}
+
+				return result;
+			}
+
 			@Override
 			public Number cast(DataType dataType, Double result) throws EvaluationException {
 				return super.cast(integerToDouble(dataType), result);
@@ -232,6 +369,17 @@ public class FunctionUtil {
 			public Sum createStatistic() {
 				return new Sum();
 			}
+
+			@Override
+			double evaluate(double[] values, int length) {
+				double result = 0d;
+
+				for (int i = 0; i < length; i++) {
+					result += values[i];
+				}
+
+				return result;
+			}
 		});
 
 		putFunction("product", new AggregateFunction() {
@@ -240,6 +388,17 @@ public class FunctionUtil {
 			public Product createStatistic() {
 				return new Product();
 			}
+
+			@Override
+			double evaluate(double[] values, int length) {
+				double result = 1d;
+
+				for (int i = 0; i < length; i++) {
+					result *= values[i];
+				}
+
+				return result;
+			}
 		});
 	}
 
@@ -247,6 +406,13 @@ public class FunctionUtil {
 
 		public abstract Double evaluate(Number value);
 
+		/**
+		 * Evaluates the function on a {@link Double} argument, without boxing.
+		 */
+		double evaluate(double value) {
+			return (evaluate(Double.valueOf(value))).doubleValue();
+		}
+
 		public Number cast(DataType dataType, Number result) throws EvaluationException {
 			return asNumber(ParameterUtil.cast(dataType, result));
 		}
@@ -281,6 +447,11 @@ public class FunctionUtil {
 			public Double evaluate(Number value) {
 				return Math.log10(value.doubleValue());
 			}
+
+			@Override
+			double evaluate(double value) {
+				return Math.log10(value);
+			}
 		});
 
 		putFunction("ln", new FpMathFunction() {
@@ -289,6 +460,11 @@ public class FunctionUtil {
 			public Double evaluate(Number value) {
 				return Math.log(value.doubleValue());
 			}
+
+			@Override
+			double evaluate(double value) {
+				return Math.log(value);
+			}
 		});
 
 		putFunction("exp", new FpMathFunction() {
@@ -297,6 +473,11 @@ public class FunctionUtil {
 			public Double evaluate(Number value) {
 				return Math.exp(value.doubleValue());
 			}
+
+			@Override
+			double evaluate(double value) {
+				return Math.exp(value);
+			}
 		});
 
 		putFunction("sqrt", new FpMathFunction() {
@@ -305,6 +486,11 @@ public class FunctionUtil {
 			public Double evaluate(Number value) {
 				return Math.sqrt(value.doubleValue());
 			}
+
+			@Override
+			double evaluate(double value) {
+				return Math.sqrt(value);
+			}
 		});
 
 		putFunction("abs", new MathFunction() {
@@ -313,6 +499,11 @@ public class FunctionUtil {
 			public Double evaluate(Number value) {
 				return Math.abs(value.doubleValue());
 			}
+
+			@Override
+			double evaluate(double value) {
+				return Math.abs(value);
+			}
 		});
 
 		putFunction("pow", new Function() {
@@ -361,6 +552,11 @@ public class FunctionUtil {
 			public Double evaluate(Number number) {
 				return Math.floor(number.doubleValue());
 			}
+
+			@Override
+			double evaluate(double value) {
+				return Math.floor(value);
+			}
 		});
 
 		putFunction("ceil", new MathFunction() {
@@ -369,6 +565,11 @@ public class FunctionUtil {
 			public Double evaluate(Number number) {
 				return Math.ceil(number.doubleValue());
 			}
+
+			@Override
+			double evaluate(double value) {
+				return Math.ceil(value);
+			}
 		});
 
 		putFunction("round", new MathFunction() {
@@ -377,6 +578,11 @@ public class FunctionUtil {
 			public Double evaluate(Number number) {
 				return (double) Math.round(number.doubleValue());
 			}
+
+			@Override
+			double evaluate(double value) {
+				return (double) Math.round(value);
+			}
 		});
 	}
 
@@ -567,6 +773,10 @@ public class FunctionUtil {
 
 		public abstract Boolean evaluate(Object value, List<?> values);
 
+		Boolean evaluate(Object value, ValueSet values) throws EvaluationException {
+			return evaluate(value, values.getValues());
+		}
+
 		public Boolean evaluate(List<?> values) throws EvaluationException {
 
 			if (values.size() < 2) {
@@ -586,6 +796,11 @@ public class FunctionUtil {
 			public Boolean evaluate(Object value, List<?> values) {
 				return Boolean.valueOf(values.contains(value));
 			}
+
+			@Override
+			Boolean evaluate(Object value, ValueSet values) throws EvaluationException {
+				return Boolean.valueOf(values.contains(value));
+			}
 		});
 
 		putFunction("isNotIn", new ValueListFunction() {
@@ -594,6 +809,11 @@ public class FunctionUtil {
 			public Boolean evaluate(Object value, List<?> values) {
 				return Boolean.valueOf(!values.contains(value));
 			}
+
+			@Override
+			Boolean evaluate(Object value, ValueSet values) throws EvaluationException {
+				return Boolean.valueOf(!values.contains(value));
+			}
 		});
 	}
 
@@ -686,4 +906,11 @@ public class FunctionUtil {
 			}
 		});
 	}
+
+	static {
+
+		for (Map.Entry<String, Function> entry : (FunctionUtil.FUNCTIONS).entrySet()) {
+			(FunctionUtil.BUILT_IN_FUNCTIONS).put(entry.getValue(), entry.getKey());
+		}
+	}
 }
@@ -0,0 +1,39 @@
+package com.turn.tpmml.evaluator;
+
+/**
+ * The base class of the expressions that are generated by {@link BytecodeUtil}.
+ *
+ * The generated classes are defined by a class loader of their own, so they do not belong to the
+ * runtime package of this class. Everything that they refer to must therefore be public or
+ * protected.
+ */
+public abstract class GeneratedExpression {
+
+	protected GeneratedExpression() {
+	}
+
+	public abstract double evaluateDouble(EvaluationContext context) throws EvaluationException;
+
+	/**
+	 * @see FunctionUtil.AggregateFunction
+	 */
+	protected static double min(double result, double value) {
+		return (value < result || Double.isNaN(result) ? value : result);
+	}
+
+	/**
+	 * @see FunctionUtil.AggregateFunction
+	 */
+	protected static double max(double result, double value) {
+		return (value > result || Double.isNaN(result) ? value : result);
+	}
+
+	/**
+	 * @param count The number of values so far, including this one.
+	 *
+	 * @see FunctionUtil.AggregateFunction
+	 */
+	protected static double mean(double result, double value, int count) {
+		return result + (value - result) / (double) count;
+	}
+}
@@ -0,0 +1,172 @@
+package com.turn.tpmml.evaluator;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dense linear algebra kernels of the numeric model evaluators.
+ *
+ * The default kernel is plain scalar Java code. A different kernel, for example one that is
+ * based on SIMD instructions, can be plugged in with {@link #setKernel(Kernel)}, or by naming its
+ * class in the system property {@link #KERNEL_PROPERTY}. If the named class cannot be loaded or
+ * instantiated on the running JVM, a warning is logged and the scalar kernel is used instead.
+ *
+ * If the system property is not set, the first kernel that is registered as a
+ * {@link ServiceLoader service provider} and that can be instantiated on the running JVM is used.
+ * The <code>pmml-evaluator-vector</code> module registers a kernel that is based on the JDK
+ * Vector API. Providers that require a newer Java version, or a module that has not been added to
+ * the JVM, are skipped.
+ *
+ * The scalar kernel accumulates sums strictly from left to right, so its results are identical
+ * to those of the interpreted evaluation. Other kernels may reorder the additions.
+ *
+ * @see CompiledNeuralNetwork
+ */
+public class KernelUtil {
+
+	private KernelUtil() {
+	}
+
+	public static Kernel getKernel() {
+		return KernelUtil.kernel;
+	}
+
+	/**
+	 * Changes the kernel of models whose compiled form is created afterwards.
+	 */
+	public static void setKernel(Kernel kernel) {
+
+		if (kernel == null) {
+			throw new NullPointerException();
+		}
+
+		KernelUtil.kernel = kernel;
+	}
+
+	/**
+	 * @return The kernel that is named by the system property, the first kernel that is
+	 *         registered as a service provider, or the scalar kernel.
+	 */
+	static Kernel loadKernel(String className) {
+
+		if (className == null || className.length() == 0) {
+			return loadProvidedKernel();
+		}
+
+		try {
+			Class<?> clazz = Class.forName(className);
+
+			return (Kernel) clazz.newInstance();
+		} catch (Exception e) {
+			logger.warn("Failed to load kernel " + className + ", using the scalar kernel", e);
+		} catch (LinkageError le) {
+			// The kernel requires a newer Java version, or a module that is not present
+			logger.warn("Failed to link kernel " + className + ", using the scalar kernel", le);
+		}
+
+		return new ScalarKernel();
+	}
+
+	static Kernel loadProvidedKernel() {
+		Iterator<Kernel> kernels =
+				(ServiceLoader.load(Kernel.class, KernelUtil.class.getClassLoader())).iterator();
+
+		while (true) {
+
+			try {
+
+				if (!kernels.hasNext()) {
+					break;
+				}
+			} catch (ServiceConfigurationError sce) {
+				logger.debug("Failed to look up kernel providers", sce);
+
+				break;
+			}
+
+			try {
+				Kernel kernel = kernels.next();
+
+				logger.debug("Using kernel " + (kernel.getClass()).getName());
+
+				return kernel;
+			} catch (ServiceConfigurationError sce) {
+				logger.debug("Skipping kernel provider", sce);
+			} catch (LinkageError le) {
+				logger.debug("Skipping kernel provider", le);
+			}
+		}
+
+		return new ScalarKernel();
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(KernelUtil.class);
+
+	private static volatile Kernel kernel =
+			loadKernel(System.getProperty(KernelUtil.KERNEL_PROPERTY));
+
+	public static final String KERNEL_PROPERTY = "com.turn.tpmml.evaluator.kernel";
+
+	public interface Kernel {
+
+		/**
+		 * @return <code>initial + x[xOffset] * y[yOffset] + ...</code>
+		 */
+		double dot(double initial, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+		/**
+		 * Adds <code>a * x</code> to <code>y</code>.
+		 */
+		void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+		/**
+		 * Replaces values <code>[from, to)</code> with their exponents.
+		 */
+		void exp(double[] values, int from, int to);
+
+		/**
+		 * Replaces values <code>[from, to)</code> with their logistic function values.
+		 */
+		void logistic(double[] values, int from, int to);
+	}
+
+	public static class ScalarKernel implements Kernel {
+
+		public double dot(double initial, double[] x, int xOffset, double[] y, int yOffset,
+				int length) {
+			double result = initial;
+
+			for (int i = 0; i < length; i++) {
+				result += x[xOffset + i] * y[yOffset + i];
+			}
+
+			return result;
+		}
+
+		public void axpy(double a, double[] x, int xOffset, double[] y, int yOffset,
+				int length) {
+
+			for (int i = 0; i < length; i++) {
+				y[yOffset + i] += x[xOffset + i] * a;
+			}
+		}
+
+		public void exp(double[] values, int from, int to) {
+
+			for (int i = from; i < to; i++) {
+				values[i] = Math.exp(values[i]);
+			}
+		}
+
+		public void logistic(double[] values, int from, int to) {
+
+			for (int i = from; i < to; i++) {
+				values[i] = 1.0 / (1.0 + Math.exp(-values[i]));
+			}
+		}
+	}
+}
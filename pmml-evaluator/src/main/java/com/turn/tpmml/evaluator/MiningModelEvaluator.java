@@ -13,17 +13,17 @@ import com.turn.tpmml.manager.ModelManagerException;
 import com.turn.tpmml.manager.PMMLResult;
 import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
 
-public class MiningModelEvaluator extends MiningModelManager implements Evaluator {
+public class MiningModelEvaluator extends MiningModelManager implements BatchEvaluator {
 
 	private static final long serialVersionUID = 1L;
-	private HashMap<Segment, Integer> segmentToId = new HashMap<Segment, Integer>();
-	private Integer segmentMaxId = 0;
+
+	private EvaluatorCache cache = new EvaluatorCache();
+
+	private transient volatile SegmentCache segmentCache = null;
 
 	public MiningModelEvaluator(PMML pmml) {
 		super(pmml);
@@ -41,6 +41,30 @@ public class MiningModelEvaluator extends MiningModelManager implements Evaluato
 		}
 	}
 
+	public EvaluationPlan getEvaluationPlan() throws EvaluationException {
+		return this.cache.getEvaluationPlan(this);
+	}
+
+	public RowSchema getRowSchema() throws EvaluationException {
+		return this.cache.getRowSchema(this);
+	}
+
+	SegmentCache getSegmentCache() throws EvaluationException {
+		SegmentCache result = this.segmentCache;
+
+		if (result == null) {
+			try {
+				result = new SegmentCache(this);
+			} catch (ModelManagerException e) {
+				throw new EvaluationException(e);
+			}
+
+			this.segmentCache = result;
+		}
+
+		return result;
+	}
+
 	/**
 	 * Work for vote. Each value is at least > 0.0. Return the key of the pair that has the biggest
 	 * value.
@@ -58,36 +82,48 @@ public class MiningModelEvaluator extends MiningModelManager implements Evaluato
 		return result;
 	}
 
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+		return evaluate(parameters, null);
+	}
+
+	public IPMMLResult evaluate(double[] continuousValues, Object[] categoricalValues)
+			throws EvaluationException {
+		RowSchema rowSchema = getRowSchema();
+
+		return evaluate(rowSchema.createParameters(continuousValues, categoricalValues), null);
+	}
+
 	/**
-	 * Allow to get a unique id for each segment. It is useful because we can't rely on the id from
-	 * the pmml that might contain a dot, or that can be anything.
-	 * 
-	 * @param s
-	 *            The segment we want to identify.
-	 * @return His id.
+	 * Evaluates the records one by one using {@link #evaluate(Map)}. This implementation does not
+	 * benefit from batching, see {@link MiningModelEvaluator2}.
 	 */
-	private String getId(Segment s) {
-		if (!segmentToId.containsKey(s)) {
-			segmentToId.put(s, segmentMaxId++);
-		}
+	public void evaluateBatch(ColumnBatch in, ColumnBatch out) throws EvaluationException {
+		ColumnBatchCursor cursor = new ColumnBatchCursor(this, in, out);
 
-		return "segmentNumber" + segmentToId.get(s);
+		for (int row = 0; row < cursor.size(); row++) {
+			cursor.load(row);
 
+			cursor.store(row, evaluate(cursor.getParameters()));
+		}
 	}
 
 	// We can convert anything to an Object type. So the cast is legitimate.
 	@SuppressWarnings({ "unchecked" })
-	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters, EvaluationContext parent)
+			throws EvaluationException {
+		EvaluationContext context =
+				new ModelManagerEvaluationContext(this, getEvaluationPlan(), parameters, parent);
+
 		// FIXME: Add another way to handle exception than returning null
 		// and turning off the error.
 		try {
 			switch (getFunctionType()) {
 			case CLASSIFICATION:
 				return evaluateClassification((Map<FieldName, Object>) parameters,
-						getOutputField(this));
+						getOutputField(this), context);
 			case REGRESSION:
 				return evaluateRegression((Map<FieldName, Object>) parameters,
-						getOutputField(this));
+						getOutputField(this), context);
 			default:
 				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
 						getFunctionType().name());
@@ -121,72 +157,94 @@ public class MiningModelEvaluator extends MiningModelManager implements Evaluato
 	}
 
 	/**
-	 * Run all the models, and store the results in results, the weight in idToWeight if we are
-	 * interested in them, it augments parameters in case of modelChain, and return the main result.
+	 * Copies the segment results into a buffer.
+	 * 
+	 * @param results
+	 *            The results by segment position, as collected by runModels.
+	 * @param values
+	 *            The buffer. Must be at least as long as results.
+	 * @return The number of values, that are stored at the beginning of the buffer in segment
+	 *         order.
+	 * @throws EvaluationException
+	 *             If a result is not a double.
+	 */
+	private int getDoubles(Object[] results, double[] values) throws EvaluationException {
+		int count = 0;
+
+		for (Object value : results) {
+			if (value != null) {
+				values[count++] = getDouble(value);
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Run all the models, and store the results in results, it augments parameters in case of
+	 * modelChain, and return the main result.
 	 * 
 	 * @param parameters
 	 *            The set of parameters for the evaluation.
 	 * @param outputField
 	 *            The outputField where we will store the final result.
 	 * @param results
-	 *            The set of results.
-	 * @param idToWeight
-	 *            The weights. Useful for regression and weighted average for example.
+	 *            The results by segment position. The element is left <code>null</code> if the
+	 *            segment was not selected or did not produce a result.
+	 * @param context
+	 *            The evaluation context of the parameters.
 	 * @return The main result if any (for example in select first).
 	 * @throws Exception
 	 *             If there is a trouble with getting the name of the outputField of a model.
 	 */
 	private Object runModels(Map<FieldName, Object> parameters, DataField outputField,
-			TreeMap<String, Object> results, TreeMap<String, Double> idToWeight)
-			throws EvaluationException {
+			Object[] results, EvaluationContext context) throws EvaluationException {
 
 		Object result = null;
 
 		try {
 
-			ModelEvaluatorFactory factory = new ModelEvaluatorFactory();
+			SegmentCache segmentCache = getSegmentCache();
 
-			for (Segment s : getSegments()) {
-				EvaluationContext context = new ModelManagerEvaluationContext(this, parameters);
+			for (int i = 0; i < segmentCache.size(); i++) {
+				Segment s = segmentCache.getSegment(i);
 
 				Boolean test = PredicateUtil.evaluate(s.getPredicate(), context);
 
 				if (test != null ? test : false) {
-					Evaluator m = (Evaluator) factory.getModelManager(getPmml(), s.getModel());
-					PMMLResult tmpObj = (PMMLResult) m.evaluate(parameters);
+					RowEvaluator m = segmentCache.getEvaluator(i);
+					PMMLResult tmpObj = (PMMLResult) m.evaluate(parameters, context);
 
 					if (tmpObj == null) {
 						return null;
 					}
 
+					// This cast is legitimate because getModelManager returns a modelManager that
+					// is also an evaluator.
+					FieldName output = getOutputField((ModelManager<?>) m).getName();
+
 					if (getMultipleMethodModel() == MultipleModelMethodType.MODEL_CHAIN) {
-						FieldName output = getOutputField((ModelManager<?>) m).getName();
 						tmpObj.merge(parameters);
+						context.reset();
 						// If this is the result we are interested in, put it in result.
 						if (output.equals(outputField.getName())) {
-							// This cast is legitimate because getModelManager returns a
-							// modelManager
-							// that is
-							// also an evaluator.
-							result = tmpObj.getValue(getOutputField((ModelManager<?>) m).getName());
+							result = tmpObj.getValue(output);
 						}
 					}
 					// If there is at least one result.
 					if (tmpObj != null && !tmpObj.isEmpty()) {
-						// Associate the main result to the name of the segment.
+						// Associate the main result to the position of the segment.
 						// So we won't override the previous result at each new segment.
 
 						// If there is one result, store it in the result list.
-						Object tmpRes =
-								tmpObj.getValue(getOutputField((ModelManager<?>) m).getName());
+						Object tmpRes = tmpObj.getValue(output);
 						if (tmpRes != null) {
-							results.put(getId(s), tmpRes);
+							results[i] = tmpRes;
 
-							idToWeight.put(getId(s), s.getWeight());
 							// In this case, we are done with the evaluation of these model. We can
 							// quit.
 							if (getMultipleMethodModel() == MultipleModelMethodType.SELECT_FIRST) {
-								result = results.get(getId(s));
+								result = tmpRes;
 								break;
 							}
 						}
@@ -208,18 +266,24 @@ public class MiningModelEvaluator extends MiningModelManager implements Evaluato
 	 *            The set of parameters.
 	 * @param outputField
 	 *            The output field.
+	 * @param context
+	 *            The evaluation context of the parameters.
 	 * @return The result of the evaluation.
 	 * @throws Exception
 	 *             If there is a trouble with getting the name of the outputField of a model.
 	 */
-	private IPMMLResult evaluateRegression(Map<FieldName, Object> parameters, DataField outputField)
-			throws EvaluationException {
+	private IPMMLResult evaluateRegression(Map<FieldName, Object> parameters, DataField outputField,
+			EvaluationContext context) throws EvaluationException {
 		assert parameters != null;
 
-		TreeMap<String, Object> results = new TreeMap<String, Object>();
-		TreeMap<String, Double> idToWeight = new TreeMap<String, Double>();
+		SegmentCache segmentCache = getSegmentCache();
+
+		Object[] results = new Object[segmentCache.size()];
 
-		Object result = runModels(parameters, outputField, results, idToWeight);
+		Object result = runModels(parameters, outputField, results, context);
+
+		double[] values;
+		int count;
 
 		switch (getMultipleMethodModel()) {
 		case SELECT_FIRST:
@@ -231,32 +295,46 @@ public class MiningModelEvaluator extends MiningModelManager implements Evaluato
 			// This case is to be managed before.
 			break;
 		case AVERAGE:
-			result = new Double(0.0);
-			for (Map.Entry<String, Object> e : results.entrySet()) {
-				result = (Double) result + getDouble(e.getValue());
+			values = new double[results.length];
+			count = getDoubles(results, values);
+
+			double sum = 0d;
+			for (int i = 0; i < count; i++) {
+				sum += values[i];
 			}
-			if (results.size() != 0) {
-				result = (Double) result / results.size();
+			if (count != 0) {
+				sum /= count;
 			}
+			result = Double.valueOf(sum);
 			break;
 		case WEIGHTED_AVERAGE:
-			Double sumWeight = 0.0;
-			result = new Double(0.0);
-			for (Map.Entry<String, Object> e : results.entrySet()) {
-				result = (Double) result + idToWeight.get(e.getKey()) * getDouble(e.getValue());
-				sumWeight += idToWeight.get(e.getKey());
+			double sumWeight = 0d;
+			double weightedSum = 0d;
+			for (int i = 0; i < results.length; i++) {
+				if (results[i] == null) {
+					continue;
+				}
+
+				double weight = (segmentCache.getSegment(i)).getWeight();
+
+				weightedSum += weight * getDouble(results[i]);
+				sumWeight += weight;
 			}
-			if (sumWeight != 0.0) {
-				result = (Double) result / sumWeight;
+			if (sumWeight != 0d) {
+				weightedSum /= sumWeight;
 			}
+			result = Double.valueOf(weightedSum);
 			break;
 		case MEDIAN:
-			ArrayList<Double> list = new ArrayList<Double>(results.size());
-			for (Map.Entry<String, Object> e : results.entrySet()) {
-				list.add(getDouble(e.getValue()));
+			values = new double[results.length];
+			count = getDoubles(results, values);
+
+			if (count == 0) {
+				throw new EvaluationException("No segment has produced a result");
 			}
-			Collections.sort(list);
-			result = list.get(list.size() / 2);
+
+			Arrays.sort(values, 0, count);
+			result = Double.valueOf(values[count / 2]);
 			break;
 		default:
 			throw new EvaluationException("The method " + getMultipleMethodModel().value() +
@@ -280,18 +358,21 @@ public class MiningModelEvaluator extends MiningModelManager implements Evaluato
 	 *            The set of parameters.
 	 * @param outputField
 	 *            The output field.
+	 * @param context
+	 *            The evaluation context of the parameters.
 	 * @return The result of the evaluation.
 	 * @throws Exception
 	 *             If there is a trouble with getting the name of the outputField of a model.
 	 */
 	private IPMMLResult evaluateClassification(Map<FieldName, Object> parameters,
-			DataField outputField) throws EvaluationException {
+			DataField outputField, EvaluationContext context) throws EvaluationException {
 		assert parameters != null;
 
-		TreeMap<String, Object> results = new TreeMap<String, Object>();
-		TreeMap<String, Double> idToWeight = new TreeMap<String, Double>();
+		SegmentCache segmentCache = getSegmentCache();
+
+		Object[] results = new Object[segmentCache.size()];
 
-		Object result = runModels(parameters, outputField, results, idToWeight);
+		Object result = runModels(parameters, outputField, results, context);
 
 		switch (getMultipleMethodModel()) {
 		case SELECT_FIRST:
@@ -303,25 +384,30 @@ public class MiningModelEvaluator extends MiningModelManager implements Evaluato
 					"MODEL_CHAIN");
 		case MAJORITY_VOTE:
 			TreeMap<Object, Double> vote = new TreeMap<Object, Double>();
-			for (Map.Entry<String, Object> e : results.entrySet()) {
-				if (vote.containsKey(e.getValue())) {
-					// We increment our number of vote.
-					vote.put(e.getValue(), vote.get(e.getValue()) + 1.0);
-				} else {
-					vote.put(e.getValue(), 1.0);
+			for (Object value : results) {
+				if (value == null) {
+					continue;
 				}
+
+				Double count = vote.get(value);
+				// We increment our number of vote.
+				vote.put(value, (count != null ? count + 1d : 1d));
 			}
 			result = getBetterKey(vote);
 			break;
 		case WEIGHTED_MAJORITY_VOTE:
 			TreeMap<Object, Double> vote2 = new TreeMap<Object, Double>();
-			for (Map.Entry<String, Object> e : results.entrySet()) {
-				if (vote2.containsKey(e.getValue())) {
-					// We increment our counter wit the weight of the segment.
-					vote2.put(e.getValue(), vote2.get(e.getValue()) + idToWeight.get(e.getKey()));
-				} else {
-					vote2.put(e.getValue(), idToWeight.get(e.getKey()));
+			for (int i = 0; i < results.length; i++) {
+				Object value = results[i];
+				if (value == null) {
+					continue;
 				}
+
+				double weight = (segmentCache.getSegment(i)).getWeight();
+
+				Double sum = vote2.get(value);
+				// We increment our counter with the weight of the segment.
+				vote2.put(value, (sum != null ? sum + weight : weight));
 			}
 			result = getBetterKey(vote2);
 			break;
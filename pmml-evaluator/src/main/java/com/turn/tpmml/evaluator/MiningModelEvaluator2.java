@@ -7,7 +7,6 @@ package com.turn.tpmml.evaluator;
 import com.turn.tpmml.FieldName;
 import com.turn.tpmml.MiningFunctionType;
 import com.turn.tpmml.MiningModel;
-import com.turn.tpmml.Model;
 import com.turn.tpmml.MultipleModelMethodType;
 import com.turn.tpmml.PMML;
 import com.turn.tpmml.Predicate;
@@ -20,14 +19,31 @@ import com.turn.tpmml.manager.PMMLResult;
 import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class MiningModelEvaluator2 extends MiningModelManager implements Evaluator {
+public class MiningModelEvaluator2 extends MiningModelManager implements BatchEvaluator {
 
 	private static final long serialVersionUID = 1L;
 
+	private EvaluatorCache cache = new EvaluatorCache();
+
+	private transient volatile SegmentCache segmentCache = null;
+
+	private transient ExecutorService executorService = null;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
 	public MiningModelEvaluator2(PMML pmml) {
 		super(pmml);
 	}
@@ -44,19 +60,95 @@ public class MiningModelEvaluator2 extends MiningModelManager implements Evaluat
 		}
 	}
 
+	public EvaluationPlan getEvaluationPlan() throws EvaluationException {
+		return this.cache.getEvaluationPlan(this);
+	}
+
+	public RowSchema getRowSchema() throws EvaluationException {
+		return this.cache.getRowSchema(this);
+	}
+
+	SegmentCache getSegmentCache() throws EvaluationException {
+		SegmentCache result = this.segmentCache;
+
+		if (result == null) {
+			try {
+				result = new SegmentCache(this);
+			} catch (ModelManagerException e) {
+				throw new EvaluationException(e);
+			}
+
+			this.segmentCache = result;
+		}
+
+		return result;
+	}
+
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+		return evaluate(parameters, null);
+	}
+
+	public IPMMLResult evaluate(double[] continuousValues, Object[] categoricalValues)
+			throws EvaluationException {
+		RowSchema rowSchema = getRowSchema();
+
+		return evaluate(rowSchema.createParameters(continuousValues, categoricalValues), null);
+	}
+
+	/**
+	 * The context is reused between records, but the segments are evaluated record by record.
+	 * Batching saves the setup of every record, not the evaluation of the segments.
+	 */
+	public void evaluateBatch(ColumnBatch in, ColumnBatch out) throws EvaluationException {
+		MiningModel model;
+		try {
+			model = getModel();
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		ColumnBatchCursor cursor = new ColumnBatchCursor(this, in, out);
+
+		ModelManagerEvaluationContext context = new ModelManagerEvaluationContext(this,
+				getEvaluationPlan(), cursor.getParameters());
+
+		MiningFunctionType miningFunction = model.getFunctionName();
+
+		for (int row = 0; row < cursor.size(); row++) {
+			cursor.load(row, context);
+
+			IPMMLResult predictions;
+
+			switch (miningFunction) {
+			case REGRESSION:
+				predictions = evaluateRegression(context);
+				break;
+			case CLASSIFICATION:
+				predictions = evaluateClassification(context);
+				break;
+			default:
+				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+						miningFunction.name());
+			}
+
+			cursor.store(row, (PMMLResult) predictions, context);
+		}
+	}
+
 	/**
 	 * @throws EvaluationException
 	 * @see #evaluateRegression(EvaluationContext)
 	 * @see #evaluateClassification(EvaluationContext)
 	 */
-	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters, EvaluationContext parent)
+			throws EvaluationException {
 		try {
 			MiningModel model = getModel();
 
 			IPMMLResult predictions;
 
-			ModelManagerEvaluationContext context =
-					new ModelManagerEvaluationContext(this, parameters);
+			ModelManagerEvaluationContext context = new ModelManagerEvaluationContext(this,
+					getEvaluationPlan(), parameters, parent);
 
 			MiningFunctionType miningFunction = model.getFunctionName();
 			switch (miningFunction) {
@@ -101,16 +193,22 @@ public class MiningModelEvaluator2 extends MiningModelManager implements Evaluat
 			double sum = 0d;
 			double weightedSum = 0d;
 
-			for (SegmentResult segmentResult : segmentResults) {
+			int count = segmentResults.size();
+
+			double[] values = new double[count];
+
+			for (int i = 0; i < count; i++) {
+				SegmentResult segmentResult = segmentResults.get(i);
+
 				Object predictedValue = EvaluatorUtil.decode(segmentResult.getPrediction());
 
 				Double value = ParameterUtil.toDouble(predictedValue);
 
 				sum += value.doubleValue();
 				weightedSum += ((segmentResult.getSegment()).getWeight() * value.doubleValue());
-			}
 
-			int count = segmentResults.size();
+				values[i] = value.doubleValue();
+			}
 
 			switch (multipleModelMethod) {
 			case SUM:
@@ -122,6 +220,9 @@ public class MiningModelEvaluator2 extends MiningModelManager implements Evaluat
 			case WEIGHTED_AVERAGE:
 				result = (weightedSum / count);
 				break;
+			case MEDIAN:
+				result = median(values);
+				break;
 			default:
 				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
 						multipleModelMethod.name());
@@ -206,6 +307,21 @@ public class MiningModelEvaluator2 extends MiningModelManager implements Evaluat
 		// return Collections.singletonMap(getTarget(), result);
 	}
 
+	/**
+	 * @return The middle value, or the upper of the two middle values if the number of values is
+	 *         even. The same as {@link MiningModelEvaluator}.
+	 */
+	private static double median(double[] values) throws EvaluationException {
+
+		if (values.length == 0) {
+			throw new EvaluationException("No segment has produced a result");
+		}
+
+		Arrays.sort(values);
+
+		return values[values.length / 2];
+	}
+
 	private IPMMLResult dispatchSingleResult(List<SegmentResult> results)
 			throws EvaluationException {
 
@@ -232,49 +348,31 @@ public class MiningModelEvaluator2 extends MiningModelManager implements Evaluat
 
 		MultipleModelMethodType multipleModelMethod = segmentation.getMultipleModelMethod();
 
-		List<Segment> segments = segmentation.getSegments();
-		for (Segment segment : segments) {
-			Predicate predicate = segment.getPredicate();
+		ExecutorService executorService = getExecutorService();
+		if (executorService != null && isIndependent(multipleModelMethod)) {
+			return evaluateParallel(context, executorService);
+		}
+
+		SegmentCache segmentCache = getSegmentCache();
 
-			Boolean selectable = PredicateUtil.evaluate(predicate, context);
-			if (selectable == null) {
-				throw new EvaluationException("Predicate doesn't evaluate to false or true");
-			} // End if
+		for (int i = 0; i < segmentCache.size(); i++) {
+			Segment segment = segmentCache.getSegment(i);
 
-			if (!selectable.booleanValue()) {
+			if (!isSelectable(segment, context)) {
 				continue;
 			}
 
-			Model model = segment.getModel();
-
-			Evaluator evaluator;
+			RowEvaluator evaluator = segmentCache.getEvaluator(i);
 
-			try {
-				evaluator = (Evaluator) EVALUATOR_FACTORY.getModelManager(getPmml(), model);
-			} catch (ModelManagerException e1) {
-				throw new EvaluationException(e1);
-			}
+			FieldName target = segmentCache.getTarget(i);
 
-			FieldName target;
-			try {
-				target = evaluator.getTarget();
-			} catch (ModelManagerException e) {
-				throw new EvaluationException(e);
-			}
-
-			IPMMLResult result = evaluator.evaluate(context.getParameters());
+			IPMMLResult result = evaluator.evaluate(context.getParameters(), context);
 
 			switch (multipleModelMethod) {
 			case SELECT_FIRST:
 				return Collections.singletonList(new SegmentResult(segment, target, result));
 			case MODEL_CHAIN:
-				List<FieldName> outputFields;
-
-				try {
-					outputFields = evaluator.getOutputFields();
-				} catch (ModelManagerException e) {
-					throw new EvaluationException(e);
-				}
+				List<FieldName> outputFields = segmentCache.getOutputFields(i);
 
 				for (FieldName outputField : outputFields) {
 					Object outputValue;
@@ -303,8 +401,246 @@ public class MiningModelEvaluator2 extends MiningModelManager implements Evaluat
 		return results;
 	}
 
-	private static final ModelEvaluatorFactory EVALUATOR_FACTORY = ModelEvaluatorFactory
-			.getInstance();
+	/**
+	 * Evaluates the selected segments in contiguous chunks. The calling thread and the tasks that
+	 * it submits claim chunks from a shared counter until none is left. The calling thread then
+	 * disables the tasks that have not started, and waits only for those that are running. It
+	 * therefore never waits for a task that is queued behind it, even if the executor is the
+	 * pool of the calling thread. Every task works on a private copy of the context. The results
+	 * are collected by segment position, so that the aggregation does not depend on which thread
+	 * evaluates which chunk.
+	 *
+	 * The segments are evaluated sequentially if their estimated cost is below the
+	 * {@link #getParallelThreshold() threshold}.
+	 */
+	private List<SegmentResult> evaluateParallel(EvaluationContext context,
+			ExecutorService executorService) throws EvaluationException {
+		final SegmentCache segmentCache = getSegmentCache();
+
+		final int[] selected = new int[segmentCache.size()];
+
+		int count = 0;
+		long cost = 0;
+
+		for (int i = 0; i < segmentCache.size(); i++) {
+
+			if (isSelectable(segmentCache.getSegment(i), context)) {
+				selected[count++] = i;
+
+				cost += segmentCache.getCost(i);
+			}
+		}
+
+		final SegmentResult[] results = new SegmentResult[count];
+
+		int chunks = Math.min(getParallelism(), count);
+		if (chunks < 2 || cost < getParallelThreshold()) {
+			evaluateChunk(segmentCache, selected, 0, count, context, results);
+
+			return Arrays.asList(results);
+		}
+
+		final int size = count;
+		final int chunkSize = (count + chunks - 1) / chunks;
+
+		final AtomicInteger next = new AtomicInteger(0);
+
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+
+		// Claimed by either the task itself, or the calling thread once there is no work left
+		List<AtomicBoolean> starts = new ArrayList<AtomicBoolean>();
+
+		try {
+			for (int i = 1; i < chunks; i++) {
+				// Copied by the calling thread, before it starts to modify the context
+				final EvaluationContext taskContext = context.clone();
+
+				final AtomicBoolean start = new AtomicBoolean(false);
+
+				Callable<Void> task = new Callable<Void>() {
+
+					public Void call() throws EvaluationException {
+
+						if (start.compareAndSet(false, true)) {
+							evaluateChunks(segmentCache, selected, size, chunkSize, next,
+									taskContext, results);
+						}
+
+						return null;
+					}
+				};
+
+				futures.add(executorService.submit(task));
+				starts.add(start);
+			}
+
+			evaluateChunks(segmentCache, selected, size, chunkSize, next, context, results);
+
+			for (int i = 0; i < futures.size(); i++) {
+				AtomicBoolean start = starts.get(i);
+
+				// A task that has not started would find no chunks left
+				if (start.compareAndSet(false, true)) {
+					continue;
+				}
+
+				(futures.get(i)).get();
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+
+			throw new EvaluationException("Interrupted while evaluating segments");
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+
+			if (cause instanceof EvaluationException) {
+				throw (EvaluationException) cause;
+			} else
+
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else
+
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+
+			throw new EvaluationException(String.valueOf(cause));
+		} finally {
+
+			// Stop the remaining chunks if the evaluation has failed, and drop the queued tasks
+			next.set(size);
+
+			for (Future<?> future : futures) {
+				future.cancel(false);
+			}
+		}
+
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Claims and evaluates chunks until none is left. If a chunk fails, then the remaining chunks
+	 * are not claimed by any thread.
+	 */
+	private static void evaluateChunks(SegmentCache segmentCache, int[] selected, int size,
+			int chunkSize, AtomicInteger next, EvaluationContext context, SegmentResult[] results)
+			throws EvaluationException {
+		boolean completed = false;
+
+		try {
+			for (int from = next.getAndAdd(chunkSize); from < size;
+					from = next.getAndAdd(chunkSize)) {
+				evaluateChunk(segmentCache, selected, from, Math.min(from + chunkSize, size),
+						context, results);
+			}
+
+			completed = true;
+		} finally {
+
+			if (!completed) {
+				next.set(size);
+			}
+		}
+	}
+
+	private static void evaluateChunk(SegmentCache segmentCache, int[] selected, int from, int to,
+			EvaluationContext context, SegmentResult[] results) throws EvaluationException {
+
+		for (int j = from; j < to; j++) {
+			int i = selected[j];
+
+			RowEvaluator evaluator = segmentCache.getEvaluator(i);
+
+			IPMMLResult result = evaluator.evaluate(context.getParameters(), context);
+
+			results[j] = new SegmentResult(segmentCache.getSegment(i), segmentCache.getTarget(i),
+					result);
+		}
+	}
+
+	private static boolean isSelectable(Segment segment, EvaluationContext context)
+			throws EvaluationException {
+		Predicate predicate = segment.getPredicate();
+
+		Boolean selectable = PredicateUtil.evaluate(predicate, context);
+		if (selectable == null) {
+			throw new EvaluationException("Predicate doesn't evaluate to false or true");
+		} // End if
+
+		return selectable.booleanValue();
+	}
+
+	/**
+	 * @return <code>true</code> if the segments are combined without regard to the order of their
+	 *         evaluation, <code>false</code> otherwise.
+	 */
+	private static boolean isIndependent(MultipleModelMethodType multipleModelMethod) {
+
+		switch (multipleModelMethod) {
+		case SUM:
+		case AVERAGE:
+		case WEIGHTED_AVERAGE:
+		case MEDIAN:
+		case MAJORITY_VOTE:
+		case WEIGHTED_MAJORITY_VOTE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	public ExecutorService getExecutorService() {
+		return this.executorService;
+	}
+
+	/**
+	 * Enables the parallel evaluation of segments. Applies to segmentations whose segments are
+	 * independent of each other (eg. <code>average</code> or <code>majorityVote</code>, but not
+	 * <code>selectFirst</code> or <code>modelChain</code>). The parallel evaluation produces the
+	 * same results as the sequential evaluation.
+	 *
+	 * The calling thread evaluates segments too, and does not wait for tasks that have not
+	 * started. The executor may therefore be the pool that the calling thread belongs to.
+	 *
+	 * The configuration must be completed before the evaluator is shared between threads.
+	 *
+	 * @param executorService The executor, or <code>null</code> to evaluate sequentially.
+	 */
+	public void setExecutorService(ExecutorService executorService) {
+		this.executorService = executorService;
+	}
+
+	/**
+	 * @return The maximum number of chunks that the segments are split into.
+	 */
+	public int getParallelism() {
+		return this.parallelism;
+	}
+
+	public void setParallelism(int parallelism) {
+
+		if (parallelism < 1) {
+			throw new IllegalArgumentException();
+		}
+
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return The estimated cost of the selected segments below which the segments are evaluated
+	 *         sequentially. The cost of a tree model is the number of its nodes. The cost of a
+	 *         regression model is the number of its predictors.
+	 */
+	public int getParallelThreshold() {
+		return this.parallelThreshold;
+	}
+
+	public void setParallelThreshold(int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	private static final int DEFAULT_PARALLEL_THRESHOLD = 10000;
 
 	private static class SegmentResult {
 
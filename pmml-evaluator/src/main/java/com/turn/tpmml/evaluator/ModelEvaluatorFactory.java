@@ -21,9 +21,23 @@ public class ModelEvaluatorFactory extends ModelManagerFactory {
 	protected ModelEvaluatorFactory() {
 	}
 
+	/**
+	 * The returned evaluator is fully initialized, and is safe for concurrent use.
+	 * 
+	 * @see #initialize(ModelManager)
+	 */
 	@Override
 	public ModelManager<? extends Model> getModelManager(PMML pmml, Model model)
 			throws ModelManagerException {
+		ModelManager<? extends Model> modelManager = createModelManager(pmml, model);
+
+		initialize(modelManager);
+
+		return modelManager;
+	}
+
+	private ModelManager<? extends Model> createModelManager(PMML pmml, Model model)
+			throws ModelManagerException {
 
 		if (model instanceof RegressionModel) {
 			return new RegressionModelEvaluator(pmml, (RegressionModel) model);
@@ -56,6 +70,37 @@ public class ModelEvaluatorFactory extends ModelManagerFactory {
 				model.getModelName());
 	}
 
+	/**
+	 * Builds all the lazily initialized state of an evaluator, including compiled trees and the
+	 * evaluators of segment models. Later on, the evaluation does not modify the evaluator nor the
+	 * underlying PMML class model.
+	 */
+	public static void initialize(ModelManager<?> modelManager) throws ModelManagerException {
+		modelManager.getOrCreateTransformationDictionary();
+		modelManager.getOrCreateLocalTransformations();
+		modelManager.getOrCreateOutput();
+
+		RowEvaluator evaluator = (RowEvaluator) modelManager;
+
+		evaluator.getEvaluationPlan();
+
+		if (evaluator instanceof TreeModelEvaluator2) {
+			((TreeModelEvaluator2) evaluator).getCompiledTree();
+		} else
+
+		if (evaluator instanceof NeuralNetworkEvaluator) {
+			((NeuralNetworkEvaluator) evaluator).getCompiledNeuralNetwork();
+		} else
+
+		if (evaluator instanceof MiningModelEvaluator) {
+			((MiningModelEvaluator) evaluator).getSegmentCache();
+		} else
+
+		if (evaluator instanceof MiningModelEvaluator2) {
+			((MiningModelEvaluator2) evaluator).getSegmentCache();
+		}
+	}
+
 	public static ModelEvaluatorFactory getInstance() {
 		return new ModelEvaluatorFactory();
 	}
@@ -16,13 +16,35 @@ public class ModelManagerEvaluationContext extends EvaluationContext {
 
 	public ModelManagerEvaluationContext(ModelManager<?> modelManager,
 										Map<FieldName, ?> parameters) {
-		super(parameters);
+		this(modelManager, null, parameters);
+	}
+
+	public ModelManagerEvaluationContext(ModelManager<?> modelManager,
+										EvaluationPlan evaluationPlan,
+										Map<FieldName, ?> parameters) {
+		this(modelManager, evaluationPlan, parameters, null);
+	}
+
+	public ModelManagerEvaluationContext(ModelManager<?> modelManager,
+										EvaluationPlan evaluationPlan,
+										Map<FieldName, ?> parameters,
+										EvaluationContext parent) {
+		super(evaluationPlan, parameters, parent);
 
 		setModelManager(modelManager);
 	}
 
 	@Override
 	public DerivedField resolve(FieldName name) throws EvaluationException {
+		EvaluationPlan evaluationPlan = getEvaluationPlan();
+		if (evaluationPlan != null) {
+			int slot = evaluationPlan.getSlot(name);
+
+			if (slot > -1) {
+				return evaluationPlan.getDerivedField(slot);
+			}
+		}
+
 		ModelManager<?> modelManager = getModelManager();
 
 		try {
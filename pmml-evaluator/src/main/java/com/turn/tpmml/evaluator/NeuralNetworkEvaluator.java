@@ -25,14 +25,19 @@ import com.turn.tpmml.manager.NeuralNetworkManager;
 import com.turn.tpmml.manager.PMMLResult;
 import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
 
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-public class NeuralNetworkEvaluator extends NeuralNetworkManager implements Evaluator {
+public class NeuralNetworkEvaluator extends NeuralNetworkManager implements BatchEvaluator {
 
 	private static final long serialVersionUID = 1L;
 
+	private EvaluatorCache cache = new EvaluatorCache();
+
+	private transient volatile CompiledNeuralNetwork compiledNeuralNetwork = null;
+
 	public NeuralNetworkEvaluator(PMML pmml) throws ModelManagerException {
 		super(pmml);
 	}
@@ -54,13 +59,274 @@ public class NeuralNetworkEvaluator extends NeuralNetworkManager implements Eval
 		}
 	}
 
+	public EvaluationPlan getEvaluationPlan() throws EvaluationException {
+		return this.cache.getEvaluationPlan(this);
+	}
+
+	public RowSchema getRowSchema() throws EvaluationException {
+		return this.cache.getRowSchema(this);
+	}
+
+	CompiledNeuralNetwork getCompiledNeuralNetwork() throws EvaluationException {
+		CompiledNeuralNetwork result = this.compiledNeuralNetwork;
+
+		if (result == null) {
+			try {
+				List<NeuralOutput> neuralOutputs = getOrCreateNeuralOutputs();
+
+				Expression[] expressions = new Expression[neuralOutputs.size()];
+
+				for (int i = 0; i < neuralOutputs.size(); i++) {
+					expressions[i] = getExpression((neuralOutputs.get(i)).getDerivedField());
+				}
+
+				result = new CompiledNeuralNetwork(getModel(), neuralOutputs, expressions);
+			} catch (ModelManagerException e) {
+				throw new EvaluationException(e);
+			}
+
+			this.compiledNeuralNetwork = result;
+		}
+
+		return result;
+	}
+
+	@Override
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+		return evaluate(parameters, null);
+	}
+
+	@Override
+	public IPMMLResult evaluate(double[] continuousValues, Object[] categoricalValues)
+			throws EvaluationException {
+		RowSchema rowSchema = getRowSchema();
+
+		return evaluate(rowSchema.createParameters(continuousValues, categoricalValues), null);
+	}
+
+	@Override
+	public void evaluateBatch(ColumnBatch in, ColumnBatch out) throws EvaluationException {
+		NeuralNetwork neuralNetwork;
+		try {
+			neuralNetwork = getModel();
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		ColumnBatchCursor cursor = new ColumnBatchCursor(this, in, out);
+
+		ModelManagerEvaluationContext context = new ModelManagerEvaluationContext(this,
+				getEvaluationPlan(), cursor.getParameters());
+
+		final MiningFunctionType miningFunction = neuralNetwork.getFunctionName();
+
+		CompiledNeuralNetwork compiledNeuralNetwork = getCompiledNeuralNetwork();
+
+		if (compiledNeuralNetwork.isSupported()) {
+			evaluateBatch(compiledNeuralNetwork, miningFunction, cursor, context);
+
+			return;
+		}
+
+		cursor.evaluate(new ColumnBatchCursor.Predictor() {
+
+			public Map<FieldName, ?> predict(ModelManagerEvaluationContext context)
+					throws EvaluationException {
+				return evaluatePredictions(miningFunction, context);
+			}
+		}, context);
+	}
+
+	/**
+	 * Evaluates the records in blocks of {@link #BLOCK_SIZE}. The neurons of a block are
+	 * evaluated layer by layer, and the neural outputs are decoded column by column.
+	 *
+	 * Every record is loaded once. If the <code>Output</code> element is evaluated, then the
+	 * context of every record of the block is kept until the record is stored. If a record fails,
+	 * then the records before it are stored before the failure is propagated, as in record by
+	 * record evaluation.
+	 *
+	 * @see CompiledNeuralNetwork#evaluateBatch(double[], int, int)
+	 */
+	private void evaluateBatch(CompiledNeuralNetwork compiledNeuralNetwork,
+			MiningFunctionType miningFunction, ColumnBatchCursor cursor,
+			ModelManagerEvaluationContext context) throws EvaluationException {
+		int outputCount = compiledNeuralNetwork.getOutputCount();
+
+		int[] indexes = new int[outputCount];
+		Expression[] expressions = new Expression[outputCount];
+
+		for (int i = 0; i < outputCount; i++) {
+			indexes[i] = compiledNeuralNetwork.getOutputIndex(i);
+			expressions[i] = compiledNeuralNetwork.getOutputExpression(i);
+		}
+
+		int capacity = Math.min(cursor.size(), BLOCK_SIZE);
+
+		double[] values = new double[compiledNeuralNetwork.size() * capacity];
+
+		Double[][] outputs = new Double[outputCount][capacity];
+
+		ModelManagerEvaluationContext[] contexts = (cursor.isOutputRequested() ?
+				new ModelManagerEvaluationContext[capacity] : null);
+
+		for (int start = 0; start < cursor.size(); start += capacity) {
+			int count = Math.min(capacity, cursor.size() - start);
+
+			EvaluationException failure = null;
+
+			for (int r = 0; r < count; r++) {
+				cursor.load(start + r, context);
+
+				try {
+					compiledNeuralNetwork.load(context, values, capacity, r);
+				} catch (EvaluationException ee) {
+					failure = ee;
+
+					count = r;
+
+					break;
+				}
+
+				if (contexts != null) {
+					contexts[r] = context.clone();
+				}
+			}
+
+			compiledNeuralNetwork.evaluateBatch(values, capacity, count);
+
+			for (int i = 0; i < outputCount; i++) {
+				decode(expressions[i], indexes[i], values, capacity, count, outputs[i], context);
+			}
+
+			for (int r = 0; r < count; r++) {
+				Map<FieldName, ?> predictions;
+
+				switch (miningFunction) {
+				case REGRESSION:
+					predictions = createRegressionPredictions(expressions, outputs, r);
+					break;
+				case CLASSIFICATION:
+					predictions = createClassificationPredictions(expressions, outputs, r);
+					break;
+				default:
+					throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+							miningFunction.name());
+				}
+
+				cursor.store(start + r, predictions, (contexts != null ? contexts[r] : context));
+			}
+
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * Decodes the outputs of a neuron for a block of records.
+	 *
+	 * @param index The index of the neuron, or <code>-1</code>.
+	 */
+	private void decode(Expression expression, int index, double[] values, int capacity,
+			int count, Double[] result, EvaluationContext context) throws EvaluationException {
+
+		if (index < 0) {
+			Arrays.fill(result, 0, count, null);
+
+			return;
+		}
+
+		int offset = index * capacity;
+
+		if (expression instanceof NormContinuous) {
+			NormContinuous normContinuous = (NormContinuous) expression;
+
+			CompiledNormContinuous compiledNormContinuous =
+					(context.getEvaluationPlan()).getNormContinuous(normContinuous);
+
+			for (int r = 0; r < count; r++) {
+				double value = values[offset + r];
+
+				result[r] = (compiledNormContinuous != null ?
+						compiledNormContinuous.denormalize(value) :
+						NormalizationUtil.denormalize(normContinuous, value));
+			}
+
+			return;
+		}
+
+		for (int r = 0; r < count; r++) {
+			result[r] = values[offset + r];
+		}
+	}
+
+	/**
+	 * @see #evaluateRegression(EvaluationContext)
+	 */
+	private Map<FieldName, Double> createRegressionPredictions(Expression[] expressions,
+			Double[][] outputs, int record) throws EvaluationException {
+		Map<FieldName, Double> result = new LinkedHashMap<FieldName, Double>();
+
+		for (int i = 0; i < expressions.length; i++) {
+			Expression expression = expressions[i];
+
+			if (expression instanceof FieldRef) {
+				result.put(((FieldRef) expression).getField(), outputs[i][record]);
+			} else
+
+			if (expression instanceof NormContinuous) {
+				result.put(((NormContinuous) expression).getField(), outputs[i][record]);
+			} else {
+				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+						expression.toString());
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @see #evaluateClassification(EvaluationContext)
+	 */
+	private Map<FieldName, ClassificationMap> createClassificationPredictions(
+			Expression[] expressions, Double[][] outputs, int record) throws EvaluationException {
+		Map<FieldName, ClassificationMap> result =
+				new LinkedHashMap<FieldName, ClassificationMap>();
+
+		for (int i = 0; i < expressions.length; i++) {
+			Expression expression = expressions[i];
+
+			if (expression instanceof NormDiscrete) {
+				NormDiscrete normDiscrete = (NormDiscrete) expression;
+
+				FieldName field = normDiscrete.getField();
+
+				ClassificationMap values = result.get(field);
+				if (values == null) {
+					values = new ClassificationMap();
+
+					result.put(field, values);
+				}
+
+				values.put(normDiscrete.getValue(), outputs[i][record]);
+			} else {
+				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+						expression.toString());
+			}
+		}
+
+		return result;
+	}
+
 	/**
 	 * @throws EvaluationException
 	 * @see #evaluateRegression(EvaluationContext)
 	 * @see #evaluateClassification(EvaluationContext)
 	 */
 	@Override
-	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters, EvaluationContext parent)
+			throws EvaluationException {
 		NeuralNetwork neuralNetwork;
 		try {
 			neuralNetwork = getModel();
@@ -70,19 +336,10 @@ public class NeuralNetworkEvaluator extends NeuralNetworkManager implements Eval
 
 		Map<FieldName, ?> predictions;
 
-		ModelManagerEvaluationContext context = new ModelManagerEvaluationContext(this, parameters);
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getEvaluationPlan(), parameters, parent);
 
-		MiningFunctionType miningFunction = neuralNetwork.getFunctionName();
-		switch (miningFunction) {
-		case REGRESSION:
-			predictions = evaluateRegression(context);
-			break;
-		case CLASSIFICATION:
-			predictions = evaluateClassification(context);
-			break;
-		default:
-			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION, miningFunction.name());
-		}
+		predictions = evaluatePredictions(neuralNetwork.getFunctionName(), context);
 
 		PMMLResult result = new PMMLResult();
 		result = OutputUtil.evaluate(predictions, context);
@@ -90,28 +347,36 @@ public class NeuralNetworkEvaluator extends NeuralNetworkManager implements Eval
 		return result;
 	}
 
+	private Map<FieldName, ?> evaluatePredictions(MiningFunctionType miningFunction,
+			EvaluationContext context) throws EvaluationException {
+
+		switch (miningFunction) {
+		case REGRESSION:
+			return evaluateRegression(context);
+		case CLASSIFICATION:
+			return evaluateClassification(context);
+		default:
+			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+					miningFunction.name());
+		}
+	}
+
 	public Map<FieldName, Double> evaluateRegression(EvaluationContext context)
 			throws EvaluationException {
 		Map<FieldName, Double> result = new LinkedHashMap<FieldName, Double>();
 
-		Map<String, Double> neuronOutputs = evaluateRaw(context);
+		NeuronOutputs neuronOutputs = evaluateNeuronOutputs(context);
 
-		List<NeuralOutput> neuralOutputs;
-		try {
-			neuralOutputs = getOrCreateNeuralOutputs();
-		} catch (ModelManagerException e) {
-			throw new EvaluationException(e);
-		}
-		for (NeuralOutput neuralOutput : neuralOutputs) {
-			String id = neuralOutput.getOutputNeuron();
+		CompiledNeuralNetwork compiledNeuralNetwork = getCompiledNeuralNetwork();
 
-			Expression expression = getExpression(neuralOutput.getDerivedField());
+		for (int i = 0; i < compiledNeuralNetwork.getOutputCount(); i++) {
+			Expression expression = compiledNeuralNetwork.getOutputExpression(i);
 			if (expression instanceof FieldRef) {
 				FieldRef fieldRef = (FieldRef) expression;
 
 				FieldName field = fieldRef.getField();
 
-				result.put(field, neuronOutputs.get(id));
+				result.put(field, neuronOutputs.get(i));
 			} else
 
 			if (expression instanceof NormContinuous) {
@@ -119,7 +384,16 @@ public class NeuralNetworkEvaluator extends NeuralNetworkManager implements Eval
 
 				FieldName field = normContinuous.getField();
 
-				Double value = NormalizationUtil.denormalize(normContinuous, neuronOutputs.get(id));
+				CompiledNormContinuous compiledNormContinuous = null;
+
+				EvaluationPlan evaluationPlan = context.getEvaluationPlan();
+				if (evaluationPlan != null) {
+					compiledNormContinuous = evaluationPlan.getNormContinuous(normContinuous);
+				}
+
+				Double value = (compiledNormContinuous != null ?
+						compiledNormContinuous.denormalize(neuronOutputs.get(i)) :
+						NormalizationUtil.denormalize(normContinuous, neuronOutputs.get(i)));
 
 				result.put(field, value);
 			} else {
@@ -136,18 +410,12 @@ public class NeuralNetworkEvaluator extends NeuralNetworkManager implements Eval
 		Map<FieldName, ClassificationMap> result =
 				new LinkedHashMap<FieldName, ClassificationMap>();
 
-		Map<String, Double> neuronOutputs = evaluateRaw(context);
+		NeuronOutputs neuronOutputs = evaluateNeuronOutputs(context);
 
-		List<NeuralOutput> neuralOutputs;
-		try {
-			neuralOutputs = getOrCreateNeuralOutputs();
-		} catch (ModelManagerException e) {
-			throw new EvaluationException(e);
-		}
-		for (NeuralOutput neuralOutput : neuralOutputs) {
-			String id = neuralOutput.getOutputNeuron();
+		CompiledNeuralNetwork compiledNeuralNetwork = getCompiledNeuralNetwork();
 
-			Expression expression = getExpression(neuralOutput.getDerivedField());
+		for (int i = 0; i < compiledNeuralNetwork.getOutputCount(); i++) {
+			Expression expression = compiledNeuralNetwork.getOutputExpression(i);
 			if (expression instanceof NormDiscrete) {
 				NormDiscrete normDiscrete = (NormDiscrete) expression;
 
@@ -160,7 +428,7 @@ public class NeuralNetworkEvaluator extends NeuralNetworkManager implements Eval
 					result.put(field, values);
 				}
 
-				Double value = neuronOutputs.get(id);
+				Double value = neuronOutputs.get(i);
 
 				values.put(normDiscrete.getValue(), value);
 			} else {
@@ -203,6 +471,33 @@ public class NeuralNetworkEvaluator extends NeuralNetworkManager implements Eval
 	 * @see Neuron#getId()
 	 */
 	public Map<String, Double> evaluateRaw(EvaluationContext context) throws EvaluationException {
+		CompiledNeuralNetwork compiledNeuralNetwork = getCompiledNeuralNetwork();
+
+		if (compiledNeuralNetwork.isSupported()) {
+			return compiledNeuralNetwork.toMap(compiledNeuralNetwork.evaluate(context));
+		}
+
+		return evaluateNeurons(context);
+	}
+
+	private NeuronOutputs evaluateNeuronOutputs(EvaluationContext context)
+			throws EvaluationException {
+		CompiledNeuralNetwork compiledNeuralNetwork = getCompiledNeuralNetwork();
+
+		if (compiledNeuralNetwork.isSupported()) {
+			return new NeuronOutputs(compiledNeuralNetwork,
+					compiledNeuralNetwork.evaluate(context));
+		}
+
+		return new NeuronOutputs(compiledNeuralNetwork, evaluateNeurons(context));
+	}
+
+	/**
+	 * Evaluates neural network neuron by neuron.
+	 *
+	 * @see CompiledNeuralNetwork
+	 */
+	Map<String, Double> evaluateNeurons(EvaluationContext context) throws EvaluationException {
 		Map<String, Double> result = new LinkedHashMap<String, Double>();
 
 		List<NeuralInput> neuralInputs;
@@ -338,4 +633,46 @@ public class NeuralNetworkEvaluator extends NeuralNetworkManager implements Eval
 					activationFunction.name());
 		}
 	}
+
+	/**
+	 * Neuron outputs either in compiled or in interpreted form.
+	 */
+	private static class NeuronOutputs {
+
+		private CompiledNeuralNetwork compiledNeuralNetwork = null;
+
+		private double[] values = null;
+
+		private Map<String, Double> map = null;
+
+		private NeuronOutputs(CompiledNeuralNetwork compiledNeuralNetwork, double[] values) {
+			this.compiledNeuralNetwork = compiledNeuralNetwork;
+			this.values = values;
+		}
+
+		private NeuronOutputs(CompiledNeuralNetwork compiledNeuralNetwork,
+				Map<String, Double> map) {
+			this.compiledNeuralNetwork = compiledNeuralNetwork;
+			this.map = map;
+		}
+
+		/**
+		 * @param output The position of the neural output.
+		 */
+		public Double get(int output) {
+
+			if (this.map != null) {
+				return this.map.get(this.compiledNeuralNetwork.getOutputId(output));
+			}
+
+			int index = this.compiledNeuralNetwork.getOutputIndex(output);
+
+			return (index > -1 ? Double.valueOf(this.values[index]) : null);
+		}
+	}
+
+	/**
+	 * The number of records that are evaluated together in batch mode.
+	 */
+	private static final int BLOCK_SIZE = 128;
 }
@@ -48,6 +48,16 @@ public class PredicateUtil {
 
 	public static Boolean evaluateSimplePredicate(SimplePredicate simplePredicate,
 			EvaluationContext context) throws EvaluationException {
+		EvaluationPlan evaluationPlan = context.getEvaluationPlan();
+		if (evaluationPlan != null) {
+			CompiledSimplePredicate compiledSimplePredicate =
+					evaluationPlan.getSimplePredicate(simplePredicate);
+
+			if (compiledSimplePredicate != null) {
+				return compiledSimplePredicate.evaluate(context);
+			}
+		}
+
 		Object value = ExpressionUtil.evaluate(simplePredicate.getField(), context);
 
 		switch (simplePredicate.getOperator()) {
@@ -137,12 +147,23 @@ public class PredicateUtil {
 
 		Array array = simpleSetPredicate.getArray();
 
+		ValueSet values = null;
+
+		EvaluationPlan evaluationPlan = context.getEvaluationPlan();
+		if (evaluationPlan != null) {
+			values = evaluationPlan.getValueSet(array);
+		}
+
+		if (values == null) {
+			values = ArrayUtil.getValueSet(array);
+		}
+
 		SimpleSetPredicate.BooleanOperator operator = simpleSetPredicate.getBooleanOperator();
 		switch (operator) {
 		case IS_IN:
-			return ArrayUtil.isIn(array, value);
+			return Boolean.valueOf(values.contains(value));
 		case IS_NOT_IN:
-			return ArrayUtil.isNotIn(array, value);
+			return Boolean.valueOf(!values.contains(value));
 		default:
 			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
 					operator.name());
@@ -0,0 +1,91 @@
+package com.turn.tpmml.evaluator;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The reason codes with the largest differences from the baseline score.
+ *
+ * The ranking is kept in fixed-size arrays, so that it can be reused between records. Reason
+ * codes are ordered by decreasing difference. Among reason codes with equal differences, the
+ * one that was added last comes first, so that ties are resolved in favour of the last reason
+ * code (as in a sorted map that is keyed by difference).
+ *
+ * @see ScorecardEvaluator
+ */
+class ReasonCodeRanking {
+
+	private double[] differences = null;
+
+	private String[] reasonCodes = null;
+
+	private int limit = 0;
+
+	private int size = 0;
+
+	/**
+	 * @param capacity The maximum number of reason codes.
+	 */
+	ReasonCodeRanking(int capacity) {
+		this.differences = new double[capacity];
+		this.reasonCodes = new String[capacity];
+	}
+
+	/**
+	 * Removes all the reason codes.
+	 *
+	 * @param limit The number of reason codes to keep. Must not exceed the capacity.
+	 */
+	void reset(int limit) {
+
+		if (limit < 0 || limit > this.reasonCodes.length) {
+			throw new IllegalArgumentException();
+		}
+
+		Arrays.fill(this.reasonCodes, 0, this.size, null);
+
+		this.limit = limit;
+		this.size = 0;
+	}
+
+	void add(double difference, String reasonCode) {
+		int position = this.size;
+
+		if (position == this.limit) {
+
+			// The ranking is full, and the difference is less than the smallest one
+			if (position == 0 || !(difference >= this.differences[position - 1])) {
+				return;
+			}
+
+			position--;
+		} else {
+			this.size++;
+		}
+
+		while (position > 0 && difference >= this.differences[position - 1]) {
+			this.differences[position] = this.differences[position - 1];
+			this.reasonCodes[position] = this.reasonCodes[position - 1];
+
+			position--;
+		}
+
+		this.differences[position] = difference;
+		this.reasonCodes[position] = reasonCode;
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return The reason code with the largest difference, or <code>null</code>.
+	 */
+	String getFirst() {
+		return (this.size > 0 ? this.reasonCodes[0] : null);
+	}
+
+	List<String> getReasonCodes() {
+		return Arrays.asList(Arrays.copyOf(this.reasonCodes, this.size));
+	}
+}
@@ -6,6 +6,7 @@ package com.turn.tpmml.evaluator;
 import com.turn.tpmml.CategoricalPredictor;
 import com.turn.tpmml.DataField;
 import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldRef;
 import com.turn.tpmml.MiningFunctionType;
 import com.turn.tpmml.NumericPredictor;
 import com.turn.tpmml.OpType;
@@ -32,10 +33,12 @@ import java.util.Map;
  * @author tbadie
  * 
  */
-public class RegressionModelEvaluator extends RegressionModelManager implements Evaluator {
+public class RegressionModelEvaluator extends RegressionModelManager implements BatchEvaluator {
 
 	private static final long serialVersionUID = 1L;
 
+	private EvaluatorCache cache = new EvaluatorCache();
+
 	public RegressionModelEvaluator(PMML pmml) {
 		super(pmml);
 	}
@@ -56,13 +59,60 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 		}
 	}
 
+	public EvaluationPlan getEvaluationPlan() throws EvaluationException {
+		return this.cache.getEvaluationPlan(this);
+	}
+
+	public RowSchema getRowSchema() throws EvaluationException {
+		return this.cache.getRowSchema(this);
+	}
+
+	@Override
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+		return evaluate(parameters, null);
+	}
+
+	@Override
+	public IPMMLResult evaluate(double[] continuousValues, Object[] categoricalValues)
+			throws EvaluationException {
+		RowSchema rowSchema = getRowSchema();
+
+		return evaluate(rowSchema.createParameters(continuousValues, categoricalValues), null);
+	}
+
+	@Override
+	public void evaluateBatch(ColumnBatch in, ColumnBatch out) throws EvaluationException {
+		RegressionModel regressionModel;
+		try {
+			regressionModel = getModel();
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		ColumnBatchCursor cursor = new ColumnBatchCursor(this, in, out);
+
+		ModelManagerEvaluationContext context = new ModelManagerEvaluationContext(this,
+				getEvaluationPlan(), cursor.getParameters());
+
+		final MiningFunctionType miningFunction = regressionModel.getFunctionName();
+
+		cursor.evaluate(new ColumnBatchCursor.Predictor() {
+
+			public Map<FieldName, ?> predict(ModelManagerEvaluationContext context)
+					throws EvaluationException {
+				return evaluatePredictions(miningFunction, context);
+			}
+		}, context);
+	}
+
 	/**
 	 * @throws EvaluationException
 	 * @see #evaluateRegression(EvaluationContext)
 	 * @see #evaluateClassification(EvaluationContext)
 	 */
 	@Override
-	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters, EvaluationContext parent)
+			throws EvaluationException {
 		RegressionModel regressionModel;
 		try {
 			regressionModel = getModel();
@@ -72,20 +122,10 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 
 		Map<FieldName, ?> predictions;
 
-		ModelManagerEvaluationContext context = new ModelManagerEvaluationContext(this, parameters);
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getEvaluationPlan(), parameters, parent);
 
-		MiningFunctionType miningFunction = regressionModel.getFunctionName();
-		switch (miningFunction) {
-		case REGRESSION:
-			predictions = evaluateRegression(context);
-			break;
-		case CLASSIFICATION:
-			predictions = evaluateClassification(context);
-			break;
-		default:
-			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
-					miningFunction.name());
-		}
+		predictions = evaluatePredictions(regressionModel.getFunctionName(), context);
 
 		if (predictions == null) {
 			return null;
@@ -104,6 +144,20 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 		return res;
 	}
 
+	private Map<FieldName, ?> evaluatePredictions(MiningFunctionType miningFunction,
+			EvaluationContext context) throws EvaluationException {
+
+		switch (miningFunction) {
+		case REGRESSION:
+			return evaluateRegression(context);
+		case CLASSIFICATION:
+			return evaluateClassification(context);
+		default:
+			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+					miningFunction.name());
+		}
+	}
+
 	public Map<FieldName, Double> evaluateRegression(EvaluationContext context)
 			throws EvaluationException {
 		RegressionModel regressionModel;
@@ -124,14 +178,14 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 			throw new EvaluationException("There are too many tables for a regression.");
 		}
 
-		RegressionTable regressionTable = regressionTables.get(0);
-
-		Double value = evaluateRegressionTable(regressionTable, context);
+		double[] values = evaluateRegressionTables(regressionModel, regressionTables, context);
 
-		if (value == null) {
+		if (values == null) {
 			return null;
 		}
 
+		Double value = values[0];
+
 		FieldName name;
 		try {
 			name = getTarget();
@@ -167,20 +221,27 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 			throw new EvaluationException("There is no regression table in this model");
 		}
 
-		double sumExp = 0d;
+		double[] tableValues = evaluateRegressionTables(regressionModel, regressionTables, context);
 
-		ClassificationMap values = new ClassificationMap();
+		if (tableValues == null) {
+			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+					"Target");
+		}
 
-		for (RegressionTable regressionTable : regressionTables) {
-			Double value = evaluateRegressionTable(regressionTable, context);
+		// The exponents are scaled down by the largest one, so that they cannot overflow
+		double max = Double.NEGATIVE_INFINITY;
 
-			if (value == null) {
-				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
-						"Target");
-			}
+		for (double tableValue : tableValues) {
+			max = Math.max(max, tableValue);
+		}
+
+		double sumExp = 0d;
+
+		ClassificationMap values = new ClassificationMap();
 
-			sumExp += Math.exp(value.doubleValue());
-			values.put(regressionTable.getTargetCategory(), value);
+		for (int i = 0; i < tableValues.length; i++) {
+			sumExp += Math.exp(tableValues[i] - max);
+			values.put((regressionTables.get(i)).getTargetCategory(), tableValues[i]);
 		}
 
 		FieldName name;
@@ -208,7 +269,7 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 		for (Map.Entry<String, Double> entry : entries) {
 			if (entry.getValue() != null) {
 				entry.setValue(normalizeClassificationResult(regressionNormalizationMethod,
-						entry.getValue(), sumExp));
+						entry.getValue(), max, sumExp));
 			} else {
 				entry.setValue(null);
 			}
@@ -217,6 +278,41 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 		return Collections.singletonMap(name, values);
 	}
 
+	/**
+	 * @return The value of every table, or <code>null</code> if some table evaluates to a missing
+	 *         value.
+	 *
+	 * @see CompiledRegressionTables
+	 */
+	private static double[] evaluateRegressionTables(RegressionModel regressionModel,
+			List<RegressionTable> regressionTables, EvaluationContext context)
+			throws EvaluationException {
+		EvaluationPlan evaluationPlan = context.getEvaluationPlan();
+
+		if (evaluationPlan != null) {
+			CompiledRegressionTables compiledRegressionTables =
+					evaluationPlan.getRegressionTables(regressionModel);
+
+			if (compiledRegressionTables != null) {
+				return compiledRegressionTables.evaluate(context);
+			}
+		}
+
+		double[] result = new double[regressionTables.size()];
+
+		for (int i = 0; i < result.length; i++) {
+			Double value = evaluateRegressionTable(regressionTables.get(i), context);
+
+			if (value == null) {
+				return null;
+			}
+
+			result[i] = value.doubleValue();
+		}
+
+		return result;
+	}
+
 	private static Double evaluateRegressionTable(RegressionTable regressionTable,
 			EvaluationContext context) throws EvaluationException {
 		double result = 0D;
@@ -239,6 +335,25 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 									numericPredictor.getExponent());
 		}
 
+		List<PredictorTerm> predictorTerms = regressionTable.getPredictorTerms();
+		for (PredictorTerm predictorTerm : predictorTerms) {
+			double product = 1d;
+
+			List<FieldRef> fieldRefs = predictorTerm.getFieldReves();
+			for (FieldRef fieldRef : fieldRefs) {
+				Object value = ExpressionUtil.evaluate(fieldRef, context);
+
+				// "if the input value is missing then the result evaluates to a missing value"
+				if (value == null) {
+					return null;
+				}
+
+				product *= (ParameterUtil.toDouble(value)).doubleValue();
+			}
+
+			result += predictorTerm.getCoefficient() * product;
+		}
+
 		List<CategoricalPredictor> categoricalPredictors =
 				regressionTable.getCategoricalPredictors();
 		for (CategoricalPredictor categoricalPredictor : categoricalPredictors) {
@@ -254,12 +369,6 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 			result += categoricalPredictor.getCoefficient() * (equals ? 1d : 0d);
 		}
 
-		List<PredictorTerm> predictorTerms = regressionTable.getPredictorTerms();
-		for (PredictorTerm predictorTerm : predictorTerms) {
-			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
-					predictorTerm.toString());
-		}
-
 		return result;
 	}
 
@@ -282,13 +391,13 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 
 	private static Double normalizeClassificationResult(
 			RegressionNormalizationMethodType regressionNormalizationMethod, Double value,
-			Double sumExp) throws EvaluationException {
+			double max, double sumExp) throws EvaluationException {
 
 		switch (regressionNormalizationMethod) {
 		case NONE:
 			return value;
 		case SOFTMAX:
-			return Math.exp(value) / sumExp;
+			return Math.exp(value - max) / sumExp;
 		case LOGIT:
 			return 1d / (1d + Math.exp(-value));
 		case CLOGLOG:
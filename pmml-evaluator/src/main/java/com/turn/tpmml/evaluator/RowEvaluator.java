@@ -0,0 +1,65 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.manager.IPMMLResult;
+
+import java.util.Map;
+
+/**
+ * An {@link Evaluator} that resolves fields to the slots of an {@link EvaluationPlan}, and
+ * evaluates positional rows.
+ *
+ * The methods are kept apart from {@link Evaluator}, so that existing implementations of
+ * {@link Evaluator} do not have to implement them. All the evaluators that are created by
+ * {@link ModelEvaluatorFactory} implement this interface.
+ */
+public interface RowEvaluator extends Evaluator {
+
+	/**
+	 * Gets the field resolution of the model. The plan is computed once and shared by all
+	 * subsequent evaluations.
+	 * 
+	 * @throws EvaluationException If the model is not valid
+	 */
+	EvaluationPlan getEvaluationPlan() throws EvaluationException;
+
+	/**
+	 * Gets the layout of positional rows. The schema is computed once and shared by all
+	 * subsequent evaluations.
+	 * 
+	 * @throws EvaluationException If the model is not valid
+	 * 
+	 * @see #evaluate(double[], Object[])
+	 */
+	RowSchema getRowSchema() throws EvaluationException;
+
+	/**
+	 * Evaluates the model as a part of an enclosing model (eg. as a {@link Segment} of a
+	 * {@link MiningModel}). Data dictionary and transformation dictionary field values that
+	 * have already been computed by the parent context are reused, and vice versa.
+	 * 
+	 * @param parameters Map of {@link #getActiveFields() active field} values.
+	 * @param parent The evaluation context of the enclosing model, or <code>null</code>.
+	 * 
+	 * @throws EvaluationException If the evaluation fails
+	 * 
+	 * @see Evaluator#evaluate(Map)
+	 */
+	IPMMLResult evaluate(Map<FieldName, ?> parameters, EvaluationContext parent)
+			throws EvaluationException;
+
+	/**
+	 * Evaluates a positional row of {@link #getActiveFields() active field} values. This is
+	 * equivalent to {@link #evaluate(Map)}, but it does not require the caller to build a map.
+	 * 
+	 * @param continuousValues The values of continuous fields.
+	 * @param categoricalValues The values of all other fields.
+	 * 
+	 * @throws EvaluationException If the row does not match the {@link #getRowSchema() row
+	 *             schema}, or if the evaluation fails
+	 * 
+	 * @see RowSchema
+	 */
+	IPMMLResult evaluate(double[] continuousValues, Object[] categoricalValues)
+			throws EvaluationException;
+}
@@ -0,0 +1,117 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Map view of a positional row.
+ *
+ * An {@link EvaluationContext} that is created with this view loads the row directly into its
+ * slots. The view is converted to a regular map only when it is modified (eg. by a
+ * <code>MODEL_CHAIN</code> segmentation) or iterated.
+ *
+ * @see RowSchema#createParameters(double[], Object[])
+ */
+class RowParameters extends AbstractMap<FieldName, Object> {
+
+	private RowSchema rowSchema = null;
+
+	private double[] continuousValues = null;
+
+	private Object[] categoricalValues = null;
+
+	private Map<FieldName, Object> delegate = null;
+
+	RowParameters(RowSchema rowSchema, double[] continuousValues, Object[] categoricalValues) {
+		this.rowSchema = rowSchema;
+		this.continuousValues = continuousValues;
+		this.categoricalValues = categoricalValues;
+	}
+
+	/**
+	 * Loads the row into the slots of the context. Contexts of other models look up the
+	 * parameters by name.
+	 */
+	void load(EvaluationContext context) {
+		RowSchema rowSchema = this.rowSchema;
+
+		if (this.delegate != null || rowSchema.getEvaluationPlan() != context.getEvaluationPlan()) {
+			return;
+		}
+
+		for (int i = 0; i < rowSchema.size(); i++) {
+			int slot = rowSchema.getSlot(i);
+
+			if (slot > -1) {
+				context.setValue(slot, getValue(i));
+			}
+		}
+	}
+
+	/**
+	 * Discards the modifications, if any, so that the view reflects the row again.
+	 */
+	void reset() {
+		this.delegate = null;
+	}
+
+	@Override
+	public Object get(Object key) {
+
+		if (this.delegate != null) {
+			return this.delegate.get(key);
+		}
+
+		int index = (key instanceof FieldName ? this.rowSchema.indexOf((FieldName) key) : -1);
+
+		return (index > -1 ? getValue(index) : null);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+
+		if (this.delegate != null) {
+			return this.delegate.containsKey(key);
+		}
+
+		return (key instanceof FieldName) && (this.rowSchema.indexOf((FieldName) key) > -1);
+	}
+
+	@Override
+	public Object put(FieldName key, Object value) {
+		return getDelegate().put(key, value);
+	}
+
+	@Override
+	public Object remove(Object key) {
+		return getDelegate().remove(key);
+	}
+
+	@Override
+	public Set<Map.Entry<FieldName, Object>> entrySet() {
+		return getDelegate().entrySet();
+	}
+
+	private Object getValue(int index) {
+		return this.rowSchema.getValue(index, this.continuousValues, this.categoricalValues);
+	}
+
+	private Map<FieldName, Object> getDelegate() {
+
+		if (this.delegate == null) {
+			Map<FieldName, Object> delegate = new LinkedHashMap<FieldName, Object>();
+
+			for (int i = 0; i < this.rowSchema.size(); i++) {
+				delegate.put((this.rowSchema.getFields()).get(i), getValue(i));
+			}
+
+			this.delegate = delegate;
+		}
+
+		return this.delegate;
+	}
+}
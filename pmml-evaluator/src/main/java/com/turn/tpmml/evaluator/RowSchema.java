@@ -0,0 +1,235 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataField;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.MiningField;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.manager.ModelManagerException;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes the layout of a positional row of {@link Evaluator#getActiveFields() active field}
+ * values.
+ *
+ * Continuous fields (numeric fields with the optype <code>continuous</code>) are passed in a
+ * <code>double[]</code> array, and all the other fields are passed in an <code>Object[]</code>
+ * array. Both arrays follow the order of active fields. For example, if the active fields are
+ * <code>[x1 (continuous), c1 (categorical), x2 (continuous)]</code>, then the row is
+ * <code>double[]{x1, x2}</code> plus <code>Object[]{c1}</code>. A missing continuous value is
+ * represented by {@link Double#NaN}, and a missing categorical value by <code>null</code>.
+ *
+ * Similarly to {@link Evaluator#evaluate(Map)}, the values must be
+ * {@link Evaluator#prepare(FieldName, Object) prepared} in advance.
+ *
+ * @see RowEvaluator#getRowSchema()
+ * @see RowEvaluator#evaluate(double[], Object[])
+ */
+public class RowSchema {
+
+	private EvaluationPlan evaluationPlan = null;
+
+	private List<FieldName> fields = null;
+
+	private boolean[] continuous = null;
+
+	private int[] columns = null;
+
+	private DataType[] dataTypes = null;
+
+	private int[] slots = null;
+
+	private Map<FieldName, Integer> indices = new HashMap<FieldName, Integer>();
+
+	private int continuousCount = 0;
+
+	private int categoricalCount = 0;
+
+	public RowSchema(RowEvaluator evaluator) throws EvaluationException {
+		this.evaluationPlan = evaluator.getEvaluationPlan();
+
+		try {
+			this.fields = Collections.unmodifiableList(evaluator.getActiveFields());
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		int size = this.fields.size();
+
+		this.continuous = new boolean[size];
+		this.columns = new int[size];
+		this.dataTypes = new DataType[size];
+		this.slots = new int[size];
+
+		for (int i = 0; i < size; i++) {
+			FieldName name = this.fields.get(i);
+
+			DataField dataField = evaluator.getDataField(name);
+			if (dataField == null) {
+				throw new EvaluationException("Undefined data field " + name.getValue());
+			}
+
+			MiningField miningField;
+
+			try {
+				miningField = evaluator.getMiningField(name);
+			} catch (ModelManagerException e) {
+				throw new EvaluationException(e);
+			}
+
+			OpType opType = (miningField != null && miningField.getOptype() != null ?
+					miningField.getOptype() : dataField.getOptype());
+
+			DataType dataType = dataField.getDataType();
+
+			this.continuous[i] = (opType == OpType.CONTINUOUS) && isNumeric(dataType);
+			this.columns[i] = (this.continuous[i] ? this.continuousCount++ :
+					this.categoricalCount++);
+			this.dataTypes[i] = dataType;
+			this.slots[i] = this.evaluationPlan.getSlot(name);
+
+			this.indices.put(name, Integer.valueOf(i));
+		}
+	}
+
+	/**
+	 * @return The active fields, in row order.
+	 */
+	public List<FieldName> getFields() {
+		return this.fields;
+	}
+
+	/**
+	 * @return The length of the <code>double[]</code> array.
+	 */
+	public int getContinuousCount() {
+		return this.continuousCount;
+	}
+
+	/**
+	 * @return The length of the <code>Object[]</code> array.
+	 */
+	public int getCategoricalCount() {
+		return this.categoricalCount;
+	}
+
+	/**
+	 * @return The position of the field in {@link #getFields()}, or <code>-1</code> if the field
+	 *         is not an active field.
+	 */
+	public int indexOf(FieldName name) {
+		Integer index = this.indices.get(name);
+
+		return (index != null ? index.intValue() : -1);
+	}
+
+	/**
+	 * @return <code>true</code> if the field at the specified position is passed in the
+	 *         <code>double[]</code> array, <code>false</code> if it is passed in the
+	 *         <code>Object[]</code> array.
+	 */
+	public boolean isContinuous(int index) {
+		return this.continuous[index];
+	}
+
+	/**
+	 * @return The position of the field in the <code>double[]</code> array or in the
+	 *         <code>Object[]</code> array.
+	 */
+	public int getColumn(int index) {
+		return this.columns[index];
+	}
+
+	/**
+	 * Creates a read-write view of the row as a map of active field values.
+	 *
+	 * @throws EvaluationException If the arrays do not match this schema
+	 */
+	public Map<FieldName, Object> createParameters(double[] continuousValues,
+			Object[] categoricalValues) throws EvaluationException {
+		int continuousLength = (continuousValues != null ? continuousValues.length : 0);
+		int categoricalLength = (categoricalValues != null ? categoricalValues.length : 0);
+
+		if (continuousLength != this.continuousCount ||
+				categoricalLength != this.categoricalCount) {
+			throw new EvaluationException("Expected " + this.continuousCount +
+					" continuous and " + this.categoricalCount + " categorical values, got " +
+					continuousLength + " and " + categoricalLength);
+		}
+
+		for (int i = 0; i < this.continuous.length; i++) {
+
+			if (this.continuous[i]) {
+				checkValue(i, continuousValues[this.columns[i]]);
+			}
+		}
+
+		return new RowParameters(this, continuousValues, categoricalValues);
+	}
+
+	EvaluationPlan getEvaluationPlan() {
+		return this.evaluationPlan;
+	}
+
+	int size() {
+		return this.fields.size();
+	}
+
+	int getSlot(int index) {
+		return this.slots[index];
+	}
+
+	/**
+	 * @throws EvaluationException If the field is an integer field, and the value is neither
+	 *         missing nor an integer.
+	 */
+	void checkValue(int index, double value) throws EvaluationException {
+
+		if (this.dataTypes[index] != DataType.INTEGER || Double.isNaN(value)) {
+			return;
+		}
+
+		if ((double) ((int) value) != value) {
+			throw new EvaluationException("Field " + (this.fields.get(index)).getValue() +
+					" expects an integer, got " + value);
+		}
+	}
+
+	Object getValue(int index, double[] continuousValues, Object[] categoricalValues) {
+		int column = this.columns[index];
+
+		if (!this.continuous[index]) {
+			return categoricalValues[column];
+		}
+
+		double value = continuousValues[column];
+		if (Double.isNaN(value)) {
+			return null;
+		}
+
+		switch (this.dataTypes[index]) {
+		case INTEGER:
+			return Integer.valueOf((int) value);
+		case FLOAT:
+			return Float.valueOf((float) value);
+		default:
+			return Double.valueOf(value);
+		}
+	}
+
+	private static boolean isNumeric(DataType dataType) {
+
+		switch (dataType) {
+		case INTEGER:
+		case FLOAT:
+		case DOUBLE:
+			return true;
+		default:
+			return false;
+		}
+	}
+}
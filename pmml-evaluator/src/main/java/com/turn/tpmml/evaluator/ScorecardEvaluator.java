@@ -9,16 +9,20 @@ import com.turn.tpmml.manager.IPMMLResult;
 import com.turn.tpmml.manager.ModelManagerException;
 import com.turn.tpmml.manager.ScoreCardModelManager;
 import com.turn.tpmml.manager.ScoreCardPMMLResult;
+import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-
-public class ScorecardEvaluator extends ScoreCardModelManager implements Evaluator {
 
+public class ScorecardEvaluator extends ScoreCardModelManager implements BatchEvaluator {
 
 	private static final long serialVersionUID = 1L;
 
+	private EvaluatorCache cache = new EvaluatorCache();
+
+	private volatile int reasonCodeLimit = 1;
+
 	public ScorecardEvaluator(PMML pmml) {
 		super(pmml);
 	}
@@ -27,6 +31,10 @@ public class ScorecardEvaluator extends ScoreCardModelManager implements Evaluat
 		super(pmml, scorecard);
 	}
 
+	public ScorecardEvaluator(ScoreCardModelManager parent) throws ModelManagerException {
+		this(parent.getPmml(), parent.getModel());
+	}
+
 	public Object prepare(FieldName name, Object value) throws EvaluationException {
 		try {
 			return ParameterUtil.prepare(getDataField(name), getMiningField(name), value);
@@ -35,15 +43,138 @@ public class ScorecardEvaluator extends ScoreCardModelManager implements Evaluat
 		}
 	}
 
-	public ScorecardEvaluator(ScoreCardModelManager parent) throws ModelManagerException {
-		this(parent.getPmml(), parent.getModel());
+	public EvaluationPlan getEvaluationPlan() throws EvaluationException {
+		return this.cache.getEvaluationPlan(this);
+	}
+
+	public RowSchema getRowSchema() throws EvaluationException {
+		return this.cache.getRowSchema(this);
+	}
+
+	public int getReasonCodeLimit() {
+		return this.reasonCodeLimit;
+	}
+
+	/**
+	 * The configuration must be completed before the evaluator is shared between threads.
+	 *
+	 * @param reasonCodeLimit The maximum number of reason codes in the result. The default is
+	 *        one.
+	 *
+	 * @see ScoreCardPMMLResult#getReasonCodes()
+	 */
+	public void setReasonCodeLimit(int reasonCodeLimit) {
+
+		if (reasonCodeLimit < 1) {
+			throw new IllegalArgumentException();
+		}
+
+		this.reasonCodeLimit = reasonCodeLimit;
 	}
 
-	// Evaluate the parameters on the score card.
 	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+		return evaluate(parameters, null);
+	}
+
+	public IPMMLResult evaluate(double[] continuousValues, Object[] categoricalValues)
+			throws EvaluationException {
+		RowSchema rowSchema = getRowSchema();
+
+		return evaluate(rowSchema.createParameters(continuousValues, categoricalValues), null);
+	}
+
+	// Evaluate the parameters on the score card.
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters, EvaluationContext parent)
+			throws EvaluationException {
+		EvaluationContext context =
+				new ModelManagerEvaluationContext(this, getEvaluationPlan(), parameters, parent);
+
+		ReasonCodeRanking ranking = createRanking(context);
+
+		Double score = evaluateScore(context, ranking);
+
+		String reasonCode = ranking.getFirst();
+
+		lastReasonCode = reasonCode;
+
+		ScoreCardPMMLResult res = new ScoreCardPMMLResult();
+		try {
+			res.put(getOutputField(this).getName(), score);
+			res.setLastReasonCode(reasonCode);
+			res.setReasonCodes(ranking.getReasonCodes());
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		return res;
+	}
+
+	/**
+	 * Reason codes are not collected. The map of predictions is reused between records.
+	 */
+	public void evaluateBatch(ColumnBatch in, ColumnBatch out) throws EvaluationException {
+		FieldName target;
+		try {
+			target = getOutputField(this).getName();
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		ColumnBatchCursor cursor = new ColumnBatchCursor(this, in, out);
+
+		ModelManagerEvaluationContext context = new ModelManagerEvaluationContext(this,
+				getEvaluationPlan(), cursor.getParameters());
+
+		Map<FieldName, Object> predictions = new HashMap<FieldName, Object>();
+
+		for (int row = 0; row < cursor.size(); row++) {
+			cursor.load(row, context);
+
+			predictions.put(target, evaluateScore(context, null));
+
+			cursor.store(row, predictions, context);
+		}
+	}
+
+	/**
+	 * @return An empty ranking of reason codes.
+	 */
+	private ReasonCodeRanking createRanking(EvaluationContext context) {
+		int limit = Math.min(this.reasonCodeLimit,
+				(scorecard.getCharacteristics()).getCharacteristics().size());
+
+		CompiledScorecard compiledScorecard = getCompiledScorecard(context);
+
+		ReasonCodeRanking result;
+
+		if (compiledScorecard != null) {
+			result = compiledScorecard.getRanking(context);
+		} else {
+			result = new ReasonCodeRanking(limit);
+		}
+
+		result.reset(limit);
+
+		return result;
+	}
+
+	/**
+	 * @param ranking The ranking of reason codes by their difference from the baseline score, or
+	 *        <code>null</code>.
+	 *
+	 * @see CompiledScorecard
+	 */
+	private Double evaluateScore(EvaluationContext context, ReasonCodeRanking ranking)
+			throws EvaluationException {
+		boolean pointsBelow = (reasonCodeAlgorithm == ReasonCodeAlgorithm.POINTS_BELOW);
+
+		CompiledScorecard compiledScorecard = getCompiledScorecard(context);
+
+		if (compiledScorecard != null) {
+			return compiledScorecard.evaluate(context, ranking, pointsBelow);
+		}
+
 		Double score = 0.0;
-		EvaluationContext context = new ModelManagerEvaluationContext(this, parameters);
-		TreeMap<Double, String> diffToReasonCode = new TreeMap<Double, String>();
 		List<Characteristic> cl = scorecard.getCharacteristics().getCharacteristics();
 		for (Characteristic c : cl) {
 			List<Attribute> al = c.getAttributes();
@@ -54,24 +185,23 @@ public class ScorecardEvaluator extends ScoreCardModelManager implements Evaluat
 				if (predicateValue != null && predicateValue.booleanValue()) {
 					score += a.getPartialScore();
 
-					double diff = 0;
-					switch (reasonCodeAlgorithm) {
-					case POINTS_BELOW:
-						diff = c.getBaselineScore() - a.getPartialScore();
-						break;
-					case POINTS_ABOVE:
-						diff = a.getPartialScore() - c.getBaselineScore();
-						break;
-					default:
-						// We should never be there.
-						assert false;
+					if (ranking == null) {
 						break;
 					}
 
+					Double baselineScore = c.getBaselineScore();
+					if (baselineScore == null) {
+						throw new EvaluationException(TPMMLCause.MISSING_PARAMETER,
+								"baselineScore");
+					}
+
+					double diff = (pointsBelow ? baselineScore - a.getPartialScore() :
+							a.getPartialScore() - baselineScore);
+
 					if (a.getReasonCode() != null && !a.getReasonCode().isEmpty()) {
-						diffToReasonCode.put(diff, a.getReasonCode());
+						ranking.add(diff, a.getReasonCode());
 					} else {
-						diffToReasonCode.put(diff, c.getReasonCode());
+						ranking.add(diff, c.getReasonCode());
 					}
 					break;
 					// FIXME: Add a missing value strategy.
@@ -79,19 +209,21 @@ public class ScorecardEvaluator extends ScoreCardModelManager implements Evaluat
 			}
 		}
 
-		lastReasonCode = diffToReasonCode.lastEntry().getValue();
+		return score;
+	}
 
-		ScoreCardPMMLResult res = new ScoreCardPMMLResult();
-		try {
-			res.put(getOutputField(this).getName(), score);
-			res.setLastReasonCode(lastReasonCode);
-		} catch (ModelManagerException e) {
-			throw new EvaluationException(e);
-		}
+	private CompiledScorecard getCompiledScorecard(EvaluationContext context) {
+		EvaluationPlan evaluationPlan = context.getEvaluationPlan();
 
-		return res;
+		return (evaluationPlan != null ? evaluationPlan.getScorecard(scorecard) : null);
 	}
 
+	/**
+	 * @deprecated The reason code of the most recent evaluation. The evaluator is shared between
+	 *             threads, so the last writer wins. Use
+	 *             {@link ScoreCardPMMLResult#getLastReasonCode()} instead.
+	 */
+	@Deprecated
 	public String getResultExplanation() {
 		return lastReasonCode;
 	}
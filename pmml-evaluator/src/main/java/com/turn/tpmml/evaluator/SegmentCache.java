@@ -0,0 +1,177 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.MiningModel;
+import com.turn.tpmml.Model;
+import com.turn.tpmml.NeuralLayer;
+import com.turn.tpmml.NeuralNetwork;
+import com.turn.tpmml.Neuron;
+import com.turn.tpmml.Node;
+import com.turn.tpmml.RegressionModel;
+import com.turn.tpmml.RegressionTable;
+import com.turn.tpmml.Segment;
+import com.turn.tpmml.Segmentation;
+import com.turn.tpmml.TreeModel;
+import com.turn.tpmml.manager.MiningModelManager;
+import com.turn.tpmml.manager.ModelManagerException;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The evaluators of the {@link Segment segments} of a mining model, in document order.
+ *
+ * The evaluators are created and
+ * {@link ModelEvaluatorFactory#initialize(com.turn.tpmml.manager.ModelManager) initialized} once
+ * per mining model evaluator, so that the evaluation of a record does not depend on the cost of
+ * constructing the segment models.
+ */
+class SegmentCache {
+
+	private Segment[] segments = null;
+
+	private RowEvaluator[] evaluators = null;
+
+	private FieldName[] targets = null;
+
+	private List<?>[] outputFields = null;
+
+	private int[] costs = null;
+
+	SegmentCache(MiningModelManager parent) throws ModelManagerException {
+		ModelEvaluatorFactory factory = ModelEvaluatorFactory.getInstance();
+
+		List<Segment> segments = parent.getSegments();
+
+		this.segments = segments.toArray(new Segment[segments.size()]);
+		this.evaluators = new RowEvaluator[this.segments.length];
+		this.targets = new FieldName[this.segments.length];
+		this.outputFields = new List<?>[this.segments.length];
+		this.costs = new int[this.segments.length];
+
+		for (int i = 0; i < this.segments.length; i++) {
+			Segment segment = this.segments[i];
+
+			RowEvaluator evaluator =
+					(RowEvaluator) factory.getModelManager(parent.getPmml(), segment.getModel());
+
+			this.evaluators[i] = evaluator;
+
+			List<FieldName> predictedFields = evaluator.getPredictedFields();
+
+			// Reported by getTarget(int) only when the segment is actually selected
+			this.targets[i] = (predictedFields.size() == 1 ? predictedFields.get(0) : null);
+			this.outputFields[i] = Collections.unmodifiableList(evaluator.getOutputFields());
+			this.costs[i] = estimateCost(segment.getModel());
+		}
+	}
+
+	/**
+	 * @return The number of segments.
+	 */
+	int size() {
+		return this.segments.length;
+	}
+
+	Segment getSegment(int index) {
+		return this.segments[index];
+	}
+
+	RowEvaluator getEvaluator(int index) {
+		return this.evaluators[index];
+	}
+
+	/**
+	 * @throws EvaluationException If the segment model does not have exactly one predicted field.
+	 * @see Evaluator#getTarget()
+	 */
+	FieldName getTarget(int index) throws EvaluationException {
+		FieldName target = this.targets[index];
+
+		if (target == null) {
+			try {
+				return this.evaluators[index].getTarget();
+			} catch (ModelManagerException e) {
+				throw new EvaluationException(e);
+			}
+		}
+
+		return target;
+	}
+
+	/**
+	 * @see Evaluator#getOutputFields()
+	 */
+	@SuppressWarnings("unchecked")
+	List<FieldName> getOutputFields(int index) {
+		return (List<FieldName>) this.outputFields[index];
+	}
+
+	/**
+	 * @return The estimated cost of evaluating the segment model.
+	 * @see #estimateCost(Model)
+	 */
+	int getCost(int index) {
+		return this.costs[index];
+	}
+
+	/**
+	 * Estimates the cost of evaluating a model, in units that roughly correspond to a predicate or
+	 * a multiplication: the number of nodes of a tree model, the number of predictors of a
+	 * regression model and the number of connections of a neural network.
+	 */
+	static int estimateCost(Model model) {
+		int result = 1;
+
+		if (model instanceof TreeModel) {
+			result += estimateCost(((TreeModel) model).getNode());
+		} else
+
+		if (model instanceof RegressionModel) {
+			RegressionModel regressionModel = (RegressionModel) model;
+
+			for (RegressionTable regressionTable : regressionModel.getRegressionTables()) {
+				result += (regressionTable.getNumericPredictors()).size();
+				result += (regressionTable.getCategoricalPredictors()).size();
+				result += (regressionTable.getPredictorTerms()).size();
+			}
+		} else
+
+		if (model instanceof NeuralNetwork) {
+			List<NeuralLayer> neuralLayers = ((NeuralNetwork) model).getNeuralLayers();
+			for (NeuralLayer neuralLayer : neuralLayers) {
+
+				for (Neuron neuron : neuralLayer.getNeurons()) {
+					result += (neuron.getConnections()).size();
+				}
+			}
+		} else
+
+		if (model instanceof MiningModel) {
+			Segmentation segmentation = ((MiningModel) model).getSegmentation();
+			if (segmentation != null) {
+
+				for (Segment segment : segmentation.getSegments()) {
+					result += estimateCost(segment.getModel());
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private static int estimateCost(Node node) {
+
+		if (node == null) {
+			return 0;
+		}
+
+		int result = 1;
+
+		for (Node child : node.getNodes()) {
+			result += estimateCost(child);
+		}
+
+		return result;
+	}
+}
@@ -16,10 +16,12 @@ import com.turn.tpmml.manager.TreePMMLResult;
 
 import java.util.Map;
 
-public class TreeModelEvaluator extends TreeModelManager implements Evaluator {
+public class TreeModelEvaluator extends TreeModelManager implements BatchEvaluator {
 
 	private static final long serialVersionUID = 1L;
 
+	private EvaluatorCache cache = new EvaluatorCache();
+
 	public TreeModelEvaluator(PMML pmml) {
 		super(pmml);
 	}
@@ -41,7 +43,41 @@ public class TreeModelEvaluator extends TreeModelManager implements Evaluator {
 		}
 	}
 
+	public EvaluationPlan getEvaluationPlan() throws EvaluationException {
+		return this.cache.getEvaluationPlan(this);
+	}
+
+	public RowSchema getRowSchema() throws EvaluationException {
+		return this.cache.getRowSchema(this);
+	}
+
 	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+		return evaluate(parameters, null);
+	}
+
+	public IPMMLResult evaluate(double[] continuousValues, Object[] categoricalValues)
+			throws EvaluationException {
+		RowSchema rowSchema = getRowSchema();
+
+		return evaluate(rowSchema.createParameters(continuousValues, categoricalValues), null);
+	}
+
+	/**
+	 * Evaluates the records one by one using {@link #evaluate(Map)}. This implementation does not
+	 * benefit from batching, see {@link TreeModelEvaluator2}.
+	 */
+	public void evaluateBatch(ColumnBatch in, ColumnBatch out) throws EvaluationException {
+		ColumnBatchCursor cursor = new ColumnBatchCursor(this, in, out);
+
+		for (int row = 0; row < cursor.size(); row++) {
+			cursor.load(row);
+
+			cursor.store(row, evaluate(cursor.getParameters()));
+		}
+	}
+
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters, EvaluationContext parent)
+			throws EvaluationException {
 		String result = null;
 		Node currentNode = null;
 		Node rootNode;
@@ -51,7 +87,8 @@ public class TreeModelEvaluator extends TreeModelManager implements Evaluator {
 			throw new EvaluationException(e1);
 		}
 
-		ModelManagerEvaluationContext context = new ModelManagerEvaluationContext(this, parameters);
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getEvaluationPlan(), parameters, parent);
 		Predicate rootPredicate = rootNode.getPredicate();
 		Boolean predicateResult = PredicateUtil.evaluate(rootPredicate, context);
 
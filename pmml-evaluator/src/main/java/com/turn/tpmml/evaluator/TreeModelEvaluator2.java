@@ -4,25 +4,27 @@
 package com.turn.tpmml.evaluator;
 
 import com.turn.tpmml.FieldName;
-import com.turn.tpmml.NoTrueChildStrategyType;
 import com.turn.tpmml.Node;
 import com.turn.tpmml.PMML;
-import com.turn.tpmml.Predicate;
 import com.turn.tpmml.TreeModel;
 import com.turn.tpmml.manager.IPMMLResult;
 import com.turn.tpmml.manager.ModelManagerException;
 import com.turn.tpmml.manager.PMMLResult;
-import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
 import com.turn.tpmml.manager.TreeModelManager;
 import com.turn.tpmml.manager.TreePMMLResult;
 
-import java.util.List;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
-public class TreeModelEvaluator2 extends TreeModelManager implements Evaluator {
+public class TreeModelEvaluator2 extends TreeModelManager implements BatchEvaluator {
 
 	private static final long serialVersionUID = 1L;
 
+	private EvaluatorCache cache = new EvaluatorCache();
+
+	private transient volatile CompiledTree compiledTree = null;
+
 	public TreeModelEvaluator2(PMML pmml) {
 		super(pmml);
 	}
@@ -43,120 +45,129 @@ public class TreeModelEvaluator2 extends TreeModelManager implements Evaluator {
 		}
 	}
 
-	/**
-	 * @throws EvaluationException 
-	 * @see #evaluateTree(EvaluationContext)
-	 */
-	@Override
-	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
-		ModelManagerEvaluationContext context = new ModelManagerEvaluationContext(this, parameters);
+	public EvaluationPlan getEvaluationPlan() throws EvaluationException {
+		return this.cache.getEvaluationPlan(this);
+	}
 
-		Node node = evaluateTree(context);
+	public RowSchema getRowSchema() throws EvaluationException {
+		return this.cache.getRowSchema(this);
+	}
 
-		NodeClassificationMap values = new NodeClassificationMap(node);
+	CompiledTree getCompiledTree() throws EvaluationException {
+		CompiledTree result = this.compiledTree;
 
-		// Map<FieldName, NodeClassificationMap> predictions =
-		// Collections.singletonMap(getTarget(), values);
+		if (result == null) {
+			try {
+				result = new CompiledTree(getOrCreateRoot(), getModel().getNoTrueChildStrategy(),
+						getEvaluationPlan());
+			} catch (ModelManagerException e) {
+				throw new EvaluationException(e);
+			}
 
-		TreePMMLResult res = new TreePMMLResult();
-		try {
-			res.put(getTarget(), values);
-		} catch (ModelManagerException e) {
-			throw new EvaluationException(e);
-		}
-		PMMLResult tmpRes = OutputUtil.evaluate(res, context);
-		res.absorb(tmpRes);
-		// Sometimes we ends up with no currentNode.
-		if (node != null) {
-			res.setNodeId(node.getId());
+			this.compiledTree = result;
 		}
 
-		return res;
+		return result;
 	}
 
-	public Node evaluateTree(EvaluationContext context) throws EvaluationException {
-		Node root;
+	@Override
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+		return evaluate(parameters, null);
+	}
+
+	@Override
+	public IPMMLResult evaluate(double[] continuousValues, Object[] categoricalValues)
+			throws EvaluationException {
+		RowSchema rowSchema = getRowSchema();
+
+		return evaluate(rowSchema.createParameters(continuousValues, categoricalValues), null);
+	}
+
+	/**
+	 * The predictions of a node are computed once per batch, and the map of predictions is
+	 * reused between records.
+	 */
+	@Override
+	public void evaluateBatch(ColumnBatch in, ColumnBatch out) throws EvaluationException {
+		FieldName target;
 		try {
-			root = getOrCreateRoot();
+			target = getTarget();
 		} catch (ModelManagerException e) {
 			throw new EvaluationException(e);
 		}
 
-		Prediction prediction = findTrueChild(root, root, context); // XXX
+		ColumnBatchCursor cursor = new ColumnBatchCursor(this, in, out);
 
-		if (prediction.getLastTrueNode() != null && prediction.getTrueNode() != null &&
-				!(prediction.getLastTrueNode()).equals(prediction.getTrueNode())) {
-			return prediction.getTrueNode();
-		} else {
-			NoTrueChildStrategyType noTrueChildStrategy;
-			try {
-				noTrueChildStrategy = getModel().getNoTrueChildStrategy();
-			} catch (ModelManagerException e) {
-				throw new EvaluationException(e);
-			}
-			switch (noTrueChildStrategy) {
-			case RETURN_NULL_PREDICTION:
-				return null;
-			case RETURN_LAST_PREDICTION:
-				return prediction.getLastTrueNode();
-			default:
-				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
-						noTrueChildStrategy.name());
-			}
-		}
-	}
+		ModelManagerEvaluationContext context = new ModelManagerEvaluationContext(this,
+				getEvaluationPlan(), cursor.getParameters());
 
-	private Prediction findTrueChild(Node lastNode, Node node, EvaluationContext context)
-			throws EvaluationException {
-		Boolean value = evaluateNode(node, context);
+		Map<Node, NodeClassificationMap> nodeValues =
+				new IdentityHashMap<Node, NodeClassificationMap>();
+
+		Map<FieldName, Object> predictions = new HashMap<FieldName, Object>();
 
-		if (value == null) {
-			throw new EvaluationException("A node has been evaluated to null.");
-		} // End if
+		for (int row = 0; row < cursor.size(); row++) {
+			cursor.load(row, context);
 
-		if (value.booleanValue()) {
-			List<Node> children = node.getNodes();
+			Node node = evaluateTree(context);
 
-			for (Node child : children) {
-				Prediction childPrediction = findTrueChild(node, child, context);
+			NodeClassificationMap values = nodeValues.get(node);
+			if (values == null) {
+				values = new NodeClassificationMap(node);
 
-				if (childPrediction.getTrueNode() != null) {
-					return childPrediction;
-				}
+				nodeValues.put(node, values);
 			}
 
-			return new Prediction(lastNode, node);
-		} else {
-			return new Prediction(lastNode, null);
-		}
-	}
+			predictions.put(target, values);
 
-	private Boolean evaluateNode(Node node, EvaluationContext context) throws EvaluationException {
-		Predicate predicate = node.getPredicate();
-		if (predicate == null) {
-			throw new EvaluationException("No predicate found for a node.");
+			cursor.store(row, predictions, context);
 		}
-
-		return PredicateUtil.evaluate(predicate, context);
 	}
 
-	private static class Prediction {
+	/**
+	 * @throws EvaluationException 
+	 * @see #evaluateTree(EvaluationContext)
+	 */
+	@Override
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters, EvaluationContext parent)
+			throws EvaluationException {
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getEvaluationPlan(), parameters, parent);
 
-		private Node lastTrueNode = null;
+		Node node = evaluateTree(context);
 
-		private Node trueNode = null;
+		NodeClassificationMap values = new NodeClassificationMap(node);
 
-		public Prediction(Node lastTrueNode, Node trueNode) {
-			this.lastTrueNode = lastTrueNode;
-			this.trueNode = trueNode;
-		}
+		// Map<FieldName, NodeClassificationMap> predictions =
+		// Collections.singletonMap(getTarget(), values);
 
-		public Node getLastTrueNode() {
-			return this.lastTrueNode;
+		TreePMMLResult res = new TreePMMLResult();
+		try {
+			res.put(getTarget(), values);
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
 		}
-
-		public Node getTrueNode() {
-			return this.trueNode;
+		PMMLResult tmpRes = OutputUtil.evaluate(res, context);
+		res.absorb(tmpRes);
+		// Sometimes we ends up with no currentNode.
+		if (node != null) {
+			res.setNodeId(node.getId());
 		}
+
+		return res;
+	}
+
+	/**
+	 * Selects the first true child at every level, starting from the root node, until a node
+	 * without true children is reached. If the root node is the only true node, then the result
+	 * is determined by the no true child strategy.
+	 *
+	 * @return The node, or <code>null</code>.
+	 * @see CompiledTree
+	 */
+	public Node evaluateTree(EvaluationContext context) throws EvaluationException {
+		CompiledTree compiledTree = getCompiledTree();
+
+		return compiledTree.evaluate(context);
 	}
 }
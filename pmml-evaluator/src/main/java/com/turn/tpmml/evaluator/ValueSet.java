@@ -0,0 +1,342 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Array;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Typed lookup structure for a set of values.
+ *
+ * String values are kept in an open-addressing hash table, integer and real values in sorted
+ * arrays of primitives, so that a membership test costs O(1) or O(log n) and does not allocate
+ * any objects.
+ *
+ * An instance is created either for the content of an {@link Array}, or for the constant
+ * arguments of a {@link FunctionUtil.ValueListFunction}. The former follows the semantics of
+ * {@link ArrayUtil#isIn(Array, Object)}, the latter those of {@link List#contains(Object)}.
+ *
+ * @see EvaluationPlan#getValueSet(Array)
+ * @see EvaluationPlan#getValueSet(com.turn.tpmml.Apply)
+ */
+class ValueSet {
+
+	/**
+	 * The type of the array, or <code>null</code> if the values are function arguments.
+	 */
+	private Array.Type type = null;
+
+	private List<?> values = null;
+
+	private String[] strings = null;
+
+	private int[] ints = null;
+
+	private float[] floats = null;
+
+	private double[] doubles = null;
+
+	/**
+	 * Function arguments that are neither strings nor numbers.
+	 */
+	private List<Object> others = null;
+
+	private ValueSet(Array.Type type, List<?> values) {
+		this.type = type;
+		this.values = Collections.unmodifiableList(values);
+	}
+
+	/**
+	 * @return The values in their original order.
+	 */
+	List<?> getValues() {
+		return this.values;
+	}
+
+	/**
+	 * Array values are looked up in the data type of the array. A number is compared with the
+	 * elements of a string array in its string representation, and a string is compared with the
+	 * elements of a numeric array as they were written.
+	 *
+	 * Function argument values are looked up in their own runtime data type.
+	 *
+	 * @throws EvaluationException If the data type of an array value is not supported.
+	 */
+	boolean contains(Object value) throws EvaluationException {
+
+		if (this.type == null) {
+			return containsArgument(value);
+		} else
+
+		if (value instanceof String) {
+			return containsString((String) value);
+		} else
+
+		if (value instanceof Integer) {
+			int intValue = ((Integer) value).intValue();
+
+			if (this.ints != null) {
+				return Arrays.binarySearch(this.ints, intValue) > -1;
+			} else
+
+			if (this.doubles != null) {
+				return Arrays.binarySearch(this.doubles, (double) intValue) > -1;
+			}
+		} else
+
+		if (value instanceof Float) {
+
+			if (this.floats != null) {
+				return Arrays.binarySearch(this.floats, ((Float) value).floatValue()) > -1;
+			}
+		} else
+
+		if (value instanceof Double) {
+
+			if (this.doubles != null) {
+				return Arrays.binarySearch(this.doubles, ((Double) value).doubleValue()) > -1;
+			}
+		} else {
+			DataType dataType = ParameterUtil.getDataType(value);
+
+			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION, dataType.name());
+		}
+
+		return containsString(ParameterUtil.toString(value));
+	}
+
+	private boolean containsArgument(Object value) {
+
+		if (value instanceof String) {
+			return containsString((String) value);
+		} else
+
+		if (value instanceof Integer) {
+			return this.ints != null &&
+					Arrays.binarySearch(this.ints, ((Integer) value).intValue()) > -1;
+		} else
+
+		if (value instanceof Float) {
+			return this.floats != null &&
+					Arrays.binarySearch(this.floats, ((Float) value).floatValue()) > -1;
+		} else
+
+		if (value instanceof Double) {
+			return this.doubles != null &&
+					Arrays.binarySearch(this.doubles, ((Double) value).doubleValue()) > -1;
+		}
+
+		return this.others != null && this.others.contains(value);
+	}
+
+	private boolean containsString(String value) {
+		String[] strings = this.strings;
+
+		if (strings == null) {
+			return false;
+		}
+
+		int mask = strings.length - 1;
+
+		for (int i = hash(value) & mask; ; i = (i + 1) & mask) {
+			String string = strings[i];
+
+			if (string == null) {
+				return false;
+			} else
+
+			if (string.equals(value)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Creates a lookup structure for the tokenized content of an array.
+	 *
+	 * @see ArrayUtil#getContent(Array)
+	 */
+	static ValueSet create(Array.Type type, List<String> values) {
+		ValueSet result = new ValueSet(type, values);
+
+		result.strings = createStringTable(values);
+
+		switch (type) {
+		case INT:
+			result.ints = parseInts(values);
+			result.floats = parseFloats(values);
+			result.doubles = parseDoubles(values);
+			break;
+		case REAL:
+			result.floats = parseFloats(values);
+			result.doubles = parseDoubles(values);
+			break;
+		default:
+			break;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Creates a lookup structure for the evaluated constant arguments of a function.
+	 */
+	static ValueSet create(List<?> values) {
+		ValueSet result = new ValueSet(null, values);
+
+		List<String> strings = new ArrayList<String>();
+		List<Integer> ints = new ArrayList<Integer>();
+		List<Float> floats = new ArrayList<Float>();
+		List<Double> doubles = new ArrayList<Double>();
+
+		for (Object value : values) {
+
+			if (value instanceof String) {
+				strings.add((String) value);
+			} else
+
+			if (value instanceof Integer) {
+				ints.add((Integer) value);
+			} else
+
+			if (value instanceof Float) {
+				floats.add((Float) value);
+			} else
+
+			if (value instanceof Double) {
+				doubles.add((Double) value);
+			} else {
+
+				if (result.others == null) {
+					result.others = new ArrayList<Object>();
+				}
+
+				result.others.add(value);
+			}
+		}
+
+		if (strings.size() > 0) {
+			result.strings = createStringTable(strings);
+		}
+
+		if (ints.size() > 0) {
+			result.ints = new int[ints.size()];
+
+			for (int i = 0; i < ints.size(); i++) {
+				result.ints[i] = (ints.get(i)).intValue();
+			}
+
+			Arrays.sort(result.ints);
+		}
+
+		if (floats.size() > 0) {
+			result.floats = new float[floats.size()];
+
+			for (int i = 0; i < floats.size(); i++) {
+				result.floats[i] = (floats.get(i)).floatValue();
+			}
+
+			Arrays.sort(result.floats);
+		}
+
+		if (doubles.size() > 0) {
+			result.doubles = new double[doubles.size()];
+
+			for (int i = 0; i < doubles.size(); i++) {
+				result.doubles[i] = (doubles.get(i)).doubleValue();
+			}
+
+			Arrays.sort(result.doubles);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Creates a linear probing hash table, whose load factor is at most 0.5.
+	 */
+	private static String[] createStringTable(List<String> values) {
+		int capacity = 2;
+
+		while (capacity < 2 * values.size()) {
+			capacity <<= 1;
+		}
+
+		String[] result = new String[capacity];
+
+		int mask = capacity - 1;
+
+		for (String value : values) {
+			int i = hash(value) & mask;
+
+			while (result[i] != null && !result[i].equals(value)) {
+				i = (i + 1) & mask;
+			}
+
+			result[i] = value;
+		}
+
+		return result;
+	}
+
+	private static int hash(String value) {
+		int h = value.hashCode();
+
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return Sorted values, or <code>null</code> if some value is not a valid integer.
+	 */
+	private static int[] parseInts(List<String> values) {
+		int[] result = new int[values.size()];
+
+		try {
+			for (int i = 0; i < result.length; i++) {
+				result[i] = Integer.parseInt(values.get(i));
+			}
+		} catch (NumberFormatException nfe) {
+			return null;
+		}
+
+		Arrays.sort(result);
+
+		return result;
+	}
+
+	private static float[] parseFloats(List<String> values) {
+		float[] result = new float[values.size()];
+
+		try {
+			for (int i = 0; i < result.length; i++) {
+				result[i] = Float.parseFloat(values.get(i));
+			}
+		} catch (NumberFormatException nfe) {
+			return null;
+		}
+
+		Arrays.sort(result);
+
+		return result;
+	}
+
+	private static double[] parseDoubles(List<String> values) {
+		double[] result = new double[values.size()];
+
+		try {
+			for (int i = 0; i < result.length; i++) {
+				result[i] = Double.parseDouble(values.get(i));
+			}
+		} catch (NumberFormatException nfe) {
+			return null;
+		}
+
+		Arrays.sort(result);
+
+		return result;
+	}
+}
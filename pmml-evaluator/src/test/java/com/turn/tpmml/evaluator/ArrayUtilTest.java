@@ -11,6 +11,8 @@ import java.util.List;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 
 public class ArrayUtilTest {
@@ -34,6 +36,70 @@ public class ArrayUtilTest {
 		assertEquals(Arrays.asList("\"a b c\""), tokenizeStringArray("\"\\\"a b c\\\"\""));
 	}
 
+	@Test
+	public void isIn() throws EvaluationException {
+		Array intArray = new Array("1 2 3", Array.Type.INT);
+
+		assertEquals(Boolean.TRUE, ArrayUtil.isIn(intArray, 2));
+		assertEquals(Boolean.TRUE, ArrayUtil.isIn(intArray, "2"));
+		assertEquals(Boolean.TRUE, ArrayUtil.isIn(intArray, 2f));
+		assertEquals(Boolean.TRUE, ArrayUtil.isIn(intArray, 2d));
+		assertEquals(Boolean.FALSE, ArrayUtil.isIn(intArray, 2.5d));
+		assertEquals(Boolean.TRUE, ArrayUtil.isNotIn(intArray, 4));
+
+		Array realArray = new Array("0.5 -1.0E-3 1", Array.Type.REAL);
+
+		assertEquals(Boolean.TRUE, ArrayUtil.isIn(realArray, 0.5d));
+		assertEquals(Boolean.TRUE, ArrayUtil.isIn(realArray, -0.001d));
+		assertEquals(Boolean.TRUE, ArrayUtil.isIn(realArray, 0.5f));
+		assertEquals(Boolean.TRUE, ArrayUtil.isIn(realArray, 1));
+		assertEquals(Boolean.FALSE, ArrayUtil.isIn(realArray, "-0.001"));
+		assertEquals(Boolean.TRUE, ArrayUtil.isNotIn(realArray, 0.25d));
+
+		Array stringArray = new Array("a \"b c\" 1 2.0", Array.Type.STRING);
+
+		assertEquals(Boolean.TRUE, ArrayUtil.isIn(stringArray, "b c"));
+		assertEquals(Boolean.TRUE, ArrayUtil.isIn(stringArray, 1));
+		assertEquals(Boolean.TRUE, ArrayUtil.isIn(stringArray, 2d));
+		assertEquals(Boolean.FALSE, ArrayUtil.isIn(stringArray, 2));
+		assertEquals(Boolean.TRUE, ArrayUtil.isNotIn(stringArray, "b"));
+	}
+
+	@Test
+	public void cacheValueSet() throws EvaluationException {
+		Array array = new Array("1 2 3", Array.Type.INT);
+
+		ValueSet values = ArrayUtil.getValueSet(array);
+
+		assertSame(values, ArrayUtil.getValueSet(array));
+
+		// Arrays are compared by identity
+		Array equalArray = new Array("1 2 3", Array.Type.INT);
+
+		assertNotSame(values, ArrayUtil.getValueSet(equalArray));
+		assertNotSame(values, ArrayUtil.createValueSet(array));
+	}
+
+	@Test
+	public void isInLargeArray() throws EvaluationException {
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < 1000; i++) {
+			sb.append(' ').append(90000 + 7 * i);
+		}
+
+		ValueSet intValues = ArrayUtil.getValueSet(new Array(sb.toString(), Array.Type.INT));
+		ValueSet stringValues =
+				ArrayUtil.getValueSet(new Array(sb.toString(), Array.Type.STRING));
+
+		for (int i = 90000; i < 97000; i++) {
+			boolean expected = (i % 7 == 90000 % 7);
+
+			assertEquals(expected, intValues.contains(i));
+			assertEquals(expected, stringValues.contains(String.valueOf(i)));
+		}
+	}
+
 	private static List<String> tokenizeIntArray(String content) throws EvaluationException {
 		return ArrayUtil.tokenize(new Array(content, Array.Type.INT));
 	}
@@ -0,0 +1,154 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Apply;
+import com.turn.tpmml.Constant;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.DerivedField;
+import com.turn.tpmml.Expression;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldRef;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.RegressionModelManager;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BytecodeUtilTest {
+
+	@Test
+	public void generateArithmetic() throws Exception {
+		// x2 * (x2 + 1) - avg(x2, 2) / 3
+		Apply apply = createApply("-",
+				createApply("*", createFieldRef(),
+						createApply("+", createFieldRef(), new Constant("1"))),
+				createApply("/", createApply("avg", createFieldRef(), new Constant("2")),
+						new Constant("3")));
+
+		assertTrue(evaluate(apply));
+	}
+
+	@Test
+	public void generateMath() throws Exception {
+		Apply apply = createApply("sum",
+				createApply("sqrt", createApply("abs", createFieldRef())),
+				createApply("exp", createFieldRef()),
+				createApply("log10", createApply("abs", createFieldRef())),
+				createApply("ln", createApply("abs", createFieldRef())),
+				createApply("floor", createFieldRef()),
+				createApply("ceil", createFieldRef()),
+				createApply("round", createApply("*", createFieldRef(), new Constant("10"))));
+
+		assertTrue(evaluate(apply));
+	}
+
+	@Test
+	public void generateAggregate() throws Exception {
+		Constant nan = new Constant("NaN");
+		nan.setDataType(DataType.DOUBLE);
+
+		Apply apply = createApply("+",
+				createApply("min", createFieldRef(), new Constant("0"), nan),
+				createApply("-",
+						createApply("max", nan, createFieldRef(), new Constant("-0.0")),
+						createApply("product", createFieldRef(), new Constant("-3"),
+								createFieldRef())));
+
+		assertTrue(evaluate(apply));
+	}
+
+	@Test
+	public void generateShared() throws Exception {
+		Apply[] products = new Apply[2];
+
+		for (int i = 0; i < products.length; i++) {
+			products[i] = createApply("*", new Constant("2"),
+					createApply("exp", createFieldRef()));
+		}
+
+		assertTrue(evaluate(createApply("+", products[0], products[1])));
+	}
+
+	@Test
+	public void generateNested() throws Exception {
+		Apply apply = createApply("if",
+				createApply("greaterThan", createApply("*", createFieldRef(), new Constant("2")),
+						new Constant("3")),
+				createApply("*", createFieldRef(), new Constant("2")),
+				createApply("-", createFieldRef(), new Constant("1")));
+
+		// The condition is not a double
+		assertFalse(evaluate(apply));
+	}
+
+	/**
+	 * Evaluates the function as the derived field <code>y</code> of
+	 * {@link EvaluationPlanTest#prepareModel(FieldName)}, both with and without bytecode.
+	 *
+	 * @return <code>true</code> if the function was translated to bytecode, <code>false</code>
+	 *         otherwise.
+	 */
+	private static boolean evaluate(Apply apply) throws Exception {
+		RegressionModelEvaluator interpreted = prepareModel(apply);
+
+		RegressionModelEvaluator generated;
+
+		BytecodeUtil.setEnabled(true);
+
+		try {
+			generated = prepareModel(apply);
+
+			// The evaluation plan is built lazily
+			generated.getEvaluationPlan();
+		} finally {
+			BytecodeUtil.setEnabled(false);
+		}
+
+		double[] values = { 3d, 2.5d, -3.7d, 0d, -0d, 1e-300d, Double.NaN,
+				Double.POSITIVE_INFINITY };
+
+		for (double value : values) {
+			FieldName x = new FieldName("x");
+
+			assertEquals(
+					(interpreted.evaluate(Collections.singletonMap(x, (Object) value)))
+							.getValue(new FieldName("target")),
+					(generated.evaluate(Collections.singletonMap(x, (Object) value)))
+							.getValue(new FieldName("target")));
+		}
+
+		assertFalse(((interpreted.getEvaluationPlan()).getApply(apply)).isGenerated());
+
+		return ((generated.getEvaluationPlan()).getApply(apply)).isGenerated();
+	}
+
+	private static RegressionModelEvaluator prepareModel(Apply apply)
+			throws ModelManagerException {
+		RegressionModelManager regressionModelManager =
+				EvaluationPlanTest.prepareModel(new FieldName("y"));
+
+		DerivedField y = ((regressionModelManager.getOrCreateLocalTransformations())
+				.getDerivedFields()).get(0);
+		y.setExpression(apply);
+
+		return new RegressionModelEvaluator(regressionModelManager);
+	}
+
+	private static FieldRef createFieldRef() {
+		return new FieldRef(new FieldName("x2"));
+	}
+
+	private static Apply createApply(String function, Expression... arguments) {
+		Apply apply = new Apply(function);
+
+		for (Expression argument : arguments) {
+			(apply.getExpressions()).add(argument);
+		}
+
+		return apply;
+	}
+}
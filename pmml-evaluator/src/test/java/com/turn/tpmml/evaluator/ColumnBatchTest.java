@@ -0,0 +1,128 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.NoTrueChildStrategyType;
+import com.turn.tpmml.Node;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.TreeModel;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.TreeModelManager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ColumnBatchTest {
+
+	@Test
+	public void evaluateRegressionBatch() throws EvaluationException, ModelManagerException {
+		BatchEvaluator evaluator = RowSchemaTest.prepareModel();
+
+		ColumnBatch in = new ColumnBatch(3);
+		in.addColumn(new FieldName("c"), new Object[] { "a", "b", "a" });
+		in.addColumn(new FieldName("x"), new double[] { 3d, 3d, 0d });
+		in.addColumn(new FieldName("n"), new double[] { 0d, 1d, 2d });
+
+		FieldName target = new FieldName("target");
+
+		double[] targetColumn = new double[3];
+
+		ColumnBatch out = new ColumnBatch(3);
+		out.addColumn(target, targetColumn);
+
+		evaluator.evaluateBatch(in, out);
+
+		assertEquals(17d, targetColumn[0], 0d);
+		assertEquals(12d, targetColumn[1], 0d);
+		assertEquals(21d, targetColumn[2], 0d);
+
+		for (int i = 0; i < 3; i++) {
+			double[] continuousValues = { (in.getDoubleColumn(new FieldName("x")))[i],
+					(in.getDoubleColumn(new FieldName("n")))[i] };
+			Object[] categoricalValues = { (in.getObjectColumn(new FieldName("c")))[i] };
+
+			assertEquals((evaluator.evaluate(continuousValues, categoricalValues))
+					.getValue(target), targetColumn[i]);
+		}
+	}
+
+	@Test
+	public void evaluateTreeBatch() throws EvaluationException, ModelManagerException {
+		BatchEvaluator evaluator = prepareTreeModel();
+
+		ColumnBatch in = new ColumnBatch(4);
+		in.addColumn(new FieldName("prob1"), new double[] { 0d, 1d, 0.2d, 0.5d });
+
+		Object[] targetColumn = new Object[4];
+
+		ColumnBatch out = new ColumnBatch(4);
+		out.addColumn(evaluator.getTarget(), targetColumn);
+
+		evaluator.evaluateBatch(in, out);
+
+		assertArrayEquals(new Object[] { "0", "1", "0", "1" }, targetColumn);
+	}
+
+	@Test
+	public void rejectMismatchingBatch() throws EvaluationException, ModelManagerException {
+		BatchEvaluator evaluator = prepareTreeModel();
+
+		ColumnBatch in = new ColumnBatch(1);
+		in.addColumn(new FieldName("prob1"), new Object[] { "1" });
+
+		try {
+			evaluator.evaluateBatch(in, new ColumnBatch(1));
+
+			fail();
+		} catch (EvaluationException ee) {
+			// Ignored
+		}
+
+		in = new ColumnBatch(1);
+		in.addColumn(new FieldName("prob1"), new double[] { 1d });
+
+		try {
+			evaluator.evaluateBatch(in, new ColumnBatch(2));
+
+			fail();
+		} catch (EvaluationException ee) {
+			// Ignored
+		}
+	}
+
+	private static TreeModelEvaluator2 prepareTreeModel() throws ModelManagerException {
+		TreeModelManager treeModelManager = new TreeModelManager();
+
+		treeModelManager.createClassificationModel();
+
+		FieldName prob1 = new FieldName("prob1");
+		treeModelManager.addField(prob1, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName target = new FieldName("target");
+		treeModelManager.addField(target, null, OpType.CATEGORICAL, DataType.STRING,
+				FieldUsageType.PREDICTED);
+
+		Node n1 = treeModelManager.getOrCreateRoot();
+		n1.setId("N1");
+		n1.setScore("0");
+
+		SimplePredicate t1Predicate =
+				new SimplePredicate(prob1, SimplePredicate.Operator.GREATER_THAN);
+		t1Predicate.setValue("0.33");
+
+		Node t1 = treeModelManager.addNode(n1, t1Predicate);
+		t1.setId("T1");
+		t1.setScore("1");
+
+		TreeModel treeModel = treeModelManager.getModel();
+		treeModel.setNoTrueChildStrategy(NoTrueChildStrategyType.RETURN_LAST_PREDICTION);
+
+		return new TreeModelEvaluator2(treeModelManager);
+	}
+}
@@ -0,0 +1,284 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Apply;
+import com.turn.tpmml.Constant;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.DerivedField;
+import com.turn.tpmml.Expression;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldRef;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.manager.IPMMLResult;
+import com.turn.tpmml.manager.RegressionModelManager;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompiledApplyTest {
+
+	@Test
+	public void evaluateArithmetic() throws Exception {
+		Apply sum = createApply("+", new FieldRef(new FieldName("x0")), new Constant("1"));
+		sum.setMapMissingTo("missing");
+
+		assertEquals(3, evaluate(sum, 2));
+		assertEquals(3.5d, evaluate(sum, 2.5d));
+		assertEquals(3.5f, evaluate(sum, 2.5f));
+		assertEquals("missing", evaluate(sum, (Object) null));
+
+		Apply quotient = createApply("/", new FieldRef(new FieldName("x0")),
+				new FieldRef(new FieldName("x1")));
+
+		assertEquals(3d, evaluate(quotient, 6, 2));
+		assertEquals(2.5d, evaluate(quotient, 5d, 2d));
+		assertEquals(Double.POSITIVE_INFINITY, evaluate(quotient, 1d, 0d));
+
+		Apply logarithm = createApply("ln", createApply("abs", new FieldRef(new FieldName("x0"))));
+
+		assertEquals(Math.log(2d), evaluate(logarithm, -2d));
+		assertEquals(Math.log(2d), evaluate(logarithm, -2));
+	}
+
+	@Test
+	public void evaluateAggregate() throws Exception {
+		String[] functions = { "min", "max", "sum", "avg", "product" };
+
+		Object[][] rows = {
+				{ 3d, 1d, 2d },
+				{ 1d, null, 4d },
+				{ Double.NaN, 1d, 2d },
+				{ 1d, Double.NaN, -1d },
+				{ 0.1d, 0.2d, 0.3d },
+				{ 1, 2, 4 },
+				{ 1, 2.5d, 4f } };
+
+		for (String function : functions) {
+			Apply apply = createApply(function, new FieldRef(new FieldName("x0")),
+					new FieldRef(new FieldName("x1")), new FieldRef(new FieldName("x2")));
+
+			for (Object[] row : rows) {
+				evaluate(apply, row);
+			}
+
+			try {
+				evaluate(apply, null, null, null);
+
+				fail();
+			} catch (EvaluationException ee) {
+				// Ignored
+			}
+		}
+	}
+
+	@Test
+	public void evaluateComparison() throws Exception {
+		Apply apply = createApply("lessThan", new FieldRef(new FieldName("x0")),
+				new Constant("2.5"));
+
+		assertEquals(Boolean.TRUE, evaluate(apply, 2));
+		assertEquals(Boolean.FALSE, evaluate(apply, 2.5f));
+		assertEquals(Boolean.TRUE, evaluate(apply, 2.4d));
+		assertEquals(Boolean.FALSE, evaluate(apply, Double.NaN));
+
+		try {
+			evaluate(apply, (Object) null);
+
+			fail();
+		} catch (EvaluationException ee) {
+			// Ignored
+		}
+
+		Apply missing = createApply("isMissing", new FieldRef(new FieldName("x0")));
+
+		assertEquals(Boolean.TRUE, evaluate(missing, (Object) null));
+		assertEquals(Boolean.FALSE, evaluate(missing, "a"));
+
+		Apply condition = createApply("if", apply, new Constant("yes"), new Constant("no"));
+
+		assertEquals("yes", evaluate(condition, 1));
+		assertEquals("no", evaluate(condition, 3d));
+	}
+
+	@Test
+	public void evaluatePrimitive() throws Exception {
+		FieldName x2 = new FieldName("x2");
+
+		// x2 * (x2 + 1) - avg(x2, 2)
+		Apply apply = createApply("-",
+				createApply("*", new FieldRef(x2),
+						createApply("+", new FieldRef(x2), new Constant("1"))),
+				createApply("avg", new FieldRef(x2), new Constant("2")));
+
+		RegressionModelEvaluator evaluator =
+				EvaluationPlanTest.prepareModel(new FieldName("y"));
+
+		RegressionModelManager regressionModelManager = evaluator;
+
+		DerivedField y = ((regressionModelManager.getOrCreateLocalTransformations())
+				.getDerivedFields()).get(0);
+		y.setExpression(apply);
+
+		DerivedField z = new DerivedField(OpType.CATEGORICAL, DataType.STRING);
+		z.setName(new FieldName("z"));
+		z.setExpression(createApply("greaterThan", new FieldRef(x2), new Constant("1")));
+
+		((regressionModelManager.getOrCreateLocalTransformations()).getDerivedFields()).add(z);
+
+		evaluator = new RegressionModelEvaluator(regressionModelManager);
+
+		EvaluationPlan evaluationPlan = evaluator.getEvaluationPlan();
+
+		assertTrue((evaluationPlan.getApply(apply)).isPrimitive());
+		assertFalse((evaluationPlan.getApply((Apply) z.getExpression())).isPrimitive());
+
+		IPMMLResult result = evaluator.evaluate(
+				Collections.singletonMap(new FieldName("x"), (Object) 3d));
+
+		// 1 + 2 * (3 * 4 - 2.5)
+		assertEquals(20d, result.getValue(new FieldName("target")));
+	}
+
+	@Test
+	public void foldConstants() throws Exception {
+		Apply sum = createApply("+", new Constant("1"), new Constant("2"));
+
+		CompiledApply compiledSum = new CompiledApply(sum, null);
+
+		assertTrue(compiledSum.isConstant());
+		assertEquals(3, compiledSum.evaluate(null));
+
+		Apply apply = createApply("*", sum, new FieldRef(new FieldName("x0")));
+
+		assertEquals(6, evaluate(apply, 2));
+		assertEquals(7.5d, evaluate(apply, 2.5d));
+
+		// The error is reported by the evaluation
+		Apply invalid = createApply("+", new Constant("a"), new Constant("1"));
+
+		assertFalse((new CompiledApply(invalid, null)).isConstant());
+
+		try {
+			evaluate(invalid);
+
+			fail();
+		} catch (EvaluationException ee) {
+			// Ignored
+		}
+	}
+
+	@Test
+	public void shareSubexpressions() throws Exception {
+		final int[] calls = { 0 };
+
+		FunctionUtil.putFunction("CompiledApplyTest.identity", new FunctionUtil.Function() {
+
+			public Object evaluate(List<?> values) {
+				calls[0]++;
+
+				return values.get(0);
+			}
+		});
+
+		FieldName alias = new FieldName("alias");
+
+		RegressionModelEvaluator evaluator =
+				EvaluationPlanTest.prepareModel(new FieldName("y"));
+
+		RegressionModelManager regressionModelManager = evaluator;
+
+		DerivedField aliasField = new DerivedField(OpType.CONTINUOUS, DataType.DOUBLE);
+		aliasField.setName(alias);
+		aliasField.setExpression(new FieldRef(new FieldName("x2")));
+
+		((regressionModelManager.getOrCreateTransformationDictionary())
+				.getDerivedFields()).add(aliasField);
+
+		// 2 * identity(alias), twice
+		Apply[] products = new Apply[2];
+
+		for (int i = 0; i < products.length; i++) {
+			products[i] = createApply("*", new Constant("2"),
+					createApply("CompiledApplyTest.identity", new FieldRef(alias)));
+		}
+
+		DerivedField y = ((regressionModelManager.getOrCreateLocalTransformations())
+				.getDerivedFields()).get(0);
+		y.setExpression(createApply("+", products[0], products[1]));
+
+		evaluator = new RegressionModelEvaluator(regressionModelManager);
+
+		EvaluationPlan evaluationPlan = evaluator.getEvaluationPlan();
+
+		Map<FieldName, Object> parameters =
+				Collections.singletonMap(new FieldName("x"), (Object) 3d);
+
+		EvaluationContext context =
+				new ModelManagerEvaluationContext(evaluator, evaluationPlan, parameters);
+
+		assertEquals(12d, ExpressionUtil.evaluate(evaluationPlan.getSlot(y.getName()), context));
+		assertEquals(1, calls[0]);
+
+		// The alias is resolved to the field that it renames
+		assertFalse(context.isLoaded(evaluationPlan.getSlot(alias)));
+		assertTrue(context.isLoaded(evaluationPlan.getSlot(new FieldName("x2"))));
+
+		IPMMLResult result = evaluator.evaluate(parameters);
+
+		assertEquals(25d, result.getValue(new FieldName("target")));
+		assertEquals(2, calls[0]);
+	}
+
+	/**
+	 * Evaluates the function both in compiled and in interpreted form.
+	 */
+	private static Object evaluate(Apply apply, Object... values) throws EvaluationException {
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+
+		for (int i = 0; i < values.length; i++) {
+			parameters.put(new FieldName("x" + i), values[i]);
+		}
+
+		EvaluationContext context = new LocalEvaluationContext(parameters);
+
+		Object expected;
+
+		try {
+			expected = ExpressionUtil.evaluate(apply, context);
+		} catch (EvaluationException ee) {
+			expected = ee;
+		}
+
+		Object result;
+
+		try {
+			result = (new CompiledApply(apply, null)).evaluate(context);
+		} catch (EvaluationException ee) {
+			assertEquals(expected.getClass(), ee.getClass());
+
+			throw ee;
+		}
+
+		assertEquals(expected, result);
+
+		return result;
+	}
+
+	private static Apply createApply(String function, Expression... arguments) {
+		Apply apply = new Apply(function);
+
+		for (Expression argument : arguments) {
+			(apply.getExpressions()).add(argument);
+		}
+
+		return apply;
+	}
+}
@@ -0,0 +1,132 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldColumnPair;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.InlineTable;
+import com.turn.tpmml.MapValues;
+import com.turn.tpmml.Row;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class CompiledMapValuesTest {
+
+	@Test
+	public void evaluateSingleColumn() throws Exception {
+		MapValues mapValues = createMapValues(DataType.INTEGER, new String[][] {
+				{ "1", "10" }, { "2", "20" }, { "2", "21" }, { "3.0", "30" } });
+		mapValues.setDefaultValue("-1");
+		mapValues.setMapMissingTo("0");
+
+		assertEquals(10, evaluate(mapValues, "1"));
+		assertEquals(20, evaluate(mapValues, 2d));
+		assertEquals(20, evaluate(mapValues, "2"));
+		assertEquals(30, evaluate(mapValues, 3f));
+		assertEquals(-1, evaluate(mapValues, "3"));
+		assertEquals(-1, evaluate(mapValues, 4d));
+		assertEquals(0, evaluate(mapValues, (Object) null));
+
+		// "3.0" is not an integer
+		try {
+			evaluate(mapValues, 3);
+
+			fail();
+		} catch (NumberFormatException nfe) {
+			// Ignored
+		}
+	}
+
+	@Test
+	public void evaluateMultipleColumns() throws Exception {
+		MapValues mapValues = createMapValues(null, new String[][] {
+				{ "1", "a", "1a" }, { "1", "b", "1b" }, { "2", "a", "2a" }, { "2", "b", "2b" } });
+
+		assertEquals("1b", evaluate(mapValues, "1", "b"));
+		assertEquals("2a", evaluate(mapValues, 2, "a"));
+		assertEquals("2b", evaluate(mapValues, 2d, "b"));
+		assertEquals(null, evaluate(mapValues, 3d, "b"));
+		assertEquals(null, evaluate(mapValues, "1", null));
+	}
+
+	@Test
+	public void isCompilable() {
+		MapValues mapValues = new MapValues("output");
+		(mapValues.getFieldColumnPairs()).add(new FieldColumnPair(new FieldName("x"), "input"));
+
+		assertFalse(CompiledMapValues.isCompilable(mapValues));
+
+		mapValues.setInlineTable(new InlineTable());
+		(mapValues.getFieldColumnPairs()).add(new FieldColumnPair(new FieldName("y"), "input"));
+
+		assertFalse(CompiledMapValues.isCompilable(mapValues));
+	}
+
+	/**
+	 * Evaluates the transformation both in compiled and in interpreted form.
+	 */
+	private static Object evaluate(MapValues mapValues, Object... values)
+			throws EvaluationException {
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+
+		for (int i = 0; i < values.length; i++) {
+			parameters.put(new FieldName("x" + i), values[i]);
+		}
+
+		EvaluationContext context = new LocalEvaluationContext(parameters);
+
+		Object result = (new CompiledMapValues(mapValues, null)).evaluate(context);
+
+		assertEquals(ExpressionUtil.evaluate(mapValues, context), result);
+
+		return result;
+	}
+
+	/**
+	 * @param rows Rows of input column values, followed by the output column value.
+	 */
+	private static MapValues createMapValues(DataType dataType, String[][] rows)
+			throws Exception {
+		MapValues mapValues = new MapValues("output");
+		mapValues.setDataType(dataType);
+
+		int columns = rows[0].length - 1;
+
+		for (int i = 0; i < columns; i++) {
+			(mapValues.getFieldColumnPairs()).add(new FieldColumnPair(new FieldName("x" + i),
+					"input" + i));
+		}
+
+		Document document =
+				(DocumentBuilderFactory.newInstance()).newDocumentBuilder().newDocument();
+
+		InlineTable inlineTable = new InlineTable();
+
+		for (String[] cells : rows) {
+			Row row = new Row();
+
+			for (int i = 0; i < cells.length; i++) {
+				Element element = document.createElement(i < columns ? "input" + i : "output");
+				element.setTextContent(cells[i]);
+
+				(row.getContent()).add(element);
+			}
+
+			(inlineTable.getRows()).add(row);
+		}
+
+		mapValues.setInlineTable(inlineTable);
+
+		return mapValues;
+	}
+}
@@ -0,0 +1,347 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.MiningFunctionType;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.PredictorTerm;
+import com.turn.tpmml.RegressionModel;
+import com.turn.tpmml.RegressionNormalizationMethodType;
+import com.turn.tpmml.RegressionTable;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.RegressionModelManager;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class CompiledRegressionTablesTest {
+
+	@Test
+	public void evaluate() throws Exception {
+		RegressionModelEvaluator evaluator = prepareModel();
+
+		assertNotNull((evaluator.getEvaluationPlan()).getRegressionTables(evaluator.getModel()));
+
+		// 1 + 2 * 3 + 0.5 * 2 ^ 2 + 0.1 * 2 ^ 0 + level 7 + 2 * "a"
+		assertEquals(1d + 6d + 2d + 0.1d + 0.007d + 20d, evaluate(evaluator, 3d, 2, "l7", "a"),
+				1e-12);
+
+		evaluate(evaluator, -1.5d, 7, "l1999", "b");
+		evaluate(evaluator, 0d, 0, "l2000", "a");
+		evaluate(evaluator, 0d, 0, null, null);
+
+		assertNull(evaluate(evaluator, null, 1, "l1", "a"));
+	}
+
+	@Test
+	public void evaluateUnindexable() throws Exception {
+		RegressionModelEvaluator evaluator = prepareModel();
+
+		// "a" is not an integer
+		try {
+			evaluate(evaluator, 1d, 1, "l1", 1);
+
+			fail();
+		} catch (NumberFormatException nfe) {
+			// Ignored
+		}
+	}
+
+	@Test
+	public void evaluateClassification() throws Exception {
+		RegressionModelEvaluator evaluator = prepareClassificationModel();
+
+		CompiledRegressionTables compiledRegressionTables =
+				(evaluator.getEvaluationPlan()).getRegressionTables(evaluator.getModel());
+
+		assertEquals(3, compiledRegressionTables.size());
+
+		ClassificationMap values = evaluateClassification(evaluator, 1d, 2d, "a");
+
+		// Logits 1002, 1001 and 0
+		assertEquals(1d / (1d + Math.exp(-1d)), values.get("first"), 1e-12);
+		assertEquals(1d / (1d + Math.exp(1d)), values.get("second"), 1e-12);
+		assertEquals(0d, values.get("third"), 1e-12);
+
+		values = evaluateClassification(evaluator, -3d, 0.5d, "b");
+
+		double sum = 0d;
+
+		for (Double value : values.values()) {
+			sum += value.doubleValue();
+		}
+
+		assertEquals(1d, sum, 1e-12);
+
+		try {
+			evaluateClassification(evaluator, null, 0.5d, "b");
+
+			fail();
+		} catch (EvaluationException ee) {
+			// Ignored
+		}
+	}
+
+	@Test
+	public void evaluatePredictorTerms() throws Exception {
+		RegressionModelEvaluator evaluator = prepareInteractionModel();
+
+		assertNotNull((evaluator.getEvaluationPlan()).getRegressionTables(evaluator.getModel()));
+
+		// 1 + 2 * 3 + 0.5 * 3 * 2 - 1 * 3 * 2 * 2 + 4 * 2 * 3
+		assertEquals(1d + 6d + 3d - 12d + 24d, evaluateInteraction(evaluator, 3d, 2d), 1e-12);
+
+		evaluateInteraction(evaluator, -1.5d, 0.25d);
+
+		// The missing value of "y" is replaced with 10 in all but the first term
+		assertNull(evaluateInteraction(evaluator, 3d, null));
+
+		// The missing value of "x" is replaced with 5 in the second term only
+		assertNull(evaluateInteraction(evaluator, null, 2d));
+	}
+
+	@Test
+	public void isCompilable() {
+		RegressionTable regressionTable = new RegressionTable(0d);
+		RegressionModelManager.addCategoricalPredictor(regressionTable, new FieldName("c"), "a",
+				Double.POSITIVE_INFINITY);
+
+		assertFalse(CompiledRegressionTables.isCompilable(regressionTable));
+	}
+
+	/**
+	 * Evaluates the model both with compiled and with interpreted regression tables.
+	 */
+	private static Double evaluate(RegressionModelEvaluator evaluator, Double x, Integer n,
+			String level, Object c) throws EvaluationException {
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x"), x);
+		parameters.put(new FieldName("n"), n);
+		parameters.put(new FieldName("level"), level);
+		parameters.put(new FieldName("c"), c);
+
+		Map<FieldName, Double> result = evaluator.evaluateRegression(
+				new ModelManagerEvaluationContext(evaluator, evaluator.getEvaluationPlan(),
+						parameters));
+
+		Map<FieldName, Double> interpretedResult =
+				evaluator.evaluateRegression(new LocalEvaluationContext(parameters));
+
+		if (result == null || interpretedResult == null) {
+			assertEquals(interpretedResult, result);
+
+			return null;
+		}
+
+		FieldName target = new FieldName("target");
+
+		// Duplicate categories are summed up in a different order
+		assertEquals(interpretedResult.get(target), result.get(target), 1e-12);
+
+		return result.get(target);
+	}
+
+	/**
+	 * Evaluates the model both with compiled and with interpreted regression tables.
+	 */
+	private static Double evaluateInteraction(RegressionModelEvaluator evaluator, Double x,
+			Double y) throws EvaluationException {
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x"), x);
+		parameters.put(new FieldName("y"), y);
+
+		Map<FieldName, Double> result = evaluator.evaluateRegression(
+				new ModelManagerEvaluationContext(evaluator, evaluator.getEvaluationPlan(),
+						parameters));
+
+		Map<FieldName, Double> interpretedResult =
+				evaluator.evaluateRegression(new LocalEvaluationContext(parameters));
+
+		FieldName target = new FieldName("target");
+
+		if (result == null || interpretedResult == null) {
+			assertEquals(interpretedResult, result);
+
+			return null;
+		}
+
+		assertEquals(interpretedResult.get(target), result.get(target));
+
+		return result.get(target);
+	}
+
+	/**
+	 * Evaluates the model both with compiled and with interpreted regression tables.
+	 */
+	private static ClassificationMap evaluateClassification(RegressionModelEvaluator evaluator,
+			Double x, Double y, String c) throws EvaluationException {
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x"), x);
+		parameters.put(new FieldName("y"), y);
+		parameters.put(new FieldName("c"), c);
+
+		FieldName target = new FieldName("target");
+
+		ClassificationMap result = (evaluator.evaluateClassification(
+				new ModelManagerEvaluationContext(evaluator, evaluator.getEvaluationPlan(),
+						parameters))).get(target);
+
+		ClassificationMap interpretedResult = (evaluator.evaluateClassification(
+				new LocalEvaluationContext(parameters))).get(target);
+
+		assertEquals(interpretedResult.keySet(), result.keySet());
+
+		for (String key : result.keySet()) {
+			assertEquals(interpretedResult.get(key), result.get(key), 1e-12);
+		}
+
+		return result;
+	}
+
+	private static RegressionModelEvaluator prepareModel() throws ModelManagerException {
+		RegressionModelManager regressionModelManager = new RegressionModelManager();
+
+		RegressionModel regressionModel = regressionModelManager.createRegressionModel();
+
+		FieldName x = new FieldName("x");
+		regressionModelManager.addField(x, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName n = new FieldName("n");
+		regressionModelManager.addField(n, null, OpType.CONTINUOUS, DataType.INTEGER,
+				FieldUsageType.ACTIVE);
+
+		FieldName level = new FieldName("level");
+		regressionModelManager.addField(level, null, OpType.CATEGORICAL, DataType.STRING,
+				FieldUsageType.ACTIVE);
+
+		FieldName c = new FieldName("c");
+		regressionModelManager.addField(c, null, OpType.CATEGORICAL, DataType.STRING,
+				FieldUsageType.ACTIVE);
+
+		FieldName target = new FieldName("target");
+		regressionModelManager.addField(target, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.PREDICTED);
+
+		RegressionTable regressionTable = new RegressionTable(1d);
+		RegressionModelManager.addNumericPredictor(regressionTable, x, 2d);
+		(RegressionModelManager.addNumericPredictor(regressionTable, n, 0.5d)).setExponent(2);
+		(RegressionModelManager.addNumericPredictor(regressionTable, n, 0.1d)).setExponent(0);
+
+		for (int i = 0; i < 2000; i++) {
+			RegressionModelManager.addCategoricalPredictor(regressionTable, level, "l" + i,
+					i / 1000d);
+		}
+
+		// Duplicate categories are summed up
+		RegressionModelManager.addCategoricalPredictor(regressionTable, c, "a", 10d);
+		RegressionModelManager.addCategoricalPredictor(regressionTable, c, "b", -3d);
+		RegressionModelManager.addCategoricalPredictor(regressionTable, c, "a", 10d);
+
+		(regressionModel.getRegressionTables()).add(regressionTable);
+
+		return new RegressionModelEvaluator(regressionModelManager);
+	}
+
+	/**
+	 * Creates a model with degree 2 and degree 3 interactions, which share some of their factors.
+	 */
+	private static RegressionModelEvaluator prepareInteractionModel()
+			throws ModelManagerException {
+		RegressionModelManager regressionModelManager = new RegressionModelManager();
+
+		RegressionModel regressionModel = regressionModelManager.createRegressionModel();
+
+		FieldName x = new FieldName("x");
+		regressionModelManager.addField(x, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName y = new FieldName("y");
+		regressionModelManager.addField(y, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName target = new FieldName("target");
+		regressionModelManager.addField(target, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.PREDICTED);
+
+		RegressionTable regressionTable = new RegressionTable(1d);
+		RegressionModelManager.addNumericPredictor(regressionTable, x, 2d);
+
+		RegressionModelManager.addPredictorTerm(regressionTable, Arrays.asList(x, y), 0.5d);
+
+		PredictorTerm cube =
+				RegressionModelManager.addPredictorTerm(regressionTable, Arrays.asList(x, y, y),
+						-1d);
+		((cube.getFieldReves()).get(0)).setMapMissingTo("5");
+		((cube.getFieldReves()).get(1)).setMapMissingTo("10");
+		((cube.getFieldReves()).get(2)).setMapMissingTo("10");
+
+		PredictorTerm square =
+				RegressionModelManager.addPredictorTerm(regressionTable, Arrays.asList(y, x), 4d);
+		((square.getFieldReves()).get(0)).setMapMissingTo("10");
+
+		(regressionModel.getRegressionTables()).add(regressionTable);
+
+		return new RegressionModelEvaluator(regressionModelManager);
+	}
+
+	/**
+	 * Creates a multinomial model with large logits. The tables use the numeric predictors in
+	 * different orders.
+	 */
+	private static RegressionModelEvaluator prepareClassificationModel()
+			throws ModelManagerException {
+		RegressionModelManager regressionModelManager = new RegressionModelManager();
+
+		RegressionModel regressionModel =
+				regressionModelManager.createModel(MiningFunctionType.CLASSIFICATION);
+		regressionModel.setNormalizationMethod(RegressionNormalizationMethodType.SOFTMAX);
+
+		FieldName x = new FieldName("x");
+		regressionModelManager.addField(x, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName y = new FieldName("y");
+		regressionModelManager.addField(y, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName c = new FieldName("c");
+		regressionModelManager.addField(c, null, OpType.CATEGORICAL, DataType.STRING,
+				FieldUsageType.ACTIVE);
+
+		FieldName target = new FieldName("target");
+		regressionModelManager.addField(target, null, OpType.CATEGORICAL, DataType.STRING,
+				FieldUsageType.PREDICTED);
+
+		RegressionTable first = new RegressionTable(1000d);
+		first.setTargetCategory("first");
+		RegressionModelManager.addNumericPredictor(first, x, 1d);
+		RegressionModelManager.addNumericPredictor(first, y, 0.5d);
+		RegressionModelManager.addCategoricalPredictor(first, c, "a", 1d);
+
+		RegressionTable second = new RegressionTable(1000d);
+		second.setTargetCategory("second");
+		RegressionModelManager.addNumericPredictor(second, y, 0.5d);
+		RegressionModelManager.addNumericPredictor(second, x, 1d);
+
+		RegressionTable third = new RegressionTable(0d);
+		third.setTargetCategory("third");
+		RegressionModelManager.addCategoricalPredictor(third, c, "b", 2d);
+
+		(regressionModel.getRegressionTables()).add(first);
+		(regressionModel.getRegressionTables()).add(second);
+		(regressionModel.getRegressionTables()).add(third);
+
+		return new RegressionModelEvaluator(regressionModelManager);
+	}
+}
@@ -0,0 +1,130 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.CompoundPredicate;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.Node;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.Predicate;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.TreeModel;
+import com.turn.tpmml.True;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.TreeModelManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class CompiledTreeTest {
+
+	@Test
+	public void evaluate() throws Exception {
+		TreeModelEvaluator2 evaluator = prepareModel();
+
+		assertEquals(7, (evaluator.getCompiledTree()).size());
+
+		assertEquals("LB", evaluate(evaluator, 0.2d, null));
+		assertEquals("LA", evaluate(evaluator, 0.2d, "a"));
+		assertEquals("L", evaluate(evaluator, 0.2d, "b"));
+
+		assertEquals("RI", evaluate(evaluator, 2d, "b"));
+		assertEquals("RI", evaluate(evaluator, 0.7d, "z"));
+		assertEquals("RE", evaluate(evaluator, 0.7d, "b"));
+	}
+
+	@Test
+	public void evaluateNull() throws Exception {
+		TreeModelEvaluator2 evaluator = prepareModel();
+
+		try {
+			evaluate(evaluator, null, "a");
+
+			fail();
+		} catch (EvaluationException ee) {
+			// Ignored
+		}
+	}
+
+	/**
+	 * Evaluates the tree both with a context that is bound to the evaluation plan of the model,
+	 * and with a context that looks up fields by name.
+	 */
+	private static String evaluate(TreeModelEvaluator2 evaluator, Double x, String c)
+			throws EvaluationException {
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x"), x);
+		parameters.put(new FieldName("c"), c);
+
+		Node node = evaluator.evaluateTree(new ModelManagerEvaluationContext(evaluator,
+				evaluator.getEvaluationPlan(), parameters));
+
+		Node unboundNode = evaluator.evaluateTree(new LocalEvaluationContext(parameters));
+
+		assertSame(node, unboundNode);
+
+		return node.getId();
+	}
+
+	private static TreeModelEvaluator2 prepareModel() throws ModelManagerException {
+		TreeModelManager treeModelManager = new TreeModelManager();
+
+		TreeModel treeModel = treeModelManager.createClassificationModel();
+
+		FieldName x = new FieldName("x");
+		treeModelManager.addField(x, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName c = new FieldName("c");
+		treeModelManager.addField(c, null, OpType.CATEGORICAL, DataType.STRING,
+				FieldUsageType.ACTIVE);
+
+		Node root = treeModelManager.getOrCreateRoot();
+		root.setId("N1");
+
+		Node l = addNode(treeModelManager, root, "L",
+				createSimplePredicate(x, SimplePredicate.Operator.LESS_THAN, "0.5"));
+		addNode(treeModelManager, l, "LB",
+				createSimplePredicate(c, SimplePredicate.Operator.IS_MISSING, null));
+		addNode(treeModelManager, l, "LA",
+				createSimplePredicate(c, SimplePredicate.Operator.EQUAL, "a"));
+
+		Node r = addNode(treeModelManager, root, "R",
+				createSimplePredicate(x, SimplePredicate.Operator.GREATER_OR_EQUAL, "0.5"));
+
+		CompoundPredicate compoundPredicate =
+				new CompoundPredicate(CompoundPredicate.BooleanOperator.OR);
+		(compoundPredicate.getContent()).add(createSimplePredicate(x,
+				SimplePredicate.Operator.GREATER_THAN, "1"));
+		(compoundPredicate.getContent()).add(createSimplePredicate(c,
+				SimplePredicate.Operator.EQUAL, "z"));
+
+		addNode(treeModelManager, r, "RI", compoundPredicate);
+		addNode(treeModelManager, r, "RE", new True());
+
+		return new TreeModelEvaluator2(treeModelManager);
+	}
+
+	private static Node addNode(TreeModelManager treeModelManager, Node parent, String id,
+			Predicate predicate) {
+		Node node = treeModelManager.addNode(parent, predicate);
+		node.setId(id);
+		node.setScore(id);
+
+		return node;
+	}
+
+	private static SimplePredicate createSimplePredicate(FieldName name,
+			SimplePredicate.Operator operator, String value) {
+		SimplePredicate simplePredicate = new SimplePredicate(name, operator);
+		simplePredicate.setValue(value);
+
+		return simplePredicate;
+	}
+}
@@ -0,0 +1,160 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Array;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.Node;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.SimpleSetPredicate;
+import com.turn.tpmml.TreeModel;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.TreeModelManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConcurrentEvaluationTest {
+
+	@Test
+	public void evaluateRegression() throws Exception {
+		RegressionModelEvaluator regressionModelEvaluator =
+				EvaluationPlanTest.prepareModel(new FieldName("y"));
+
+		Evaluator evaluator = (Evaluator) (ModelEvaluatorFactory.getInstance()).getModelManager(
+				regressionModelEvaluator.getPmml(), regressionModelEvaluator.getModel());
+
+		List<Map<FieldName, ?>> records = new ArrayList<Map<FieldName, ?>>();
+		for (int i = 0; i < RECORDS; i++) {
+			records.add(Collections.singletonMap(new FieldName("x"), (double) i));
+		}
+
+		evaluate(evaluator, new FieldName("target"), records);
+	}
+
+	@Test
+	public void evaluateTree() throws Exception {
+		TreeModelManager treeModelManager = prepareTreeModel();
+
+		Evaluator evaluator = (Evaluator) (ModelEvaluatorFactory.getInstance()).getModelManager(
+				treeModelManager.getPmml(), treeModelManager.getModel());
+
+		String[] values = { "a", "b", "c", "d" };
+
+		List<Map<FieldName, ?>> records = new ArrayList<Map<FieldName, ?>>();
+		for (int i = 0; i < RECORDS; i++) {
+			records.add(Collections.singletonMap(new FieldName("c"), values[i % values.length]));
+		}
+
+		evaluate(evaluator, new FieldName("target"), records);
+	}
+
+	/**
+	 * Evaluates the records sequentially, and then concurrently by many threads that share the
+	 * same evaluator.
+	 */
+	private static void evaluate(final Evaluator evaluator, final FieldName target,
+			final List<Map<FieldName, ?>> records) throws Exception {
+		final List<Object> expected = new ArrayList<Object>();
+
+		for (Map<FieldName, ?> record : records) {
+			expected.add(EvaluatorUtil.decode((evaluator.evaluate(record)).getValue(target)));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+		try {
+			final CountDownLatch latch = new CountDownLatch(1);
+
+			List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+
+			for (int i = 0; i < THREADS; i++) {
+				final int offset = i;
+
+				Callable<Integer> task = new Callable<Integer>() {
+
+					public Integer call() throws Exception {
+						latch.await();
+
+						int mismatches = 0;
+
+						for (int j = 0; j < records.size(); j++) {
+							int index = (j + offset) % records.size();
+
+							Object value = EvaluatorUtil.decode(
+									(evaluator.evaluate(records.get(index))).getValue(target));
+
+							if (!(expected.get(index)).equals(value)) {
+								mismatches++;
+							}
+						}
+
+						return Integer.valueOf(mismatches);
+					}
+				};
+
+				futures.add(executor.submit(task));
+			}
+
+			latch.countDown();
+
+			for (Future<Integer> future : futures) {
+				assertEquals(Integer.valueOf(0), future.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static TreeModelManager prepareTreeModel() throws ModelManagerException {
+		TreeModelManager treeModelManager = new TreeModelManager();
+
+		TreeModel treeModel = treeModelManager.createClassificationModel();
+
+		FieldName c = new FieldName("c");
+		treeModelManager.addField(c, null, OpType.CATEGORICAL, DataType.STRING,
+				FieldUsageType.ACTIVE);
+
+		FieldName target = new FieldName("target");
+		treeModelManager.addField(target, null, OpType.CATEGORICAL, DataType.STRING,
+				FieldUsageType.PREDICTED);
+
+		// The root node does not have a predicate, it is added lazily by the evaluator
+		Node root = new Node();
+		treeModel.setNode(root);
+
+		root.setId("N1");
+		root.setScore("0");
+
+		SimpleSetPredicate t1Predicate = new SimpleSetPredicate(new Array("a \"b\"",
+				Array.Type.STRING), c, SimpleSetPredicate.BooleanOperator.IS_IN);
+
+		Node t1 = treeModelManager.addNode(root, t1Predicate);
+		t1.setId("T1");
+		t1.setScore("1");
+
+		SimpleSetPredicate t2Predicate = new SimpleSetPredicate(new Array("a b",
+				Array.Type.STRING), c, SimpleSetPredicate.BooleanOperator.IS_NOT_IN);
+
+		Node t2 = treeModelManager.addNode(root, t2Predicate);
+		t2.setId("T2");
+		t2.setScore("2");
+
+		return treeModelManager;
+	}
+
+	private static final int THREADS = 8;
+
+	private static final int RECORDS = 2000;
+}
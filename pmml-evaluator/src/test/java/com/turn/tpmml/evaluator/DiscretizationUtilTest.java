@@ -3,10 +3,16 @@
  */
 package com.turn.tpmml.evaluator;
 
+import com.turn.tpmml.Discretize;
+import com.turn.tpmml.DiscretizeBin;
+import com.turn.tpmml.FieldName;
 import com.turn.tpmml.Interval;
 
+import java.util.Arrays;
+
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -42,6 +48,61 @@ public class DiscretizationUtilTest {
 		assertTrue(DiscretizationUtil.contains(zeroAndPositive, 1.0));
 	}
 
+	@Test
+	public void discretize() throws EvaluationException {
+		Interval.Closure[] closures = { Interval.Closure.CLOSED_OPEN, Interval.Closure.OPEN_CLOSED,
+				Interval.Closure.OPEN_OPEN, Interval.Closure.CLOSED_CLOSED,
+				Interval.Closure.OPEN_OPEN };
+
+		Discretize disjoint = new Discretize(new FieldName("x"));
+		disjoint.setDefaultValue("default");
+
+		// Bins [-100, -99), (-99, -98], (-98, -97), [-97, -96], (-96, -95) .. in reverse order
+		for (int i = 99; i >= -100; i--) {
+			Interval interval = createInterval(closures[(i + 100) % closures.length],
+					(double) i, (double) (i + 1));
+
+			(disjoint.getDiscretizeBins()).add(new DiscretizeBin(interval, "bin" + i));
+		}
+
+		(disjoint.getDiscretizeBins()).add(new DiscretizeBin(
+				createInterval(Interval.Closure.OPEN_OPEN, null, -100d), "negative"));
+
+		Discretize overlapping = new Discretize(new FieldName("x"));
+
+		for (int i = 0; i < 20; i++) {
+			Interval interval = createInterval(closures[i % closures.length], (double) (i % 7),
+					(double) (i % 7 + 3));
+
+			(overlapping.getDiscretizeBins()).add(new DiscretizeBin(interval, "bin" + i));
+		}
+
+		(overlapping.getDiscretizeBins()).add(new DiscretizeBin(
+				createInterval(Interval.Closure.CLOSED_CLOSED, null, null), "any"));
+
+		assertTrue((new CompiledDiscretize(disjoint, null)).isSorted());
+		assertFalse((new CompiledDiscretize(overlapping, null)).isSorted());
+
+		for (Discretize discretize : Arrays.asList(disjoint, overlapping)) {
+			CompiledDiscretize compiledDiscretize = new CompiledDiscretize(discretize, null);
+
+			for (int i = -1020; i <= 1020; i++) {
+				Double value = Double.valueOf(i / 10d);
+
+				assertEquals(DiscretizationUtil.discretize(discretize, value),
+						compiledDiscretize.evaluate(new LocalEvaluationContext(
+								discretize.getField(), value)));
+			}
+
+			for (double value : new double[] { -0d, Double.NaN, Double.NEGATIVE_INFINITY,
+					Double.POSITIVE_INFINITY }) {
+				assertEquals(DiscretizationUtil.discretize(discretize, value),
+						compiledDiscretize.evaluate(new LocalEvaluationContext(
+								discretize.getField(), value)));
+			}
+		}
+	}
+
 	private static Interval createInterval(Interval.Closure closure, Double left, Double right) {
 		Interval interval = new Interval(closure);
 		interval.setLeftMargin(left);
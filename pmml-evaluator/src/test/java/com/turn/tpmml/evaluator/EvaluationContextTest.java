@@ -0,0 +1,114 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.manager.ModelManagerException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EvaluationContextTest {
+
+	@Test
+	public void memoizeDerivedFields() throws EvaluationException, ModelManagerException {
+		RegressionModelEvaluator evaluator = EvaluationPlanTest.prepareModel(new FieldName("y"));
+
+		EvaluationPlan evaluationPlan = evaluator.getEvaluationPlan();
+
+		FieldName x = new FieldName("x");
+
+		Map<FieldName, Object> parameters = new HashMap<FieldName, Object>();
+		parameters.put(x, 1d);
+
+		EvaluationContext context =
+				new ModelManagerEvaluationContext(evaluator, evaluationPlan, parameters);
+
+		int slot = evaluationPlan.getSlot(new FieldName("y"));
+
+		assertFalse(context.isLoaded(slot));
+		assertEquals(1d, ExpressionUtil.evaluate(slot, context));
+		assertTrue(context.isLoaded(slot));
+
+		// Modifications behind the back of the context are not seen
+		parameters.put(x, 2d);
+
+		assertEquals(1d, ExpressionUtil.evaluate(slot, context));
+
+		context.putParameter(x, 3d);
+
+		assertEquals(3d, ExpressionUtil.evaluate(slot, context));
+	}
+
+	@Test
+	public void memoizeDoubleValues() throws EvaluationException, ModelManagerException {
+		RegressionModelEvaluator evaluator = EvaluationPlanTest.prepareModel(new FieldName("y"));
+
+		EvaluationPlan evaluationPlan = evaluator.getEvaluationPlan();
+
+		FieldName x = new FieldName("x");
+
+		Map<FieldName, Object> parameters = new HashMap<FieldName, Object>();
+		parameters.put(x, 1d);
+
+		EvaluationContext context =
+				new ModelManagerEvaluationContext(evaluator, evaluationPlan, parameters);
+
+		int slot = evaluationPlan.getSlot(new FieldName("y"));
+
+		assertFalse(context.isDoubleLoaded(slot));
+		assertEquals(1d, ExpressionUtil.evaluateDouble(slot, context), 0d);
+		assertTrue(context.isLoaded(slot));
+		assertTrue(context.isDoubleLoaded(slot));
+
+		context.putParameter(x, 3d);
+
+		assertFalse(context.isDoubleLoaded(slot));
+		assertEquals(3d, ExpressionUtil.evaluateDouble(slot, context), 0d);
+	}
+
+	@Test
+	public void shareGlobalFields() throws EvaluationException, ModelManagerException {
+		RegressionModelEvaluator evaluator = EvaluationPlanTest.prepareModel(new FieldName("y"));
+
+		EvaluationPlan evaluationPlan = evaluator.getEvaluationPlan();
+
+		Map<FieldName, Object> parameters = new HashMap<FieldName, Object>();
+		parameters.put(new FieldName("x"), 1d);
+
+		EvaluationContext parent =
+				new ModelManagerEvaluationContext(evaluator, evaluationPlan, parameters);
+
+		EvaluationContext child =
+				new ModelManagerEvaluationContext(evaluator, evaluationPlan, parameters, parent);
+
+		int globalSlot = evaluationPlan.getSlot(new FieldName("x2"));
+		int localSlot = evaluationPlan.getSlot(new FieldName("y"));
+
+		assertEquals(1d, ExpressionUtil.evaluate(localSlot, child));
+
+		assertTrue(parent.isLoaded(globalSlot));
+		assertFalse(parent.isLoaded(localSlot));
+
+		EvaluationContext stranger = new ModelManagerEvaluationContext(evaluator, evaluationPlan,
+				new HashMap<FieldName, Object>(parameters), parent);
+
+		assertFalse(stranger.isLoaded(globalSlot));
+	}
+
+	@Test
+	public void isolateIncompatiblePlans() throws EvaluationException, ModelManagerException {
+		EvaluationPlan evaluationPlan =
+				(EvaluationPlanTest.prepareModel(new FieldName("y"))).getEvaluationPlan();
+		EvaluationPlan shadowingPlan =
+				(EvaluationPlanTest.prepareModel(new FieldName("x2"))).getEvaluationPlan();
+
+		assertTrue(evaluationPlan.isCompatible(evaluationPlan));
+		assertFalse(evaluationPlan.isCompatible(shadowingPlan));
+		assertFalse(shadowingPlan.isCompatible(evaluationPlan));
+	}
+}
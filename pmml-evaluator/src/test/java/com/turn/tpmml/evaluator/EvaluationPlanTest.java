@@ -0,0 +1,104 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.DerivedField;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldRef;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.RegressionModel;
+import com.turn.tpmml.RegressionTable;
+import com.turn.tpmml.manager.IPMMLResult;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.RegressionModelManager;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EvaluationPlanTest {
+
+	@Test
+	public void resolveSlots() throws EvaluationException, ModelManagerException {
+		RegressionModelEvaluator evaluator = prepareModel(new FieldName("y"));
+
+		EvaluationPlan evaluationPlan = evaluator.getEvaluationPlan();
+
+		assertSame(evaluationPlan, evaluator.getEvaluationPlan());
+
+		assertEquals(3, evaluationPlan.getGlobalSize());
+		assertEquals(4, evaluationPlan.size());
+		assertFalse(evaluationPlan.isShadowing());
+
+		assertEquals(0, evaluationPlan.getSlot(new FieldName("x")));
+		assertEquals(1, evaluationPlan.getSlot(new FieldName("target")));
+		assertEquals(2, evaluationPlan.getSlot(new FieldName("x2")));
+		assertEquals(3, evaluationPlan.getSlot(new FieldName("y")));
+		assertEquals(-1, evaluationPlan.getSlot(new FieldName("unknown")));
+
+		assertNull(evaluationPlan.getDerivedField(0));
+		assertEquals(new FieldName("x2"), (evaluationPlan.getDerivedField(2)).getName());
+		assertEquals(new FieldName("y"), (evaluationPlan.getDerivedField(3)).getName());
+
+		IPMMLResult result = evaluator.evaluate(
+				Collections.singletonMap(new FieldName("x"), (Object) 3d));
+
+		assertEquals(7d, result.getValue(new FieldName("target")));
+	}
+
+	@Test
+	public void resolveShadowedSlots() throws EvaluationException, ModelManagerException {
+		RegressionModelEvaluator evaluator = prepareModel(new FieldName("x2"));
+
+		EvaluationPlan evaluationPlan = evaluator.getEvaluationPlan();
+
+		assertTrue(evaluationPlan.isShadowing());
+
+		// The local transformation hides the global one
+		int slot = evaluationPlan.getSlot(new FieldName("x2"));
+
+		assertEquals(3, slot);
+		assertSame(((evaluator.getModel()).getLocalTransformations()).getDerivedFields().get(0),
+				evaluationPlan.getDerivedField(slot));
+	}
+
+	static RegressionModelEvaluator prepareModel(FieldName localName)
+			throws ModelManagerException {
+		RegressionModelManager regressionModelManager = new RegressionModelManager();
+
+		RegressionModel regressionModel = regressionModelManager.createRegressionModel();
+
+		FieldName x = new FieldName("x");
+		regressionModelManager.addField(x, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName target = new FieldName("target");
+		regressionModelManager.addField(target, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.PREDICTED);
+
+		DerivedField x2 = new DerivedField(OpType.CONTINUOUS, DataType.DOUBLE);
+		x2.setName(new FieldName("x2"));
+		x2.setExpression(new FieldRef(x));
+
+		(regressionModelManager.getOrCreateTransformationDictionary()).getDerivedFields().add(x2);
+
+		DerivedField local = new DerivedField(OpType.CONTINUOUS, DataType.DOUBLE);
+		local.setName(localName);
+		local.setExpression(new FieldRef(new FieldName("x2")));
+
+		(regressionModelManager.getOrCreateLocalTransformations()).getDerivedFields().add(local);
+
+		RegressionTable regressionTable = new RegressionTable(1d);
+		RegressionModelManager.addNumericPredictor(regressionTable, localName, 2d);
+
+		(regressionModel.getRegressionTables()).add(regressionTable);
+
+		return new RegressionModelEvaluator(regressionModelManager);
+	}
+}
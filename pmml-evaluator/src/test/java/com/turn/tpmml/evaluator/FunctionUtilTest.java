@@ -5,6 +5,7 @@ package com.turn.tpmml.evaluator;
 
 import com.turn.tpmml.DataType;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -150,14 +151,22 @@ public class FunctionUtilTest {
 
 	@Test
 	public void evaluateValueListFunctions() throws EvaluationException {
-		assertEquals(Boolean.TRUE, evaluate("isIn", "3", "1", "2", "3"));
-		assertEquals(Boolean.TRUE, evaluate("isNotIn", "0", "1", "2", "3"));
+		assertEquals(Boolean.TRUE, evaluateValueList("isIn", "3", "1", "2", "3"));
+		assertEquals(Boolean.TRUE, evaluateValueList("isNotIn", "0", "1", "2", "3"));
 
-		assertEquals(Boolean.TRUE, evaluate("isIn", 3, 1, 2, 3));
-		assertEquals(Boolean.TRUE, evaluate("isNotIn", 0, 1, 2, 3));
+		assertEquals(Boolean.TRUE, evaluateValueList("isIn", 3, 1, 2, 3));
+		assertEquals(Boolean.TRUE, evaluateValueList("isNotIn", 0, 1, 2, 3));
 
-		assertEquals(Boolean.TRUE, evaluate("isIn", 3d, 1d, 2d, 3d));
-		assertEquals(Boolean.TRUE, evaluate("isNotIn", 0d, 1d, 2d, 3d));
+		assertEquals(Boolean.TRUE, evaluateValueList("isIn", 3d, 1d, 2d, 3d));
+		assertEquals(Boolean.TRUE, evaluateValueList("isNotIn", 0d, 1d, 2d, 3d));
+
+		assertEquals(Boolean.TRUE, evaluateValueList("isIn", 3f, 1f, 2f, 3f));
+		assertEquals(Boolean.TRUE, evaluateValueList("isIn", "b", 1, "a", 2d, "b", 3f));
+
+		// Values are compared in their own data type
+		assertEquals(Boolean.FALSE, evaluateValueList("isIn", 3, "3", 3d, 3f));
+		assertEquals(Boolean.FALSE, evaluateValueList("isIn", 3d, "3", 3, 3f));
+		assertEquals(Boolean.TRUE, evaluateValueList("isNotIn", "3", 3, 3d, 3f));
 	}
 
 	@Test
@@ -187,6 +196,23 @@ public class FunctionUtilTest {
 		return evaluate(name, Arrays.asList(values));
 	}
 
+	/**
+	 * Evaluates a value list function both with plain arguments and with compiled arguments.
+	 */
+	private static Object evaluateValueList(String name, Object value, Object... values)
+			throws EvaluationException {
+		List<Object> arguments = new ArrayList<Object>();
+		arguments.add(value);
+		arguments.addAll(Arrays.asList(values));
+
+		Object result = evaluate(name, arguments);
+
+		assertEquals(result,
+				FunctionUtil.evaluate(name, value, ValueSet.create(Arrays.asList(values))));
+
+		return result;
+	}
+
 	private static Object evaluate(String name, List<?> values) throws EvaluationException {
 		return FunctionUtil.evaluate(name, values);
 	}
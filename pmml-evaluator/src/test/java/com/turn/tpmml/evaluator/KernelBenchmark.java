@@ -0,0 +1,133 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.evaluator.KernelUtil.Kernel;
+import com.turn.tpmml.evaluator.KernelUtil.ScalarKernel;
+
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the scalar kernel with the kernel that is named by the system property
+ * {@link KernelUtil#KERNEL_PROPERTY}:
+ *
+ * <pre>
+ * java -cp ... -Dcom.turn.tpmml.evaluator.kernel=... com.turn.tpmml.evaluator.KernelBenchmark
+ * </pre>
+ *
+ * The benchmark times the dot products of a single record and the weight rows of a block of
+ * records, as they are used by {@link CompiledNeuralNetwork} for a dense layer. The timings are
+ * logged. The benchmark fails if the results of the two kernels differ by more than the
+ * reordering of additions can explain.
+ *
+ * Kernel modules can run the same comparison with {@link #compare(Kernel, Kernel)}.
+ */
+public class KernelBenchmark {
+
+	private static final Logger logger = LoggerFactory.getLogger(KernelBenchmark.class);
+
+	private KernelBenchmark() {
+	}
+
+	public static void main(String... args) {
+		compare(new ScalarKernel(), KernelUtil.getKernel());
+	}
+
+	/**
+	 * @throws AssertionError If the results of the two kernels differ.
+	 */
+	public static void compare(Kernel baseline, Kernel kernel) {
+		int inputSize = 256;
+		int size = 256;
+		int capacity = 128;
+
+		Random random = new Random(0);
+
+		double[] weights = new double[size * inputSize];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = random.nextGaussian();
+		}
+
+		double[] inputs = new double[inputSize * capacity];
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = random.nextDouble();
+		}
+
+		Kernel[] kernels = { baseline, kernel };
+
+		double[] checksums = new double[kernels.length];
+
+		for (int k = 0; k < kernels.length; k++) {
+			// Warm-up
+			for (int i = 0; i < 20; i++) {
+				run(kernels[k], weights, inputs, inputSize, size, capacity);
+			}
+
+			int iterations = 100;
+
+			long begin = System.nanoTime();
+
+			double checksum = 0d;
+
+			for (int i = 0; i < iterations; i++) {
+				checksum += run(kernels[k], weights, inputs, inputSize, size, capacity);
+			}
+
+			long end = System.nanoTime();
+
+			double nanosPerRecord = (double) (end - begin) / (iterations * capacity * 2);
+
+			logger.info((kernels[k].getClass()).getName() + ": " +
+					String.format("%.1f", nanosPerRecord) + " ns/record");
+
+			checksums[k] = checksum;
+		}
+
+		double difference = Math.abs(checksums[0] - checksums[1]);
+
+		if (difference > Math.abs(checksums[0]) * 1E-9) {
+			throw new AssertionError("Checksum " + checksums[1] + " differs from the baseline " +
+					"kernel checksum " + checksums[0]);
+		}
+	}
+
+	/**
+	 * Evaluates a dense layer for a block of records, first record by record and then as a block.
+	 */
+	private static double run(Kernel kernel, double[] weights, double[] inputs, int inputSize,
+			int size, int capacity) {
+		double[] outputs = new double[size * capacity];
+
+		double[] record = new double[inputSize];
+
+		double result = 0d;
+
+		for (int r = 0; r < capacity; r++) {
+
+			for (int j = 0; j < inputSize; j++) {
+				record[j] = inputs[j * capacity + r];
+			}
+
+			for (int i = 0; i < size; i++) {
+				result += kernel.dot(0d, record, 0, weights, i * inputSize, inputSize);
+			}
+		}
+
+		for (int i = 0; i < size; i++) {
+
+			for (int j = 0; j < inputSize; j++) {
+				kernel.axpy(weights[i * inputSize + j], inputs, j * capacity, outputs,
+						i * capacity, capacity);
+			}
+		}
+
+		kernel.logistic(outputs, 0, outputs.length);
+
+		for (double output : outputs) {
+			result += output;
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,47 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.evaluator.KernelUtil.Kernel;
+import com.turn.tpmml.evaluator.KernelUtil.ScalarKernel;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KernelUtilTest {
+
+	@Test
+	public void scalarKernel() {
+		Kernel kernel = new ScalarKernel();
+
+		double[] x = { 1d, 2d, 3d, 4d };
+		double[] y = { 0.5d, -1d, 2d, 10d };
+
+		assertEquals(1d + 2d * -1d + 3d * 2d, kernel.dot(1d, x, 1, y, 1, 2), 0d);
+
+		kernel.axpy(2d, x, 0, y, 2, 2);
+
+		assertTrue(Arrays.equals(new double[] { 0.5d, -1d, 4d, 14d }, y));
+
+		double[] values = { 0d, 0d, 1d };
+
+		kernel.logistic(values, 0, 1);
+		kernel.exp(values, 1, 3);
+
+		assertTrue(Arrays.equals(new double[] { 0.5d, 1d, Math.E }, values));
+	}
+
+	@Test
+	public void loadKernel() {
+		assertTrue(KernelUtil.loadKernel(null) instanceof ScalarKernel);
+		assertTrue(KernelUtil.loadKernel("com.turn.tpmml.evaluator.MissingKernel")
+				instanceof ScalarKernel);
+
+		// Not a kernel
+		assertTrue(KernelUtil.loadKernel("java.lang.Object") instanceof ScalarKernel);
+
+		assertTrue(KernelUtil.loadKernel(ScalarKernel.class.getName()) instanceof ScalarKernel);
+	}
+}
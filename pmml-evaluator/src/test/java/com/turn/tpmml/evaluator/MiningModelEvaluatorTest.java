@@ -0,0 +1,244 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.MiningField;
+import com.turn.tpmml.MiningFunctionType;
+import com.turn.tpmml.MiningSchema;
+import com.turn.tpmml.MultipleModelMethodType;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.PMML;
+import com.turn.tpmml.RegressionModel;
+import com.turn.tpmml.RegressionTable;
+import com.turn.tpmml.Segment;
+import com.turn.tpmml.manager.MiningModelManager;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.RegressionModelManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class MiningModelEvaluatorTest {
+
+	@Test
+	public void evaluate() throws Exception {
+		MiningModelManager miningModelManager = prepareModel(3);
+
+		PMML pmml = miningModelManager.getPmml();
+
+		MiningModelEvaluator evaluator =
+				new MiningModelEvaluator(pmml, miningModelManager.getModel());
+		MiningModelEvaluator2 evaluator2 =
+				new MiningModelEvaluator2(pmml, miningModelManager.getModel());
+
+		FieldName target = new FieldName("target");
+
+		for (int i = 0; i < 5; i++) {
+			Map<FieldName, ?> parameters = Collections.singletonMap(new FieldName("x"), (double) i);
+
+			// The average of (1 + x), (2 + x) and (3 + x)
+			assertEquals(2d + i, (evaluator.evaluate(parameters)).getValue(target));
+			assertEquals(2d + i, (evaluator2.evaluate(parameters)).getValue(target));
+		}
+	}
+
+	@Test
+	public void evaluateMedian() throws Exception {
+		MiningModelManager miningModelManager = prepareModel(12, MultipleModelMethodType.MEDIAN);
+
+		PMML pmml = miningModelManager.getPmml();
+
+		MiningModelEvaluator evaluator =
+				new MiningModelEvaluator(pmml, miningModelManager.getModel());
+		MiningModelEvaluator2 evaluator2 =
+				new MiningModelEvaluator2(pmml, miningModelManager.getModel());
+
+		Map<FieldName, ?> parameters = Collections.singletonMap(new FieldName("x"), 0d);
+
+		assertEquals(7d, (evaluator.evaluate(parameters)).getValue(new FieldName("target")));
+		assertEquals(7d, (evaluator2.evaluate(parameters)).getValue(new FieldName("target")));
+	}
+
+	@Test
+	public void evaluateWeightedAverage() throws Exception {
+		MiningModelManager miningModelManager =
+				prepareModel(12, MultipleModelMethodType.WEIGHTED_AVERAGE);
+
+		// Only the last segment counts
+		List<Segment> segments = miningModelManager.getSegments();
+		for (int i = 0; i < segments.size() - 1; i++) {
+			(segments.get(i)).setWeight(0d);
+		}
+
+		MiningModelEvaluator evaluator = new MiningModelEvaluator(miningModelManager.getPmml(),
+				miningModelManager.getModel());
+
+		Map<FieldName, ?> parameters = Collections.singletonMap(new FieldName("x"), 1d);
+
+		assertEquals(13d, (evaluator.evaluate(parameters)).getValue(new FieldName("target")));
+	}
+
+	@Test
+	public void evaluateParallel() throws Exception {
+		MiningModelManager miningModelManager =
+				prepareModel(12, MultipleModelMethodType.WEIGHTED_AVERAGE);
+
+		List<Segment> segments = miningModelManager.getSegments();
+		for (int i = 0; i < segments.size(); i++) {
+			(segments.get(i)).setWeight(1d / (i + 1));
+		}
+
+		PMML pmml = miningModelManager.getPmml();
+
+		MiningModelEvaluator2 evaluator =
+				new MiningModelEvaluator2(pmml, miningModelManager.getModel());
+		MiningModelEvaluator2 parallelEvaluator =
+				new MiningModelEvaluator2(pmml, miningModelManager.getModel());
+
+		ExecutorService executorService = Executors.newFixedThreadPool(3);
+
+		parallelEvaluator.setExecutorService(executorService);
+		parallelEvaluator.setParallelism(4);
+		parallelEvaluator.setParallelThreshold(0);
+
+		FieldName target = new FieldName("target");
+
+		try {
+			for (int i = 0; i < 100; i++) {
+				Map<FieldName, ?> parameters =
+						Collections.singletonMap(new FieldName("x"), (i / 10d));
+
+				// The results must be identical, not just close
+				assertEquals((evaluator.evaluate(parameters)).getValue(target),
+						(parallelEvaluator.evaluate(parameters)).getValue(target));
+			}
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void evaluateParallelInPool() throws Exception {
+		MiningModelManager miningModelManager = prepareModel(12, MultipleModelMethodType.MEDIAN);
+
+		final MiningModelEvaluator2 evaluator =
+				new MiningModelEvaluator2(miningModelManager.getPmml(),
+						miningModelManager.getModel());
+
+		// The evaluations occupy every thread of the pool that they submit their chunks to
+		ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+		evaluator.setExecutorService(executorService);
+		evaluator.setParallelism(4);
+		evaluator.setParallelThreshold(0);
+
+		final FieldName target = new FieldName("target");
+
+		try {
+			List<Future<Object>> futures = new ArrayList<Future<Object>>();
+
+			for (int i = 0; i < 2; i++) {
+				Callable<Object> task = new Callable<Object>() {
+
+					public Object call() throws Exception {
+						Map<FieldName, ?> parameters =
+								Collections.singletonMap(new FieldName("x"), 1d);
+
+						return (evaluator.evaluate(parameters)).getValue(target);
+					}
+				};
+
+				futures.add(executorService.submit(task));
+			}
+
+			for (Future<Object> future : futures) {
+				assertEquals(8d, future.get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void cacheSegmentEvaluators() throws Exception {
+		MiningModelManager miningModelManager = prepareModel(2);
+
+		MiningModelEvaluator evaluator =
+				(MiningModelEvaluator) (ModelEvaluatorFactory.getInstance()).getModelManager(
+						miningModelManager.getPmml(), miningModelManager.getModel());
+
+		SegmentCache segmentCache = evaluator.getSegmentCache();
+
+		assertEquals(2, segmentCache.size());
+		assertEquals(new FieldName("target"), segmentCache.getTarget(0));
+
+		Evaluator segmentEvaluator = segmentCache.getEvaluator(0);
+
+		evaluator.evaluate(Collections.singletonMap(new FieldName("x"), 1d));
+
+		assertSame(segmentCache, evaluator.getSegmentCache());
+		assertSame(segmentEvaluator, (evaluator.getSegmentCache()).getEvaluator(0));
+	}
+
+	/**
+	 * Prepares an average of regression models <code>target = k + x</code>, where
+	 * <code>k = 1, 2, .., count</code>.
+	 */
+	static MiningModelManager prepareModel(int count) throws ModelManagerException {
+		return prepareModel(count, MultipleModelMethodType.AVERAGE);
+	}
+
+	static MiningModelManager prepareModel(int count, MultipleModelMethodType multipleModelMethod)
+			throws ModelManagerException {
+		MiningModelManager miningModelManager = new MiningModelManager();
+		miningModelManager.createModel(MiningFunctionType.REGRESSION);
+		miningModelManager.createSegmentation(multipleModelMethod);
+
+		FieldName x = new FieldName("x");
+		miningModelManager.addField(x, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName target = new FieldName("target");
+		miningModelManager.addField(target, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.PREDICTED);
+
+		for (int k = 1; k <= count; k++) {
+			MiningSchema miningSchema = new MiningSchema();
+			(miningSchema.getMiningFields()).add(createMiningField(x, FieldUsageType.ACTIVE));
+			(miningSchema.getMiningFields()).add(createMiningField(target,
+					FieldUsageType.PREDICTED));
+
+			RegressionModel regressionModel =
+					new RegressionModel(miningSchema, MiningFunctionType.REGRESSION);
+
+			RegressionTable regressionTable = new RegressionTable(k);
+			RegressionModelManager.addNumericPredictor(regressionTable, x, 1d);
+
+			(regressionModel.getRegressionTables()).add(regressionTable);
+
+			miningModelManager.addSegment(regressionModel);
+		}
+
+		return miningModelManager;
+	}
+
+	private static MiningField createMiningField(FieldName name, FieldUsageType usageType) {
+		MiningField miningField = new MiningField(name);
+		miningField.setUsageType(usageType);
+
+		return miningField;
+	}
+}
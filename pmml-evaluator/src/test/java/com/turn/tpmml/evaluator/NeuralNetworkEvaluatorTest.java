@@ -0,0 +1,250 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.ActivationFunctionType;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.LinearNorm;
+import com.turn.tpmml.MiningFunctionType;
+import com.turn.tpmml.NeuralInput;
+import com.turn.tpmml.NeuralLayer;
+import com.turn.tpmml.Neuron;
+import com.turn.tpmml.NnNormalizationMethodType;
+import com.turn.tpmml.NormContinuous;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.NeuralNetworkManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NeuralNetworkEvaluatorTest {
+
+	@Test
+	public void evaluateRaw() throws Exception {
+		NeuralNetworkEvaluator evaluator = prepareModel(false);
+
+		CompiledNeuralNetwork compiledNeuralNetwork = evaluator.getCompiledNeuralNetwork();
+
+		assertTrue(compiledNeuralNetwork.isSupported());
+		assertEquals(7, compiledNeuralNetwork.size());
+		assertEquals(2, compiledNeuralNetwork.getInputSize());
+
+		double[][] rows = { { 0d, 0d }, { 0.25d, 0.75d }, { 1d, -3d }, { 10d, 2.5d } };
+
+		for (double[] row : rows) {
+			Map<String, Double> neuronOutputs = evaluate(evaluator, row[0], row[1]);
+
+			double sum = neuronOutputs.get("5") + neuronOutputs.get("6");
+
+			assertEquals(1d, sum, 1e-12);
+		}
+
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x"), 0.25d);
+		parameters.put(new FieldName("y"), 0.75d);
+
+		Map<FieldName, Double> predictions = evaluator.evaluateRegression(
+				new ModelManagerEvaluationContext(evaluator, evaluator.getEvaluationPlan(),
+						parameters));
+
+		Map<String, Double> neuronOutputs = evaluate(evaluator, 0.25d, 0.75d);
+
+		assertEquals(neuronOutputs.get("5"), predictions.get(new FieldName("z")));
+	}
+
+	@Test
+	public void evaluateRawUnsupported() throws Exception {
+		NeuralNetworkEvaluator evaluator = prepareModel(true);
+
+		assertFalse((evaluator.getCompiledNeuralNetwork()).isSupported());
+
+		Map<String, Double> neuronOutputs = evaluate(evaluator, 1d, 2d);
+
+		assertEquals(7, neuronOutputs.size());
+	}
+
+	@Test
+	public void evaluateBatch() throws Exception {
+		NeuralNetworkEvaluator evaluator = prepareModel(false);
+
+		// More than one block of records
+		int size = 300;
+
+		double[] xColumn = new double[size];
+		double[] yColumn = new double[size];
+
+		for (int i = 0; i < size; i++) {
+			xColumn[i] = (i % 17) / 8d;
+			yColumn[i] = (i % 5) - 2d;
+		}
+
+		FieldName z = new FieldName("z");
+
+		ColumnBatch in = new ColumnBatch(size);
+		in.addColumn(new FieldName("x"), xColumn);
+		in.addColumn(new FieldName("y"), yColumn);
+
+		double[] zColumn = new double[size];
+
+		ColumnBatch out = new ColumnBatch(size);
+		out.addColumn(z, zColumn);
+
+		evaluator.evaluateBatch(in, out);
+
+		for (int i = 0; i < size; i++) {
+			Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+			parameters.put(new FieldName("x"), xColumn[i]);
+			parameters.put(new FieldName("y"), yColumn[i]);
+
+			assertEquals((evaluator.evaluate(parameters)).getValue(z), zColumn[i]);
+		}
+	}
+
+	@Test
+	public void evaluateBatchFailure() throws Exception {
+		NeuralNetworkEvaluator evaluator = prepareModel(false);
+
+		int size = 200;
+
+		double[] xColumn = new double[size];
+		double[] yColumn = new double[size];
+
+		for (int i = 0; i < size; i++) {
+			xColumn[i] = (i % 17) / 8d;
+			yColumn[i] = (i % 5) - 2d;
+		}
+
+		// A missing value in the middle of the second block
+		xColumn[150] = Double.NaN;
+
+		FieldName z = new FieldName("z");
+
+		ColumnBatch in = new ColumnBatch(size);
+		in.addColumn(new FieldName("x"), xColumn);
+		in.addColumn(new FieldName("y"), yColumn);
+
+		double[] zColumn = new double[size];
+
+		ColumnBatch out = new ColumnBatch(size);
+		out.addColumn(z, zColumn);
+
+		try {
+			evaluator.evaluateBatch(in, out);
+
+			fail();
+		} catch (EvaluationException ee) {
+			// Ignored
+		}
+
+		// The records before the failing record have been stored
+		for (int i = 0; i < 150; i++) {
+			Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+			parameters.put(new FieldName("x"), xColumn[i]);
+			parameters.put(new FieldName("y"), yColumn[i]);
+
+			assertEquals((evaluator.evaluate(parameters)).getValue(z), zColumn[i]);
+		}
+
+		for (int i = 150; i < size; i++) {
+			assertEquals(0d, zColumn[i], 0d);
+		}
+	}
+
+	/**
+	 * Evaluates the network both in compiled and in interpreted form.
+	 */
+	private static Map<String, Double> evaluate(NeuralNetworkEvaluator evaluator, double x,
+			double y) throws EvaluationException {
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x"), x);
+		parameters.put(new FieldName("y"), y);
+
+		EvaluationContext context = new ModelManagerEvaluationContext(evaluator,
+				evaluator.getEvaluationPlan(), parameters);
+
+		Map<String, Double> result = evaluator.evaluateRaw(context);
+
+		assertEquals(evaluator.evaluateNeurons(context), result);
+
+		return result;
+	}
+
+	/**
+	 * Creates a network with a dense hidden layer and a sparse softmax output layer, whose first
+	 * neuron is also connected to a neural input directly.
+	 *
+	 * @param lateral <code>true</code> if the second output neuron should be connected to the
+	 *        first output neuron, <code>false</code> otherwise.
+	 */
+	private static NeuralNetworkEvaluator prepareModel(boolean lateral)
+			throws ModelManagerException {
+		NeuralNetworkManager neuralNetworkManager = new NeuralNetworkManager();
+
+		neuralNetworkManager.createModel(MiningFunctionType.REGRESSION,
+				ActivationFunctionType.LOGISTIC);
+
+		FieldName x = new FieldName("x");
+		neuralNetworkManager.addField(x, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName y = new FieldName("y");
+		neuralNetworkManager.addField(y, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName z = new FieldName("z");
+		neuralNetworkManager.addField(z, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.PREDICTED);
+
+		NeuralInput xInput = neuralNetworkManager.addNeuralInput(createNormContinuous(x));
+		NeuralInput yInput = neuralNetworkManager.addNeuralInput(createNormContinuous(y));
+
+		NeuralLayer hiddenLayer = neuralNetworkManager.addNeuralLayer();
+
+		Neuron[] hiddenNeurons = new Neuron[3];
+
+		for (int i = 0; i < hiddenNeurons.length; i++) {
+			Neuron neuron = neuralNetworkManager.addNeuron(hiddenLayer, 0.1d * i);
+
+			NeuralNetworkManager.addConnection(xInput, neuron, 0.5d - i);
+			NeuralNetworkManager.addConnection(yInput, neuron, 1.5d + i);
+
+			hiddenNeurons[i] = neuron;
+		}
+
+		NeuralLayer outputLayer = neuralNetworkManager.addNeuralLayer();
+		outputLayer.setActivationFunction(ActivationFunctionType.TANH);
+		outputLayer.setNormalizationMethod(NnNormalizationMethodType.SOFTMAX);
+
+		Neuron first = neuralNetworkManager.addNeuron(outputLayer, 0.5d);
+		NeuralNetworkManager.addConnection(hiddenNeurons[2], first, -0.7d);
+		NeuralNetworkManager.addConnection(hiddenNeurons[0], first, 1.3d);
+		NeuralNetworkManager.addConnection(xInput, first, 0.2d);
+
+		Neuron second = neuralNetworkManager.addNeuron(outputLayer, -0.4d);
+		NeuralNetworkManager.addConnection(hiddenNeurons[1], second, 2.1d);
+
+		if (lateral) {
+			NeuralNetworkManager.addConnection(first, second, 0.3d);
+		}
+
+		neuralNetworkManager.addNeuralOutput(first, createNormContinuous(z));
+
+		return new NeuralNetworkEvaluator(neuralNetworkManager);
+	}
+
+	private static NormContinuous createNormContinuous(FieldName name) {
+		NormContinuous normContinuous = new NormContinuous(name);
+		(normContinuous.getLinearNorms()).add(new LinearNorm(0d, 0d));
+		(normContinuous.getLinearNorms()).add(new LinearNorm(1d, 1d));
+
+		return normContinuous;
+	}
+}
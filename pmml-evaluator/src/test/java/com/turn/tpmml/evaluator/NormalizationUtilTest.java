@@ -60,4 +60,30 @@ public class NormalizationUtilTest {
 		assertEquals(11.44, NormalizationUtil.denormalize(norm, 1.0), 1e-5);
 	}
 
+	@Test
+	public void testCompiled() throws EvaluationException {
+		norm.getLinearNorms().add(new LinearNorm(20.0, 1.2));
+		norm.getLinearNorms().add(new LinearNorm(25.0, 2.0));
+
+		for (OutlierTreatmentMethodType outliers : OutlierTreatmentMethodType.values()) {
+			norm.setOutliers(outliers);
+			norm.setMapMissingTo(0.5);
+
+			CompiledNormContinuous compiledNorm = new CompiledNormContinuous(norm, null);
+
+			for (int i = -100; i <= 300; i++) {
+				double value = i / 10d;
+
+				// The results must be identical, not just close
+				assertEquals(Double.valueOf(NormalizationUtil.normalize(norm, value)),
+						Double.valueOf(compiledNorm.normalize(value)));
+				assertEquals(Double.valueOf(NormalizationUtil.denormalize(norm, value / 10d)),
+						Double.valueOf(compiledNorm.denormalize(value / 10d)));
+			}
+
+			assertEquals(Double.valueOf(NormalizationUtil.denormalize(norm, Double.NaN)),
+					Double.valueOf(compiledNorm.denormalize(Double.NaN)));
+		}
+	}
+
 }
@@ -3,9 +3,13 @@
  */
 package com.turn.tpmml.evaluator;
 
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.SimplePredicate;
+
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 
 public class PredicateUtilTest {
@@ -48,4 +52,39 @@ public class PredicateUtilTest {
 		assertEquals(null, PredicateUtil.binaryXor(null, Boolean.FALSE));
 		assertEquals(null, PredicateUtil.binaryXor(null, null));
 	}
+
+	@Test
+	public void compareSimplePredicate() throws EvaluationException {
+		String[] strings = { "1", "-1", "0.5", "1e3", "abc", "" };
+		Object[] values = { 1, -2, 0.5f, 1000f, 0.5d, -0d, Double.NaN, "1", "abd" };
+
+		for (String string : strings) {
+			SimplePredicate simplePredicate =
+					new SimplePredicate(new FieldName("x"), SimplePredicate.Operator.EQUAL);
+			simplePredicate.setValue(string);
+
+			CompiledSimplePredicate compiledSimplePredicate =
+					new CompiledSimplePredicate(simplePredicate, null);
+
+			for (Object value : values) {
+				Integer expected;
+
+				try {
+					expected = Integer.valueOf(ParameterUtil.compare(value, string));
+				} catch (NumberFormatException nfe) {
+					expected = null;
+				}
+
+				try {
+					assertEquals(string + " vs " + value, expected,
+							Integer.valueOf(compiledSimplePredicate.compare(value)));
+				} catch (NumberFormatException nfe) {
+
+					if (expected != null) {
+						fail();
+					}
+				}
+			}
+		}
+	}
 }
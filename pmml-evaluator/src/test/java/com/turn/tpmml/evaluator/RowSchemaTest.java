@@ -0,0 +1,136 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.RegressionModel;
+import com.turn.tpmml.RegressionTable;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.RegressionModelManager;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RowSchemaTest {
+
+	@Test
+	public void describeRow() throws EvaluationException, ModelManagerException {
+		RegressionModelEvaluator evaluator = prepareModel();
+
+		RowSchema rowSchema = evaluator.getRowSchema();
+
+		assertEquals(Arrays.asList(new FieldName("c"), new FieldName("x"), new FieldName("n")),
+				rowSchema.getFields());
+
+		assertEquals(2, rowSchema.getContinuousCount());
+		assertEquals(1, rowSchema.getCategoricalCount());
+
+		assertFalse(rowSchema.isContinuous(0));
+		assertEquals(0, rowSchema.getColumn(0));
+
+		assertTrue(rowSchema.isContinuous(1));
+		assertEquals(0, rowSchema.getColumn(1));
+
+		assertTrue(rowSchema.isContinuous(2));
+		assertEquals(1, rowSchema.getColumn(2));
+
+		assertEquals(1, rowSchema.indexOf(new FieldName("x")));
+		assertEquals(-1, rowSchema.indexOf(new FieldName("target")));
+	}
+
+	@Test
+	public void evaluateRow() throws EvaluationException, ModelManagerException {
+		RegressionModelEvaluator evaluator = prepareModel();
+
+		FieldName target = new FieldName("target");
+
+		assertEquals(17d, (evaluator.evaluate(new double[] { 3d, 0d }, new Object[] { "a" }))
+				.getValue(target));
+		assertEquals(7d, (evaluator.evaluate(new double[] { 3d, 0d }, new Object[] { "b" }))
+				.getValue(target));
+
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("c"), "a");
+		parameters.put(new FieldName("x"), 3d);
+		parameters.put(new FieldName("n"), 0);
+
+		assertEquals(evaluator.evaluate(parameters).getValue(target),
+				(evaluator.evaluate(new double[] { 3d, 0d }, new Object[] { "a" }))
+						.getValue(target));
+	}
+
+	@Test
+	public void createParameters() throws EvaluationException, ModelManagerException {
+		RowSchema rowSchema = (prepareModel()).getRowSchema();
+
+		Map<FieldName, Object> parameters =
+				rowSchema.createParameters(new double[] { Double.NaN, 2d }, new Object[] { "a" });
+
+		assertEquals("a", parameters.get(new FieldName("c")));
+		assertNull(parameters.get(new FieldName("x")));
+		assertEquals(2, parameters.get(new FieldName("n")));
+		assertNull(parameters.get(new FieldName("target")));
+
+		parameters.put(new FieldName("target"), 1d);
+
+		assertEquals(4, parameters.size());
+		assertEquals(1d, parameters.get(new FieldName("target")));
+
+		try {
+			rowSchema.createParameters(new double[] { 3d }, new Object[] { "a" });
+
+			fail();
+		} catch (EvaluationException ee) {
+			// Ignored
+		}
+
+		try {
+			rowSchema.createParameters(new double[] { 3d, 2.5d }, new Object[] { "a" });
+
+			fail();
+		} catch (EvaluationException ee) {
+			// Ignored
+		}
+	}
+
+	static RegressionModelEvaluator prepareModel() throws ModelManagerException {
+		RegressionModelManager regressionModelManager = new RegressionModelManager();
+
+		RegressionModel regressionModel = regressionModelManager.createRegressionModel();
+
+		FieldName c = new FieldName("c");
+		regressionModelManager.addField(c, null, OpType.CATEGORICAL, DataType.STRING,
+				FieldUsageType.ACTIVE);
+
+		FieldName x = new FieldName("x");
+		regressionModelManager.addField(x, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName n = new FieldName("n");
+		regressionModelManager.addField(n, null, OpType.CONTINUOUS, DataType.INTEGER,
+				FieldUsageType.ACTIVE);
+
+		FieldName target = new FieldName("target");
+		regressionModelManager.addField(target, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.PREDICTED);
+
+		RegressionTable regressionTable = new RegressionTable(1d);
+		RegressionModelManager.addNumericPredictor(regressionTable, x, 2d);
+		RegressionModelManager.addNumericPredictor(regressionTable, n, 5d);
+		RegressionModelManager.addCategoricalPredictor(regressionTable, c, "a", 10d);
+
+		(regressionModel.getRegressionTables()).add(regressionTable);
+
+		return new RegressionModelEvaluator(regressionModelManager);
+	}
+}
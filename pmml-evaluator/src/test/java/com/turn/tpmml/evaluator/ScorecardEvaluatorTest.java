@@ -0,0 +1,253 @@
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Array;
+import com.turn.tpmml.Attribute;
+import com.turn.tpmml.Characteristic;
+import com.turn.tpmml.CompoundPredicate;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.MiningFunctionType;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.Predicate;
+import com.turn.tpmml.Scorecard;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.SimpleSetPredicate;
+import com.turn.tpmml.True;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.ScoreCardModelManager;
+import com.turn.tpmml.manager.ScoreCardPMMLResult;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScorecardEvaluatorTest {
+
+	@Test
+	public void findAttribute() throws Exception {
+		ScorecardEvaluator evaluator = prepareModel();
+
+		CompiledScorecard compiledScorecard =
+				(evaluator.getEvaluationPlan()).getScorecard(evaluator.getModel());
+
+		assertEquals(3, compiledScorecard.size());
+
+		assertTrue((compiledScorecard.getCharacteristic(0)).hasIntervalIndex());
+		assertFalse((compiledScorecard.getCharacteristic(0)).hasHashIndex());
+		assertFalse((compiledScorecard.getCharacteristic(1)).hasIntervalIndex());
+		assertTrue((compiledScorecard.getCharacteristic(1)).hasHashIndex());
+		assertTrue((compiledScorecard.getCharacteristic(2)).hasIntervalIndex());
+
+		Double[] ages = { null, Double.NEGATIVE_INFINITY, -0d, 0d, 24.999d, 25d, 40d, 49.5d, 50d,
+				60d, Double.POSITIVE_INFINITY, Double.NaN };
+		String[] statuses = { "own", "rent", "lodger", "other" };
+		Integer[] incomes = { -1, 1000, 1001 };
+
+		for (int i = 0; i < ages.length; i++) {
+			Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+			parameters.put(new FieldName("age"), ages[i]);
+			parameters.put(new FieldName("status"), statuses[i % statuses.length]);
+			parameters.put(new FieldName("income"), incomes[i % incomes.length]);
+
+			List<Characteristic> characteristics =
+					((evaluator.getModel()).getCharacteristics()).getCharacteristics();
+
+			for (int j = 0; j < characteristics.size(); j++) {
+				CompiledCharacteristic compiledCharacteristic =
+						compiledScorecard.getCharacteristic(j);
+
+				assertEquals(scan(characteristics.get(j), parameters),
+						compiledCharacteristic.find(new ModelManagerEvaluationContext(evaluator,
+								evaluator.getEvaluationPlan(), parameters)));
+			}
+		}
+
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("age"), 30d);
+
+		// Integer status values are matched one by one, and "own" is not an integer
+		parameters.put(new FieldName("status"), 1);
+
+		try {
+			(compiledScorecard.getCharacteristic(1)).find(new ModelManagerEvaluationContext(
+					evaluator, evaluator.getEvaluationPlan(), parameters));
+
+			fail();
+		} catch (NumberFormatException nfe) {
+			// Ignored
+		}
+	}
+
+	@Test
+	public void evaluateReasonCodes() throws Exception {
+		ScorecardEvaluator evaluator = prepareModel();
+		evaluator.setReasonCodeLimit(5);
+
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("age"), 30d);
+		parameters.put(new FieldName("status"), "rent");
+		parameters.put(new FieldName("income"), 500);
+
+		ScoreCardPMMLResult result = (ScoreCardPMMLResult) evaluator.evaluate(parameters);
+
+		assertEquals(20d + 5d + 0d, result.getValue(new FieldName("score")));
+
+		// The differences from the baseline score are 5, 5 and 10
+		assertEquals("INCOME", result.getLastReasonCode());
+		assertEquals(Arrays.asList("INCOME", "STATUS", "AGE"), result.getReasonCodes());
+
+		evaluator.setReasonCodeLimit(2);
+
+		result = (ScoreCardPMMLResult) evaluator.evaluate(parameters);
+
+		assertEquals(Arrays.asList("INCOME", "STATUS"), result.getReasonCodes());
+
+		parameters.put(new FieldName("age"), null);
+		parameters.put(new FieldName("status"), "own");
+
+		result = (ScoreCardPMMLResult) evaluator.evaluate(parameters);
+
+		assertEquals("YOUNG", result.getLastReasonCode());
+		assertEquals("YOUNG", evaluator.getLastReasonCode());
+	}
+
+	@Test
+	public void reasonCodeRanking() {
+		ReasonCodeRanking ranking = new ReasonCodeRanking(4);
+		ranking.reset(3);
+		ranking.add(1d, "a");
+		ranking.add(3d, "b");
+		ranking.add(1d, "c");
+		ranking.add(2d, "d");
+		ranking.add(1d, "e");
+
+		// Ties are resolved in favour of the last reason code
+		assertEquals(Arrays.asList("b", "d", "e"), ranking.getReasonCodes());
+
+		ranking.reset(1);
+		ranking.add(1d, "a");
+		ranking.add(1d, "b");
+
+		assertEquals("b", ranking.getFirst());
+
+		ranking.reset(0);
+		ranking.add(1d, "a");
+
+		assertEquals(0, ranking.size());
+	}
+
+	/**
+	 * @return The index of the first matching attribute, or <code>-1</code>.
+	 */
+	private static int scan(Characteristic characteristic, Map<FieldName, ?> parameters)
+			throws EvaluationException {
+		List<Attribute> attributes = characteristic.getAttributes();
+
+		for (int i = 0; i < attributes.size(); i++) {
+			Boolean value = PredicateUtil.evaluate((attributes.get(i)).getPredicate(),
+					new LocalEvaluationContext(parameters));
+
+			if (value != null && value.booleanValue()) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private static ScorecardEvaluator prepareModel() throws ModelManagerException {
+		ScoreCardModelManager scorecardManager = new ScoreCardModelManager();
+
+		Scorecard scorecard = scorecardManager.createModel(MiningFunctionType.REGRESSION);
+
+		FieldName age = new FieldName("age");
+		scorecardManager.addField(age, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName status = new FieldName("status");
+		scorecardManager.addField(status, null, OpType.CATEGORICAL, DataType.STRING,
+				FieldUsageType.ACTIVE);
+
+		FieldName income = new FieldName("income");
+		scorecardManager.addField(income, null, OpType.CONTINUOUS, DataType.INTEGER,
+				FieldUsageType.ACTIVE);
+
+		FieldName score = new FieldName("score");
+		scorecardManager.addField(score, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.PREDICTED);
+
+		Characteristic ageCharacteristic = createCharacteristic("AGE", 25d);
+		addAttribute(ageCharacteristic, createSimplePredicate(age,
+				SimplePredicate.Operator.IS_MISSING, null), 5d, "YOUNG");
+		addAttribute(ageCharacteristic, createSimplePredicate(age,
+				SimplePredicate.Operator.LESS_THAN, "25"), 10d, null);
+
+		CompoundPredicate middle = new CompoundPredicate(CompoundPredicate.BooleanOperator.AND);
+		(middle.getContent()).add(createSimplePredicate(age,
+				SimplePredicate.Operator.GREATER_OR_EQUAL, "25"));
+		(middle.getContent()).add(createSimplePredicate(age,
+				SimplePredicate.Operator.LESS_THAN, "50"));
+		addAttribute(ageCharacteristic, middle, 20d, null);
+
+		// Overlaps with the previous attribute
+		addAttribute(ageCharacteristic, createSimplePredicate(age,
+				SimplePredicate.Operator.LESS_OR_EQUAL, "60"), 30d, null);
+
+		Characteristic statusCharacteristic = createCharacteristic("STATUS", 10d);
+		addAttribute(statusCharacteristic, createSimplePredicate(status,
+				SimplePredicate.Operator.EQUAL, "own"), 15d, null);
+		addAttribute(statusCharacteristic, new SimpleSetPredicate(
+				new Array("rent \"lodger\"", Array.Type.STRING), status,
+				SimpleSetPredicate.BooleanOperator.IS_IN), 5d, null);
+		addAttribute(statusCharacteristic, new True(), 0d, null);
+
+		Characteristic incomeCharacteristic = createCharacteristic("INCOME", 10d);
+		addAttribute(incomeCharacteristic, createSimplePredicate(income,
+				SimplePredicate.Operator.LESS_OR_EQUAL, "1000"), 0d, null);
+		addAttribute(incomeCharacteristic, createSimplePredicate(income,
+				SimplePredicate.Operator.GREATER_THAN, "1000"), 20d, null);
+
+		List<Characteristic> characteristics =
+				(scorecard.getCharacteristics()).getCharacteristics();
+		characteristics.add(ageCharacteristic);
+		characteristics.add(statusCharacteristic);
+		characteristics.add(incomeCharacteristic);
+
+		return new ScorecardEvaluator(scorecardManager);
+	}
+
+	private static Characteristic createCharacteristic(String reasonCode, double baselineScore) {
+		Characteristic characteristic = new Characteristic();
+		characteristic.setReasonCode(reasonCode);
+		characteristic.setBaselineScore(baselineScore);
+
+		return characteristic;
+	}
+
+	private static void addAttribute(Characteristic characteristic, Predicate predicate,
+			double partialScore, String reasonCode) {
+		Attribute attribute = new Attribute();
+		attribute.setPredicate(predicate);
+		attribute.setPartialScore(partialScore);
+		attribute.setReasonCode(reasonCode);
+
+		(characteristic.getAttributes()).add(attribute);
+	}
+
+	private static SimplePredicate createSimplePredicate(FieldName name,
+			SimplePredicate.Operator operator, String value) {
+		SimplePredicate simplePredicate = new SimplePredicate(name, operator);
+		simplePredicate.setValue(value);
+
+		return simplePredicate;
+	}
+}
@@ -23,9 +23,9 @@ public abstract class ModelManager<M extends Model> extends PMMLManager implemen
 
 	private static final long serialVersionUID = 1L;
 
-	private LocalTransformations localTransformations = null;
+	private volatile LocalTransformations localTransformations = null;
 
-	private Output output = null;
+	private volatile Output output = null;
 
 	public ModelManager() {
 	}
@@ -143,40 +143,54 @@ public abstract class ModelManager<M extends Model> extends PMMLManager implemen
 		return getModel().getMiningSchema();
 	}
 
+	/**
+	 * Return the local transformations of the model. If none exist, empty ones are created.
+	 * This method is safe for concurrent use.
+	 */
 	public LocalTransformations getOrCreateLocalTransformations() throws ModelManagerException {
+		LocalTransformations result = this.localTransformations;
 
-		if (this.localTransformations == null) {
+		if (result == null) {
 			M model = getModel();
 
-			LocalTransformations localTransformations = model.getLocalTransformations();
-			if (localTransformations == null) {
-				localTransformations = new LocalTransformations();
+			synchronized (model) {
+				result = model.getLocalTransformations();
+				if (result == null) {
+					result = new LocalTransformations();
 
-				model.setLocalTransformations(localTransformations);
+					model.setLocalTransformations(result);
+				}
 			}
 
-			this.localTransformations = localTransformations;
+			this.localTransformations = result;
 		}
 
-		return this.localTransformations;
+		return result;
 	}
 
+	/**
+	 * Return the output of the model. If none exists, an empty one is created. This method is
+	 * safe for concurrent use.
+	 */
 	public Output getOrCreateOutput() throws ModelManagerException {
+		Output result = this.output;
 
-		if (this.output == null) {
+		if (result == null) {
 			M model = getModel();
 
-			Output output = model.getOutput();
-			if (output == null) {
-				output = new Output();
+			synchronized (model) {
+				result = model.getOutput();
+				if (result == null) {
+					result = new Output();
 
-				model.setOutput(output);
+					model.setOutput(result);
+				}
 			}
 
-			this.output = output;
+			this.output = result;
 		}
 
-		return this.output;
+		return result;
 	}
 
 	protected static void ensureNull(Object object) throws ModelManagerException {
@@ -30,6 +30,8 @@ public class NeuralNetworkManager extends ModelManager<NeuralNetwork> {
 
 	private int neuronCount = 0;
 
+	private volatile NeuralOutputs neuralOutputs = null;
+
 	public NeuralNetworkManager() {
 	}
 
@@ -141,17 +143,28 @@ public class NeuralNetworkManager extends ModelManager<NeuralNetwork> {
 		(to.getConnections()).add(connection);
 	}
 
+	/**
+	 * This method is safe for concurrent use.
+	 */
 	public List<NeuralOutput> getOrCreateNeuralOutputs() throws ModelManagerException {
-		NeuralNetwork neuralNetwork = getModel();
+		NeuralOutputs result = this.neuralOutputs;
+
+		if (result == null) {
+			NeuralNetwork neuralNetwork = getModel();
+
+			synchronized (neuralNetwork) {
+				result = neuralNetwork.getNeuralOutputs();
+				if (result == null) {
+					result = new NeuralOutputs();
 
-		NeuralOutputs neuralOutputs = neuralNetwork.getNeuralOutputs();
-		if (neuralOutputs == null) {
-			neuralOutputs = new NeuralOutputs();
+					neuralNetwork.setNeuralOutputs(result);
+				}
+			}
 
-			neuralNetwork.setNeuralOutputs(neuralOutputs);
+			this.neuralOutputs = result;
 		}
 
-		return neuralOutputs.getNeuralOutputs();
+		return result.getNeuralOutputs();
 	}
 
 	public NeuralOutput addNeuralOutput(Neuron neuron, NormContinuous normCountinuous)
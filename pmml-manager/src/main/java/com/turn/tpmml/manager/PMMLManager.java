@@ -37,7 +37,7 @@ public class PMMLManager implements Serializable {
 
 	private PMML pmml = null;
 
-	private TransformationDictionary transformationDictionary = null;
+	private volatile TransformationDictionary transformationDictionary = null;
 
 	/**
 	 * Create a manager for an empty PMML that belongs to the version 4.1.
@@ -125,24 +125,28 @@ public class PMMLManager implements Serializable {
 	}
 
 	/**
-	 * Return the transformation dictionary. If none exists, an empty one is created.
+	 * Return the transformation dictionary. If none exists, an empty one is created. This method
+	 * is safe for concurrent use.
 	 */
 	public TransformationDictionary getOrCreateTransformationDictionary() {
+		TransformationDictionary result = this.transformationDictionary;
 
-		if (this.transformationDictionary == null) {
+		if (result == null) {
 			PMML pmml = getPmml();
 
-			TransformationDictionary transformationDictionary = pmml.getTransformationDictionary();
-			if (transformationDictionary == null) {
-				transformationDictionary = new TransformationDictionary();
+			synchronized (pmml) {
+				result = pmml.getTransformationDictionary();
+				if (result == null) {
+					result = new TransformationDictionary();
 
-				pmml.setTransformationDictionary(transformationDictionary);
+					pmml.setTransformationDictionary(result);
+				}
 			}
 
-			this.transformationDictionary = transformationDictionary;
+			this.transformationDictionary = result;
 		}
 
-		return this.transformationDictionary;
+		return result;
 	}
 
 	/**
@@ -5,10 +5,12 @@ package com.turn.tpmml.manager;
 
 import com.turn.tpmml.CategoricalPredictor;
 import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldRef;
 import com.turn.tpmml.MiningFunctionType;
 import com.turn.tpmml.MiningSchema;
 import com.turn.tpmml.NumericPredictor;
 import com.turn.tpmml.PMML;
+import com.turn.tpmml.PredictorTerm;
 import com.turn.tpmml.RegressionModel;
 import com.turn.tpmml.RegressionNormalizationMethodType;
 import com.turn.tpmml.RegressionTable;
@@ -144,6 +146,26 @@ public class RegressionModelManager extends ModelManager<RegressionModel> {
 		return categoricalPredictor;
 	}
 
+	/**
+	 * Add a new predictor term, which is the product of the given fields, to a regressionTable.
+	 * 
+	 * @param names The names of the multiplied fields.
+	 * @param coefficient The corresponding coefficient.
+	 * @return The predictor term.
+	 */
+	public static PredictorTerm addPredictorTerm(RegressionTable regressionTable,
+			List<FieldName> names, Double coefficient) {
+		PredictorTerm predictorTerm = new PredictorTerm(coefficient.doubleValue());
+
+		for (FieldName name : names) {
+			(predictorTerm.getFieldReves()).add(new FieldRef(name));
+		}
+
+		(regressionTable.getPredictorTerms()).add(predictorTerm);
+
+		return predictorTerm;
+	}
+
 	/**
 	 * Get the type of normalization of the model.
 	 * 
@@ -24,7 +24,7 @@ public class ScoreCardModelManager extends ModelManager<Scorecard> {
 	protected Scorecard scorecard = null;
 	protected ReasonCodeAlgorithm reasonCodeAlgorithm;
 	protected Boolean useReasonCodes;
-	protected String lastReasonCode = null;
+	protected volatile String lastReasonCode = null;
 
 	public ScoreCardModelManager() {
 	}
@@ -107,6 +107,12 @@ public class ScoreCardModelManager extends ModelManager<Scorecard> {
 	
 	// Reason Code part of the manager.
 
+	/**
+	 * @deprecated The reason code of the most recent evaluation. Evaluators are shared between
+	 *             threads, so the last writer wins. Use
+	 *             {@link ScoreCardPMMLResult#getLastReasonCode()} instead.
+	 */
+	@Deprecated
 	public String getLastReasonCode() {
 		return lastReasonCode;
 	}
@@ -1,5 +1,8 @@
 package com.turn.tpmml.manager;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * The score card needs to store the characteristic that made
  * the decision. This is the lastReasonCode.
@@ -9,6 +12,7 @@ package com.turn.tpmml.manager;
  */
 public class ScoreCardPMMLResult extends PMMLResult {
 	private String lastReasonCode = null;
+	private List<String> reasonCodes = Collections.emptyList();
 
 	public String getLastReasonCode() {
 		return lastReasonCode;
@@ -17,4 +21,15 @@ public class ScoreCardPMMLResult extends PMMLResult {
 	public void setLastReasonCode(String lastReasonCode) {
 		this.lastReasonCode = lastReasonCode;
 	}
+
+	/**
+	 * @return The reason codes, ordered by decreasing difference from the baseline score.
+	 */
+	public List<String> getReasonCodes() {
+		return reasonCodes;
+	}
+
+	public void setReasonCodes(List<String> reasonCodes) {
+		this.reasonCodes = reasonCodes;
+	}
 }
@@ -22,7 +22,7 @@ public class TreeModelManager extends ModelManager<TreeModel> {
 
 	private TreeModel treeModel = null;
 
-	private Node root = null;
+	private volatile Node root = null;
 
 	private Set<String> ids = null;
 
@@ -70,28 +70,35 @@ public class TreeModelManager extends ModelManager<TreeModel> {
 	}
 
 	/**
+	 * This method is safe for concurrent use.
+	 * 
 	 * @return The root Node
 	 * @throws ModelManagerException 
 	 */
 	public Node getOrCreateRoot() throws ModelManagerException {
+		Node result = this.root;
 
-		if (this.root == null) {
+		if (result == null) {
 			TreeModel treeModel = getModel();
 
-			this.root = treeModel.getNode();
-			if (this.root == null) {
-				this.root = new Node();
+			synchronized (treeModel) {
+				result = treeModel.getNode();
+				if (result == null) {
+					result = new Node();
 
-				treeModel.setNode(this.root);
-			}
+					treeModel.setNode(result);
+				}
 
-			Predicate predicate = this.root.getPredicate();
-			if (predicate == null) {
-				this.root.setPredicate(new True());
+				Predicate predicate = result.getPredicate();
+				if (predicate == null) {
+					result.setPredicate(new True());
+				}
 			}
+
+			this.root = result;
 		}
 
-		return this.root;
+		return result;
 	}
 
 	/**
@@ -4,21 +4,37 @@ import com.turn.tpmml.PMML;
 import com.turn.tpmml.manager.ModelManager;
 import com.turn.tpmml.manager.PMMLManager;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
 import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.SimpleJavaFileObject;
 import javax.tools.ToolProvider;
@@ -39,6 +55,9 @@ import org.slf4j.LoggerFactory;
 public class PmmlToJavaTranslator {
 	private static final Logger logger = LoggerFactory.getLogger(PmmlToJavaTranslator.class);
 
+	private static final Set<String> CLASS_PATH_OPTIONS =
+			new HashSet<String>(Arrays.asList("-cp", "-classpath", "--class-path"));
+
 	private PmmlToJavaTranslator() {
 		// Forbid the creation of an instance.
 	}
@@ -87,81 +106,346 @@ public class PmmlToJavaTranslator {
 
 	public static Class<?> createModelClass(String className, String packageName, String javaSource)
 			throws Exception {
-		List<String> compilerOptions = new ArrayList<String>();
-		compilerOptions.add("-cp");
-		compilerOptions.add(System.getProperty("java.class.path"));
-
-		return createModelClass(className, packageName, javaSource, compilerOptions);
+		return createModelClass(className, packageName, javaSource, getDefaultCompilerOptions());
 	}
 
 	public static Class<?> createModelClass(String className, String packageName,
 			String javaSource, List<String> compilerOptions) throws Exception {
-		Class<?> result = null;
+		return createModelClass(className, packageName, javaSource, compilerOptions,
+				getDefaultClassLoader());
+	}
+
+	/**
+	 * Compiles a single model class in memory.
+	 *
+	 * @return The model class, or <code>null</code> if the source could not be compiled.
+	 *
+	 * @see #createModelClasses(Map, List, ClassLoader, int)
+	 */
+	public static Class<?> createModelClass(String className, String packageName,
+			String javaSource, List<String> compilerOptions, ClassLoader parent)
+			throws Exception {
+		String classFullName = packageName != null ? packageName + "." + className : className;
+
+		Map<String, Class<?>> result = createModelClasses(
+				Collections.singletonMap(classFullName, javaSource), compilerOptions, parent, 1);
+
+		return result.get(classFullName);
+	}
+
+	public static Map<String, Class<?>> createModelClasses(Map<String, String> javaSources,
+			int threads) throws Exception {
+		return createModelClasses(javaSources, getDefaultCompilerOptions(), threads);
+	}
+
+	public static Map<String, Class<?>> createModelClasses(Map<String, String> javaSources,
+			List<String> compilerOptions, int threads) throws Exception {
+		return createModelClasses(javaSources, compilerOptions, getDefaultClassLoader(),
+				threads);
+	}
+
+	/**
+	 * Compiles many model classes in memory. Nothing is written to disk.
+	 *
+	 * The sources are split into at most <code>threads</code> batches, which are compiled in
+	 * parallel. Every batch is compiled by a single compilation task, so the setup of the
+	 * compiler is shared by all the models of the batch. If a batch fails, its models are compiled
+	 * one by one, so that a broken model does not prevent the others from loading.
+	 *
+	 * Every model class is defined by a class loader of its own, so that it can be unloaded
+	 * independently of other models. The nested and auxiliary classes of a model are defined by
+	 * the same class loader as the model class.
+	 *
+	 * @param javaSources Map of fully qualified class names to Java sources.
+	 * @param compilerOptions The options of the compiler. Unless they set the class path, the
+	 *        class path is derived from the parent class loader.
+	 * @param parent The parent of the class loaders of the models. It must be able to load the
+	 *        classes that the models refer to. By default, the context class loader of the
+	 *        calling thread, or the class loader of this class.
+	 * @param threads The maximum number of parallel compilation tasks.
+	 *
+	 * @return Map of fully qualified class names to model classes. The value is <code>null</code>
+	 *         if the source could not be compiled, or if it does not declare the class under
+	 *         that name.
+	 *
+	 * @see #getClassPath(ClassLoader)
+	 */
+	public static Map<String, Class<?>> createModelClasses(Map<String, String> javaSources,
+			List<String> compilerOptions, final ClassLoader parent, int threads)
+			throws Exception {
+		final List<String> batchCompilerOptions = withClassPath(compilerOptions, parent);
+
+		List<Map<String, String>> batches = split(javaSources, threads);
 
-		// make a copy
-		compilerOptions = compilerOptions != null ? new ArrayList<String>(compilerOptions) :
-				new ArrayList<String>();
-		// compile class into temp folder
-		String tempPath = System.getProperty("java.io.tmpdir");
-		compilerOptions.add("-d");
-		compilerOptions.add(tempPath);
-		// compilerOptions.add("-g");
+		if (batches.size() <= 1) {
+			Map<String, String> batch = (batches.isEmpty() ? javaSources : batches.get(0));
 
-		if (packageName != null) {
-			// create corresponding folders
-			String dirs = packageName.replaceAll("\\.", File.separator);
-			File classPath = new File(tempPath, dirs);
-			classPath.mkdirs();
+			return compileBatch(batch, batchCompilerOptions, parent);
 		}
 
-		String classFullName = packageName != null ? packageName + "." + className : className;
+		ExecutorService executor = Executors.newFixedThreadPool(batches.size());
 
-		JavaFileObject javaObject = new RAMResidentJavaFileObject(classFullName, javaSource);
+		try {
+			List<Future<Map<String, Class<?>>>> futures =
+					new ArrayList<Future<Map<String, Class<?>>>>();
 
-		StringWriter writer = new StringWriter();
-		boolean status = compile(writer, compilerOptions, javaObject);
+			for (final Map<String, String> batch : batches) {
+				futures.add(executor.submit(new Callable<Map<String, Class<?>>>() {
+
+					public Map<String, Class<?>> call() throws Exception {
+						return compileBatch(batch, batchCompilerOptions, parent);
+					}
+				}));
+			}
+
+			Map<String, Class<?>> result = new LinkedHashMap<String, Class<?>>();
+
+			for (Future<Map<String, Class<?>>> future : futures) {
+
+				try {
+					result.putAll(future.get());
+				} catch (ExecutionException ee) {
+					Throwable cause = ee.getCause();
+
+					if (cause instanceof Exception) {
+						throw (Exception) cause;
+					}
+
+					throw ee;
+				}
+			}
+
+			return result;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static List<String> getDefaultCompilerOptions() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * @return The compiler options, plus the class path of the parent class loader if the
+	 *         options do not set the class path.
+	 */
+	private static List<String> withClassPath(List<String> compilerOptions, ClassLoader parent) {
 
-		// Load class and create an instance.
-		if (status) {
-			File classPathFile = new File(tempPath);
-			URLClassLoader classLoader = URLClassLoader.newInstance(new URL[] { classPathFile
-					.toURI().toURL() });
-			result = Class.forName(classFullName, true, classLoader);
-		} else {
-			logger.error("Failed to compile " + classFullName + " for source:\n" + javaSource);
-			logger.error(writer.toString());
+		for (String compilerOption : compilerOptions) {
+
+			if (CLASS_PATH_OPTIONS.contains(compilerOption)) {
+				return compilerOptions;
+			}
+		}
+
+		String classPath = getClassPath(parent);
+		if (classPath.length() == 0) {
+			return compilerOptions;
 		}
 
+		List<String> result = new ArrayList<String>(compilerOptions);
+		result.add("-classpath");
+		result.add(classPath);
+
 		return result;
 	}
 
 	/**
-	 * Compile from within this JVM without spawning javac.exe or a separate JVM.
-	 * 
-	 * @param source points to source, possibly in RAM.
-	 * @return status of the compile, true all went perfectly without error.
-	 * @throws java.io.IOException if trouble writing class files.
+	 * Collects the class path of a class loader and its ancestors, in the order in which they
+	 * are searched. The system class loader contributes the <code>java.class.path</code> system
+	 * property, and its ancestors are left to the compiler. Other {@link URLClassLoader}s
+	 * contribute their file URLs. Other class loaders contribute nothing, so their classes are
+	 * not visible to the compiler.
+	 *
+	 * @return The class path, or an empty string.
 	 */
-	private static boolean compile(Writer writer, List<String> compilerOptions,
-			JavaFileObject... source) {
+	static String getClassPath(ClassLoader classLoader) {
+		ClassLoader systemClassLoader = ClassLoader.getSystemClassLoader();
+
+		List<List<String>> classPaths = new ArrayList<List<String>>();
+
+		for (ClassLoader ancestor = classLoader; ancestor != null;
+				ancestor = ancestor.getParent()) {
+
+			if (ancestor == systemClassLoader) {
+				String classPath = System.getProperty("java.class.path");
+
+				if (classPath != null && classPath.length() > 0) {
+					classPaths.add(Arrays.asList(classPath.split(File.pathSeparator)));
+				}
+
+				break;
+			} else
+
+			if (ancestor instanceof URLClassLoader) {
+				List<String> classPath = new ArrayList<String>();
+
+				for (URL url : ((URLClassLoader) ancestor).getURLs()) {
+
+					if (!"file".equals(url.getProtocol())) {
+						continue;
+					}
+
+					try {
+						classPath.add((new File(url.toURI())).getPath());
+					} catch (URISyntaxException use) {
+						logger.debug("Ignoring class path entry " + url, use);
+					}
+				}
+
+				classPaths.add(classPath);
+			}
+		}
+
+		// Ancestors are searched first
+		Collections.reverse(classPaths);
+
+		Set<String> entries = new LinkedHashSet<String>();
+
+		for (List<String> classPath : classPaths) {
+			entries.addAll(classPath);
+		}
+
+		StringBuilder sb = new StringBuilder();
+
+		for (String entry : entries) {
+
+			if (sb.length() > 0) {
+				sb.append(File.pathSeparator);
+			}
+
+			sb.append(entry);
+		}
+
+		return sb.toString();
+	}
+
+	private static ClassLoader getDefaultClassLoader() {
+		ClassLoader classLoader = (Thread.currentThread()).getContextClassLoader();
+
+		if (classLoader == null) {
+			classLoader = PmmlToJavaTranslator.class.getClassLoader();
+		}
+
+		return classLoader;
+	}
+
+	private static List<Map<String, String>> split(Map<String, String> javaSources, int threads) {
+		int size = Math.max(1, Math.min(threads, javaSources.size()));
+
+		List<Map<String, String>> result = new ArrayList<Map<String, String>>(size);
+		for (int i = 0; i < size; i++) {
+			result.add(new LinkedHashMap<String, String>());
+		}
+
+		int i = 0;
 
-		final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		for (Map.Entry<String, String> entry : javaSources.entrySet()) {
+			(result.get(i % size)).put(entry.getKey(), entry.getValue());
+
+			i++;
+		}
+
+		return result;
+	}
+
+	private static Map<String, Class<?>> compileBatch(Map<String, String> javaSources,
+			List<String> compilerOptions, ClassLoader parent) throws Exception {
+		Map<String, Class<?>> result = new LinkedHashMap<String, Class<?>>();
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
 
 		if (compiler == null) {
-			// logger.error("No JavaCompiler available - please install JDK (not JRE) environment");
-			return false;
+			logger.error("No JavaCompiler available - please install JDK (not JRE) environment");
+
+			for (String classFullName : javaSources.keySet()) {
+				result.put(classFullName, null);
+			}
+
+			return result;
+		}
+
+		List<JavaFileObject> javaObjects = new ArrayList<JavaFileObject>();
+
+		for (Map.Entry<String, String> entry : javaSources.entrySet()) {
+			javaObjects.add(new RAMResidentJavaFileObject(entry.getKey(), entry.getValue()));
+		}
+
+		MemoryFileManager fileManager =
+				new MemoryFileManager(compiler.getStandardFileManager(null, null, null));
+
+		try {
+			StringWriter writer = new StringWriter();
+			boolean status = compile(compiler, fileManager, writer, compilerOptions, javaObjects);
+
+			if (status) {
+
+				for (String classFullName : javaSources.keySet()) {
+					result.put(classFullName,
+							loadClass(classFullName, fileManager.getClasses(classFullName),
+									parent));
+				}
+			} else
+
+			if (javaSources.size() > 1) {
+
+				for (Map.Entry<String, String> entry : javaSources.entrySet()) {
+					result.putAll(compileBatch(
+							Collections.singletonMap(entry.getKey(), entry.getValue()),
+							compilerOptions, parent));
+				}
+			} else {
+
+				for (Map.Entry<String, String> entry : javaSources.entrySet()) {
+					logger.error("Failed to compile " + entry.getKey() + " for source:\n" +
+							entry.getValue());
+					logger.error(writer.toString());
+
+					result.put(entry.getKey(), null);
+				}
+			}
+		} finally {
+			fileManager.close();
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The model class, or <code>null</code> if it cannot be loaded (eg. the source
+	 *         declares a different package or class name).
+	 */
+	private static Class<?> loadClass(String classFullName, Map<String, byte[]> classes,
+			ClassLoader parent) {
+		ClassLoader classLoader = new MemoryClassLoader(classes, parent);
+
+		try {
+			return Class.forName(classFullName, true, classLoader);
+		} catch (ClassNotFoundException cnfe) {
+			logger.error("Failed to load " + classFullName + ", the source declares " +
+					classes.keySet(), cnfe);
+		} catch (LinkageError le) {
+			logger.error("Failed to load " + classFullName, le);
 		}
 
+		return null;
+	}
+
+	/**
+	 * Compile from within this JVM without spawning javac.exe or a separate JVM.
+	 *
+	 * @param source points to source, possibly in RAM.
+	 * @return status of the compile, true all went perfectly without error.
+	 */
+	private static boolean compile(JavaCompiler compiler, JavaFileManager fileManager,
+			Writer writer, List<String> compilerOptions, List<JavaFileObject> source) {
 		final JavaCompiler.CompilationTask task = compiler.getTask(
 		// System.err if writer is null
-				writer, null, // standard file manager, If we wrote our own we could
-								// control the location of the generated class files
+				writer, fileManager, // keeps the generated class files in memory
 				null, // standard DiagnosticListener
 				compilerOptions, // options
 				null, // no annotation classes
-				Arrays.asList(source) // source code, we must convert
-										// JavaFileObject... to Iterable<?>
-										// extends JavaFileObject>
+				source // source code
 				);
 
 		return task.call();
@@ -169,6 +453,8 @@ public class PmmlToJavaTranslator {
 
 	private static class RAMResidentJavaFileObject extends SimpleJavaFileObject {
 
+		private final String className;
+
 		private final String programText;
 
 		/**
@@ -181,9 +467,14 @@ public class PmmlToJavaTranslator {
 		public RAMResidentJavaFileObject(String className, String programText) {
 			super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension),
 					Kind.SOURCE);
+			this.className = className;
 			this.programText = programText;
 		}
 
+		public String getClassName() {
+			return className;
+		}
+
 		/**
 		 * Get the text of the java program
 		 * 
@@ -195,4 +486,104 @@ public class PmmlToJavaTranslator {
 		}
 	}
 
+	/**
+	 * Keeps the generated class files in memory, grouped by the model source that they were
+	 * compiled from.
+	 */
+	private static class MemoryFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+
+		private final Map<String, Map<String, RAMResidentClassFile>> classFiles =
+				new HashMap<String, Map<String, RAMResidentClassFile>>();
+
+		public MemoryFileManager(JavaFileManager fileManager) {
+			super(fileManager);
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(Location location, String className,
+				JavaFileObject.Kind kind, FileObject sibling) throws IOException {
+
+			if (kind != JavaFileObject.Kind.CLASS) {
+				return super.getJavaFileForOutput(location, className, kind, sibling);
+			}
+
+			// Nested and auxiliary classes belong to the model of their source
+			String owner = (sibling instanceof RAMResidentJavaFileObject ?
+					((RAMResidentJavaFileObject) sibling).getClassName() : className);
+
+			Map<String, RAMResidentClassFile> ownerClassFiles = classFiles.get(owner);
+			if (ownerClassFiles == null) {
+				ownerClassFiles = new HashMap<String, RAMResidentClassFile>();
+
+				classFiles.put(owner, ownerClassFiles);
+			}
+
+			RAMResidentClassFile classFile = new RAMResidentClassFile(className);
+			ownerClassFiles.put(className, classFile);
+
+			return classFile;
+		}
+
+		/**
+		 * @param owner The fully qualified name of the model class.
+		 *
+		 * @return Map of class names to class file contents.
+		 */
+		public Map<String, byte[]> getClasses(String owner) {
+			Map<String, byte[]> result = new HashMap<String, byte[]>();
+
+			Map<String, RAMResidentClassFile> ownerClassFiles = classFiles.get(owner);
+			if (ownerClassFiles != null) {
+				for (Map.Entry<String, RAMResidentClassFile> e : ownerClassFiles.entrySet()) {
+					result.put(e.getKey(), (e.getValue()).getBytes());
+				}
+			}
+
+			return result;
+		}
+	}
+
+	private static class RAMResidentClassFile extends SimpleJavaFileObject {
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		public RAMResidentClassFile(String className) {
+			super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension),
+					Kind.CLASS);
+		}
+
+		@Override
+		public OutputStream openOutputStream() {
+			return bytes;
+		}
+
+		public byte[] getBytes() {
+			return bytes.toByteArray();
+		}
+	}
+
+	/**
+	 * Defines the classes of a single model.
+	 */
+	private static class MemoryClassLoader extends ClassLoader {
+
+		private final Map<String, byte[]> classes;
+
+		public MemoryClassLoader(Map<String, byte[]> classes, ClassLoader parent) {
+			super(parent);
+
+			this.classes = classes;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			byte[] bytes = classes.get(name);
+
+			if (bytes == null) {
+				throw new ClassNotFoundException(name);
+			}
+
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
 }
@@ -0,0 +1,526 @@
+package com.turn.tpmml.translator;
+
+import com.turn.tpmml.DataField;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.MiningField;
+import com.turn.tpmml.OutputField;
+import com.turn.tpmml.PMML;
+import com.turn.tpmml.evaluator.BatchEvaluator;
+import com.turn.tpmml.evaluator.ColumnBatch;
+import com.turn.tpmml.evaluator.Computable;
+import com.turn.tpmml.evaluator.EvaluationContext;
+import com.turn.tpmml.evaluator.EvaluationException;
+import com.turn.tpmml.evaluator.EvaluationPlan;
+import com.turn.tpmml.evaluator.EvaluatorUtil;
+import com.turn.tpmml.evaluator.ModelEvaluatorFactory;
+import com.turn.tpmml.evaluator.RowSchema;
+import com.turn.tpmml.manager.IPMMLResult;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.PMMLManager;
+import com.turn.tpmml.manager.PMMLResult;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluates a model in "interpreted mode" first, and in "compiled mode" once the model has
+ * proven to be hot.
+ *
+ * <ol>
+ * <li>Every evaluation is performed by the interpreter. After {@link #getThreshold() threshold}
+ * evaluations, the model is translated and compiled in the background.</li>
+ * <li>The following evaluations are still performed by the interpreter. The same inputs are
+ * evaluated by the compiled model, and the results are compared.</li>
+ * <li>After {@link #getSampleSize() sample size} matching results, the compiled model replaces
+ * the interpreter.</li>
+ * </ol>
+ *
+ * The model stays interpreted for good if it cannot be translated (eg. the type of the model is
+ * not supported by {@link ModelTranslatorFactory}), if it cannot be compiled, or if a single
+ * result does not match. The compiled model computes the value of the predicted field only, so
+ * models that declare output fields are never compiled. Neither are models whose interpreter
+ * returns a specialized result (eg. a {@link com.turn.tpmml.manager.ScoreCardPMMLResult}) or a
+ * {@link Computable} value (eg. a classification map), because the compiled model could not
+ * reproduce them. If the compiled model fails after the switch, the interpreter takes over again
+ * for good.
+ *
+ * The compiled model is evaluated only if all the active fields have a value. Otherwise, the
+ * missing value treatment of the interpreter applies. The compiled model is also bypassed by
+ * {@link #evaluate(Map, EvaluationContext)} and by the positional and batch evaluation methods.
+ *
+ * The class of the code template must be safe for concurrent use. It should implement
+ * {@link TranslatedModel}. Otherwise, its public <code>execute(Map)</code> method is called
+ * reflectively, so that existing code templates can be used as they are.
+ *
+ * The translation context and the compiled model are not serialized. A deserialized evaluator
+ * starts over in interpreted mode, and translates the model with the default translation context.
+ *
+ * @see PmmlToJavaTranslator
+ */
+public class TieredEvaluator implements BatchEvaluator {
+
+	private BatchEvaluator evaluator = null;
+
+	private List<FieldName> activeFields = null;
+
+	private FieldName target = null;
+
+	private PMML pmml = null;
+
+	private String className = null;
+
+	private String packageName = null;
+
+	private String template = null;
+
+	private transient TranslationContext context = null;
+
+	private long threshold = TieredEvaluator.DEFAULT_THRESHOLD;
+
+	private int sampleSize = TieredEvaluator.DEFAULT_SAMPLE_SIZE;
+
+	private transient Executor executor = null;
+
+	private transient AtomicLong invocations = new AtomicLong();
+
+	private transient AtomicInteger matches = new AtomicInteger();
+
+	private transient AtomicReference<Tier> tier = new AtomicReference<Tier>(Tier.INTERPRETED);
+
+	private transient volatile TranslatedModel translatedModel = null;
+
+	private static final Logger logger = LoggerFactory.getLogger(TieredEvaluator.class);
+
+	private static final long serialVersionUID = 1L;
+
+	public static final long DEFAULT_THRESHOLD = 10000;
+
+	public static final int DEFAULT_SAMPLE_SIZE = 100;
+
+	/**
+	 * The largest difference between two numeric results, relative to their magnitude, that is
+	 * considered a match.
+	 */
+	public static final double TOLERANCE = 1E-6;
+
+	/**
+	 * @param className The simple name of the compiled class. It must be unique.
+	 * @param packageName The package of the compiled class, as declared by the template.
+	 * @param template The Velocity code template of the compiled class.
+	 * @param context The translation context, or <code>null</code>.
+	 *
+	 * @throws ModelManagerException If the model is not supported by the interpreter
+	 *
+	 * @see PmmlToJavaTranslator#generateJavaCode(PMML, String, java.io.Reader,
+	 *      TranslationContext)
+	 */
+	public TieredEvaluator(PMML pmml, String className, String packageName, String template,
+			TranslationContext context) throws ModelManagerException {
+		PMMLManager pmmlManager = new PMMLManager(pmml);
+
+		this.evaluator = (BatchEvaluator) pmmlManager.getModelManager(null,
+				ModelEvaluatorFactory.getInstance());
+		this.pmml = pmml;
+		this.className = className;
+		this.packageName = packageName;
+		this.template = template;
+		this.context = (context != null ? context : new TranslationContext());
+
+		this.activeFields = this.evaluator.getActiveFields();
+
+		if ((this.evaluator.getPredictedFields()).size() != 1 ||
+				!(this.evaluator.getOutputFields()).isEmpty()) {
+			this.tier.set(Tier.INTERPRETED_ONLY);
+
+			return;
+		}
+
+		this.target = this.evaluator.getTarget();
+	}
+
+	/**
+	 * @return The interpreter.
+	 */
+	public BatchEvaluator getEvaluator() {
+		return this.evaluator;
+	}
+
+	/**
+	 * @return <code>true</code> if the evaluations are performed by the compiled model,
+	 *         <code>false</code> otherwise.
+	 */
+	public boolean isCompiled() {
+		return (this.tier.get() == Tier.COMPILED);
+	}
+
+	public long getThreshold() {
+		return this.threshold;
+	}
+
+	/**
+	 * Must be called before the first evaluation.
+	 *
+	 * @param threshold The number of evaluations before the model is compiled. Must be positive.
+	 */
+	public void setThreshold(long threshold) {
+
+		if (threshold < 1) {
+			throw new IllegalArgumentException();
+		}
+
+		this.threshold = threshold;
+	}
+
+	public int getSampleSize() {
+		return this.sampleSize;
+	}
+
+	/**
+	 * Must be called before the first evaluation.
+	 *
+	 * @param sampleSize The number of matching results before the compiled model replaces the
+	 *        interpreter. Must be positive.
+	 */
+	public void setSampleSize(int sampleSize) {
+
+		if (sampleSize < 1) {
+			throw new IllegalArgumentException();
+		}
+
+		this.sampleSize = sampleSize;
+	}
+
+	/**
+	 * Sets the executor of the translation and compilation. By default, they are performed by a
+	 * new daemon thread. Must be called before the first evaluation.
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	public String getSummary() {
+		return this.evaluator.getSummary();
+	}
+
+	public DataField getDataField(FieldName name) {
+		return this.evaluator.getDataField(name);
+	}
+
+	public List<FieldName> getActiveFields() throws ModelManagerException {
+		return this.evaluator.getActiveFields();
+	}
+
+	public List<FieldName> getPredictedFields() throws ModelManagerException {
+		return this.evaluator.getPredictedFields();
+	}
+
+	public MiningField getMiningField(FieldName name) throws ModelManagerException {
+		return this.evaluator.getMiningField(name);
+	}
+
+	public List<FieldName> getOutputFields() throws ModelManagerException {
+		return this.evaluator.getOutputFields();
+	}
+
+	public OutputField getOutputField(FieldName name) throws ModelManagerException {
+		return this.evaluator.getOutputField(name);
+	}
+
+	public FieldName getTarget() throws ModelManagerException {
+		return this.evaluator.getTarget();
+	}
+
+	public Object prepare(FieldName name, Object value) throws EvaluationException {
+		return this.evaluator.prepare(name, value);
+	}
+
+	public EvaluationPlan getEvaluationPlan() throws EvaluationException {
+		return this.evaluator.getEvaluationPlan();
+	}
+
+	public RowSchema getRowSchema() throws EvaluationException {
+		return this.evaluator.getRowSchema();
+	}
+
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+		Tier tier = this.tier.get();
+
+		if (tier == Tier.INTERPRETED) {
+
+			if (this.invocations.incrementAndGet() == this.threshold) {
+				compile();
+			}
+		} else
+
+		if (tier == Tier.VERIFYING || tier == Tier.COMPILED) {
+			Map<String, Object> nameToValue = getNameToValue(parameters);
+
+			if (nameToValue != null) {
+				return evaluateCompiled(tier, parameters, nameToValue);
+			}
+		}
+
+		return this.evaluator.evaluate(parameters);
+	}
+
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters, EvaluationContext parent)
+			throws EvaluationException {
+		return this.evaluator.evaluate(parameters, parent);
+	}
+
+	public IPMMLResult evaluate(double[] continuousValues, Object[] categoricalValues)
+			throws EvaluationException {
+		return this.evaluator.evaluate(continuousValues, categoricalValues);
+	}
+
+	public void evaluateBatch(ColumnBatch in, ColumnBatch out) throws EvaluationException {
+		this.evaluator.evaluateBatch(in, out);
+	}
+
+	private IPMMLResult evaluateCompiled(Tier tier, Map<FieldName, ?> parameters,
+			Map<String, Object> nameToValue) throws EvaluationException {
+		TranslatedModel translatedModel = this.translatedModel;
+
+		if (tier == Tier.COMPILED) {
+			Object value;
+
+			try {
+				value = translatedModel.execute(nameToValue);
+			} catch (RuntimeException re) {
+				reject("The compiled model failed", re);
+
+				return this.evaluator.evaluate(parameters);
+			}
+
+			if (value != null) {
+				PMMLResult result = new PMMLResult();
+				result.put(this.target, value);
+
+				return result;
+			}
+
+			return this.evaluator.evaluate(parameters);
+		}
+
+		IPMMLResult result = this.evaluator.evaluate(parameters);
+
+		Object expected;
+
+		try {
+			expected = result.getValue(this.target);
+		} catch (ModelManagerException mme) {
+			throw new EvaluationException(mme);
+		}
+
+		// The compiled model returns a plain value in a plain result
+		if (result.getClass() != PMMLResult.class || expected instanceof Computable) {
+			reject("The result type " + (result.getClass()).getName() + " is not supported",
+					null);
+
+			return result;
+		}
+
+		expected = EvaluatorUtil.decode(expected);
+
+		Object value;
+
+		try {
+			value = translatedModel.execute(nameToValue);
+		} catch (RuntimeException re) {
+			reject("The compiled model failed", re);
+
+			return result;
+		}
+
+		// The input was not handled by the compiled model
+		if (value == null) {
+			return result;
+		} else
+
+		if (!matches(expected, value)) {
+			reject("The compiled model returned " + value + " instead of " + expected, null);
+
+			return result;
+		}
+
+		if (this.matches.incrementAndGet() == this.sampleSize &&
+				this.tier.compareAndSet(Tier.VERIFYING, Tier.COMPILED)) {
+			logger.info("Switched " + this.className + " to compiled mode");
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return Map of active field values, or <code>null</code> if some value is missing.
+	 */
+	private Map<String, Object> getNameToValue(Map<FieldName, ?> parameters) {
+		Map<String, Object> result = new HashMap<String, Object>(2 * this.activeFields.size());
+
+		for (FieldName activeField : this.activeFields) {
+			Object value = parameters.get(activeField);
+
+			if (value == null) {
+				return null;
+			}
+
+			result.put(activeField.getValue(), value);
+		}
+
+		return result;
+	}
+
+	private void compile() {
+
+		if (!this.tier.compareAndSet(Tier.INTERPRETED, Tier.COMPILING)) {
+			return;
+		}
+
+		Runnable task = new Runnable() {
+
+			public void run() {
+
+				try {
+					TieredEvaluator.this.translatedModel = createTranslatedModel();
+				} catch (Exception e) {
+					reject("The model could not be compiled", e);
+
+					return;
+				} catch (LinkageError le) {
+					reject("The model could not be loaded", le);
+
+					return;
+				}
+
+				TieredEvaluator.this.tier.compareAndSet(Tier.COMPILING, Tier.VERIFYING);
+			}
+		};
+
+		Executor executor = this.executor;
+
+		if (executor != null) {
+			executor.execute(task);
+		} else {
+			Thread thread = new Thread(task, "tpmml-translator-" + this.className);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private TranslatedModel createTranslatedModel() throws Exception {
+		String javaSource = PmmlToJavaTranslator.generateJavaCode(this.pmml, this.className,
+				new StringReader(this.template), this.context);
+
+		if (javaSource == null) {
+			throw new TranslationException("The code template could not be evaluated");
+		}
+
+		Class<?> modelClass = PmmlToJavaTranslator.createModelClass(this.className,
+				this.packageName, javaSource);
+
+		if (modelClass == null) {
+			throw new TranslationException("The generated code could not be compiled");
+		}
+
+		Object model = modelClass.newInstance();
+
+		if (model instanceof TranslatedModel) {
+			return (TranslatedModel) model;
+		}
+
+		return new MethodTranslatedModel(model, modelClass.getMethod("execute", Map.class));
+	}
+
+	private void reject(String message, Throwable t) {
+		Tier tier = this.tier.getAndSet(Tier.INTERPRETED_ONLY);
+
+		if (tier != Tier.INTERPRETED_ONLY) {
+			logger.warn(message + ", " + this.className + " stays in interpreted mode", t);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+
+		this.context = new TranslationContext();
+
+		this.invocations = new AtomicLong();
+		this.matches = new AtomicInteger();
+		this.tier = new AtomicReference<Tier>(this.target != null ? Tier.INTERPRETED :
+				Tier.INTERPRETED_ONLY);
+	}
+
+	static boolean matches(Object expected, Object value) {
+
+		if (expected instanceof Number && value instanceof Number) {
+			double left = ((Number) expected).doubleValue();
+			double right = ((Number) value).doubleValue();
+
+			if (Double.isNaN(left) || Double.isNaN(right)) {
+				return (Double.isNaN(left) && Double.isNaN(right));
+			}
+
+			return Math.abs(left - right) <= TOLERANCE * Math.max(1d, Math.abs(left));
+		}
+
+		return (expected != null ? expected.equals(value) : value == null);
+	}
+
+	private enum Tier {
+		INTERPRETED,
+		COMPILING,
+		VERIFYING,
+		COMPILED,
+		INTERPRETED_ONLY;
+	}
+
+	/**
+	 * Calls the <code>execute(Map)</code> method of a model class that does not implement
+	 * {@link TranslatedModel}.
+	 */
+	private static class MethodTranslatedModel implements TranslatedModel {
+
+		private Object model = null;
+
+		private Method method = null;
+
+		private MethodTranslatedModel(Object model, Method method) {
+			this.model = model;
+			this.method = method;
+		}
+
+		public Object execute(Map<String, Object> nameToValue) {
+
+			try {
+				return this.method.invoke(this.model, nameToValue);
+			} catch (IllegalAccessException iae) {
+				throw new IllegalStateException(iae);
+			} catch (InvocationTargetException ite) {
+				Throwable cause = ite.getCause();
+
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else
+
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+
+				throw new IllegalStateException(cause);
+			}
+		}
+	}
+}
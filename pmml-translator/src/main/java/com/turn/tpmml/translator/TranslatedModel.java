@@ -0,0 +1,21 @@
+package com.turn.tpmml.translator;
+
+import java.util.Map;
+
+/**
+ * The interface that the class of a code template must implement in order to be evaluated by
+ * {@link TieredEvaluator}.
+ *
+ * @see PmmlToJavaTranslator#generateJavaCode(com.turn.tpmml.PMML, String, java.io.Reader,
+ *      TranslationContext)
+ */
+public interface TranslatedModel {
+
+	/**
+	 * @param nameToValue Map of active field values. All values are present.
+	 *
+	 * @return The value of the predicted field, or <code>null</code> if the value could not be
+	 *         computed.
+	 */
+	Object execute(Map<String, Object> nameToValue);
+}